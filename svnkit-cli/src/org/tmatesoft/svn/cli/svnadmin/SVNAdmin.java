@@ -60,6 +60,9 @@ public class SVNAdmin extends AbstractSVNLauncher {
         AbstractSVNCommand.registerCommand(new SVNAdminSetUUIDCommand());
         AbstractSVNCommand.registerCommand(new SVNAdminHotCopyCommand());
         AbstractSVNCommand.registerCommand(new SVNAdminPackCommand());
+        AbstractSVNCommand.registerCommand(new SVNAdminBuildLogIndexCommand());
+        AbstractSVNCommand.registerCommand(new SVNAdminBuildMergeInfoIndexCommand());
+        AbstractSVNCommand.registerCommand(new SVNAdminBuildRevisionDatesIndexCommand());
     }
 
     protected void registerOptions() {
@@ -85,6 +88,7 @@ public class SVNAdmin extends AbstractSVNLauncher {
         SVNCommandLine.registerOption(SVNAdminOption.USE_PRE_REVPROP_CHANGE_HOOK);
         SVNCommandLine.registerOption(SVNAdminOption.USE_POST_REVPROP_CHANGE_HOOK);
         SVNCommandLine.registerOption(SVNAdminOption.WAIT);
+        SVNCommandLine.registerOption(SVNAdminOption.THREADS);
         SVNCommandLine.registerOption(SVNAdminOption.PRE_14_COMPATIBLE);
         SVNCommandLine.registerOption(SVNAdminOption.PRE_15_COMPATIBLE);
     }
@@ -64,11 +64,13 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
     private boolean myIsWait;
     private SVNRevision myStartRevision;
     private SVNRevision myEndRevision;
+    private int myThreads;
 
     protected SVNAdminCommandEnvironment(String programName, PrintStream out, PrintStream err, InputStream in) {
         super(programName, out, err, in);
         myStartRevision = SVNRevision.UNDEFINED;
         myEndRevision = SVNRevision.UNDEFINED;
+        myThreads = 1;
     }
 
     protected ISVNAuthenticationManager createClientAuthenticationManager() {
@@ -137,6 +139,18 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
             myConfigDir = optionValue.getValue();
         } else if (option == SVNAdminOption.WAIT) {
             myIsWait = true;
+        } else if (option == SVNAdminOption.THREADS) {
+            String threadsStr = optionValue.getValue();
+            try {
+                myThreads = Integer.parseInt(threadsStr);
+                if (myThreads <= 0) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.INCORRECT_PARAMS, "Argument to --threads must be positive");
+                    SVNErrorManager.error(err, SVNLogType.CLIENT);
+                }
+            } catch (NumberFormatException nfe) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CL_ARG_PARSING_ERROR, "Non-numeric threads argument given");
+                SVNErrorManager.error(err, SVNLogType.CLIENT);
+            }
         }
     }
 
@@ -257,6 +271,10 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
         return myIsWait;
     }
     
+    public int getThreads() {
+        return myThreads;
+    }
+
     public SVNRevision getStartRevision() {
         return myStartRevision;
     }
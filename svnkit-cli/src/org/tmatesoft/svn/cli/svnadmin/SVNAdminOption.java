@@ -42,6 +42,7 @@ public class SVNAdminOption extends AbstractSVNOption {
     public static final SVNAdminOption USE_PRE_REVPROP_CHANGE_HOOK = new SVNAdminOption("use-pre-revprop-change-hook");
     public static final SVNAdminOption USE_POST_REVPROP_CHANGE_HOOK = new SVNAdminOption("use-post-revprop-change-hook");
     public static final SVNAdminOption WAIT = new SVNAdminOption("wait");
+    public static final SVNAdminOption THREADS = new SVNAdminOption("threads", null, false);
     public static final SVNAdminOption PRE_14_COMPATIBLE = new SVNAdminOption("pre-1.4-compatible");
     public static final SVNAdminOption PRE_15_COMPATIBLE = new SVNAdminOption("pre-1.5-compatible");
     public static final SVNAdminOption PRE_16_COMPATIBLE = new SVNAdminOption("pre-1.6-compatible");
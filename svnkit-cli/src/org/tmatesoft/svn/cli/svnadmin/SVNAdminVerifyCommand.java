@@ -45,6 +45,7 @@ public class SVNAdminVerifyCommand extends SVNAdminCommand implements ISVNAdminE
         Collection options = new LinkedList();
         options.add(SVNAdminOption.REVISION);
         options.add(SVNAdminOption.QUIET);
+        options.add(SVNAdminOption.THREADS);
         return options;
     }
 
@@ -71,7 +72,8 @@ public class SVNAdminVerifyCommand extends SVNAdminCommand implements ISVNAdminE
         if (!getSVNAdminEnvironment().isQuiet()) {
             client.setEventHandler(this);
         }
-        client.doVerify(getLocalRepository(), SVNRevision.create(startRev), SVNRevision.create(endRev));
+        client.doVerify(getLocalRepository(), SVNRevision.create(startRev), SVNRevision.create(endRev), 
+                getSVNAdminEnvironment().getThreads());
     }
 
     public void handleAdminEvent(SVNAdminEvent event, double progress) throws SVNException {
@@ -0,0 +1,318 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Reports delta size and throughput of the delta algorithms of {@link SVNDeltaGenerator}
+ * over a corpus of files, for each file delta-ed both as a new file and against an edited
+ * copy of it. Text files get lines replaced, inserted and removed, binary files get bytes
+ * overwritten and inserted. Every delta is applied back to check that it is correct.
+ *
+ * Sizes are those of svndiff0 windows and of zlib compressed svndiff1 windows, as stored
+ * in revision files, relative to the size of the target files.
+ *
+ * args: corpusDir [maxFilesCount] [windowSizeKB...]
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDeltaCompressionBenchmark {
+
+    private static final String[] ALGORITHMS = {SVNDeltaGenerator.XDELTA_ALGORITHM, SVNDeltaGenerator.EXTENDED_XDELTA_ALGORITHM};
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("args: corpusDir [maxFilesCount] [windowSizeKB...]");
+            System.exit(1);
+        }
+        int maxFilesCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int[] windowSizes = new int[args.length > 2 ? args.length - 2 : 2];
+        for (int i = 0; i < windowSizes.length; i++) {
+            windowSizes[i] = (args.length > 2 ? Integer.parseInt(args[2 + i]) : (i == 0 ? 100 : 1024)) * 1024;
+        }
+
+        try {
+            List textFiles = new ArrayList();
+            List binaryFiles = new ArrayList();
+            collectFiles(new File(args[0]), textFiles, binaryFiles, maxFilesCount);
+            Random random = new Random(0);
+            Corpus text = new Corpus("text", textFiles, random, true);
+            Corpus binary = new Corpus("binary", binaryFiles, random, false);
+            System.out.println(text + ", " + binary);
+
+            for (int round = 0; round < 2; round++) {
+                // the first round warms up
+                boolean print = round > 0;
+                for (int w = 0; w < windowSizes.length; w++) {
+                    for (int a = 0; a < ALGORITHMS.length; a++) {
+                        measure(text, ALGORITHMS[a], windowSizes[w], false, print);
+                        measure(text, ALGORITHMS[a], windowSizes[w], true, print);
+                        measure(binary, ALGORITHMS[a], windowSizes[w], false, print);
+                        measure(binary, ALGORITHMS[a], windowSizes[w], true, print);
+                    }
+                }
+            }
+        } catch (SVNException e) {
+            System.out.println(e.getErrorMessage().getFullMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void measure(Corpus corpus, String algorithm, int windowSize, boolean edited, boolean print) throws SVNException {
+        if (corpus.myTargets.isEmpty()) {
+            return;
+        }
+        SVNDeltaGenerator generator = new SVNDeltaGenerator(windowSize);
+        generator.setDeltaAlgorithm(algorithm);
+        SizeCounter counter = new SizeCounter();
+
+        System.gc();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < corpus.myTargets.size(); i++) {
+            byte[] source = edited ? (byte[]) corpus.mySources.get(i) : new byte[0];
+            byte[] target = (byte[]) corpus.myTargets.get(i);
+            generator.sendDelta(null, new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), counter, false);
+        }
+        long time = System.currentTimeMillis() - start;
+        if (!print) {
+            return;
+        }
+
+        long plainSize = 0;
+        long compressedSize = 0;
+        for (int i = 0; i < corpus.myTargets.size(); i++) {
+            byte[] source = edited ? (byte[]) corpus.mySources.get(i) : new byte[0];
+            byte[] target = (byte[]) corpus.myTargets.get(i);
+            Verifier verifier = new Verifier(source);
+            generator.sendDelta(null, new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), verifier, false);
+            if (!Arrays.equals(target, verifier.getResult())) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "{0} delta of {1} file #{2} does not apply",
+                        new Object[] {algorithm, corpus.myName, new Integer(i)});
+                SVNErrorManager.error(err, SVNLogType.DEFAULT);
+            }
+            plainSize += verifier.myPlainSize;
+            compressedSize += verifier.myCompressedSize;
+        }
+        long throughput = time > 0 ? (corpus.myTargetsSize * 1000) / (time * 1024 * 1024) : 0;
+        System.out.println(corpus.myName + (edited ? " edited" : " added") + ", " + algorithm + ", " + (windowSize / 1024) + " KB windows: " +
+                percent(plainSize, corpus.myTargetsSize) + " svndiff0, " + percent(compressedSize, corpus.myTargetsSize) + " svndiff1, " +
+                time + " ms (" + throughput + " MB/s)");
+    }
+
+    private static String percent(long size, long total) {
+        long tenths = (size * 1000) / Math.max(1, total);
+        return (tenths / 10) + "." + (tenths % 10) + "%";
+    }
+
+    static void collectFiles(File dir, List textFiles, List binaryFiles, int maxFilesCount) throws SVNException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (int i = 0; i < children.length && textFiles.size() + binaryFiles.size() < maxFilesCount; i++) {
+            File child = children[i];
+            if (child.getName().startsWith(".")) {
+                continue;
+            } else if (child.isDirectory()) {
+                collectFiles(child, textFiles, binaryFiles, maxFilesCount);
+            } else if (child.isFile() && child.length() > 64 && child.length() < 16 * 1024 * 1024) {
+                byte[] contents = readFile(child);
+                if (isBinary(contents)) {
+                    binaryFiles.add(contents);
+                } else {
+                    textFiles.add(contents);
+                }
+            }
+        }
+    }
+
+    private static byte[] readFile(File file) throws SVNException {
+        InputStream is = SVNFileUtil.openFileForReading(file, SVNLogType.DEFAULT);
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            for (int read = is.read(buffer); read > 0; read = is.read(buffer)) {
+                contents.write(buffer, 0, read);
+            }
+            return contents.toByteArray();
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+            return null;
+        } finally {
+            SVNFileUtil.closeFile(is);
+        }
+    }
+
+    private static boolean isBinary(byte[] contents) {
+        for (int i = 0; i < contents.length && i < 8192; i++) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Corpus {
+
+        String myName;
+        List mySources;
+        List myTargets;
+        long myTargetsSize;
+
+        public Corpus(String name, List files, Random random, boolean text) {
+            myName = name;
+            mySources = new ArrayList();
+            myTargets = new ArrayList();
+            for (int i = 0; i < files.size(); i++) {
+                byte[] contents = (byte[]) files.get(i);
+                mySources.add(text ? editText(random, contents) : editBinary(random, contents));
+                myTargets.add(contents);
+                myTargetsSize += contents.length;
+            }
+        }
+
+        public String toString() {
+            return myTargets.size() + " " + myName + " files, " + (myTargetsSize / 1024) + " KB";
+        }
+
+        private static byte[] editText(Random random, byte[] contents) {
+            ByteArrayOutputStream edited = new ByteArrayOutputStream(contents.length);
+            int lineStart = 0;
+            for (int i = 0; i < contents.length; i++) {
+                if (contents[i] != '\n' && i < contents.length - 1) {
+                    continue;
+                }
+                int lineEnd = i + 1;
+                int change = random.nextInt(100);
+                if (change == 0) {
+                    // line replaced
+                    for (int j = lineStart; j < lineEnd - 1; j++) {
+                        edited.write('a' + random.nextInt(26));
+                    }
+                    edited.write('\n');
+                } else if (change == 1) {
+                    // line inserted
+                    edited.write(contents, lineStart, lineEnd - lineStart);
+                    for (int j = random.nextInt(60); j > 0; j--) {
+                        edited.write('a' + random.nextInt(26));
+                    }
+                    edited.write('\n');
+                } else if (change != 2) {
+                    // line kept, unless removed
+                    edited.write(contents, lineStart, lineEnd - lineStart);
+                }
+                lineStart = lineEnd;
+            }
+            return edited.toByteArray();
+        }
+
+        private static byte[] editBinary(Random random, byte[] contents) {
+            byte[] edited = contents.clone();
+            int editsCount = 1 + contents.length / 4096;
+            for (int i = 0; i < editsCount; i++) {
+                int position = random.nextInt(edited.length);
+                if (random.nextBoolean()) {
+                    for (int j = position; j < position + 16 && j < edited.length; j++) {
+                        edited[j] = (byte) random.nextInt();
+                    }
+                } else {
+                    byte[] inserted = new byte[edited.length + 100];
+                    System.arraycopy(edited, 0, inserted, 0, position);
+                    for (int j = position; j < position + 100; j++) {
+                        inserted[j] = (byte) random.nextInt();
+                    }
+                    System.arraycopy(edited, position, inserted, position + 100, edited.length - position);
+                    edited = inserted;
+                }
+            }
+            return edited;
+        }
+    }
+
+    private static class SizeCounter implements ISVNDeltaConsumer {
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            return null;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+
+    private static class Verifier implements ISVNDeltaConsumer {
+
+        private SVNDeltaProcessor myProcessor;
+        private ByteArrayOutputStream myResult;
+        private long myPlainSize;
+        private long myCompressedSize;
+
+        public Verifier(byte[] source) {
+            myProcessor = new SVNDeltaProcessor();
+            myResult = new ByteArrayOutputStream();
+            myProcessor.applyTextDelta(new ByteArrayInputStream(source), myResult, false);
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            try {
+                ByteArrayOutputStream plain = new ByteArrayOutputStream();
+                diffWindow.writeTo(plain, false, false);
+                myPlainSize += plain.size();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                diffWindow.writeTo(compressed, false, true);
+                myCompressedSize += compressed.size();
+            } catch (IOException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+            }
+            SVNFileUtil.closeFile(myProcessor.textDeltaChunk(diffWindow));
+            return null;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+
+        public byte[] getResult() {
+            myProcessor.textDeltaEnd();
+            return myResult.toByteArray();
+        }
+    }
+}
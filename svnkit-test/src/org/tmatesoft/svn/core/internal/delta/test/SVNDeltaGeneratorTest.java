@@ -0,0 +1,37 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta.test;
+
+import junit.framework.TestCase;
+
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDeltaGeneratorTest extends TestCase {
+
+    public void testDefaultWindowSizeIsLimited() {
+        int defaultWindowSize = SVNDeltaGenerator.getDefaultWindowSize();
+        try {
+            SVNDeltaGenerator.setDefaultWindowSize(1024 * 1024);
+            assertEquals(SVNDeltaGenerator.DEFAULT_WINDOW_SIZE, SVNDeltaGenerator.getDefaultWindowSize());
+            SVNDeltaGenerator.setDefaultWindowSize(16 * 1024);
+            assertEquals(16 * 1024, SVNDeltaGenerator.getDefaultWindowSize());
+            SVNDeltaGenerator.setDefaultWindowSize(0);
+            assertEquals(SVNDeltaGenerator.DEFAULT_WINDOW_SIZE, SVNDeltaGenerator.getDefaultWindowSize());
+        } finally {
+            SVNDeltaGenerator.setDefaultWindowSize(defaultWindowSize);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffInstruction;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDeltaRoundTripTest extends TestCase {
+
+    public void testXDeltaRoundTrip() throws Exception {
+        assertRoundTrip(SVNDeltaGenerator.XDELTA_ALGORITHM);
+    }
+
+    public void testXDeltaOfEditedTextIsSmall() throws Exception {
+        Random random = new Random(0);
+        byte[] source = createText(random, 200 * 1024);
+        byte[] target = editLines(random, source);
+        byte[] delta = encode(new SVNDeltaGenerator(), SVNDeltaGenerator.XDELTA_ALGORITHM, source, target);
+        assertTrue(String.valueOf(delta.length), delta.length < target.length / 10);
+        assertTrue(Arrays.equals(target, decode(source, delta)));
+    }
+
+    public void testExtendedXDeltaRoundTrip() throws Exception {
+        assertRoundTrip(SVNDeltaGenerator.EXTENDED_XDELTA_ALGORITHM);
+    }
+
+    /*
+     * A new file of a repeated record is encoded by copies of its own first record, which
+     * the default algorithm, matching against the source only, can not do.
+     */
+    public void testExtendedXDeltaCopiesFromTarget() throws Exception {
+        byte[] record = new byte[1000];
+        new Random(0).nextBytes(record);
+        byte[] target = new byte[record.length * 20];
+        for (int i = 0; i < 20; i++) {
+            System.arraycopy(record, 0, target, i * record.length, record.length);
+            target[i * record.length + i] ^= 1;
+        }
+        SVNDeltaGenerator generator = new SVNDeltaGenerator();
+        byte[] extended = encode(generator, SVNDeltaGenerator.EXTENDED_XDELTA_ALGORITHM, new byte[0], target);
+        byte[] plain = encode(generator, SVNDeltaGenerator.XDELTA_ALGORITHM, new byte[0], target);
+        assertTrue(hasTargetCopies(extended));
+        assertFalse(hasTargetCopies(plain));
+        assertTrue(extended.length < plain.length / 5);
+        assertTrue(Arrays.equals(target, decode(new byte[0], extended)));
+    }
+
+    /*
+     * One generator, and so one match table, is used for every pair, from a source of
+     * several windows down to an empty one, as SVNDeltaGenerator reuses it in practice.
+     */
+    private static void assertRoundTrip(String algorithm) throws SVNException {
+        Random random = new Random(algorithm.hashCode());
+        byte[] text = createText(random, 250 * 1024);
+        byte[] binary = new byte[150 * 1024];
+        random.nextBytes(binary);
+        byte[] dull = createDullText(random, 120 * 1024);
+        byte[][] pairs = new byte[][] {
+                text, editLines(random, text),
+                binary, shiftBlocks(binary),
+                dull, editLines(random, dull),
+                new byte[0], text,
+                text, new byte[0],
+                binary, text,
+                new byte[10], new byte[100],
+                dull, dull,
+        };
+        SVNDeltaGenerator generator = new SVNDeltaGenerator();
+        for (int i = 0; i < pairs.length; i += 2) {
+            byte[] delta = encode(generator, algorithm, pairs[i], pairs[i + 1]);
+            assertTrue("pair " + i / 2, Arrays.equals(pairs[i + 1], decode(pairs[i], delta)));
+        }
+    }
+
+    static byte[] encode(SVNDeltaGenerator generator, String algorithm, byte[] source, byte[] target) throws SVNException {
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        generator.setDeltaAlgorithm(algorithm);
+        generator.sendDelta(null, new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                try {
+                    diffWindow.writeTo(delta, delta.size() == 0, false);
+                } catch (IOException e) {
+                    fail(e.getMessage());
+                }
+                return null;
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        }, false);
+        return delta.toByteArray();
+    }
+
+    static byte[] decode(byte[] source, byte[] delta) throws SVNException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        final SVNDeltaProcessor processor = new SVNDeltaProcessor();
+        processor.applyTextDelta(new ByteArrayInputStream(source), target, false);
+        new SVNDeltaReader().nextWindow(delta, 0, delta.length, null, new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                return processor.textDeltaChunk(diffWindow);
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        });
+        processor.textDeltaEnd();
+        return target.toByteArray();
+    }
+
+    private static boolean hasTargetCopies(byte[] delta) throws SVNException {
+        final boolean[] found = new boolean[1];
+        new SVNDeltaReader().nextWindow(delta, 0, delta.length, null, new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                for (Iterator instructions = diffWindow.instructions(true); instructions.hasNext();) {
+                    SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
+                    found[0] |= instruction.type == SVNDiffInstruction.COPY_FROM_TARGET;
+                }
+                return null;
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        });
+        return found[0];
+    }
+
+    static byte[] createText(Random random, int size) {
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; i++) {
+            text[i] = i % 60 == 59 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+        }
+        return text;
+    }
+
+    /*
+     * Text of two letters, in which most 64 byte blocks share a checksum with others.
+     */
+    private static byte[] createDullText(Random random, int size) {
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; i++) {
+            text[i] = i % 60 == 59 ? (byte) '\n' : (byte) ('a' + random.nextInt(2));
+        }
+        return text;
+    }
+
+    static byte[] editLines(Random random, byte[] text) {
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        for (int line = 0; line < text.length; line += 60) {
+            int length = Math.min(60, text.length - line);
+            int choice = random.nextInt(50);
+            if (choice == 0) {
+                continue;
+            } else if (choice == 1) {
+                edited.write(text, line, length / 2);
+                edited.write('X');
+                edited.write(text, line + length / 2, length - length / 2);
+            } else {
+                edited.write(text, line, length);
+            }
+        }
+        return edited.toByteArray();
+    }
+
+    private static byte[] shiftBlocks(byte[] data) {
+        byte[] shifted = new byte[data.length];
+        int blockSize = 4096;
+        int blocks = data.length / blockSize;
+        for (int i = 0; i < blocks; i++) {
+            System.arraycopy(data, ((i + 7) % blocks) * blockSize, shifted, i * blockSize, blockSize);
+        }
+        return shifted;
+    }
+}
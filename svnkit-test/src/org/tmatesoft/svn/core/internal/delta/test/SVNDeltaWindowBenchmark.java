@@ -0,0 +1,221 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Shows how the delta window size and the zlib compression level of svndiff1 trade CPU
+ * time for size, as set with the <code>delta-window-size</code> and <code>compression-level</code>
+ * options of <code>fsfs.conf</code> and the <code>delta-compression-level</code> option of
+ * the <code>servers</code> file.
+ *
+ * Files of a corpus, and one large asset made of its binary files, are delta-ed against edited
+ * copies of themselves and as new files. For each window size and level the svndiff is encoded,
+ * then decoded and applied back, and the encoded size, encoding and decoding speed, and the total
+ * time to encode, transfer and decode it over a 1 Gbit/s LAN and a 10 Mbit/s WAN are reported.
+ *
+ * args: corpusDir [maxFilesCount] [assetSizeMB]
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDeltaWindowBenchmark {
+
+    private static final int[] WINDOW_SIZES = {16 * 1024, 64 * 1024, 100 * 1024};
+    private static final int[] COMPRESSION_LEVELS = {0, 1, Deflater.DEFAULT_COMPRESSION, 9};
+    private static final long LAN_BITS_PER_SECOND = 1000L * 1000 * 1000;
+    private static final long WAN_BITS_PER_SECOND = 10L * 1000 * 1000;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("args: corpusDir [maxFilesCount] [assetSizeMB]");
+            System.exit(1);
+        }
+        int maxFilesCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int assetSize = (args.length > 2 ? Integer.parseInt(args[2]) : 32) * 1024 * 1024;
+
+        try {
+            List textFiles = new ArrayList();
+            List binaryFiles = new ArrayList();
+            SVNDeltaCompressionBenchmark.collectFiles(new File(args[0]), textFiles, binaryFiles, maxFilesCount);
+            List files = new ArrayList(textFiles);
+            files.addAll(binaryFiles);
+            Random random = new Random(0);
+            SVNDeltaCompressionBenchmark.Corpus corpus = new SVNDeltaCompressionBenchmark.Corpus("corpus", files, random, false);
+            List assets = new ArrayList();
+            assets.add(createAsset(binaryFiles.isEmpty() ? files : binaryFiles, assetSize));
+            SVNDeltaCompressionBenchmark.Corpus asset = new SVNDeltaCompressionBenchmark.Corpus("asset", assets, random, false);
+            System.out.println(corpus + ", " + asset);
+
+            for (int round = 0; round < 2; round++) {
+                // the first round warms up
+                boolean print = round > 0;
+                for (int w = 0; w < WINDOW_SIZES.length; w++) {
+                    for (int l = 0; l < COMPRESSION_LEVELS.length; l++) {
+                        measure(corpus, WINDOW_SIZES[w], COMPRESSION_LEVELS[l], false, print);
+                        measure(corpus, WINDOW_SIZES[w], COMPRESSION_LEVELS[l], true, print);
+                        measure(asset, WINDOW_SIZES[w], COMPRESSION_LEVELS[l], false, print);
+                        measure(asset, WINDOW_SIZES[w], COMPRESSION_LEVELS[l], true, print);
+                    }
+                }
+            }
+        } catch (SVNException e) {
+            System.out.println(e.getErrorMessage().getFullMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void measure(SVNDeltaCompressionBenchmark.Corpus corpus, int windowSize, int compressionLevel, boolean edited, boolean print) throws SVNException {
+        SVNDeltaGenerator generator = new SVNDeltaGenerator(windowSize);
+        List deltas = new ArrayList();
+
+        System.gc();
+        long start = System.currentTimeMillis();
+        long deltaSize = 0;
+        for (int i = 0; i < corpus.myTargets.size(); i++) {
+            byte[] source = edited ? (byte[]) corpus.mySources.get(i) : new byte[0];
+            byte[] target = (byte[]) corpus.myTargets.get(i);
+            Encoder encoder = new Encoder(compressionLevel);
+            generator.sendDelta(null, new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), encoder, false);
+            byte[] delta = encoder.myDelta.toByteArray();
+            deltaSize += delta.length;
+            deltas.add(delta);
+        }
+        long encodingTime = System.currentTimeMillis() - start;
+
+        System.gc();
+        start = System.currentTimeMillis();
+        List results = new ArrayList();
+        for (int i = 0; i < corpus.myTargets.size(); i++) {
+            byte[] source = edited ? (byte[]) corpus.mySources.get(i) : new byte[0];
+            byte[] delta = (byte[]) deltas.get(i);
+            SVNDeltaProcessor processor = new SVNDeltaProcessor();
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            processor.applyTextDelta(new ByteArrayInputStream(source), result, false);
+            ISVNDeltaConsumer applier = new Applier(processor);
+            SVNDeltaReader reader = new SVNDeltaReader();
+            reader.nextWindow(delta, 0, delta.length, null, applier);
+            processor.textDeltaEnd();
+            results.add(result.toByteArray());
+        }
+        long decodingTime = System.currentTimeMillis() - start;
+        if (!print) {
+            return;
+        }
+
+        for (int i = 0; i < corpus.myTargets.size(); i++) {
+            if (!Arrays.equals((byte[]) corpus.myTargets.get(i), (byte[]) results.get(i))) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "delta of {0} file #{1} does not apply",
+                        new Object[] {corpus.myName, new Integer(i)});
+                SVNErrorManager.error(err, SVNLogType.DEFAULT);
+            }
+        }
+        long lanTime = encodingTime + decodingTime + (deltaSize * 8 * 1000) / LAN_BITS_PER_SECOND;
+        long wanTime = encodingTime + decodingTime + (deltaSize * 8 * 1000) / WAN_BITS_PER_SECOND;
+        System.out.println(corpus.myName + (edited ? " edited" : " added") + ", " + (windowSize / 1024) + " KB windows, level " +
+                (compressionLevel == Deflater.DEFAULT_COMPRESSION ? "default" : String.valueOf(compressionLevel)) + ": " +
+                percent(deltaSize, corpus.myTargetsSize) + " of size, encoding " + speed(corpus.myTargetsSize, encodingTime) +
+                ", decoding " + speed(corpus.myTargetsSize, decodingTime) + ", LAN " + lanTime + " ms, WAN " + wanTime + " ms");
+    }
+
+    private static byte[] createAsset(List files, int size) {
+        byte[] asset = new byte[size];
+        int position = 0;
+        for (int i = 0; position < size && !files.isEmpty(); i = (i + 1) % files.size()) {
+            byte[] file = (byte[]) files.get(i);
+            int length = Math.min(file.length, size - position);
+            System.arraycopy(file, 0, asset, position, length);
+            position += length;
+        }
+        return asset;
+    }
+
+    private static String percent(long size, long total) {
+        long tenths = (size * 1000) / Math.max(1, total);
+        return (tenths / 10) + "." + (tenths % 10) + "%";
+    }
+
+    private static String speed(long size, long time) {
+        return (time > 0 ? (size * 1000) / (time * 1024 * 1024) : 0) + " MB/s";
+    }
+
+    private static class Encoder implements ISVNDeltaConsumer {
+
+        private ByteArrayOutputStream myDelta;
+        private int myCompressionLevel;
+        private boolean myIsHeaderWritten;
+
+        public Encoder(int compressionLevel) {
+            myDelta = new ByteArrayOutputStream();
+            myCompressionLevel = compressionLevel;
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            try {
+                diffWindow.writeTo(myDelta, !myIsHeaderWritten, true, myCompressionLevel);
+                myIsHeaderWritten = true;
+            } catch (IOException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+            }
+            return null;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+
+    private static class Applier implements ISVNDeltaConsumer {
+
+        private SVNDeltaProcessor myProcessor;
+
+        public Applier(SVNDeltaProcessor processor) {
+            myProcessor = processor;
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            SVNFileUtil.closeFile(myProcessor.textDeltaChunk(diffWindow));
+            return null;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffInstruction;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindowApplyBaton;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDiffWindowApplyTest extends TestCase {
+
+    private static final int STREAM = 0;
+    private static final int CHANNEL = 1;
+    private static final int HEAP_BUFFER = 2;
+    private static final int DIRECT_BUFFER = 3;
+
+    public void testGeneratedWindows() throws Exception {
+        Random random = new Random(0);
+        byte[] source = SVNDeltaRoundTripTest.createText(random, 100 * 1024);
+        byte[] target = SVNDeltaRoundTripTest.editLines(random, source);
+        assertApply(source, target, createWindows(SVNDeltaGenerator.XDELTA_ALGORITHM, source, target));
+        assertApply(source, target, createWindows(SVNDeltaGenerator.EXTENDED_XDELTA_ALGORITHM, source, target));
+        assertApply(new byte[0], target, createWindows(SVNDeltaGenerator.EXTENDED_XDELTA_ALGORITHM, new byte[0], target));
+    }
+
+    /*
+     * Source views that shrink, repeat or are missing, as delta combination may produce,
+     * and copies from target that overlap the bytes they produce.
+     */
+    public void testSourceViewsThatShrinkOrRepeat() throws Exception {
+        byte[] source = new byte[300];
+        new Random(1).nextBytes(source);
+        byte[] newData = new byte[30];
+        new Random(2).nextBytes(newData);
+        List windows = new ArrayList();
+        windows.add(createWindow(0, 200, new int[][] {
+                {SVNDiffInstruction.COPY_FROM_SOURCE, 150, 0},
+                {SVNDiffInstruction.COPY_FROM_NEW_DATA, 20, 0},
+                {SVNDiffInstruction.COPY_FROM_TARGET, 40, 160}}, newData));
+        windows.add(createWindow(50, 100, new int[][] {
+                {SVNDiffInstruction.COPY_FROM_SOURCE, 100, 0}}, newData));
+        windows.add(createWindow(50, 100, new int[][] {
+                {SVNDiffInstruction.COPY_FROM_SOURCE, 50, 50}}, newData));
+        windows.add(createWindow(0, 0, new int[][] {
+                {SVNDiffInstruction.COPY_FROM_NEW_DATA, 10, 20},
+                {SVNDiffInstruction.COPY_FROM_TARGET, 30, 0}}, newData));
+        windows.add(createWindow(150, 150, new int[][] {
+                {SVNDiffInstruction.COPY_FROM_SOURCE, 150, 0},
+                {SVNDiffInstruction.COPY_FROM_SOURCE, 20, 130}}, newData));
+        byte[] target = applyInstructions(source, windows);
+        assertEquals(210 + 100 + 50 + 40 + 170, target.length);
+        assertApply(source, target, windows);
+    }
+
+    private static void assertApply(byte[] source, byte[] target, List windows) throws Exception {
+        assertTrue(Arrays.equals(target, applyInstructions(source, windows)));
+        assertTrue(Arrays.equals(target, applyArrays(source, windows)));
+        String checksum = SVNFileUtil.toHexDigest(MessageDigest.getInstance("MD5").digest(target));
+        for (int kind = STREAM; kind <= DIRECT_BUFFER; kind++) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            ByteBuffer buffer = kind == DIRECT_BUFFER ? ByteBuffer.allocateDirect(target.length + 7) : ByteBuffer.allocate(target.length + 7);
+            buffer.position(7);
+            SVNDiffWindowApplyBaton baton;
+            if (kind == STREAM) {
+                baton = SVNDiffWindowApplyBaton.create(new ByteArrayInputStream(source), stream, MessageDigest.getInstance("MD5"));
+            } else if (kind == CHANNEL) {
+                baton = SVNDiffWindowApplyBaton.create(new ByteArrayInputStream(source), Channels.newChannel(stream), MessageDigest.getInstance("MD5"));
+            } else {
+                baton = SVNDiffWindowApplyBaton.create(new ByteArrayInputStream(source), buffer, MessageDigest.getInstance("MD5"));
+            }
+            for (Iterator iterator = windows.iterator(); iterator.hasNext();) {
+                ((SVNDiffWindow) iterator.next()).apply(baton);
+            }
+            assertEquals("target " + kind, checksum, baton.close());
+            byte[] result;
+            if (kind == STREAM || kind == CHANNEL) {
+                result = stream.toByteArray();
+            } else {
+                assertFalse(buffer.hasRemaining());
+                buffer.position(7);
+                result = new byte[buffer.remaining()];
+                buffer.get(result);
+            }
+            assertTrue("target " + kind, Arrays.equals(target, result));
+        }
+    }
+
+    /*
+     * Applies windows one instruction at a time through instructions(), taking each source
+     * view from the whole source, the way windows were applied before the baton kept buffers.
+     */
+    private static byte[] applyInstructions(byte[] source, List windows) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (Iterator iterator = windows.iterator(); iterator.hasNext();) {
+            SVNDiffWindow window = (SVNDiffWindow) iterator.next();
+            int sourceOffset = (int) window.getSourceViewOffset();
+            byte[] target = new byte[window.getTargetViewLength()];
+            int position = 0;
+            for (Iterator instructions = window.instructions(); instructions.hasNext();) {
+                SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
+                if (instruction.type == SVNDiffInstruction.COPY_FROM_SOURCE) {
+                    System.arraycopy(source, sourceOffset + instruction.offset, target, position, instruction.length);
+                } else if (instruction.type == SVNDiffInstruction.COPY_FROM_NEW_DATA) {
+                    window.writeNewData(ByteBuffer.wrap(target, position, instruction.length), instruction.offset, instruction.length);
+                } else {
+                    for (int i = 0; i < instruction.length; i++) {
+                        target[position + i] = target[instruction.offset + i];
+                    }
+                }
+                position += instruction.length;
+            }
+            assertEquals(target.length, position);
+            result.write(target, 0, target.length);
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] applyArrays(byte[] source, List windows) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (Iterator iterator = windows.iterator(); iterator.hasNext();) {
+            SVNDiffWindow window = (SVNDiffWindow) iterator.next();
+            byte[] sourceView = new byte[window.getSourceViewLength()];
+            System.arraycopy(source, (int) window.getSourceViewOffset(), sourceView, 0, sourceView.length);
+            byte[] target = new byte[window.getTargetViewLength()];
+            assertEquals(target.length, window.apply(sourceView, target));
+            result.write(target, 0, target.length);
+        }
+        return result.toByteArray();
+    }
+
+    private static List createWindows(String algorithm, byte[] source, byte[] target) throws SVNException {
+        final List windows = new ArrayList();
+        SVNDeltaGenerator generator = new SVNDeltaGenerator(16 * 1024);
+        generator.setDeltaAlgorithm(algorithm);
+        generator.sendDelta(null, new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                windows.add(diffWindow.clone(ByteBuffer.allocate(diffWindow.getDataLength())));
+                return null;
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        }, false);
+        assertTrue(windows.size() > 1);
+        return windows;
+    }
+
+    private static SVNDiffWindow createWindow(long sourceOffset, int sourceLength, int[][] instructions, byte[] newData) {
+        ByteBuffer data = ByteBuffer.allocate(instructions.length * 10 + newData.length);
+        int targetLength = 0;
+        for (int i = 0; i < instructions.length; i++) {
+            new SVNDiffInstruction(instructions[i][0], instructions[i][1], instructions[i][2]).writeTo(data);
+            targetLength += instructions[i][1];
+        }
+        int instructionsLength = data.position();
+        data.put(newData);
+        data.flip();
+        SVNDiffWindow window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength, instructionsLength, newData.length);
+        window.setData(data);
+        return window;
+    }
+}
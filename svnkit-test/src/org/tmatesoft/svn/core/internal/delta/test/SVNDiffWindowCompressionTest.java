@@ -0,0 +1,123 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import junit.framework.TestCase;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDiffWindowCompressionTest extends TestCase {
+
+    /*
+     * As in native Subversion, a section is stored compressed when the compressed data alone
+     * is shorter than the original, even if it is not once the length header is added.
+     */
+    public void testSectionCompressedJustBelowOriginalLength() throws Exception {
+        byte[] contents = createBoundaryContents();
+        byte[] compressed = encode(contents, Deflater.DEFAULT_COMPRESSION);
+        byte[] stored = encode(contents, Deflater.NO_COMPRESSION);
+        assertTrue(compressed.length < stored.length);
+        assertTrue(Arrays.equals(contents, decode(compressed)));
+        assertTrue(Arrays.equals(contents, decode(stored)));
+    }
+
+    public void testIncompressibleSectionIsStored() throws Exception {
+        byte[] contents = new byte[4096];
+        new Random(0).nextBytes(contents);
+        byte[] compressed = encode(contents, Deflater.BEST_COMPRESSION);
+        assertEquals(encode(contents, Deflater.NO_COMPRESSION).length, compressed.length);
+        assertTrue(Arrays.equals(contents, decode(compressed)));
+    }
+
+    /*
+     * Random bytes followed by zeros, as many as make the compressed data one or two bytes
+     * shorter than the whole, which is less than the two bytes of the section length header.
+     */
+    private static byte[] createBoundaryContents() {
+        byte[] random = new byte[4000];
+        new Random(1).nextBytes(random);
+        byte[] compressed = new byte[8192];
+        for (int zeros = 0; zeros < 512; zeros++) {
+            byte[] contents = new byte[random.length + zeros];
+            System.arraycopy(random, 0, contents, 0, random.length);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            deflater.setInput(contents);
+            deflater.finish();
+            int compressedLength = deflater.deflate(compressed);
+            assertTrue(deflater.finished());
+            deflater.end();
+            if (compressedLength < contents.length && compressedLength + 2 >= contents.length) {
+                return contents;
+            }
+        }
+        fail("no contents compress to just below their length");
+        return null;
+    }
+
+    private static byte[] encode(byte[] contents, final int compressionLevel) throws SVNException {
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        new SVNDeltaGenerator().sendDelta(null, new ByteArrayInputStream(contents), new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                try {
+                    diffWindow.writeTo(delta, delta.size() == 0, true, compressionLevel);
+                } catch (IOException e) {
+                    fail(e.getMessage());
+                }
+                return null;
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        }, false);
+        return delta.toByteArray();
+    }
+
+    private static byte[] decode(byte[] delta) throws SVNException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        final SVNDeltaProcessor processor = new SVNDeltaProcessor();
+        processor.applyTextDelta(SVNFileUtil.DUMMY_IN, target, false);
+        new SVNDeltaReader().nextWindow(delta, 0, delta.length, null, new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                return processor.textDeltaChunk(diffWindow);
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        });
+        processor.textDeltaEnd();
+        return target.toByteArray();
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta.test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+
+/**
+ * Compares {@link SVNXDeltaAlgorithm} with the engine it replaced, which kept block
+ * checksums in a hash map of boxed keys and allocated a match on every hit, on 100 KB
+ * windows of typical source and target pairs. Fails if the two engines produce different
+ * deltas.
+ *
+ * args: [iterations]
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNXDeltaBenchmark {
+
+    private static final int WINDOW_SIZE = 100 * 1024;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Random random = new Random(0);
+
+        byte[] text = createText(random, WINDOW_SIZE);
+        byte[] binary = new byte[WINDOW_SIZE];
+        random.nextBytes(binary);
+        byte[] otherBinary = new byte[WINDOW_SIZE];
+        random.nextBytes(otherBinary);
+
+        Object[][] pairs = new Object[][] {
+                {"text, edited lines", text, editLines(random, text)},
+                {"text, appended", text, append(random, text)},
+                {"binary, shifted blocks", binary, shiftBlocks(random, binary)},
+                {"binary, unrelated", binary, otherBinary},
+                {"binary, added", new byte[0], binary},
+        };
+
+        SVNDeltaAlgorithm oldEngine = new HashMapXDeltaAlgorithm();
+        SVNDeltaAlgorithm newEngine = new SVNXDeltaAlgorithm();
+        for (int i = 0; i < pairs.length; i++) {
+            byte[] source = (byte[]) pairs[i][1];
+            byte[] target = (byte[]) pairs[i][2];
+            byte[] oldDelta = computeDelta(oldEngine, source, target);
+            byte[] newDelta = computeDelta(newEngine, source, target);
+            if (!ByteBuffer.wrap(oldDelta).equals(ByteBuffer.wrap(newDelta))) {
+                System.out.println(pairs[i][0] + ": deltas differ");
+                System.exit(1);
+            }
+        }
+        // warm up
+        for (int i = 0; i < pairs.length; i++) {
+            measure(oldEngine, (byte[]) pairs[i][1], (byte[]) pairs[i][2], iterations);
+            measure(newEngine, (byte[]) pairs[i][1], (byte[]) pairs[i][2], iterations);
+        }
+        for (int i = 0; i < pairs.length; i++) {
+            byte[] source = (byte[]) pairs[i][1];
+            byte[] target = (byte[]) pairs[i][2];
+            long oldTime = measure(oldEngine, source, target, iterations);
+            long newTime = measure(newEngine, source, target, iterations);
+            System.out.println(pairs[i][0] + " (" + computeDelta(newEngine, source, target).length + " bytes of delta): old " +
+                    format(oldTime, iterations) + ", new " + format(newTime, iterations));
+        }
+    }
+
+    private static long measure(SVNDeltaAlgorithm engine, byte[] source, byte[] target, int iterations) {
+        System.gc();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            engine.computeDelta(source, source.length, target, target.length);
+            engine.reset();
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static String format(long time, int iterations) {
+        long perWindow = (time * 1000) / iterations;
+        long perSecond = time > 0 ? ((long) iterations * WINDOW_SIZE * 1000) / (time * 1024 * 1024) : 0;
+        return perWindow + " us/window (" + perSecond + " MB/s)";
+    }
+
+    private static byte[] computeDelta(SVNDeltaAlgorithm engine, byte[] source, byte[] target) {
+        engine.computeDelta(source, source.length, target, target.length);
+        ByteBuffer data = engine.getData();
+        byte[] delta = new byte[data.remaining() + 4];
+        data.get(delta, 4, data.remaining());
+        ByteBuffer.wrap(delta, 0, 4).putShort((short) engine.getInstructionsLength()).putShort((short) engine.getNewDataLength());
+        engine.reset();
+        return delta;
+    }
+
+    private static byte[] createText(Random random, int size) {
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int column = i % 72;
+            text[i] = (byte) (column == 71 ? '\n' : (column % 8 == 7 ? ' ' : 'a' + random.nextInt(26)));
+        }
+        return text;
+    }
+
+    private static byte[] editLines(Random random, byte[] text) {
+        byte[] edited = text.clone();
+        for (int i = 0; i < 40; i++) {
+            int line = random.nextInt(text.length / 72);
+            for (int j = 0; j < 71; j++) {
+                edited[line * 72 + j] = (byte) ('A' + random.nextInt(26));
+            }
+        }
+        return edited;
+    }
+
+    private static byte[] append(Random random, byte[] text) {
+        byte[] appended = new byte[text.length + 4096];
+        System.arraycopy(text, 0, appended, 0, text.length);
+        System.arraycopy(createText(random, 4096), 0, appended, text.length, 4096);
+        return appended;
+    }
+
+    private static byte[] shiftBlocks(Random random, byte[] data) {
+        byte[] shifted = new byte[data.length];
+        int position = 0;
+        while (position < shifted.length) {
+            int from = random.nextInt(data.length - 4096);
+            int length = Math.min(shifted.length - position, 1024 + random.nextInt(3072));
+            System.arraycopy(data, from, shifted, position, length);
+            position += length;
+            if (position < shifted.length) {
+                shifted[position++] = (byte) random.nextInt();
+            }
+        }
+        return shifted;
+    }
+
+    /**
+     * The previous engine, kept unchanged for comparison.
+     */
+    private static class HashMapXDeltaAlgorithm extends SVNDeltaAlgorithm {
+
+        private static final int MATCH_BLOCK_SIZE = 64;
+
+        public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
+            if (bLength < MATCH_BLOCK_SIZE) {
+                copyFromNewData(b, 0, bLength);
+                return;
+            }
+            PseudoAdler32 bAdler = new PseudoAdler32();
+            Map aMatchesTable = createMatchesTable(a, aLength, MATCH_BLOCK_SIZE, bAdler);
+            bAdler.reset();
+            bAdler.add(b, 0, MATCH_BLOCK_SIZE);
+
+            int lo = 0;
+            int size = bLength;
+            Match previousInsertion = null;
+
+            while(lo < size) {
+                Match match = findMatch(aMatchesTable, bAdler, a, aLength, b, bLength, lo, previousInsertion);
+                if (match == null) {
+                    if (previousInsertion != null && previousInsertion.length > 0) {
+                        previousInsertion.length++;
+                    } else {
+                        previousInsertion = new Match(lo, 1);
+                    }
+                } else {
+                    if (previousInsertion != null && previousInsertion.length > 0) {
+                        copyFromNewData(b, previousInsertion.position, previousInsertion.length);
+                        previousInsertion = null;
+                    }
+                    copyFromSource(match.position, match.length);
+                }
+                int advance = match != null ? match.advance : 1;
+                for (int next = lo; next < lo + advance; next++) {
+                    bAdler.remove(b[next]);
+                    if (next + MATCH_BLOCK_SIZE < bLength) {
+                        bAdler.add(b[next + MATCH_BLOCK_SIZE]);
+                    }
+                }
+                lo += advance;
+            }
+            if (previousInsertion != null && previousInsertion.length > 0) {
+                copyFromNewData(b, previousInsertion.position, previousInsertion.length);
+                previousInsertion = null;
+            }
+        }
+
+        private static Match findMatch(Map matchesTable, PseudoAdler32 checksum, byte[] a, int aLength, byte[] b, int bLength, int bPos, Match previousInsertion) {
+            Match existingMatch = (Match) matchesTable.get(new Integer(checksum.getValue()));
+            if (existingMatch == null) {
+                return null;
+            }
+            if (!equals(a, aLength, existingMatch.position, existingMatch.length, b, bLength, bPos)) {
+                return null;
+            }
+            existingMatch = new Match(existingMatch.position, existingMatch.length);
+            existingMatch.advance = existingMatch.length;
+
+            while(existingMatch.position + existingMatch.length < aLength &&
+                    bPos + existingMatch.advance < bLength &&
+                    a[existingMatch.position + existingMatch.length] == b[bPos + existingMatch.advance]) {
+                existingMatch.length++;
+                existingMatch.advance++;
+            }
+            if (previousInsertion != null) {
+                while(existingMatch.position > 0 && bPos > 0 &&
+                        a[existingMatch.position - 1] == b[bPos -1] &&
+                        previousInsertion.length != 0) {
+                    previousInsertion.length--;
+                    bPos--;
+                    existingMatch.position--;
+                    existingMatch.length++;
+                }
+            }
+            return existingMatch;
+        }
+
+        private static Map createMatchesTable(byte[] data, int dataLength, int blockLength, PseudoAdler32 adler32) {
+            Map matchesTable = new SVNHashMap();
+            for(int i = 0; i < dataLength; i+= blockLength) {
+                int length = i + blockLength >= dataLength ? dataLength - i : blockLength;
+                adler32.add(data, i, length);
+                Integer checksum = new Integer(adler32.getValue());
+                if (!matchesTable.containsKey(checksum)) {
+                    matchesTable.put(checksum, new Match(i, length));
+                }
+                adler32.reset();
+            }
+            return matchesTable;
+        }
+
+        private static boolean equals(byte[] a, int aLength, int aPos, int length, byte[] b, int bLength, int bPos) {
+            if (aPos + length - 1 > aLength || bPos + length > bLength) {
+                return false;
+            }
+            for(int i = 0; i < length; i++) {
+                if (a[aPos + i] != b[bPos + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Match {
+
+        public Match(int p, int l) {
+            position = p;
+            length = l;
+        }
+
+        public int position;
+        public int length;
+        public int advance;
+    }
+
+    private static class PseudoAdler32 {
+
+        private static final int ADLER32_MASK = 0x0000FFFF;
+
+        private int myS1;
+        private int myS2;
+        private int myLength;
+
+        public PseudoAdler32() {
+            reset();
+        }
+
+        public void add(byte b) {
+            int z = b & 0x000000FF;
+            myS1 = myS1 + z;
+            myS1 = myS1 & ADLER32_MASK;
+            myS2 = myS2 + myS1;
+            myS2 = myS2 & ADLER32_MASK;
+            myLength++;
+        }
+
+        public void remove(byte b) {
+            int z = b & 0x000000FF;
+            myS1 = myS1 - z;
+            myS1 = myS1 & ADLER32_MASK;
+            myS2 = myS2 - (myLength * z + 1);
+            myS2 = myS2 & ADLER32_MASK;
+            myLength--;
+        }
+
+        public void add(byte[] data, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                add(data[i]);
+            }
+        }
+
+        public int getValue() {
+            return (myS2 << 16) | myS1;
+        }
+
+        public void reset() {
+            myS1 = 1;
+            myS2 = 0;
+            myLength = 0;
+        }
+    }
+}
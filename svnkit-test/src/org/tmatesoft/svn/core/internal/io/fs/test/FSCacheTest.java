@@ -0,0 +1,82 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.internal.io.fs.FSCache;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCacheTest extends FSTestCase {
+
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Throwable {
+        final List evicted = new ArrayList();
+        FSCache cache = new FSCache(100) {
+            protected void evicted(Object key, Object value) {
+                evicted.add(key);
+            }
+        };
+        cache.put("a", "A", 40);
+        cache.put("b", "B", 40);
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C", 40);
+        assertEquals(80, cache.getWeight());
+        assertNull(cache.get("b"));
+        assertEquals(1, evicted.size());
+        assertEquals("b", evicted.get(0));
+
+        // an entry heavier than the maximum is not kept, nor does it evict others
+        cache.put("d", "D", 101);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.getSize());
+
+        cache.setMaxWeight(40);
+        assertEquals("C", cache.get("c"));
+        assertFalse(cache.containsKey("a"));
+        assertEquals(2, evicted.size());
+
+        cache.setMaxWeight(0);
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+        assertEquals(2, evicted.size());
+    }
+
+    public void testStaleEntriesCountAsMisses() throws Throwable {
+        FSCache cache = new FSCache(100);
+        cache.put("a", "A", 10);
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHitsCount());
+        assertEquals(1, cache.getMissesCount());
+
+        assertEquals("A", cache.get("a"));
+        cache.removeStale("a");
+        assertEquals(1, cache.getHitsCount());
+        assertEquals(2, cache.getMissesCount());
+        assertEquals(0, cache.getWeight());
+    }
+
+    public void testKeys() throws Throwable {
+        assertEquals(FSCache.createKey("uuid:/repos", 1, 2), FSCache.createKey("uuid:/repos", 1, 2));
+        assertEquals(FSCache.createKey("uuid:/repos", 1, 2).hashCode(), FSCache.createKey("uuid:/repos", 1, 2).hashCode());
+        assertEquals(FSCache.createKey(null, 1, 2), FSCache.createKey(null, 1, 2));
+        assertFalse(FSCache.createKey("uuid:/repos", 1, 2).equals(FSCache.createKey("uuid:/copy", 1, 2)));
+        assertFalse(FSCache.createKey("uuid:/repos", 1, 2).equals(FSCache.createKey("uuid:/repos", 2, 1)));
+        assertFalse(FSCache.createKey("uuid:/repos", 1, 2).equals(FSCache.createKey("uuid:/repos", 1, 2, 1)));
+        assertFalse(FSCache.createKey(null, 1, 2).equals(FSCache.createKey("uuid:/repos", 1, 2)));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSLogIndex;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.FSWriteLock;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSConcurrentCommitTest extends FSTestCase {
+
+    private static final int THREADS = 3;
+    private static final int COMMITS = 8;
+
+    /*
+     * Commits update the representation cache and the indexes after releasing the
+     * write lock; whatever order concurrent commits do that in, nothing may be lost.
+     */
+    public void testConcurrentCommitsUpdateCacheAndIndexes() throws Throwable {
+        final File root = createRepository("repos");
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doBuildLogIndex(root);
+
+        final List errors = Collections.synchronizedList(new ArrayList());
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            final int thread = i;
+            final SVNRepository repository = openRepository(root);
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int commit = 0; commit < COMMITS; commit++) {
+                            commit(repository, "commit " + thread + "." + commit, new String[] {"t" + thread + "/f" + commit},
+                                    new String[] {getContents(thread, commit)});
+                        }
+                    } catch (Throwable th) {
+                        errors.add(th);
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        if (!errors.isEmpty()) {
+            throw (Throwable) errors.get(0);
+        }
+
+        FSFS fsfs = openFSFS(root);
+        try {
+            long youngest = fsfs.getYoungestRevision();
+            assertEquals(THREADS * COMMITS, youngest);
+
+            final IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+            for (int thread = 0; thread < THREADS; thread++) {
+                for (int commit = 0; commit < COMMITS; commit++) {
+                    final String path = "/t" + thread + "/f" + commit;
+                    final FSRepresentation committed = fsfs.createRevisionRoot(youngest).getRevisionNode(path).getTextRepresentation();
+                    final FSRepresentation[] cached = new FSRepresentation[1];
+                    manager.runReadTransaction(new IFSSqlJetTransaction() {
+                        public void run() throws SVNException {
+                            cached[0] = manager.getRepresentationByHash(committed.getSHA1HexDigest());
+                        }
+                    });
+                    assertNotNull(path, cached[0]);
+                    assertEquals(path, committed.getRevision(), cached[0].getRevision());
+                    assertEquals(path, committed.getOffset(), cached[0].getOffset());
+                }
+            }
+
+            FSLogIndex index = FSLogIndex.getIndex(fsfs);
+            assertEquals(youngest + 1, index.getRevisionsCount());
+            SVNRepository repository = openRepository(root);
+            for (long revision = 1; revision <= youngest; revision++) {
+                Map changedPaths = index.getRecord(revision).getChangedPaths();
+                SVNLogEntry entry = (SVNLogEntry) repository.log(new String[] {""}, null, revision, revision, true, false).iterator().next();
+                assertEquals(entry.getChangedPaths().keySet(), changedPaths.keySet());
+            }
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    public void testCopiesDoNotShareTheIndexLock() throws Throwable {
+        File root = createRepository("repos");
+        File copy = new File(createDirectory("copy"), "repos");
+        SVNFileUtil.copyDirectory(root, copy, false, null);
+        FSFS fsfs = openFSFS(root);
+        FSFS copyFSFS = openFSFS(copy);
+        FSWriteLock lock = FSWriteLock.getWriteLockForIndexes(fsfs);
+        FSWriteLock copyLock = FSWriteLock.getWriteLockForIndexes(copyFSFS);
+        try {
+            assertEquals(fsfs.getUUID(), copyFSFS.getUUID());
+            assertNotSame(lock, copyLock);
+        } finally {
+            FSWriteLock.release(lock);
+            FSWriteLock.release(copyLock);
+            fsfs.close();
+            copyFSFS.close();
+        }
+    }
+
+    private static String getContents(int thread, int commit) {
+        return "thread " + thread + ", commit " + commit + "\n";
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSDeltaWindowCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNodeCache;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDeltaWindowCacheTest extends FSTestCase {
+
+    public void testHotCopiesDoNotShareWindows() throws Throwable {
+        File root = createRepository("original");
+        SVNRepository original = openRepository(root);
+        commit(original, "a.txt", "AAAA");
+        File copyRoot = new File(createDirectory("copy"), "repos");
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doHotCopy(root, copyRoot);
+        SVNRepository copy = openRepository(copyRoot);
+
+        // same history and sizes, so both repositories have deltas at the same revisions and offsets
+        long revision = commit(original, "a.txt", "CCCC");
+        assertEquals(revision, commit(copy, "a.txt", "DDDD"));
+
+        FSRevisionNodeCache.getInstance().clear();
+        FSDeltaWindowCache.getInstance().clear();
+        assertEquals("CCCC", readFile(original, "a.txt", revision));
+        assertTrue(FSDeltaWindowCache.getInstance().getSize() > 0);
+        assertEquals("DDDD", readFile(copy, "a.txt", revision));
+        assertEquals("CCCC", readFile(original, "a.txt", revision));
+        assertEquals("DDDD", readFile(copy, "a.txt", revision));
+    }
+}
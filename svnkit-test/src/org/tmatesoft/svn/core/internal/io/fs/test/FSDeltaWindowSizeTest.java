@@ -0,0 +1,66 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDeltaWindowSizeTest extends FSTestCase {
+
+    public void testSmallerWindowsRoundTrip() throws Exception {
+        File root = createRepository("repos");
+        writeConfig(root, "[deltification]\ndelta-window-size = 16\ncompression-level = 0\n");
+        FSFS fsfs = openFSFS(root);
+        try {
+            assertEquals(16 * 1024, fsfs.getDeltaWindowSize());
+            assertEquals(0, fsfs.getDeltaCompressionLevel());
+        } finally {
+            fsfs.close();
+        }
+
+        SVNRepository repository = openRepository(root);
+        StringBuffer contents = new StringBuffer();
+        for (int i = 0; i < 10000; i++) {
+            contents.append("line ").append(i).append('\n');
+        }
+        commit(repository, "file.txt", contents.toString());
+        contents.insert(50000, "inserted\n");
+        long revision = commit(repository, "file.txt", contents.toString());
+        assertEquals(contents.toString(), readFile(repository, "file.txt", revision));
+    }
+
+    public void testLargerWindowsAreRejected() throws Exception {
+        File root = createRepository("repos");
+        writeConfig(root, "[deltification]\ndelta-window-size = 101\n");
+        FSFS fsfs = new FSFS(root);
+        try {
+            fsfs.open();
+            fail("a window size native Subversion can not read was accepted");
+        } catch (SVNException e) {
+            assertEquals(SVNErrorCode.BAD_CONFIG_VALUE, e.getErrorMessage().getErrorCode());
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private static void writeConfig(File root, String config) throws Exception {
+        writeFile(new File(new File(root, "db"), "fsfs.conf"), config);
+    }
+}
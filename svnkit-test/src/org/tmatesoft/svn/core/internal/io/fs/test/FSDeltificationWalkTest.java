@@ -0,0 +1,104 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDeltificationWalkTest extends FSTestCase {
+
+    private static final int REVISIONS = 9;
+
+    /*
+     * The file is added in r1, so the node in revision r has count r - 1, and its skip-delta
+     * base is the node whose count has the lowest set bit of r - 1 cleared.
+     */
+    public void testDefaultWalkKeepsSkipDeltas() throws Exception {
+        File root = createRevisions("repos", null);
+        FSFS fsfs = openFSFS(root);
+        try {
+            assertEquals(FSFS.DEFAULT_MAX_DELTIFICATION_WALK, fsfs.getMaxDeltificationWalk());
+            assertEquals(3, getDeltaBase(fsfs, 4));
+            assertEquals(1, getDeltaBase(fsfs, 5));
+            assertEquals(1, getDeltaBase(fsfs, 9));
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    public void testLongerWalksStartNewChains() throws Exception {
+        File root = createRevisions("repos", "[deltification]\nmax-deltification-walk = 2\n");
+        FSFS fsfs = openFSFS(root);
+        try {
+            assertEquals(2, fsfs.getMaxDeltificationWalk());
+            assertEquals(1, getDeltaBase(fsfs, 2));
+            assertEquals(1, getDeltaBase(fsfs, 3));
+            assertEquals(3, getDeltaBase(fsfs, 4));
+            assertEquals(-1, getDeltaBase(fsfs, 5));
+            assertEquals(5, getDeltaBase(fsfs, 6));
+            assertEquals(-1, getDeltaBase(fsfs, 9));
+        } finally {
+            fsfs.close();
+        }
+        SVNRepository repository = openRepository(root);
+        for (int revision = 1; revision <= REVISIONS; revision++) {
+            assertEquals(getContents(revision), readFile(repository, "a.txt", revision));
+        }
+    }
+
+    private File createRevisions(String name, String config) throws Exception {
+        File root = createRepository(name);
+        if (config != null) {
+            writeFile(new File(new File(root, "db"), "fsfs.conf"), config);
+        }
+        SVNRepository repository = openRepository(root);
+        for (int revision = 1; revision <= REVISIONS; revision++) {
+            commit(repository, "a.txt", getContents(revision));
+        }
+        return root;
+    }
+
+    private static String getContents(int revision) {
+        StringBuffer contents = new StringBuffer();
+        for (int i = 0; i < 50; i++) {
+            contents.append("line ").append(i).append(i % REVISIONS == revision ? " changed" : "").append('\n');
+        }
+        return contents.append(revision).append('\n').toString();
+    }
+
+    /*
+     * Returns the revision of the representation the text of a.txt is a delta against,
+     * or -1 for a delta against the empty stream.
+     */
+    private static long getDeltaBase(FSFS fsfs, long revision) throws Exception {
+        FSRepresentation rep = fsfs.createRevisionRoot(revision).getRevisionNode("/a.txt").getTextRepresentation();
+        FSFile file = fsfs.openAndSeekRepresentation(rep);
+        try {
+            String header = file.readLine(160);
+            if (FSRepresentation.REP_DELTA.equals(header)) {
+                return -1;
+            }
+            assertTrue(header, header.startsWith(FSRepresentation.REP_DELTA + " "));
+            return Long.parseLong(header.split(" ")[1]);
+        } finally {
+            file.close();
+        }
+    }
+}
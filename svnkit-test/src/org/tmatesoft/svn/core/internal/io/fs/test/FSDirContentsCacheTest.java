@@ -0,0 +1,87 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSDirContentsCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDirContentsCacheTest extends FSTestCase {
+
+    public void testCachedListingMatchesRepository() throws Throwable {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        commit(repository, "dir/a.txt", "a");
+        long revision = commit(repository, "dir/b.txt", "b");
+        FSDirContentsCache cache = openFSFS(root).getDirContentsCache();
+        cache.clear();
+
+        assertEquals("a.txt b.txt", list(repository, "dir", revision));
+        long misses = cache.getMissesCount();
+        long hits = cache.getHitsCount();
+        assertEquals("a.txt b.txt", list(repository, "dir", revision));
+        assertEquals("a.txt", list(repository, "dir", revision - 1));
+        assertTrue(cache.getHitsCount() > hits);
+        assertTrue(cache.getMissesCount() > misses);
+    }
+
+    public void testHotCopiesDoNotShareDirectories() throws Throwable {
+        File root = createRepository("original");
+        SVNRepository original = openRepository(root);
+        commit(original, "dir/a.txt", "a");
+        File copyRoot = new File(createDirectory("copy"), "repos");
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doHotCopy(root, copyRoot);
+        SVNRepository copy = openRepository(copyRoot);
+
+        FSFS originalFS = openFSFS(root);
+        FSFS copyFS = openFSFS(copyRoot);
+        assertEquals(originalFS.getUUID(), copyFS.getUUID());
+        assertNotSame(originalFS.getDirContentsCache(), copyFS.getDirContentsCache());
+        assertSame(originalFS.getDirContentsCache(), openFSFS(root).getDirContentsCache());
+
+        // same sizes, so both directories are stored at the same offsets
+        long revision = commit(original, "dir/x.txt", "x");
+        assertEquals(revision, commit(copy, "dir/y.txt", "y"));
+        assertEquals("a.txt x.txt", list(original, "dir", revision));
+        assertEquals("a.txt y.txt", list(copy, "dir", revision));
+        assertEquals("a.txt x.txt", list(original, "dir", revision));
+    }
+
+    private static String list(SVNRepository repository, String path, long revision) throws Throwable {
+        Collection entries = repository.getDir(path, revision, null, (Collection) null);
+        List names = new ArrayList();
+        for (Iterator dirEntries = entries.iterator(); dirEntries.hasNext();) {
+            names.add(((SVNDirEntry) dirEntries.next()).getName());
+        }
+        Collections.sort(names);
+        StringBuffer result = new StringBuffer();
+        for (Iterator iterator = names.iterator(); iterator.hasNext();) {
+            result.append(iterator.next());
+            result.append(iterator.hasNext() ? " " : "");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.internal.io.fs.FSFileChannelPool;
+import org.tmatesoft.svn.core.internal.io.fs.FSFileChannelPool.PooledChannel;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSFileChannelPoolTest extends FSTestCase {
+
+    public void testOpenChannelsAreCapped() throws Throwable {
+        File dir = createDirectory("files");
+        File[] files = new File[3];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(dir, String.valueOf(i));
+            writeFile(files[i], "file " + i);
+        }
+        FSFileChannelPool pool = new FSFileChannelPool(2, 60 * 1000);
+        PooledChannel[] channels = new PooledChannel[files.length];
+        for (int i = 0; i < files.length; i++) {
+            channels[i] = pool.borrow(files[i]);
+        }
+        // the third channel is not pooled, since two are borrowed already
+        assertEquals(2, pool.getOpenChannelsCount());
+        for (int i = 0; i < files.length; i++) {
+            pool.release(channels[i]);
+        }
+        assertFalse(channels[2].getChannel().isOpen());
+        assertEquals(2, pool.getIdleChannelsCount());
+        assertEquals(2, pool.getOpenChannelsCount());
+
+        // a third file evicts the eldest idle channel
+        PooledChannel third = pool.borrow(files[2]);
+        assertFalse(channels[0].getChannel().isOpen());
+        assertEquals(2, pool.getOpenChannelsCount());
+        pool.release(third);
+
+        PooledChannel reused = pool.borrow(files[1]);
+        assertSame(channels[1], reused);
+        pool.release(reused);
+
+        pool.closeChannels(dir);
+        assertEquals(0, pool.getIdleChannelsCount());
+        assertEquals(0, pool.getOpenChannelsCount());
+        assertFalse(channels[1].getChannel().isOpen());
+    }
+
+    public void testChangedFileIsReopened() throws Throwable {
+        File file = new File(createDirectory("files"), "file");
+        writeFile(file, "contents");
+        FSFileChannelPool pool = new FSFileChannelPool(4, 60 * 1000);
+        PooledChannel channel = pool.borrow(file);
+        pool.release(channel);
+        writeFile(file, "changed contents");
+
+        PooledChannel reopened = pool.borrow(file);
+        assertNotSame(channel, reopened);
+        assertFalse(channel.getChannel().isOpen());
+        assertEquals(file.length(), reopened.getChannel().size());
+        assertEquals(1, pool.getOpenChannelsCount());
+        pool.release(reopened);
+        pool.closeAll();
+        assertEquals(0, pool.getOpenChannelsCount());
+    }
+
+    public void testDisabledPoolClosesChannels() throws Throwable {
+        File file = new File(createDirectory("files"), "file");
+        writeFile(file, "contents");
+        FSFileChannelPool pool = new FSFileChannelPool(0, 60 * 1000);
+        assertFalse(pool.isEnabled());
+        PooledChannel channel = pool.borrow(file);
+        pool.release(channel);
+        assertFalse(channel.getChannel().isOpen());
+        assertEquals(0, pool.getOpenChannelsCount());
+    }
+}
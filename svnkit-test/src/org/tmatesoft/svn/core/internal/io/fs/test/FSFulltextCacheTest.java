@@ -0,0 +1,104 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.security.MessageDigest;
+
+import org.tmatesoft.svn.core.internal.io.fs.FSFulltextCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSFulltextCacheTest extends FSTestCase {
+
+    public void testRepresentationsWithoutSHA1AreNotCached() throws Throwable {
+        FSFulltextCache cache = new FSFulltextCache(1024 * 1024, null, 0);
+        byte[] contents = getBytes("contents");
+        FSRepresentation rep = createRepresentation(contents, false);
+        assertFalse(cache.isCacheable(rep));
+        cache.put(rep, contents);
+        assertNull(cache.get(rep));
+        assertEquals(0, cache.getMemoryUsage());
+
+        rep = createRepresentation(contents, true);
+        assertTrue(cache.isCacheable(rep));
+        cache.put(rep, contents);
+        assertEquals("contents", new String(cache.get(rep), "UTF-8"));
+    }
+
+    public void testLargeRepresentationsAreNotCacheable() throws Throwable {
+        FSFulltextCache cache = new FSFulltextCache(1024, null, 0);
+        byte[] contents = new byte[(int) cache.getMaxEntrySize() + 1];
+        FSRepresentation rep = createRepresentation(contents, true);
+        assertFalse(cache.isCacheable(rep));
+        cache.put(rep, contents);
+        assertNull(cache.get(rep));
+    }
+
+    public void testSpilledEntriesAreVerified() throws Throwable {
+        File dir = createDirectory("cache");
+        FSFulltextCache cache = new FSFulltextCache(256, dir, 1024 * 1024);
+        byte[] first = getBytes("first contents");
+        FSRepresentation firstRep = createRepresentation(first, true);
+        cache.put(firstRep, first);
+        cache.setMaxMemory(64);
+        assertEquals(0, cache.getMemoryUsage());
+        File spilled = new File(dir, firstRep.getSHA1HexDigest());
+        assertTrue(spilled.isFile());
+
+        cache.setMaxMemory(256);
+        assertEquals("first contents", new String(cache.get(firstRep), "UTF-8"));
+        assertEquals(1, cache.getDiskHitsCount());
+
+        cache.setMaxMemory(64);
+        writeFile(spilled, "FIRST CONTENTS");
+        cache.setMaxMemory(256);
+        assertNull(cache.get(firstRep));
+        assertEquals(0, cache.getDiskUsage());
+    }
+
+    public void testRepositoryContentsAreCached() throws Throwable {
+        SVNRepository repository = openRepository(createRepository("repos"));
+        commit(repository, "a.txt", "AAAA");
+        long revision = commit(repository, "a.txt", "BBBB");
+
+        FSFulltextCache cache = FSFulltextCache.getInstance();
+        cache.setMaxMemory(1024 * 1024);
+        try {
+            long hits = cache.getHitsCount();
+            assertEquals("BBBB", readFile(repository, "a.txt", revision));
+            assertEquals("BBBB", readFile(repository, "a.txt", revision));
+            assertEquals("AAAA", readFile(repository, "a.txt", revision - 1));
+            assertEquals(hits + 1, cache.getHitsCount());
+        } finally {
+            cache.setMaxMemory(0);
+        }
+    }
+
+    private static FSRepresentation createRepresentation(byte[] contents, boolean withSHA1) throws Throwable {
+        FSRepresentation rep = new FSRepresentation();
+        rep.setRevision(1);
+        rep.setExpandedSize(contents.length);
+        rep.setMD5HexDigest(SVNFileUtil.computeChecksum(new String(contents, "UTF-8")));
+        if (withSHA1) {
+            MessageDigest digest = MessageDigest.getInstance("SHA1");
+            digest.update(contents);
+            rep.setSHA1HexDigest(SVNFileUtil.toHexDigest(digest));
+        }
+        return rep;
+    }
+}
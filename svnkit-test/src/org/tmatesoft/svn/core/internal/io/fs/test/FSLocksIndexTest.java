@@ -0,0 +1,186 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.internal.io.fs.FSLocksIndex;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSLocksIndexTest extends FSTestCase {
+
+    private boolean myWasEnabled;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        myWasEnabled = FSLocksIndex.isEnabled();
+        FSLocksIndex.setEnabled(true);
+    }
+
+    protected void tearDown() throws Exception {
+        FSLocksIndex.setEnabled(myWasEnabled);
+        super.tearDown();
+    }
+
+    public void testListingMatchesDigestFiles() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        commit(repository, "r1", new String[] {"a/one.txt", "a/two.txt", "ab/three.txt", "b/four.txt"},
+                new String[] {"1", "2", "3", "4"});
+        lock(repository, new String[] {"a/one.txt", "a/two.txt", "ab/three.txt", "b/four.txt"});
+        unlock(repository, "a/two.txt");
+        assertTrue(getIndexFile(root).isFile());
+
+        List indexed = getLockedPaths(repository, "/a");
+        FSLocksIndex.setEnabled(false);
+        List walked = getLockedPaths(repository, "/a");
+        assertEquals(Collections.singletonList("/a/one.txt"), indexed);
+        assertEquals(walked, indexed);
+        assertEquals(4 - 1, getLockedPaths(repository, "/").size());
+    }
+
+    public void testIndexIsReplacedAtomically() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        commit(repository, "r1", new String[] {"one.txt", "two.txt"}, new String[] {"1", "2"});
+        lock(repository, new String[] {"one.txt"});
+        lock(repository, new String[] {"two.txt"});
+        unlock(repository, "one.txt");
+
+        File[] files = getIndexFile(root).getParentFile().listFiles();
+        for (int i = 0; i < files.length; i++) {
+            assertFalse(files[i].getName(), files[i].getName().endsWith(".tmp"));
+        }
+        assertEquals(Collections.singletonList("/two.txt"), getLockedPaths(repository, "/"));
+    }
+
+    public void testCommitChecksLocksMissingFromIndex() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        commit(repository, "r1", new String[] {"dir/file.txt", "other.txt"}, new String[] {"1", "2"});
+        lock(repository, new String[] {"other.txt"});
+        File indexFile = getIndexFile(root);
+        byte[] staleIndex = readFile(indexFile);
+
+        // as if another tool locked the file without updating the index
+        lock(repository, new String[] {"dir/file.txt"});
+        writeFile(indexFile, staleIndex);
+
+        try {
+            commit(repository, "dir/file.txt", "changed");
+            fail("commit of a locked file succeeded");
+        } catch (SVNException e) {
+            assertLockError(e);
+        }
+        // the failed commit leaves its session locked
+        repository = openRepository(root);
+        try {
+            ISVNEditor editor = repository.getCommitEditor("delete", null);
+            editor.openRoot(-1);
+            editor.deleteEntry("dir", -1);
+            editor.closeDir();
+            editor.closeEdit();
+            fail("deletion of a directory with a locked file succeeded");
+        } catch (SVNException e) {
+            assertLockError(e);
+        }
+    }
+
+    public void testCommitIgnoresLocksOnlyInIndex() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        commit(repository, "r1", new String[] {"dir/file.txt"}, new String[] {"1"});
+        File indexFile = getIndexFile(root);
+        lock(repository, new String[] {"dir/file.txt"});
+        byte[] lockedIndex = readFile(indexFile);
+
+        // as if another tool removed the lock without updating the index
+        unlock(repository, "dir/file.txt");
+        writeFile(indexFile, lockedIndex);
+
+        commit(repository, "dir/file.txt", "changed");
+        ISVNEditor editor = repository.getCommitEditor("delete", null);
+        editor.openRoot(-1);
+        editor.deleteEntry("dir", -1);
+        editor.closeDir();
+        editor.closeEdit();
+        assertNull(repository.getLock("dir/file.txt"));
+    }
+
+    private static void assertLockError(SVNException e) {
+        SVNErrorCode code = e.getErrorMessage().getRootErrorMessage().getErrorCode();
+        assertTrue(code.toString(), code == SVNErrorCode.FS_BAD_LOCK_TOKEN || code == SVNErrorCode.FS_LOCK_OWNER_MISMATCH);
+    }
+
+    private static File getIndexFile(File root) {
+        return new File(root, "db/locks/" + FSLocksIndex.INDEX_FILE);
+    }
+
+    private static void lock(SVNRepository repository, String[] paths) throws SVNException {
+        Map pathsToRevisions = new SVNHashMap();
+        for (int i = 0; i < paths.length; i++) {
+            pathsToRevisions.put(paths[i], null);
+        }
+        repository.lock(pathsToRevisions, "test", false, null);
+    }
+
+    private static void unlock(SVNRepository repository, String path) throws SVNException {
+        SVNLock lock = repository.getLock(path);
+        repository.unlock(Collections.singletonMap(path, lock.getID()), false, null);
+    }
+
+    private static List getLockedPaths(SVNRepository repository, String path) throws SVNException {
+        SVNLock[] locks = repository.getLocks(path);
+        List paths = new ArrayList();
+        for (int i = 0; i < locks.length; i++) {
+            paths.add(locks[i].getPath());
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static byte[] readFile(File file) throws Exception {
+        InputStream is = SVNFileUtil.openFileForReading(file);
+        try {
+            byte[] contents = new byte[(int) file.length()];
+            assertEquals(contents.length, SVNFileUtil.readIntoBuffer(is, contents, 0, contents.length));
+            return contents;
+        } finally {
+            SVNFileUtil.closeFile(is);
+        }
+    }
+
+    private static void writeFile(File file, byte[] contents) throws Exception {
+        OutputStream os = SVNFileUtil.openFileForWriting(file);
+        try {
+            os.write(contents);
+        } finally {
+            SVNFileUtil.closeFile(os);
+        }
+    }
+}
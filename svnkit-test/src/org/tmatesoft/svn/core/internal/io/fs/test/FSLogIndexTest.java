@@ -0,0 +1,221 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSLogIndex;
+import org.tmatesoft.svn.core.internal.wc.SVNWCProperties;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSLogIndexTest extends FSTestCase {
+
+    private static final String[] PATHS = {"", "trunk", "trunk/a.txt", "trunk/dir", "trunk/dir/b.txt",
+        "branches/branch", "branches/branch/a.txt", "branches/branch/dir/b.txt"};
+
+    private File myRoot;
+    private SVNRepository myRepository;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        myRoot = createRepository("repos");
+        myRepository = openRepository(myRoot);
+        commit(myRepository, "initial", new String[] {"trunk/a.txt", "trunk/dir/b.txt"}, new String[] {"a1", "b1"});
+        commit(myRepository, "trunk/a.txt", "a2");
+        copy("trunk", "branches/branch", myRepository.getLatestRevision());
+        commit(myRepository, "branches/branch/a.txt", "a3");
+        commit(myRepository, "modified", new String[] {"trunk/dir/b.txt", "branches/branch/dir/b.txt"}, new String[] {"b2", "b3"});
+        delete("trunk/dir");
+        commit(myRepository, "trunk/dir/b.txt", "b4");
+    }
+
+    public void testLogMatchesLogWithoutIndex() throws Throwable {
+        List expected = log();
+        buildIndex();
+        assertEquals(myRepository.getLatestRevision() + 1, getIndex().getRevisionsCount());
+        assertEquals(expected, log());
+        assertEquals(expected, logWithoutIndex());
+    }
+
+    public void testIndexIsUpdatedByCommits() throws Throwable {
+        buildIndex();
+        commit(myRepository, "trunk/a.txt", "a5");
+        copy("branches/branch/dir", "trunk/dir2", myRepository.getLatestRevision());
+        assertEquals(myRepository.getLatestRevision() + 1, getIndex().getRevisionsCount());
+        assertEquals(logWithoutIndex(), log());
+    }
+
+    public void testRebuild() throws Throwable {
+        buildIndex();
+        List expected = log();
+        buildIndex();
+        assertEquals(expected, log());
+        commit(myRepository, "branches/branch/a.txt", "a5");
+        buildIndex();
+        assertEquals(logWithoutIndex(), log());
+    }
+
+    public void testPartialTrailingBlockIsIgnoredAndTruncated() throws Throwable {
+        buildIndex();
+        File pathsFile = new File(getIndexDirectory(), "paths.dat");
+        File indexFile = new File(getIndexDirectory(), "revs.idx");
+        long pathsLength = pathsFile.length();
+        long indexLength = indexFile.length();
+        // an update interrupted while writing the next revision
+        append(pathsFile, new byte[] {0, 0, 0, 40, 0, 0, 0, (byte) (myRepository.getLatestRevision() + 1), 0, 0});
+        append(indexFile, new byte[] {0, 0, 0});
+        assertEquals(logWithoutIndex(), log());
+
+        commit(myRepository, "trunk/a.txt", "a5");
+        assertEquals(indexLength + 8, indexFile.length());
+        assertTrue(pathsFile.length() > pathsLength);
+        assertEquals(myRepository.getLatestRevision() + 1, getIndex().getRevisionsCount());
+        assertEquals(logWithoutIndex(), log());
+    }
+
+    public void testRevisionPropertyChanges() throws Throwable {
+        buildIndex();
+        myRepository.setRevisionPropertyValue(2, SVNRevisionProperty.LOG, SVNPropertyValue.create("changed message"));
+        assertTrue(log().contains("r2 changed message [M /trunk/a.txt]"));
+        assertEquals(logWithoutIndex(), log());
+
+        // a change made by another implementation, which does not update the index
+        FSFS fsfs = openFSFS(myRoot);
+        try {
+            File revPropsFile = fsfs.getRevisionPropertiesFile(3, false);
+            new SVNWCProperties(revPropsFile, null).setPropertyValue(SVNRevisionProperty.LOG, SVNPropertyValue.create("changed outside"));
+            revPropsFile.setLastModified(revPropsFile.lastModified() - 2000);
+        } finally {
+            fsfs.close();
+        }
+        assertTrue(log().contains("r3 changed outside [A /branches, A /branches/branch (from /trunk@2)]"));
+        assertEquals(logWithoutIndex(), log());
+    }
+
+    private List log() throws SVNException {
+        final List entries = new ArrayList();
+        long latest = myRepository.getLatestRevision();
+        for (int i = 0; i < PATHS.length; i++) {
+            if (myRepository.checkPath(PATHS[i], latest) == SVNNodeKind.NONE) {
+                continue;
+            }
+            for (int strict = 0; strict < 2; strict++) {
+                entries.add("log " + PATHS[i] + (strict == 1 ? " strict" : ""));
+                myRepository.log(new String[] {PATHS[i]}, latest, 0, true, strict == 1, 0, false, null, new ISVNLogEntryHandler() {
+                    public void handleLogEntry(SVNLogEntry logEntry) throws SVNException {
+                        entries.add(format(logEntry));
+                    }
+                });
+                entries.add("limit " + PATHS[i]);
+                myRepository.log(new String[] {PATHS[i]}, 1, latest, false, strict == 1, 2, false, null, new ISVNLogEntryHandler() {
+                    public void handleLogEntry(SVNLogEntry logEntry) throws SVNException {
+                        entries.add(format(logEntry));
+                    }
+                });
+            }
+        }
+        return entries;
+    }
+
+    private List logWithoutIndex() throws SVNException {
+        File dir = getIndexDirectory();
+        File disabled = new File(dir.getParentFile(), "log-index.off");
+        assertTrue(dir.renameTo(disabled));
+        try {
+            return log();
+        } finally {
+            assertTrue(disabled.renameTo(dir));
+        }
+    }
+
+    private static String format(SVNLogEntry logEntry) {
+        List paths = new ArrayList();
+        for (Iterator changes = logEntry.getChangedPaths().values().iterator(); changes.hasNext();) {
+            SVNLogEntryPath change = (SVNLogEntryPath) changes.next();
+            paths.add(change.getType() + " " + change.getPath() + (change.getCopyPath() != null ? " (from " + change.getCopyPath() + "@" + change.getCopyRevision() + ")" : ""));
+        }
+        Collections.sort(paths);
+        return "r" + logEntry.getRevision() + " " + logEntry.getMessage() + " " + paths;
+    }
+
+    private void buildIndex() throws SVNException {
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doBuildLogIndex(myRoot);
+    }
+
+    private FSLogIndex getIndex() throws SVNException {
+        FSFS fsfs = openFSFS(myRoot);
+        try {
+            return FSLogIndex.getIndex(fsfs);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private File getIndexDirectory() {
+        return new File(new File(myRoot, "db"), FSLogIndex.LOG_INDEX_DIR);
+    }
+
+    private void copy(String path, String copyPath, long revision) throws SVNException {
+        String parent = copyPath.substring(0, copyPath.indexOf('/'));
+        boolean parentExists = myRepository.checkPath(parent, revision) == SVNNodeKind.DIR;
+        ISVNEditor editor = myRepository.getCommitEditor("copied " + path, null);
+        editor.openRoot(-1);
+        if (parentExists) {
+            editor.openDir(parent, -1);
+        } else {
+            editor.addDir(parent, null, -1);
+        }
+        editor.addDir(copyPath, "/" + path, revision);
+        editor.closeDir();
+        editor.closeDir();
+        editor.closeDir();
+        editor.closeEdit();
+    }
+
+    private void delete(String path) throws SVNException {
+        ISVNEditor editor = myRepository.getCommitEditor("deleted " + path, null);
+        editor.openRoot(-1);
+        editor.deleteEntry(path, -1);
+        editor.closeDir();
+        editor.closeEdit();
+    }
+
+    private static void append(File file, byte[] bytes) throws Exception {
+        RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        try {
+            raFile.seek(raFile.length());
+            raFile.write(bytes);
+        } finally {
+            raFile.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.io.fs.FSMappedFile;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNodeCache;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSMappedFileTest extends FSTestCase {
+
+    public void testReadsMatchChannelReads() throws Exception {
+        byte[] contents = new byte[FSMappedFile.WINDOW_SIZE + 100000];
+        new Random(0).nextBytes(contents);
+        File file = new File(createDirectory("files"), "rev");
+        writeFile(file, contents);
+
+        FSFile mapped = new FSFile(file, null, true);
+        FSFile buffered = new FSFile(file, null, false);
+        try {
+            long[] positions = new long[] {0, 1023, 5000, FSMappedFile.WINDOW_SIZE - 10, FSMappedFile.WINDOW_SIZE,
+                    FSMappedFile.WINDOW_SIZE + 1, 17, contents.length - 300};
+            for (int i = 0; i < positions.length; i++) {
+                mapped.seek(positions[i]);
+                buffered.seek(positions[i]);
+                assertEquals(contents[(int) positions[i]] & 0xFF, mapped.read());
+                assertEquals(contents[(int) positions[i]] & 0xFF, buffered.read());
+                assertTrue(Arrays.equals(read(buffered, 4000), read(mapped, 4000)));
+                assertEquals(buffered.position(), mapped.position());
+            }
+            assertEquals(contents.length, mapped.size());
+            mapped.seek(contents.length - 1);
+            assertTrue(mapped.read() >= 0);
+            assertEquals(-1, mapped.read());
+        } finally {
+            mapped.close();
+            buffered.close();
+        }
+    }
+
+    public void testReadsIntoDirectBuffers() throws Exception {
+        byte[] contents = new byte[FSMappedFile.WINDOW_SIZE + 1000];
+        new Random(0).nextBytes(contents);
+        File file = new File(createDirectory("files"), "rev");
+        writeFile(file, contents);
+
+        FSFile mapped = new FSFile(file, null, true);
+        FSFile buffered = new FSFile(file, null, false);
+        try {
+            long start = FSMappedFile.WINDOW_SIZE - 3000;
+            mapped.seek(start);
+            buffered.seek(start);
+            mapped.resetDigest();
+            buffered.resetDigest();
+            ByteBuffer direct = ByteBuffer.allocateDirect(6000);
+            ByteBuffer heap = ByteBuffer.allocate(6000);
+            assertEquals(4000, mapped.read(direct));
+            assertEquals(4000, buffered.read(heap));
+            direct.flip();
+            heap.flip();
+            assertEquals(heap, direct);
+            assertEquals(buffered.digest(), mapped.digest());
+        } finally {
+            mapped.close();
+            buffered.close();
+        }
+    }
+
+    public void testChangedFileIsMappedAgain() throws Exception {
+        File file = new File(createDirectory("files"), "rev");
+        writeFile(file, "first contents\n");
+        FSFile mapped = new FSFile(file, null, true);
+        try {
+            assertEquals("first contents", mapped.readLine(100));
+        } finally {
+            mapped.close();
+        }
+
+        writeFile(file, "second, longer contents\n");
+        file.setLastModified(file.lastModified() + 2000);
+        mapped = new FSFile(file, null, true);
+        try {
+            assertEquals("second, longer contents", mapped.readLine(100));
+        } finally {
+            mapped.close();
+        }
+    }
+
+    public void testRepositoryReadsThroughMappings() throws Throwable {
+        long maxFilesPerDirectory = FSFS.getDefaultMaxFilesPerDirectory();
+        File root;
+        FSFS.setDefaultMaxFilesPerDirectory(4);
+        try {
+            root = createRepository("repos");
+        } finally {
+            FSFS.setDefaultMaxFilesPerDirectory(maxFilesPerDirectory);
+        }
+        writeFile(new File(new File(root, "db"), "fsfs.conf"), "[io]\nmemory-mapped-reads = true\n");
+        FSFS fsfs = openFSFS(root);
+        try {
+            assertTrue(fsfs.isMemoryMappedReads());
+        } finally {
+            fsfs.close();
+        }
+
+        SVNRepository repository = openRepository(root);
+        String[] contents = new String[10];
+        for (int i = 1; i < contents.length; i++) {
+            contents[i] = (i == 1 ? "" : contents[i - 1]) + "line " + i + "\n";
+            commit(repository, "a.txt", contents[i]);
+        }
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doPack(root);
+        FSRevisionNodeCache.getInstance().clear();
+        repository = openRepository(root);
+        for (int i = 1; i < contents.length; i++) {
+            assertEquals(contents[i], readFile(repository, "a.txt", i));
+        }
+    }
+
+    private static byte[] read(FSFile file, int length) throws Exception {
+        byte[] buffer = new byte[length];
+        int read = file.read(buffer, 0, length);
+        assertTrue(read > 0);
+        byte[] result = new byte[read];
+        System.arraycopy(buffer, 0, result, 0, read);
+        return result;
+    }
+
+    private static void writeFile(File file, byte[] contents) throws Exception {
+        OutputStream os = SVNFileUtil.openFileForWriting(file);
+        try {
+            os.write(contents);
+        } finally {
+            SVNFileUtil.closeFile(os);
+        }
+    }
+}
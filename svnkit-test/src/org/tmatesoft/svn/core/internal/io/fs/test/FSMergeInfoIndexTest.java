@@ -0,0 +1,240 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNMergeInfo;
+import org.tmatesoft.svn.core.SVNMergeInfoInheritance;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSMergeInfoIndex;
+import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSMergeInfoIndexTest extends FSTestCase {
+
+    private static final String[] PATHS = {"", "trunk", "trunk/a.txt", "trunk/dir", "trunk/dir/b.txt", "branches",
+        "branches/branch", "branches/branch/a.txt", "branches/branch/dir", "branches/branch/dir/b.txt"};
+    private static final SVNMergeInfoInheritance[] INHERITANCES = {SVNMergeInfoInheritance.EXPLICIT,
+        SVNMergeInfoInheritance.INHERITED, SVNMergeInfoInheritance.NEAREST_ANCESTOR};
+
+    private File myRoot;
+    private SVNRepository myRepository;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        myRoot = createRepository("repos");
+        myRepository = openRepository(myRoot);
+        commit(myRepository, "initial", new String[] {"trunk/a.txt", "trunk/dir/b.txt"}, new String[] {"a1", "b1"});
+        setMergeInfo("trunk/dir", "/other:1");
+        copy("trunk", "branches/branch");
+        setMergeInfo("branches/branch", "/trunk:2-3");
+        setMergeInfo("branches/branch/a.txt", "/trunk/a.txt:2");
+        setMergeInfo("trunk/dir", "/other:1-4");
+        delete("branches/branch/dir");
+        setMergeInfo("trunk/dir", null);
+    }
+
+    public void testIndexMatchesTreeWalk() throws Throwable {
+        List expected = getAllMergeInfo();
+        buildIndex();
+        assertEquals(expected, getAllMergeInfo());
+    }
+
+    public void testStaleIndexIsCaughtUp() throws Throwable {
+        buildIndex();
+        // commits which do not update the index, as made by other implementations
+        File dir = getIndexDirectory();
+        File disabled = new File(dir.getParentFile(), "mergeinfo-index.off");
+        assertTrue(dir.renameTo(disabled));
+        setMergeInfo("trunk/a.txt", "/other/a.txt:5");
+        copy("branches/branch", "branches/branch2");
+        List expected = getAllMergeInfo();
+        assertTrue(disabled.renameTo(dir));
+
+        assertEquals(expected, getAllMergeInfo());
+        setMergeInfo("branches/branch2/a.txt", "/trunk/a.txt:10");
+        assertTrue(isIndexed(myRepository.getLatestRevision()));
+        assertEquals(getAllMergeInfoWithoutIndex(), getAllMergeInfo());
+    }
+
+    public void testPartialBlockIsTruncated() throws Throwable {
+        buildIndex();
+        // an update interrupted while writing the next revision
+        File file = new File(getIndexDirectory(), "mergeinfo.dat");
+        RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        try {
+            raFile.seek(raFile.length());
+            raFile.write(new byte[] {0, 0, 0, 60, 0, 0, 0, 0, 0, 0, 0, (byte) (myRepository.getLatestRevision() + 1), 0});
+        } finally {
+            raFile.close();
+        }
+        assertEquals(getAllMergeInfoWithoutIndex(), getAllMergeInfo());
+
+        setMergeInfo("trunk", "/other:7");
+        setMergeInfo("trunk/dir/b.txt", "/other/b.txt:8");
+        assertTrue(isIndexed(myRepository.getLatestRevision()));
+        assertEquals(getAllMergeInfoWithoutIndex(), getAllMergeInfo());
+
+        // makes the index reload the file, as a new process would
+        File formatFile = new File(getIndexDirectory(), "format");
+        assertTrue(formatFile.setLastModified(formatFile.lastModified() - 2000));
+        assertTrue(isIndexed(myRepository.getLatestRevision()));
+        assertEquals(getAllMergeInfoWithoutIndex(), getAllMergeInfo());
+    }
+
+    public void testRebuild() throws Throwable {
+        buildIndex();
+        setMergeInfo("trunk", "/other:7");
+        buildIndex();
+        assertEquals(getAllMergeInfoWithoutIndex(), getAllMergeInfo());
+        setMergeInfo("trunk", null);
+        assertEquals(getAllMergeInfoWithoutIndex(), getAllMergeInfo());
+    }
+
+    private List getAllMergeInfo() throws SVNException {
+        List result = new ArrayList();
+        long latest = myRepository.getLatestRevision();
+        for (long revision = 1; revision <= latest; revision++) {
+            List paths = new ArrayList();
+            for (int i = 0; i < PATHS.length; i++) {
+                if (myRepository.checkPath(PATHS[i], revision) != SVNNodeKind.NONE) {
+                    paths.add(PATHS[i]);
+                }
+            }
+            String[] existingPaths = (String[]) paths.toArray(new String[paths.size()]);
+            for (int j = 0; j < INHERITANCES.length; j++) {
+                for (int descendants = 0; descendants < 2; descendants++) {
+                    Map mergeInfo = myRepository.getMergeInfo(existingPaths, revision, INHERITANCES[j], descendants == 1);
+                    result.add("r" + revision + " " + INHERITANCES[j] + (descendants == 1 ? " descendants " : " ") + format(mergeInfo));
+                }
+            }
+        }
+        return result;
+    }
+
+    private List getAllMergeInfoWithoutIndex() throws SVNException {
+        File dir = getIndexDirectory();
+        File disabled = new File(dir.getParentFile(), "mergeinfo-index.off");
+        assertTrue(dir.renameTo(disabled));
+        try {
+            return getAllMergeInfo();
+        } finally {
+            assertTrue(disabled.renameTo(dir));
+        }
+    }
+
+    private static String format(Map mergeInfo) {
+        if (mergeInfo == null) {
+            return "null";
+        }
+        Map formatted = new TreeMap();
+        for (Iterator entries = mergeInfo.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            SVNMergeInfo info = (SVNMergeInfo) entry.getValue();
+            formatted.put(entry.getKey(), SVNMergeInfoUtil.formatMergeInfoToString(info.getMergeSourcesToMergeLists(), null));
+        }
+        return formatted.toString();
+    }
+
+    private boolean isIndexed(long revision) throws SVNException {
+        FSFS fsfs = openFSFS(myRoot);
+        try {
+            FSMergeInfoIndex index = FSMergeInfoIndex.getIndex(fsfs);
+            return index != null && index.isIndexed(revision);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void buildIndex() throws SVNException {
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doBuildMergeInfoIndex(myRoot);
+    }
+
+    private File getIndexDirectory() {
+        return new File(new File(myRoot, "db"), FSMergeInfoIndex.MERGE_INFO_INDEX_DIR);
+    }
+
+    private void setMergeInfo(String path, String value) throws SVNException {
+        long revision = myRepository.getLatestRevision();
+        boolean isDir = myRepository.checkPath(path, revision) == SVNNodeKind.DIR;
+        ISVNEditor editor = myRepository.getCommitEditor("mergeinfo of " + path, null);
+        editor.openRoot(-1);
+        String parent = SVNPathUtil.removeTail(path);
+        List parents = new ArrayList();
+        for (String dir = parent; !"".equals(dir); dir = SVNPathUtil.removeTail(dir)) {
+            parents.add(0, dir);
+        }
+        for (Iterator dirs = parents.iterator(); dirs.hasNext();) {
+            editor.openDir((String) dirs.next(), -1);
+        }
+        SVNPropertyValue propertyValue = value != null ? SVNPropertyValue.create(value) : null;
+        if (isDir) {
+            editor.openDir(path, -1);
+            editor.changeDirProperty(SVNProperty.MERGE_INFO, propertyValue);
+            editor.closeDir();
+        } else {
+            editor.openFile(path, -1);
+            editor.changeFileProperty(path, SVNProperty.MERGE_INFO, propertyValue);
+            editor.closeFile(path, null);
+        }
+        for (int i = 0; i < parents.size(); i++) {
+            editor.closeDir();
+        }
+        editor.closeDir();
+        editor.closeEdit();
+    }
+
+    private void copy(String path, String copyPath) throws SVNException {
+        long revision = myRepository.getLatestRevision();
+        String parent = SVNPathUtil.removeTail(copyPath);
+        boolean parentExists = myRepository.checkPath(parent, revision) == SVNNodeKind.DIR;
+        ISVNEditor editor = myRepository.getCommitEditor("copied " + path, null);
+        editor.openRoot(-1);
+        if (parentExists) {
+            editor.openDir(parent, -1);
+        } else {
+            editor.addDir(parent, null, -1);
+        }
+        editor.addDir(copyPath, "/" + path, revision);
+        editor.closeDir();
+        editor.closeDir();
+        editor.closeDir();
+        editor.closeEdit();
+    }
+
+    private void delete(String path) throws SVNException {
+        ISVNEditor editor = myRepository.getCommitEditor("deleted " + path, null);
+        editor.openRoot(-1);
+        editor.deleteEntry(path, -1);
+        editor.closeDir();
+        editor.closeEdit();
+    }
+}
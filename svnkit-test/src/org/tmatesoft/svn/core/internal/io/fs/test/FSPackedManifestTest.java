@@ -0,0 +1,120 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSDeltaWindowCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFulltextCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNodeCache;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSPackedManifestTest extends FSTestCase {
+
+    private static final int REVISIONS = 10;
+
+    public void testPackedRevisionsRoundTrip() throws Throwable {
+        File root = createPackedRepository();
+        SVNRepository repository = openRepository(root);
+        for (long revision = 1; revision <= REVISIONS; revision++) {
+            assertEquals(getContents(revision), readFile(repository, "a.txt", revision));
+        }
+    }
+
+    /*
+     * Once a shard's manifest is read, its offsets come from the cache, which a broken
+     * manifest file on disk shows; a new FSFS instance reads the file again and fails.
+     */
+    public void testManifestIsReadOnce() throws Throwable {
+        File root = createPackedRepository();
+        FSFS fsfs = openFSFS(root);
+        try {
+            assertEquals(8, fsfs.getMinUnpackedRev());
+            assertEquals(getContents(5), readFile(fsfs, 5));
+            writeFile(new File(root, "db/revs/1.pack/manifest"), "corrupt\n");
+            clearCaches();
+            assertEquals(getContents(5), readFile(fsfs, 5));
+            assertEquals(getContents(6), readFile(fsfs, 6));
+        } finally {
+            fsfs.close();
+        }
+
+        clearCaches();
+        fsfs = openFSFS(root);
+        try {
+            readFile(fsfs, 6);
+            fail("a corrupt manifest was not read");
+        } catch (SVNException e) {
+            assertEquals(SVNErrorCode.FS_CORRUPT, e.getErrorMessage().getErrorCode());
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private File createPackedRepository() throws Throwable {
+        long maxFilesPerDirectory = FSFS.getDefaultMaxFilesPerDirectory();
+        File root;
+        FSFS.setDefaultMaxFilesPerDirectory(4);
+        try {
+            root = createRepository("repos");
+        } finally {
+            FSFS.setDefaultMaxFilesPerDirectory(maxFilesPerDirectory);
+        }
+        SVNRepository repository = openRepository(root);
+        for (long revision = 1; revision <= REVISIONS; revision++) {
+            commit(repository, "a.txt", getContents(revision));
+        }
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doPack(root);
+        return root;
+    }
+
+    private static String getContents(long revision) {
+        StringBuffer contents = new StringBuffer();
+        for (int i = 0; i < revision * 7; i++) {
+            contents.append("revision ").append(revision).append(", line ").append(i).append('\n');
+        }
+        return contents.toString();
+    }
+
+    private static String readFile(FSFS fsfs, long revision) throws Exception {
+        InputStream is = fsfs.createRevisionRoot(revision).getFileStreamForPath(new SVNDeltaCombiner(), "/a.txt");
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read = is.read(buffer); read > 0; read = is.read(buffer)) {
+                contents.write(buffer, 0, read);
+            }
+            return new String(contents.toByteArray(), "UTF-8");
+        } finally {
+            SVNFileUtil.closeFile(is);
+        }
+    }
+
+    private static void clearCaches() {
+        FSRevisionNodeCache.getInstance().clear();
+        FSFulltextCache.getInstance().clear();
+        FSDeltaWindowCache.getInstance().clear();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNLogType;
+import org.tmatesoft.svn.core.wc.SVNEvent;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSParallelVerifyTest extends FSTestCase {
+
+    private static final int REVISIONS = 21;
+
+    public void testRevisionsAreReportedInOrder() throws Exception {
+        File root = createRevisions();
+        List serial = verify(root, 1);
+        List parallel = verify(root, 3);
+        assertEquals(REVISIONS + 1, serial.size());
+        assertEquals(serial, parallel);
+        for (int i = 0; i < parallel.size(); i++) {
+            assertEquals(new Long(i), parallel.get(i));
+        }
+    }
+
+    /*
+     * Workers run ahead of the reporting thread, but nothing past the broken revision
+     * may be reported, and its error must reach the caller.
+     */
+    public void testCorruptRevisionStopsReports() throws Exception {
+        File root = createRevisions();
+        RandomAccessFile revision = new RandomAccessFile(new File(root, "db/revs/3/13"), "rw");
+        try {
+            revision.seek(revision.length() - 8);
+            revision.write("garbage\n".getBytes("US-ASCII"));
+        } finally {
+            revision.close();
+        }
+
+        List events = new ArrayList();
+        try {
+            verify(root, 3, events);
+            fail("a corrupt revision was verified");
+        } catch (SVNException e) {
+            assertFalse(e instanceof SVNCancelException);
+        }
+        assertEquals(13, events.size());
+        assertEquals(new Long(12), events.get(12));
+    }
+
+    /*
+     * Workers replay through cancellable editors, and the caller checks for
+     * cancellation while it waits for them.
+     */
+    public void testVerifyIsCancelled() throws Exception {
+        File root = createRevisions();
+        final List events = new ArrayList();
+        final List workerChecks = new ArrayList();
+        SVNAdminClient client = new SVNAdminClient((ISVNAuthenticationManager) null, null);
+        client.setEventHandler(new ISVNAdminEventHandler() {
+            public void handleAdminEvent(SVNAdminEvent event, double progress) {
+                synchronized (events) {
+                    events.add(new Long(event.getRevision()));
+                }
+            }
+
+            public void handleEvent(SVNEvent event, double progress) {
+            }
+
+            public void checkCancelled() throws SVNCancelException {
+                if (Thread.currentThread().getName().startsWith("svnkit-verify-")) {
+                    synchronized (workerChecks) {
+                        workerChecks.add(Thread.currentThread().getName());
+                    }
+                }
+                synchronized (events) {
+                    if (events.size() > 5) {
+                        SVNErrorManager.cancel("cancelled", SVNLogType.DEFAULT);
+                    }
+                }
+            }
+        });
+        try {
+            client.doVerify(root, SVNRevision.create(0), SVNRevision.HEAD, 3);
+            fail("verify was not cancelled");
+        } catch (SVNCancelException e) {
+        }
+        assertEquals(6, events.size());
+        assertFalse(workerChecks.isEmpty());
+    }
+
+    private File createRevisions() throws Exception {
+        long maxFilesPerDirectory = FSFS.getDefaultMaxFilesPerDirectory();
+        File root;
+        FSFS.setDefaultMaxFilesPerDirectory(4);
+        try {
+            root = createRepository("repos");
+        } finally {
+            FSFS.setDefaultMaxFilesPerDirectory(maxFilesPerDirectory);
+        }
+        SVNRepository repository = openRepository(root);
+        for (int i = 1; i <= REVISIONS; i++) {
+            commit(repository, "r" + i, new String[] {"a.txt", "dir" + i % 3 + "/b.txt"},
+                    new String[] {"a " + i + "\n", "b " + i + "\n"});
+        }
+        return root;
+    }
+
+    private static List verify(File root, int threadCount) throws SVNException {
+        List events = new ArrayList();
+        verify(root, threadCount, events);
+        return events;
+    }
+
+    private static void verify(File root, int threadCount, final List events) throws SVNException {
+        SVNAdminClient client = new SVNAdminClient((ISVNAuthenticationManager) null, null);
+        client.setEventHandler(new ISVNAdminEventHandler() {
+            public void handleAdminEvent(SVNAdminEvent event, double progress) {
+                events.add(new Long(event.getRevision()));
+            }
+
+            public void handleEvent(SVNEvent event, double progress) {
+            }
+
+            public void checkCancelled() {
+            }
+        });
+        client.doVerify(root, SVNRevision.create(0), SVNRevision.HEAD, threadCount);
+    }
+}
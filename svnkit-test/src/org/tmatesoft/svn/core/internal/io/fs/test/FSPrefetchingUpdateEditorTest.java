@@ -0,0 +1,208 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRootCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSUpdateContext;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSPrefetchingUpdateEditorTest extends FSTestCase {
+
+    private int myDefaultThreadsCount;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        myDefaultThreadsCount = FSUpdateContext.getDeltaThreadsCount();
+        FSUpdateContext.setDeltaThreadsCount(2);
+    }
+
+    protected void tearDown() throws Exception {
+        FSUpdateContext.setDeltaThreadsCount(myDefaultThreadsCount);
+        super.tearDown();
+    }
+
+    public void testCheckoutOfLargeFile() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        String[] paths = new String[] {"a.txt", "b/big.txt", "b/c.txt", "d.txt"};
+        String[] contents = new String[] {"alpha\n", createContents(6 * 1024 * 1024), "gamma\n", "delta\n"};
+        commit(repository, "r1", paths, contents);
+
+        CollectingEditor editor = checkout(repository);
+        assertEquals(paths.length, editor.myFiles.size());
+        for (int i = 0; i < paths.length; i++) {
+            assertEquals(paths[i], contents[i], editor.getContents(paths[i]));
+        }
+    }
+
+    public void testCheckoutOfSeveralLargeFiles() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        String[] paths = new String[] {"big1.txt", "big2.txt", "big3.txt", "small.txt"};
+        String[] contents = new String[] {createContents(5 * 1024 * 1024), createContents(5 * 1024 * 1024 + 17),
+                createContents(4 * 1024 * 1024 - 1), "small\n"};
+        commit(repository, "r1", paths, contents);
+
+        CollectingEditor editor = checkout(repository);
+        assertEquals(paths.length, editor.myFiles.size());
+        for (int i = 0; i < paths.length; i++) {
+            assertEquals(paths[i], contents[i], editor.getContents(paths[i]));
+        }
+    }
+
+    /*
+     * Workers and the update walk keep their source roots in such caches.
+     */
+    public void testRootCacheKeepsRecentlyUsedRoots() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        for (int i = 1; i <= 3; i++) {
+            commit(repository, "a.txt", "a" + i);
+        }
+        FSFS fsfs = openFSFS(root);
+        try {
+            FSRevisionRootCache roots = new FSRevisionRootCache(fsfs, 2);
+            FSRevisionRoot root1 = roots.getRoot(1);
+            FSRevisionRoot root2 = roots.getRoot(2);
+            assertSame(root1, roots.getRoot(1));
+            roots.getRoot(3);
+            assertEquals(2, roots.size());
+            assertSame(root1, roots.getRoot(1));
+            assertNotSame(root2, roots.getRoot(2));
+            assertEquals(2, roots.getRoot(2).getRevision());
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private CollectingEditor checkout(SVNRepository repository) throws SVNException {
+        CollectingEditor editor = new CollectingEditor();
+        repository.update(-1, null, SVNDepth.INFINITY, false, new ISVNReporterBaton() {
+            public void report(ISVNReporter reporter) throws SVNException {
+                reporter.setPath("", null, 0, SVNDepth.INFINITY, true);
+                reporter.finishReport();
+            }
+        }, editor);
+        return editor;
+    }
+
+    private static String createContents(int length) {
+        StringBuffer buffer = new StringBuffer(length);
+        long random = length;
+        for (int i = 0; i < length; i++) {
+            random = (random * 1103515245 + 12345) & 0x7fffffff;
+            buffer.append(i % 64 == 63 ? '\n' : (char) ('a' + (random >> 16) % 26));
+        }
+        return buffer.toString();
+    }
+
+    private static class CollectingEditor implements ISVNEditor {
+
+        private List myFiles = new ArrayList();
+        private Map myContents = new SVNHashMap();
+        private SVNDeltaProcessor myProcessor = new SVNDeltaProcessor();
+        private String myChecksum;
+
+        public String getContents(String path) throws Exception {
+            return new String(((ByteArrayOutputStream) myContents.get(path)).toByteArray(), "UTF-8");
+        }
+
+        public void targetRevision(long revision) throws SVNException {
+        }
+
+        public void openRoot(long revision) throws SVNException {
+        }
+
+        public void deleteEntry(String path, long revision) throws SVNException {
+        }
+
+        public void absentDir(String path) throws SVNException {
+        }
+
+        public void absentFile(String path) throws SVNException {
+        }
+
+        public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        }
+
+        public void openDir(String path, long revision) throws SVNException {
+        }
+
+        public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+        }
+
+        public void closeDir() throws SVNException {
+        }
+
+        public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+            myFiles.add(path);
+        }
+
+        public void openFile(String path, long revision) throws SVNException {
+        }
+
+        public void changeFileProperty(String path, String propertyName, SVNPropertyValue propertyValue) throws SVNException {
+        }
+
+        public void closeFile(String path, String textChecksum) throws SVNException {
+            Assert.assertEquals(path, textChecksum, myChecksum);
+        }
+
+        public SVNCommitInfo closeEdit() throws SVNException {
+            return null;
+        }
+
+        public void abortEdit() throws SVNException {
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+            Assert.assertEquals(myFiles.get(myFiles.size() - 1), path);
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            myContents.put(path, target);
+            myProcessor.applyTextDelta(SVNFileUtil.DUMMY_IN, target, true);
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            return myProcessor.textDeltaChunk(diffWindow);
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+            myChecksum = myProcessor.textDeltaEnd();
+        }
+    }
+}
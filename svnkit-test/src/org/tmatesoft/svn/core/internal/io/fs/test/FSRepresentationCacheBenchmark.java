@@ -0,0 +1,156 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * Measures representation cache inserts and lookups the way a large import does them: one
+ * lookup per added file, mostly for new contents, and inserts of all new representations
+ * once the revision is committed. Compares lookups and inserts made one representation at
+ * a time with the batched ones.
+ *
+ * args: reposDir [representationsCount] [lookupsCount]
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRepresentationCacheBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("args: reposDir [representationsCount] [lookupsCount]");
+            System.exit(1);
+        }
+        FSRepositoryFactory.setup();
+
+        File reposDir = new File(args[0]);
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        int lookupsCount = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+        try {
+            SVNFileUtil.deleteAll(reposDir, true);
+            SVNRepositoryFactory.createLocalRepository(reposDir, true, false);
+            FSFS fsfs = new FSFS(reposDir);
+            fsfs.open();
+            try {
+                final IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+                if (manager == null) {
+                    System.out.println("representation sharing is not enabled in " + reposDir);
+                    System.exit(1);
+                }
+
+                final List representations = createRepresentations("old", count);
+                long start = System.currentTimeMillis();
+                manager.runWriteTransaction(new IFSSqlJetTransaction() {
+                    public void run() throws SVNException {
+                        for (int i = 0; i < representations.size(); i++) {
+                            manager.insert((FSRepresentation) representations.get(i), false);
+                        }
+                    }
+                });
+                report("insert one by one", System.currentTimeMillis() - start, count);
+
+                // the first lookups pay for building the filter, the next ones use it
+                List absentHashes = createHashes("absent", lookupsCount);
+                measureLookups(manager, "absent, cold", absentHashes);
+                measureLookups(manager, "absent, warm", absentHashes);
+
+                List newRepresentations = createRepresentations("new", count);
+                start = System.currentTimeMillis();
+                manager.insert(newRepresentations, false);
+                report("batched insert", System.currentTimeMillis() - start, count);
+
+                measureLookups(manager, "present", createHashes("new", lookupsCount));
+            } finally {
+                fsfs.close();
+            }
+        } catch (SVNException svne) {
+            System.out.println(svne.getErrorMessage().getFullMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void measureLookups(final IFSRepresentationCacheManager manager, String kind, List hashes) throws SVNException {
+        long start = System.currentTimeMillis();
+        int found = 0;
+        for (int i = 0; i < hashes.size(); i++) {
+            final String hash = (String) hashes.get(i);
+            final FSRepresentation[] representation = new FSRepresentation[1];
+            manager.runReadTransaction(new IFSSqlJetTransaction() {
+                public void run() throws SVNException {
+                    representation[0] = manager.getRepresentationByHash(hash);
+                }
+            });
+            found += representation[0] != null ? 1 : 0;
+        }
+        report("lookup " + kind + " one by one (" + found + " found)", System.currentTimeMillis() - start, hashes.size());
+
+        start = System.currentTimeMillis();
+        found = 0;
+        for (int i = 0; i < hashes.size(); i++) {
+            found += manager.findRepresentations(Collections.singletonList(hashes.get(i))).size();
+        }
+        report("find " + kind + " one by one (" + found + " found)", System.currentTimeMillis() - start, hashes.size());
+
+        start = System.currentTimeMillis();
+        found = manager.findRepresentations(hashes).size();
+        report("find " + kind + " batched (" + found + " found)", System.currentTimeMillis() - start, hashes.size());
+    }
+
+    private static void report(String name, long time, long operations) {
+        double perSecond = time > 0 ? ((double) operations * 1000) / time : operations;
+        System.out.println(name + ": " + time + " ms, " + (long) perSecond + " ops/sec");
+    }
+
+    private static List createRepresentations(String prefix, int count) {
+        List hashes = createHashes(prefix, count);
+        List representations = new ArrayList(count);
+        for (int i = 0; i < count; i++) {
+            FSRepresentation representation = new FSRepresentation();
+            representation.setSHA1HexDigest((String) hashes.get(i));
+            representation.setRevision(1);
+            representation.setOffset(i);
+            representation.setSize(1);
+            representation.setExpandedSize(1);
+            representations.add(representation);
+        }
+        return representations;
+    }
+
+    private static List createHashes(String prefix, int count) {
+        List hashes = new ArrayList(count);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA1");
+            for (int i = 0; i < count; i++) {
+                hashes.add(SVNFileUtil.toHexDigest(digest.digest((prefix + i).getBytes())));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        return hashes;
+    }
+}
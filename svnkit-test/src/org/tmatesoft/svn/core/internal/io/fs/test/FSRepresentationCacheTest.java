@@ -0,0 +1,189 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSRepresentationCacheFilter;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRepresentationCacheTest extends FSTestCase {
+
+    private static final int COUNT = 200;
+
+    public void testBatchInsertWritesEveryRow() throws Exception {
+        FSFS fsfs = openFSFS(createRepository("repos"));
+        try {
+            IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+            List representations = createRepresentations("a", COUNT, 0);
+            manager.insert(representations, true);
+            for (int i = 0; i < representations.size(); i++) {
+                FSRepresentation representation = (FSRepresentation) representations.get(i);
+                assertEquals(toString(representation), toString(lookup(manager, representation.getSHA1HexDigest())));
+            }
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    /*
+     * Hashes the filter does not know are inserted without a lookup, the ones it
+     * may know are still looked up, so present rows are neither duplicated nor
+     * silently replaced by different ones.
+     */
+    public void testFilterSkipsOnlyAbsentHashes() throws Exception {
+        FSFS fsfs = openFSFS(createRepository("repos"));
+        try {
+            IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+            FSRepresentationCacheFilter filter = FSRepresentationCacheFilter.getFilter(fsfs.getRepositoryCacheFile());
+            List present = createRepresentations("a", COUNT, 0);
+            manager.insert(present, false);
+
+            // enough lookups of absent hashes pay for building the filter
+            List absent = createHashes("absent", COUNT * 5);
+            assertTrue(manager.findRepresentations(absent).isEmpty());
+            assertTrue(filter.isInSync(filter.readChangeCounter()));
+            for (int i = 0; i < present.size(); i++) {
+                assertTrue(filter.mightContain(((FSRepresentation) present.get(i)).getSHA1HexDigest()));
+            }
+            int falsePositives = 0;
+            for (int i = 0; i < absent.size(); i++) {
+                falsePositives += filter.mightContain((String) absent.get(i)) ? 1 : 0;
+            }
+            assertTrue(String.valueOf(falsePositives), falsePositives < absent.size() / 20);
+
+            List batch = new ArrayList(createRepresentations("a", COUNT / 2, 0));
+            List added = createRepresentations("b", COUNT / 2, COUNT);
+            batch.addAll(added);
+            manager.insert(batch, true);
+            assertTrue(filter.isInSync(filter.readChangeCounter()));
+            for (int i = 0; i < added.size(); i++) {
+                FSRepresentation representation = (FSRepresentation) added.get(i);
+                assertTrue(filter.mightContain(representation.getSHA1HexDigest()));
+                assertEquals(toString(representation), toString(lookup(manager, representation.getSHA1HexDigest())));
+            }
+            for (int i = 0; i < present.size(); i++) {
+                FSRepresentation representation = (FSRepresentation) present.get(i);
+                assertEquals(toString(representation), toString(lookup(manager, representation.getSHA1HexDigest())));
+            }
+
+            List changed = createRepresentations("a", 1, 1000);
+            try {
+                manager.insert(changed, true);
+                fail("a different representation replaced a present one");
+            } catch (SVNException e) {
+                // the write transaction reports the FS_CORRUPT error as an SQLite one
+                assertTrue(e.getMessage(), e.getMessage().indexOf("with a different value") >= 0);
+            }
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    /*
+     * The filter is out of sync before its first build and after rows are inserted
+     * behind its back, the results must not depend on it either way.
+     */
+    public void testBatchFindMatchesSingleLookups() throws Exception {
+        FSFS fsfs = openFSFS(createRepository("repos"));
+        try {
+            final IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+            manager.insert(createRepresentations("a", COUNT, 0), false);
+            List hashes = new ArrayList();
+            hashes.addAll(createHashes("a", COUNT));
+            hashes.addAll(createHashes("absent", COUNT * 5));
+            hashes.addAll(createHashes("c", 10));
+            Collections.shuffle(hashes, new Random(0));
+
+            assertFound(manager, hashes, COUNT);
+            assertFound(manager, hashes, COUNT);
+
+            final List inserted = createRepresentations("c", 10, COUNT);
+            manager.runWriteTransaction(new IFSSqlJetTransaction() {
+                public void run() throws SVNException {
+                    for (Iterator reps = inserted.iterator(); reps.hasNext();) {
+                        manager.insert((FSRepresentation) reps.next(), false);
+                    }
+                }
+            });
+            assertFound(manager, hashes, COUNT + 10);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private static void assertFound(IFSRepresentationCacheManager manager, List hashes, int count) throws SVNException {
+        Map found = manager.findRepresentations(hashes);
+        assertEquals(count, found.size());
+        for (Iterator hashesIter = hashes.iterator(); hashesIter.hasNext();) {
+            String hash = (String) hashesIter.next();
+            assertEquals(toString(lookup(manager, hash)), toString((FSRepresentation) found.get(hash)));
+        }
+    }
+
+    private static FSRepresentation lookup(final IFSRepresentationCacheManager manager, final String hash) throws SVNException {
+        final FSRepresentation[] representation = new FSRepresentation[1];
+        manager.runReadTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                representation[0] = manager.getRepresentationByHash(hash);
+            }
+        });
+        return representation[0];
+    }
+
+    private static String toString(FSRepresentation representation) {
+        if (representation == null) {
+            return null;
+        }
+        return representation.getSHA1HexDigest() + " " + representation.getRevision() + " " + representation.getOffset() +
+                " " + representation.getSize() + " " + representation.getExpandedSize();
+    }
+
+    private static List createRepresentations(String prefix, int count, long offset) throws Exception {
+        List hashes = createHashes(prefix, count);
+        List representations = new ArrayList(count);
+        for (int i = 0; i < count; i++) {
+            FSRepresentation representation = new FSRepresentation();
+            representation.setSHA1HexDigest((String) hashes.get(i));
+            representation.setRevision(1 + i % 7);
+            representation.setOffset(offset + i);
+            representation.setSize(10 + i);
+            representation.setExpandedSize(20 + i);
+            representations.add(representation);
+        }
+        return representations;
+    }
+
+    private static List createHashes(String prefix, int count) throws Exception {
+        List hashes = new ArrayList(count);
+        MessageDigest digest = MessageDigest.getInstance("SHA1");
+        for (int i = 0; i < count; i++) {
+            hashes.add(SVNFileUtil.toHexDigest(digest.digest((prefix + i).getBytes())));
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.util.Date;
+
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionDates;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.wc.SVNWCProperties;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionDatesTest extends FSTestCase {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long START = 1000 * HOUR;
+
+    private File myRoot;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        myRoot = createRepository("repos");
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doBuildRevisionDatesIndex(myRoot);
+        SVNRepository repository = openRepository(myRoot);
+        for (int i = 1; i <= 8; i++) {
+            commit(repository, "a.txt", "contents " + i);
+        }
+        // revision N is dated START + N hours
+        for (long revision = 0; revision <= 8; revision++) {
+            repository.setRevisionPropertyValue(revision, SVNRevisionProperty.DATE, SVNPropertyValue.create(SVNDate.formatDate(getDate(revision))));
+        }
+    }
+
+    public void testDatedRevisions() throws Throwable {
+        assertTrue(new File(new File(myRoot, "db"), FSRevisionDates.REVISION_DATES_FILE).length() > 0);
+        assertDatedRevisions(false, new long[] {0, 1, 2, 3, 4, 5, 6, 7, 8});
+        assertDatedRevisions(true, new long[] {0, 1, 2, 3, 4, 5, 6, 7, 8});
+    }
+
+    public void testDatesChangedByOtherToolsAroundTheResultAreNotTrusted() throws Throwable {
+        assertDatedRevisions(false, new long[] {0, 1, 2, 3, 4, 5, 6, 7, 8});
+        // as svnadmin setrevprop would do, without updating db/revision-dates
+        FSFS fsfs = openFSFS(myRoot);
+        try {
+            File revPropsFile = fsfs.getRevisionPropertiesFile(3, false);
+            long lastModified = revPropsFile.lastModified();
+            new SVNWCProperties(revPropsFile, null).setPropertyValue(SVNRevisionProperty.DATE,
+                    SVNPropertyValue.create(SVNDate.formatDate(new Date(START + 2 * HOUR + HOUR / 4))));
+            revPropsFile.setLastModified(lastModified + 2000);
+        } finally {
+            fsfs.close();
+        }
+        FSFS reopened = openFSFS(myRoot);
+        try {
+            // the array still dates r3 after the searched date, its revision properties do not
+            assertEquals(3, reopened.getDatedRevision(new Date(START + 2 * HOUR + HOUR / 2)));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    public void testArrayIsOnlyKeptOnceBuilt() throws Throwable {
+        File root = createRepository("plain");
+        SVNRepository repository = openRepository(root);
+        commit(repository, "a.txt", "a");
+        commit(repository, "a.txt", "b");
+        File datesFile = new File(new File(root, "db"), FSRevisionDates.REVISION_DATES_FILE);
+        assertFalse(datesFile.exists());
+
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doBuildRevisionDatesIndex(root);
+        assertEquals(3 * 24, datesFile.length());
+        commit(repository, "a.txt", "c");
+        FSFS fsfs = openFSFS(root);
+        try {
+            FSRevisionDates dates = FSRevisionDates.open(fsfs);
+            assertEquals(4, dates.getRevisionsCount());
+            for (long revision = 0; revision < 4; revision++) {
+                SVNDate date = SVNDate.parseDate(fsfs.getRevisionProperties(revision).getStringValue(SVNRevisionProperty.DATE));
+                assertEquals(date.getTimeInMicros(), dates.getTime(revision));
+                assertTrue(dates.isCurrent(fsfs, revision));
+            }
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void assertDatedRevisions(boolean memoryMapped, long[] expected) throws Throwable {
+        FSFS fsfs = openFSFS(myRoot);
+        fsfs.setMemoryMappedReads(memoryMapped);
+        try {
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], fsfs.getDatedRevision(getDate(i)));
+                assertEquals(expected[i], fsfs.getDatedRevision(new Date(getDate(i).getTime() + HOUR / 2)));
+            }
+            assertEquals(0, fsfs.getDatedRevision(new Date(START - HOUR)));
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private static Date getDate(long revision) {
+        return new Date(START + revision * HOUR);
+    }
+}
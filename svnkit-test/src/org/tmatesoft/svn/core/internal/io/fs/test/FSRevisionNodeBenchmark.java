@@ -0,0 +1,138 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.FSRoot;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Measures FSRevisionRoot.getRevisionNode() over a large synthetic tree.
+ *
+ * args: reposDir [depth] [fanOut] [runCount] [revNodesCacheSize]
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionNodeBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("args: reposDir [depth] [fanOut] [runCount] [revNodesCacheSize]");
+            System.exit(1);
+        }
+        FSRepositoryFactory.setup();
+
+        File reposDir = new File(args[0]);
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int fanOut = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int runCount = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        if (args.length > 4) {
+            FSRoot.setRevNodesCacheSize(Integer.parseInt(args[4]));
+        }
+
+        try {
+            List paths = new ArrayList();
+            createRepository(reposDir, depth, fanOut, paths);
+            System.out.println("tree: " + paths.size() + " paths, depth " + depth + ", fan-out " + fanOut +
+                    ", rev nodes cache size " + FSRoot.getRevNodesCacheSize());
+
+            FSFS fsfs = new FSFS(reposDir);
+            fsfs.open();
+            try {
+                long revision = fsfs.getYoungestRevision();
+                // warm up
+                measure(fsfs, revision, paths, 1, false);
+
+                long time = measure(fsfs, revision, paths, runCount, false);
+                report("fresh root per run", time, paths.size() * runCount);
+                time = measure(fsfs, revision, paths, runCount, true);
+                report("shared root", time, paths.size() * runCount);
+            } finally {
+                fsfs.close();
+            }
+        } catch (SVNException svne) {
+            System.out.println(svne.getErrorMessage().getFullMessage());
+            System.exit(1);
+        }
+    }
+
+    private static long measure(FSFS fsfs, long revision, List paths, int runCount, boolean sharedRoot) throws SVNException {
+        FSRevisionRoot root = fsfs.createRevisionRoot(revision);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < runCount; i++) {
+            if (!sharedRoot) {
+                root = fsfs.createRevisionRoot(revision);
+            }
+            for (int j = 0; j < paths.size(); j++) {
+                root.getRevisionNode((String) paths.get(j));
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void report(String name, long time, long operations) {
+        double perSecond = time > 0 ? ((double) operations * 1000) / time : operations;
+        System.out.println(name + ": " + time + " ms, " + (long) perSecond + " lookups/sec");
+    }
+
+    private static void createRepository(File reposDir, int depth, int fanOut, List paths) throws SVNException {
+        SVNFileUtil.deleteAll(reposDir, true);
+        SVNURL url = SVNRepositoryFactory.createLocalRepository(reposDir, true, false);
+        SVNRepository repository = SVNRepositoryFactory.create(url);
+        try {
+            ISVNEditor editor = repository.getCommitEditor("synthetic tree", null);
+            editor.openRoot(-1);
+            addChildren(editor, "", 1, depth, fanOut, paths);
+            editor.closeDir();
+            editor.closeEdit();
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    private static void addChildren(ISVNEditor editor, String parent, int level, int depth, int fanOut, List paths) throws SVNException {
+        SVNDeltaGenerator generator = new SVNDeltaGenerator();
+        for (int i = 0; i < fanOut; i++) {
+            String filePath = parent + "file" + i + ".txt";
+            editor.addFile(filePath, null, -1);
+            editor.applyTextDelta(filePath, null);
+            byte[] contents = ("contents of " + filePath + "\n").getBytes();
+            String checksum = generator.sendDelta(filePath, new ByteArrayInputStream(contents), editor, true);
+            editor.closeFile(filePath, checksum);
+            paths.add("/" + filePath);
+        }
+        if (level >= depth) {
+            return;
+        }
+        for (int i = 0; i < fanOut; i++) {
+            String dirPath = parent + "dir" + i;
+            editor.addDir(dirPath, null, -1);
+            paths.add("/" + dirPath);
+            addChildren(editor, dirPath + "/", level + 1, depth, fanOut, paths);
+            editor.closeDir();
+        }
+    }
+}
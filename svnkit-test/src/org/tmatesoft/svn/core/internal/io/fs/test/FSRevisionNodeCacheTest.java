@@ -0,0 +1,56 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNodeCache;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionNodeCacheTest extends FSTestCase {
+
+    public void testHotCopiesDoNotShareNodes() throws Throwable {
+        File root = createRepository("original");
+        SVNRepository original = openRepository(root);
+        commit(original, "a.txt", "AAAA");
+        File copyRoot = new File(createDirectory("copy"), "repos");
+        new SVNAdminClient((ISVNAuthenticationManager) null, null).doHotCopy(root, copyRoot);
+        SVNRepository copy = openRepository(copyRoot);
+        assertEquals(original.getRepositoryUUID(true), copy.getRepositoryUUID(true));
+
+        // same history and sizes, so both repositories have the same node-revision ids and offsets
+        long revision = commit(original, "a.txt", "CCCC");
+        assertEquals(revision, commit(copy, "a.txt", "DDDD"));
+
+        FSRevisionNodeCache.getInstance().clear();
+        assertChecksum(original, "a.txt", revision, "CCCC");
+        assertChecksum(copy, "a.txt", revision, "DDDD");
+        assertChecksum(original, "a.txt", revision, "CCCC");
+        assertTrue(FSRevisionNodeCache.getInstance().getSize() > 0);
+    }
+
+    private void assertChecksum(SVNRepository repository, String path, long revision, String contents) throws Throwable {
+        SVNProperties properties = new SVNProperties();
+        repository.getFile(path, revision, properties, null);
+        String checksum = SVNFileUtil.computeChecksum(contents);
+        assertEquals(checksum, properties.getStringValue(SVNProperty.CHECKSUM));
+    }
+}
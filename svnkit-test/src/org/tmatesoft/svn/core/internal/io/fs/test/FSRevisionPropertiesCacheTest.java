@@ -0,0 +1,85 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionPropertiesCache;
+import org.tmatesoft.svn.core.internal.wc.SVNWCProperties;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionPropertiesCacheTest extends FSTestCase {
+
+    public void testCallersGetCopies() throws Throwable {
+        File root = createRepository("repos");
+        commit(openRepository(root), "a.txt", "a");
+        FSRevisionPropertiesCache cache = FSRevisionPropertiesCache.getInstance();
+        cache.clear();
+        FSFS fsfs = openFSFS(root);
+        try {
+            fsfs.getRevisionProperties(1).put(SVNRevisionProperty.LOG, "modified by a caller");
+            long hits = cache.getHitsCount();
+            fsfs.getRevisionProperties(1).put(SVNRevisionProperty.LOG, "modified by another caller");
+            assertEquals("changed a.txt", fsfs.getRevisionProperties(1).getStringValue(SVNRevisionProperty.LOG));
+            assertEquals(hits + 2, cache.getHitsCount());
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    public void testChangedPropertiesAreReadAgain() throws Throwable {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        commit(repository, "a.txt", "a");
+        FSRevisionPropertiesCache cache = FSRevisionPropertiesCache.getInstance();
+        cache.clear();
+        FSFS fsfs = openFSFS(root);
+        try {
+            assertEquals("changed a.txt", fsfs.getRevisionProperties(1).getStringValue(SVNRevisionProperty.LOG));
+
+            // changed through FSFS
+            repository.setRevisionPropertyValue(1, SVNRevisionProperty.LOG, SVNPropertyValue.create("edited"));
+            assertEquals("edited", fsfs.getRevisionProperties(1).getStringValue(SVNRevisionProperty.LOG));
+
+            // changed by another process
+            File revPropsFile = fsfs.getRevisionPropertiesFile(1, false);
+            long lastModified = revPropsFile.lastModified();
+            new SVNWCProperties(revPropsFile, null).setPropertyValue(SVNRevisionProperty.LOG, SVNPropertyValue.create("changed elsewhere"));
+            revPropsFile.setLastModified(lastModified + 2000);
+            long stale = cache.getStaleCount();
+            assertEquals("changed elsewhere", fsfs.getRevisionProperties(1).getStringValue(SVNRevisionProperty.LOG));
+            assertEquals(stale + 1, cache.getStaleCount());
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    public void testZeroSizeDisablesCache() throws Throwable {
+        FSRevisionPropertiesCache cache = new FSRevisionPropertiesCache(0);
+        File file = new File(createDirectory("files"), "1");
+        writeFile(file, "contents");
+        SVNProperties properties = new SVNProperties();
+        properties.put(SVNRevisionProperty.LOG, "log");
+        cache.put(file, file.length(), file.lastModified(), properties);
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(file));
+        assertEquals(0, cache.getSize());
+    }
+}
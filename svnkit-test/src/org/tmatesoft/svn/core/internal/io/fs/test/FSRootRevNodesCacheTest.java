@@ -0,0 +1,85 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRoot;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRootRevNodesCacheTest extends FSTestCase {
+
+    private int myDefaultCacheSize;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        myDefaultCacheSize = FSRoot.getRevNodesCacheSize();
+    }
+
+    protected void tearDown() throws Exception {
+        FSRoot.setRevNodesCacheSize(myDefaultCacheSize);
+        super.tearDown();
+    }
+
+    /*
+     * Nodes put into the cache are returned as they are, so a node read from the
+     * repository instead tells that its path was evicted.
+     */
+    public void testLeastRecentlyUsedNodeIsEvicted() throws Exception {
+        FSRoot.setRevNodesCacheSize(2);
+        FSFS fsfs = openFSFS(createRevision());
+        try {
+            FSRoot root = fsfs.createRevisionRoot(1);
+            FSRevisionNode a = new FSRevisionNode();
+            FSRevisionNode b = new FSRevisionNode();
+            FSRevisionNode c = new FSRevisionNode();
+            root.putRevNodeToCache("/a.txt", a);
+            root.putRevNodeToCache("/b.txt", b);
+            assertSame(a, root.getRevisionNode("/a.txt"));
+            root.putRevNodeToCache("/c.txt", c);
+
+            assertSame(a, root.getRevisionNode("/a.txt"));
+            assertSame(c, root.getRevisionNode("/c.txt"));
+            FSRevisionNode read = root.getRevisionNode("/b.txt");
+            assertNotSame(b, read);
+            assertEquals("/b.txt", read.getCreatedPath());
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    public void testZeroSizeDisablesCache() throws Exception {
+        FSRoot.setRevNodesCacheSize(0);
+        FSFS fsfs = openFSFS(createRevision());
+        try {
+            FSRoot root = fsfs.createRevisionRoot(1);
+            FSRevisionNode a = new FSRevisionNode();
+            root.putRevNodeToCache("/a.txt", a);
+            assertNotSame(a, root.getRevisionNode("/a.txt"));
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private File createRevision() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        commit(repository, "r1", new String[] {"a.txt", "b.txt", "c.txt"}, new String[] {"a", "b", "c"});
+        return root;
+    }
+}
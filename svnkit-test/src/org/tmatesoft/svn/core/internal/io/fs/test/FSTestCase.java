@@ -0,0 +1,176 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Base class of tests working with local FSFS repositories, which are created
+ * in a temporary directory and removed when a test is over.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public abstract class FSTestCase extends TestCase {
+
+    private List myDirectories = new ArrayList();
+    private List myRepositories = new ArrayList();
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        FSRepositoryFactory.setup();
+    }
+
+    protected void tearDown() throws Exception {
+        for (Iterator repositories = myRepositories.iterator(); repositories.hasNext();) {
+            ((SVNRepository) repositories.next()).closeSession();
+        }
+        for (Iterator dirs = myDirectories.iterator(); dirs.hasNext();) {
+            SVNFileUtil.deleteAll((File) dirs.next(), true);
+        }
+        super.tearDown();
+    }
+
+    protected File createDirectory(String name) throws IOException {
+        File dir = File.createTempFile("svnkit-" + getName() + "-" + name, ".tmp");
+        dir.delete();
+        dir.mkdirs();
+        myDirectories.add(dir);
+        return dir;
+    }
+
+    protected File createRepository(String name) throws SVNException, IOException {
+        File root = new File(createDirectory(name), "repos");
+        SVNRepositoryFactory.createLocalRepository(root, true, false);
+        return root;
+    }
+
+    protected SVNRepository openRepository(File root) throws SVNException {
+        SVNRepository repository = SVNRepositoryFactory.create(SVNURL.fromFile(root));
+        myRepositories.add(repository);
+        return repository;
+    }
+
+    protected FSFS openFSFS(File root) throws SVNException {
+        FSFS fsfs = new FSFS(root);
+        fsfs.open();
+        return fsfs;
+    }
+
+    /**
+     * Commits files with the given contents, adding them and their parent directories
+     * when they do not exist yet.
+     */
+    protected long commit(SVNRepository repository, String message, String[] paths, String[] contents) throws SVNException {
+        long revision = repository.getLatestRevision();
+        // paths are checked before the editor locks the session
+        List existing = new ArrayList();
+        for (int i = 0; i < paths.length; i++) {
+            for (String path = paths[i]; !"".equals(path); path = SVNPathUtil.removeTail(path)) {
+                if (!existing.contains(path) && repository.checkPath(path, revision) != SVNNodeKind.NONE) {
+                    existing.add(path);
+                }
+            }
+        }
+        ISVNEditor editor = repository.getCommitEditor(message, null);
+        editor.openRoot(-1);
+        SVNDeltaGenerator generator = new SVNDeltaGenerator();
+        for (int i = 0; i < paths.length; i++) {
+            String path = paths[i];
+            List parents = new ArrayList();
+            for (String parent = SVNPathUtil.removeTail(path); !"".equals(parent); parent = SVNPathUtil.removeTail(parent)) {
+                parents.add(0, parent);
+            }
+            for (Iterator dirs = parents.iterator(); dirs.hasNext();) {
+                String dir = (String) dirs.next();
+                if (existing.contains(dir)) {
+                    editor.openDir(dir, -1);
+                } else {
+                    editor.addDir(dir, null, -1);
+                    existing.add(dir);
+                }
+            }
+            if (existing.contains(path)) {
+                editor.openFile(path, -1);
+            } else {
+                editor.addFile(path, null, -1);
+                existing.add(path);
+            }
+            editor.applyTextDelta(path, null);
+            String checksum = generator.sendDelta(path, new ByteArrayInputStream(getBytes(contents[i])), editor, true);
+            editor.closeFile(path, checksum);
+            for (int j = 0; j < parents.size(); j++) {
+                editor.closeDir();
+            }
+        }
+        editor.closeDir();
+        SVNCommitInfo info = editor.closeEdit();
+        return info.getNewRevision();
+    }
+
+    protected long commit(SVNRepository repository, String path, String contents) throws SVNException {
+        return commit(repository, "changed " + path, new String[] {path}, new String[] {contents});
+    }
+
+    protected String readFile(SVNRepository repository, String path, long revision) throws SVNException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        repository.getFile(path, revision, null, out);
+        try {
+            return new String(out.toByteArray(), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    protected static byte[] getBytes(String contents) {
+        try {
+            return contents.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    protected static void writeFile(File file, String contents) throws IOException {
+        OutputStream os = null;
+        try {
+            os = SVNFileUtil.openFileForWriting(file);
+            os.write(getBytes(contents));
+        } catch (SVNException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            SVNFileUtil.closeFile(os);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.FSUpdateContext;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Measures checkouts and updates over file:// with file deltas computed on the calling thread
+ * and on worker threads (see {@link FSUpdateContext#setDeltaThreadsCount(int)}). The second
+ * revision changes a few lines in every file, so both operations are dominated by rebuilding
+ * file contents and computing deltas.
+ *
+ * args: reposDir [dirsCount] [filesPerDir] [fileSizeKB] [runCount] [threadsCount...]
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSUpdateDeltaBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("args: reposDir [dirsCount] [filesPerDir] [fileSizeKB] [runCount] [threadsCount...]");
+            System.exit(1);
+        }
+        FSRepositoryFactory.setup();
+
+        File reposDir = new File(args[0]);
+        int dirsCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int filesCount = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int fileSize = (args.length > 3 ? Integer.parseInt(args[3]) : 32) * 1024;
+        int runCount = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        int[] threadsCounts = new int[args.length > 5 ? args.length - 5 : 3];
+        for (int i = 0; i < threadsCounts.length; i++) {
+            threadsCounts[i] = args.length > 5 ? Integer.parseInt(args[5 + i]) : 1 << i;
+        }
+
+        int defaultThreadsCount = FSUpdateContext.getDeltaThreadsCount();
+        try {
+            SVNFileUtil.deleteAll(reposDir, true);
+            SVNURL url = SVNRepositoryFactory.createLocalRepository(reposDir, true, false);
+            SVNRepository repository = SVNRepositoryFactory.create(url);
+            try {
+                createTree(repository, dirsCount, filesCount, fileSize);
+                System.out.println(dirsCount * filesCount + " files of " + (fileSize / 1024) + " KB, " +
+                        Runtime.getRuntime().availableProcessors() + " processors");
+                CountingEditor editor = new CountingEditor();
+                // warm up
+                update(repository, -1, editor);
+                for (int i = 0; i < threadsCounts.length; i++) {
+                    FSUpdateContext.setDeltaThreadsCount(threadsCounts[i]);
+                    long checkoutTime = 0;
+                    long updateTime = 0;
+                    for (int j = 0; j < runCount; j++) {
+                        checkoutTime += update(repository, -1, editor);
+                        updateTime += update(repository, 1, editor);
+                    }
+                    System.out.println(threadsCounts[i] + " threads: checkout " + (checkoutTime / runCount) +
+                            " ms, update " + (updateTime / runCount) + " ms, " + (editor.myDeltaSize / 1024) + " KB of deltas");
+                }
+            } finally {
+                repository.closeSession();
+            }
+        } catch (SVNException svne) {
+            System.out.println(svne.getErrorMessage().getFullMessage());
+            System.exit(1);
+        } finally {
+            FSUpdateContext.setDeltaThreadsCount(defaultThreadsCount);
+        }
+    }
+
+    private static long update(SVNRepository repository, final long fromRevision, CountingEditor editor) throws SVNException {
+        long start = System.currentTimeMillis();
+        repository.update(-1, null, SVNDepth.INFINITY, false, new ISVNReporterBaton() {
+            public void report(ISVNReporter reporter) throws SVNException {
+                if (fromRevision < 0) {
+                    reporter.setPath("", null, 0, SVNDepth.INFINITY, true);
+                } else {
+                    reporter.setPath("", null, fromRevision, SVNDepth.INFINITY, false);
+                }
+                reporter.finishReport();
+            }
+        }, editor);
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void createTree(SVNRepository repository, int dirsCount, int filesCount, int fileSize) throws SVNException {
+        SVNDeltaGenerator generator = new SVNDeltaGenerator();
+        byte[] contents = new byte[fileSize];
+        for (int revision = 1; revision <= 2; revision++) {
+            ISVNEditor editor = repository.getCommitEditor("r" + revision, null);
+            editor.openRoot(-1);
+            for (int i = 0; i < dirsCount; i++) {
+                String dirPath = "dir" + i;
+                if (revision == 1) {
+                    editor.addDir(dirPath, null, -1);
+                } else {
+                    editor.openDir(dirPath, -1);
+                }
+                for (int j = 0; j < filesCount; j++) {
+                    String filePath = dirPath + "/file" + j + ".txt";
+                    fillContents(contents, i * filesCount + j, revision);
+                    if (revision == 1) {
+                        editor.addFile(filePath, null, -1);
+                    } else {
+                        editor.openFile(filePath, -1);
+                    }
+                    editor.applyTextDelta(filePath, null);
+                    String checksum = generator.sendDelta(filePath, new ByteArrayInputStream(contents), editor, true);
+                    editor.closeFile(filePath, checksum);
+                }
+                editor.closeDir();
+            }
+            editor.closeDir();
+            editor.closeEdit();
+        }
+    }
+
+    private static void fillContents(byte[] contents, int seed, int revision) {
+        long random = seed * 31 + 7;
+        for (int i = 0; i < contents.length; i++) {
+            random = (random * 1103515245 + 12345) & 0x7fffffff;
+            contents[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + (random >> 16) % 26);
+        }
+        if (revision > 1) {
+            for (int i = 0; i < contents.length; i += 4096) {
+                contents[i] = (byte) ('A' + revision % 26);
+            }
+        }
+    }
+
+    private static class CountingEditor implements ISVNEditor {
+
+        private long myDeltaSize;
+
+        public void targetRevision(long revision) throws SVNException {
+            myDeltaSize = 0;
+        }
+
+        public void openRoot(long revision) throws SVNException {
+        }
+
+        public void deleteEntry(String path, long revision) throws SVNException {
+        }
+
+        public void absentDir(String path) throws SVNException {
+        }
+
+        public void absentFile(String path) throws SVNException {
+        }
+
+        public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        }
+
+        public void openDir(String path, long revision) throws SVNException {
+        }
+
+        public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+        }
+
+        public void closeDir() throws SVNException {
+        }
+
+        public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        }
+
+        public void openFile(String path, long revision) throws SVNException {
+        }
+
+        public void changeFileProperty(String path, String propertyName, SVNPropertyValue propertyValue) throws SVNException {
+        }
+
+        public void closeFile(String path, String textChecksum) throws SVNException {
+        }
+
+        public SVNCommitInfo closeEdit() throws SVNException {
+            return null;
+        }
+
+        public void abortEdit() throws SVNException {
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            myDeltaSize += diffWindow.getDataLength();
+            return SVNFileUtil.DUMMY_OUT;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.FSUpdateContext;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Measures an update driven by a large report of a sparse, mixed-revision working copy:
+ * every other file is reported at an older revision and every tenth directory is excluded.
+ * Runs the same update with the report kept in memory and with the report spilled to disk.
+ *
+ * args: reposDir [dirsCount] [filesPerDir] [runCount]
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSUpdateReportBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("args: reposDir [dirsCount] [filesPerDir] [runCount]");
+            System.exit(1);
+        }
+        FSRepositoryFactory.setup();
+
+        File reposDir = new File(args[0]);
+        int dirsCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int filesCount = args.length > 2 ? Integer.parseInt(args[2]) : 250;
+        int runCount = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        try {
+            SVNFileUtil.deleteAll(reposDir, true);
+            SVNURL url = SVNRepositoryFactory.createLocalRepository(reposDir, true, false);
+            SVNRepository repository = SVNRepositoryFactory.create(url);
+            try {
+                createTree(repository, dirsCount, filesCount);
+                Reporter reporter = new Reporter(dirsCount, filesCount);
+                CountingEditor editor = new CountingEditor();
+                int defaultSpillSize = FSUpdateContext.getReportSpillSize();
+
+                // warm up
+                for (int i = 0; i < runCount; i++) {
+                    repository.update(-1, null, SVNDepth.INFINITY, false, reporter, editor);
+                }
+                System.out.println("report of " + reporter.myEntriesCount + " entries, " + editor.myEditsCount + " edits");
+
+                // the first round still warms up
+                for (int round = 0; round < 2; round++) {
+                    FSUpdateContext.setReportSpillSize(0);
+                    measure(repository, reporter, editor, runCount, "report on disk");
+                    FSUpdateContext.setReportSpillSize(Integer.MAX_VALUE);
+                    measure(repository, reporter, editor, runCount, "report in memory");
+                }
+                FSUpdateContext.setReportSpillSize(defaultSpillSize);
+            } finally {
+                repository.closeSession();
+            }
+        } catch (SVNException svne) {
+            System.out.println(svne.getErrorMessage().getFullMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void measure(SVNRepository repository, Reporter reporter, CountingEditor editor, int runCount, String name) throws SVNException {
+        System.gc();
+        reporter.myReportTime = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < runCount; i++) {
+            repository.update(-1, null, SVNDepth.INFINITY, false, reporter, editor);
+        }
+        long time = System.currentTimeMillis() - start;
+        System.out.println(name + ": " + (time / runCount) + " ms per update, " + 
+                (reporter.myReportTime / runCount) + " ms of them writing the report");
+    }
+
+    private static void createTree(SVNRepository repository, int dirsCount, int filesCount) throws SVNException {
+        SVNDeltaGenerator generator = new SVNDeltaGenerator();
+        for (int revision = 1; revision <= 2; revision++) {
+            ISVNEditor editor = repository.getCommitEditor("r" + revision, null);
+            editor.openRoot(-1);
+            for (int i = 0; i < dirsCount; i++) {
+                String dirPath = "dir" + i;
+                if (revision == 1) {
+                    editor.addDir(dirPath, null, -1);
+                } else {
+                    editor.openDir(dirPath, -1);
+                }
+                for (int j = 0; j < filesCount; j++) {
+                    // the second revision changes every hundredth file
+                    if (revision == 2 && j % 100 != 0) {
+                        continue;
+                    }
+                    String filePath = dirPath + "/file" + j + ".txt";
+                    if (revision == 1) {
+                        editor.addFile(filePath, null, -1);
+                    } else {
+                        editor.openFile(filePath, -1);
+                    }
+                    editor.applyTextDelta(filePath, null);
+                    byte[] contents = ("r" + revision + " contents of " + filePath + "\n").getBytes();
+                    String checksum = generator.sendDelta(filePath, new ByteArrayInputStream(contents), editor, true);
+                    editor.closeFile(filePath, checksum);
+                }
+                editor.closeDir();
+            }
+            editor.closeDir();
+            editor.closeEdit();
+        }
+    }
+
+    private static class Reporter implements ISVNReporterBaton {
+
+        private int myDirsCount;
+        private int myFilesCount;
+        private int myEntriesCount;
+        private long myReportTime;
+
+        public Reporter(int dirsCount, int filesCount) {
+            myDirsCount = dirsCount;
+            myFilesCount = filesCount;
+        }
+
+        public void report(ISVNReporter reporter) throws SVNException {
+            long start = System.currentTimeMillis();
+            myEntriesCount = 1;
+            reporter.setPath("", null, 2, SVNDepth.INFINITY, false);
+            for (int i = 0; i < myDirsCount; i++) {
+                String dirPath = "dir" + i;
+                if (i % 10 == 9) {
+                    reporter.setPath(dirPath, null, 2, SVNDepth.EXCLUDE, false);
+                    myEntriesCount++;
+                    continue;
+                }
+                for (int j = 0; j < myFilesCount; j += 2) {
+                    reporter.setPath(dirPath + "/file" + j + ".txt", null, 1, SVNDepth.INFINITY, false);
+                    myEntriesCount++;
+                }
+            }
+            myReportTime += System.currentTimeMillis() - start;
+            reporter.finishReport();
+        }
+    }
+
+    private static class CountingEditor implements ISVNEditor {
+
+        private int myEditsCount;
+
+        public void targetRevision(long revision) throws SVNException {
+            myEditsCount = 0;
+        }
+
+        public void openRoot(long revision) throws SVNException {
+        }
+
+        public void deleteEntry(String path, long revision) throws SVNException {
+            myEditsCount++;
+        }
+
+        public void absentDir(String path) throws SVNException {
+        }
+
+        public void absentFile(String path) throws SVNException {
+        }
+
+        public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+            myEditsCount++;
+        }
+
+        public void openDir(String path, long revision) throws SVNException {
+        }
+
+        public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+        }
+
+        public void closeDir() throws SVNException {
+        }
+
+        public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+            myEditsCount++;
+        }
+
+        public void openFile(String path, long revision) throws SVNException {
+            myEditsCount++;
+        }
+
+        public void changeFileProperty(String path, String propertyName, SVNPropertyValue propertyValue) throws SVNException {
+        }
+
+        public void closeFile(String path, String textChecksum) throws SVNException {
+        }
+
+        public SVNCommitInfo closeEdit() throws SVNException {
+            return null;
+        }
+
+        public void abortEdit() throws SVNException {
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            return SVNFileUtil.DUMMY_OUT;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSUpdateContext;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSUpdateReportTest extends FSTestCase {
+
+    private static final int FILES = 12;
+    private static final int REVISIONS = 13;
+
+    private int myDefaultSpillSize;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        myDefaultSpillSize = FSUpdateContext.getReportSpillSize();
+    }
+
+    protected void tearDown() throws Exception {
+        FSUpdateContext.setReportSpillSize(myDefaultSpillSize);
+        super.tearDown();
+    }
+
+    /*
+     * Every file is reported at its own revision, more than the source roots the update
+     * keeps, one is linked to another path and one is missing. The same session runs the
+     * update with the report in memory, on disk from the start, and spilled midway.
+     */
+    public void testSpilledReportsDriveTheSameUpdate() throws Exception {
+        File root = createRepository("repos");
+        SVNRepository repository = openRepository(root);
+        String[] paths = new String[FILES];
+        String[] contents = new String[FILES];
+        for (int revision = 1; revision <= REVISIONS; revision++) {
+            for (int i = 0; i < FILES; i++) {
+                paths[i] = "f" + i;
+                contents[i] = getContents(i, revision);
+            }
+            commit(repository, "r" + revision, paths, contents);
+        }
+
+        FSUpdateContext.setReportSpillSize(4 * 1024 * 1024);
+        List inMemory = update(repository);
+        FSUpdateContext.setReportSpillSize(0);
+        List spilled = update(repository);
+        FSUpdateContext.setReportSpillSize(100);
+        List spilledMidway = update(repository);
+
+        List expected = new ArrayList();
+        expected.add("add f" + (FILES - 1));
+        expected.add("delta f0 " + SVNFileUtil.computeChecksum(getContents(1, 5)));
+        for (int i = 1; i < FILES - 1; i++) {
+            expected.add("delta f" + i + " " + SVNFileUtil.computeChecksum(getContents(i, i + 1)));
+        }
+        Collections.sort(expected);
+        assertEquals(expected, inMemory);
+        assertEquals(inMemory, spilled);
+        assertEquals(inMemory, spilledMidway);
+    }
+
+    private List update(final SVNRepository repository) throws SVNException {
+        final SVNURL linkURL = repository.getLocation().appendPath("f1", false);
+        RecordingEditor editor = new RecordingEditor();
+        repository.update(REVISIONS, null, SVNDepth.INFINITY, false, new ISVNReporterBaton() {
+            public void report(ISVNReporter reporter) throws SVNException {
+                reporter.setPath("", null, 1, SVNDepth.INFINITY, false);
+                reporter.linkPath(linkURL, "f0", "opaquelocktoken:none", 5, SVNDepth.INFINITY, false);
+                for (int i = 1; i < FILES - 1; i++) {
+                    reporter.setPath("f" + i, null, i + 1, SVNDepth.INFINITY, false);
+                }
+                reporter.deletePath("f" + (FILES - 1));
+                reporter.finishReport();
+            }
+        }, editor);
+        Collections.sort(editor.myEvents);
+        return editor.myEvents;
+    }
+
+    private static String getContents(int file, int revision) {
+        return "file " + file + ", revision " + revision + "\n";
+    }
+
+    private static class RecordingEditor implements ISVNEditor {
+
+        private List myEvents = new ArrayList();
+
+        public void targetRevision(long revision) throws SVNException {
+        }
+
+        public void openRoot(long revision) throws SVNException {
+        }
+
+        public void deleteEntry(String path, long revision) throws SVNException {
+            myEvents.add("delete " + path);
+        }
+
+        public void absentDir(String path) throws SVNException {
+        }
+
+        public void absentFile(String path) throws SVNException {
+        }
+
+        public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+            myEvents.add("add " + path);
+        }
+
+        public void openDir(String path, long revision) throws SVNException {
+        }
+
+        public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+        }
+
+        public void closeDir() throws SVNException {
+        }
+
+        public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+            myEvents.add("add " + path);
+        }
+
+        public void openFile(String path, long revision) throws SVNException {
+        }
+
+        public void changeFileProperty(String path, String propertyName, SVNPropertyValue propertyValue) throws SVNException {
+        }
+
+        public void closeFile(String path, String textChecksum) throws SVNException {
+        }
+
+        public SVNCommitInfo closeEdit() throws SVNException {
+            return null;
+        }
+
+        public void abortEdit() throws SVNException {
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+            if (baseChecksum != null) {
+                myEvents.add("delta " + path + " " + baseChecksum);
+            }
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            return SVNFileUtil.DUMMY_OUT;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+}
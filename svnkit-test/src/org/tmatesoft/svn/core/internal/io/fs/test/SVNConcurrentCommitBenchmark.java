@@ -0,0 +1,159 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Like {@link SVNConcurrentCommitTest}, commits from several threads at once, but into a fresh
+ * local repository and measuring commit throughput and latency. Every thread works in its own
+ * directory, modifying one of its files per commit, so commits never conflict but still have
+ * to be merged with the ones committed in the meantime.
+ *
+ * args: reposDir [threadsCount] [commitsPerThread] [fileSizeKB]
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNConcurrentCommitBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("args: reposDir [threadsCount] [commitsPerThread] [fileSizeKB]");
+            System.exit(1);
+        }
+        FSRepositoryFactory.setup();
+
+        File reposDir = new File(args[0]);
+        int threadsCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int commitsCount = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int fileSize = (args.length > 3 ? Integer.parseInt(args[3]) : 64) * 1024;
+
+        try {
+            SVNFileUtil.deleteAll(reposDir, true);
+            SVNURL url = SVNRepositoryFactory.createLocalRepository(reposDir, true, false);
+            CommitThread[] threads = new CommitThread[threadsCount];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new CommitThread(SVNRepositoryFactory.create(url), "thread" + i, commitsCount, fileSize);
+                threads[i].prepare();
+            }
+
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].start();
+            }
+            long totalLatency = 0;
+            long maxLatency = 0;
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+                if (threads[i].myError != null) {
+                    System.out.println(threads[i].getName() + ": " + threads[i].myError.getErrorMessage().getFullMessage());
+                    System.exit(1);
+                }
+                totalLatency += threads[i].myTotalLatency;
+                maxLatency = Math.max(maxLatency, threads[i].myMaxLatency);
+            }
+            long time = System.currentTimeMillis() - start;
+
+            long commits = (long) threadsCount * commitsCount;
+            double perSecond = time > 0 ? ((double) commits * 1000) / time : commits;
+            System.out.println(threadsCount + " threads x " + commitsCount + " commits of " + (fileSize / 1024) + " KB files: " +
+                    time + " ms, " + (long) perSecond + " commits/sec");
+            System.out.println("commit latency: average " + (totalLatency / commits) + " ms, max " + maxLatency + " ms");
+        } catch (SVNException svne) {
+            System.out.println(svne.getErrorMessage().getFullMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.exit(1);
+        }
+    }
+
+    private static class CommitThread extends Thread {
+
+        private static final int FILES_COUNT = 4;
+
+        private SVNRepository myRepository;
+        private int myCommitsCount;
+        private byte[] myContents;
+        private long myTotalLatency;
+        private long myMaxLatency;
+        private SVNException myError;
+
+        public CommitThread(SVNRepository repository, String name, int commitsCount, int fileSize) {
+            super(name);
+            myRepository = repository;
+            myCommitsCount = commitsCount;
+            myContents = new byte[fileSize];
+            for (int i = 0; i < myContents.length; i++) {
+                myContents[i] = (byte) ('a' + (i * 31 + name.hashCode()) % 26);
+                if (i % 64 == 63) {
+                    myContents[i] = '\n';
+                }
+            }
+        }
+
+        public void prepare() throws SVNException {
+            ISVNEditor editor = myRepository.getCommitEditor("add " + getName(), null);
+            editor.openRoot(-1);
+            editor.addDir(getName(), null, -1);
+            for (int i = 0; i < FILES_COUNT; i++) {
+                String path = getName() + "/file" + i + ".txt";
+                editor.addFile(path, null, -1);
+                sendContents(editor, path, 0);
+            }
+            editor.closeDir();
+            editor.closeDir();
+            editor.closeEdit();
+        }
+
+        public void run() {
+            try {
+                for (int i = 1; i <= myCommitsCount; i++) {
+                    long start = System.currentTimeMillis();
+                    ISVNEditor editor = myRepository.getCommitEditor(getName() + " commit #" + i, null);
+                    editor.openRoot(-1);
+                    editor.openDir(getName(), -1);
+                    String path = getName() + "/file" + (i % FILES_COUNT) + ".txt";
+                    editor.openFile(path, -1);
+                    sendContents(editor, path, i);
+                    editor.closeDir();
+                    editor.closeDir();
+                    editor.closeEdit();
+                    long latency = System.currentTimeMillis() - start;
+                    myTotalLatency += latency;
+                    myMaxLatency = Math.max(myMaxLatency, latency);
+                }
+            } catch (SVNException e) {
+                myError = e;
+            } finally {
+                myRepository.closeSession();
+            }
+        }
+
+        private void sendContents(ISVNEditor editor, String path, int commit) throws SVNException {
+            myContents[(commit * 4099) % myContents.length] = (byte) ('A' + commit % 26);
+            editor.applyTextDelta(path, null);
+            String checksum = new SVNDeltaGenerator().sendDelta(path, new ByteArrayInputStream(myContents), editor, true);
+            editor.closeFile(path, checksum);
+        }
+    }
+}
@@ -15,6 +15,33 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
+
+import org.tmatesoft.svn.core.internal.delta.test.SVNDeltaGeneratorTest;
+import org.tmatesoft.svn.core.internal.delta.test.SVNDeltaRoundTripTest;
+import org.tmatesoft.svn.core.internal.delta.test.SVNDiffWindowApplyTest;
+import org.tmatesoft.svn.core.internal.delta.test.SVNDiffWindowCompressionTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSCacheTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSConcurrentCommitTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSDeltaWindowCacheTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSDeltaWindowSizeTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSDeltificationWalkTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSDirContentsCacheTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSFileChannelPoolTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSFulltextCacheTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSLocksIndexTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSLogIndexTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSMappedFileTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSMergeInfoIndexTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSPackedManifestTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSParallelVerifyTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSPrefetchingUpdateEditorTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSRevisionDatesTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSRevisionNodeCacheTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSRevisionPropertiesCacheTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSRepresentationCacheTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSRootRevNodesCacheTest;
+import org.tmatesoft.svn.core.internal.io.fs.test.FSUpdateReportTest;
+
 import de.regnis.q.sequence.QSequenceAllTests;
 
 /**
@@ -30,6 +57,31 @@ public class UnitTests extends TestCase {
     public static Test suite() {
         final TestSuite suite = new TestSuite("SVNKit Unit Tests");
         suite.addTest(QSequenceAllTests.suite());
+        suite.addTestSuite(FSCacheTest.class);
+        suite.addTestSuite(FSRevisionNodeCacheTest.class);
+        suite.addTestSuite(FSRootRevNodesCacheTest.class);
+        suite.addTestSuite(FSDirContentsCacheTest.class);
+        suite.addTestSuite(FSDeltaWindowCacheTest.class);
+        suite.addTestSuite(FSFulltextCacheTest.class);
+        suite.addTestSuite(FSLocksIndexTest.class);
+        suite.addTestSuite(FSLogIndexTest.class);
+        suite.addTestSuite(FSMergeInfoIndexTest.class);
+        suite.addTestSuite(FSPackedManifestTest.class);
+        suite.addTestSuite(FSRevisionPropertiesCacheTest.class);
+        suite.addTestSuite(FSRepresentationCacheTest.class);
+        suite.addTestSuite(FSConcurrentCommitTest.class);
+        suite.addTestSuite(FSPrefetchingUpdateEditorTest.class);
+        suite.addTestSuite(FSUpdateReportTest.class);
+        suite.addTestSuite(FSRevisionDatesTest.class);
+        suite.addTestSuite(FSFileChannelPoolTest.class);
+        suite.addTestSuite(FSMappedFileTest.class);
+        suite.addTestSuite(FSDeltaWindowSizeTest.class);
+        suite.addTestSuite(FSDeltificationWalkTest.class);
+        suite.addTestSuite(FSParallelVerifyTest.class);
+        suite.addTestSuite(SVNDeltaGeneratorTest.class);
+        suite.addTestSuite(SVNDeltaRoundTripTest.class);
+        suite.addTestSuite(SVNDiffWindowCompressionTest.class);
+        suite.addTestSuite(SVNDiffWindowApplyTest.class);
         return suite;
     }
 }
@@ -11,17 +11,16 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.InflaterInputStream;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.delta.SVNRangeTree.SVNRangeListNode;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.util.SVNZlibUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.io.diff.SVNDiffInstruction;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
@@ -43,6 +42,7 @@ public class SVNDeltaCombiner {
     private ByteBuffer myTarget;
     private ByteBuffer myRealTarget;
     private ByteBuffer myReadWindowBuffer;
+    private ByteBuffer myDecompressedWindowBuffer;
     
     private SVNRangeTree myRangeTree;
     private SVNOffsetsIndex myOffsetsIndex;
@@ -125,53 +125,46 @@ public class SVNDeltaCombiner {
     private int[] decompress(int instructionsLength, int dataLength) throws IOException {
         int originalPosition = myReadWindowBuffer.position();
         int realInstructionsLength = readOffset(myReadWindowBuffer);
-        byte[] instructionsData = new byte[realInstructionsLength];
-        byte[] data = null;
+        int compressedInstructionsLength = instructionsLength - (myReadWindowBuffer.position() - originalPosition);
+        int instructionsOffset = myReadWindowBuffer.position();
         int realDataLength = 0;
-        int compressedLength = instructionsLength - (myReadWindowBuffer.position() - originalPosition);
-        if (realInstructionsLength == compressedLength) {
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), instructionsData, 0, realInstructionsLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + realInstructionsLength);
-        } else {
-            byte[] compressedData = new byte[compressedLength];
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-            InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-            int read = 0;
-            while(read < realInstructionsLength) {
-                read += is.read(instructionsData, read, realInstructionsLength - read);
-            }
-        }
+        int compressedDataLength = 0;
+        int dataOffset = 0;
         if (dataLength > 0) {
+            myReadWindowBuffer.position(instructionsOffset + compressedInstructionsLength);
             originalPosition = myReadWindowBuffer.position();
             realDataLength = readOffset(myReadWindowBuffer);
-            compressedLength = dataLength - (myReadWindowBuffer.position() - originalPosition);
-            data = new byte[realDataLength];
-            if (compressedLength == realDataLength) {
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), data, 0, realDataLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + realDataLength);
-            } else {
-                byte[] compressedData = new byte[compressedLength];
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-                InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-                int read = 0;
-                while(read < realDataLength) {
-                    read += is.read(data, read, realDataLength - read);
-                }
-            }
+            compressedDataLength = dataLength - (myReadWindowBuffer.position() - originalPosition);
+            dataOffset = myReadWindowBuffer.position();
         }
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
-        myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, realInstructionsLength + realDataLength);
-        myReadWindowBuffer.put(instructionsData);
-        if (data != null) {
-            myReadWindowBuffer.put(data);
+        // sections are decompressed straight into a second buffer, which then takes the place of the read one
+        myDecompressedWindowBuffer = clearBuffer(myDecompressedWindowBuffer);
+        myDecompressedWindowBuffer = ensureBufferSize(myDecompressedWindowBuffer, realInstructionsLength + realDataLength);
+        byte[] src = myReadWindowBuffer.array();
+        byte[] dst = myDecompressedWindowBuffer.array();
+        int dstOffset = myDecompressedWindowBuffer.arrayOffset();
+        decompressSection(src, myReadWindowBuffer.arrayOffset() + instructionsOffset, compressedInstructionsLength, 
+                dst, dstOffset, realInstructionsLength);
+        if (dataLength > 0) {
+            decompressSection(src, myReadWindowBuffer.arrayOffset() + dataOffset, compressedDataLength, 
+                    dst, dstOffset + realInstructionsLength, realDataLength);
         }
+        ByteBuffer readBuffer = myReadWindowBuffer;
+        myReadWindowBuffer = myDecompressedWindowBuffer;
+        myDecompressedWindowBuffer = readBuffer;
         myReadWindowBuffer.position(0);
         myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
         return new int[] {realInstructionsLength, realDataLength};
     }
 
+    private static void decompressSection(byte[] src, int offset, int length, byte[] dst, int dstOffset, int realLength) throws IOException {
+        if (length == realLength) {
+            System.arraycopy(src, offset, dst, dstOffset, realLength);
+        } else {
+            SVNZlibUtil.inflate(src, offset, length, dst, dstOffset, realLength);
+        }
+    }
+
     public void skipWindow(FSFile file) throws SVNException {
         myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
         myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, 4096);
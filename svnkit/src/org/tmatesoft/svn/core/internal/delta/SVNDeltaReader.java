@@ -11,22 +11,18 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.zip.InflaterInputStream;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.SVNZlibUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
-import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 /**
@@ -38,6 +34,7 @@ import org.tmatesoft.svn.util.SVNLogType;
 public class SVNDeltaReader {
     
     private ByteBuffer myBuffer;
+    private byte[] myDecompressedBuffer;
     
     private int myHeaderBytes;
     private long myLastSourceOffset;
@@ -121,17 +118,15 @@ public class SVNDeltaReader {
             SVNDiffWindow window = null;
             int allDataLength = newDataLength + instructionsLength;
             if (myVersion == 1) {
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
                 int bufferPosition = myBuffer.position();
                 try {
-                    instructionsLength = deflate(instructionsLength, out);
-                    newDataLength = deflate(newDataLength, out);
+                    instructionsLength = inflate(instructionsLength, 0);
+                    newDataLength = inflate(newDataLength, instructionsLength);
                 } catch (IOException e) {
-                    SVNDebugLog.getDefaultLog().logSevere(SVNLogType.DEFAULT, e);
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW, e.getMessage());
+                    SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
                 }
-                byte[] bytes = out.toByteArray();
-                ByteBuffer decompressed = ByteBuffer.wrap(bytes);
-                decompressed.position(0);
+                ByteBuffer decompressed = ByteBuffer.wrap(myDecompressedBuffer, 0, instructionsLength + newDataLength);
                 window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength, instructionsLength, newDataLength);
                 window.setData(decompressed);
                 myBuffer.position(bufferPosition);
@@ -153,32 +148,32 @@ public class SVNDeltaReader {
         }
     }
     
-    private int deflate(int compressedLength, OutputStream out) throws IOException {
+    private int inflate(int compressedLength, int decompressedOffset) throws IOException {
         int originalPosition = myBuffer.position();
         int uncompressedLength = readOffset();
         // substract offset length from the total length.
-        if (uncompressedLength == (compressedLength - (myBuffer.position() - originalPosition))) {
-            int offset = myBuffer.arrayOffset() + myBuffer.position();
-            out.write(myBuffer.array(), offset, uncompressedLength);
+        int length = compressedLength - (myBuffer.position() - originalPosition);
+        ensureDecompressedBufferSize(decompressedOffset + uncompressedLength);
+        int offset = myBuffer.arrayOffset() + myBuffer.position();
+        if (uncompressedLength == length) {
+            System.arraycopy(myBuffer.array(), offset, myDecompressedBuffer, decompressedOffset, uncompressedLength);
         } else {
-            byte[] uncompressedData = new byte[uncompressedLength];
-            byte[] compressed = myBuffer.array();
-            int offset = myBuffer.arrayOffset() + myBuffer.position();
-            InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed, offset, compressedLength));
-            int read = 0;
-            while(read < uncompressedLength) {
-                int r = in.read(uncompressedData, read, uncompressedLength - read);
-                if (r < 0) {
-                    break;
-                }
-                read += r;
-            }
-            out.write(uncompressedData);
+            SVNZlibUtil.inflate(myBuffer.array(), offset, length, myDecompressedBuffer, decompressedOffset, uncompressedLength);
         }
         myBuffer.position(originalPosition + compressedLength);
         return uncompressedLength;
     }
 
+    private void ensureDecompressedBufferSize(int length) {
+        if (myDecompressedBuffer == null || myDecompressedBuffer.length < length) {
+            byte[] buffer = new byte[length*3/2];
+            if (myDecompressedBuffer != null) {
+                System.arraycopy(myDecompressedBuffer, 0, buffer, 0, myDecompressedBuffer.length);
+            }
+            myDecompressedBuffer = buffer;
+        }
+    }
+
     private void appendToBuffer(byte[] data, int offset, int length) {
         int limit = myBuffer.limit(); // amount of pending data?
         if (myBuffer.capacity() < limit + length) {
@@ -0,0 +1,201 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.util.Arrays;
+
+/**
+ * Variant of {@link SVNXDeltaAlgorithm} producing smaller deltas at some cost in speed.
+ * Like native Subversion's xdelta it also matches the target against the part of itself
+ * already encoded, which yields copy-from-target instructions for repeated content and
+ * compresses new files. All blocks sharing a checksum are tried, not only the first one,
+ * and of the matches found at a position, extended forward and backward into the pending
+ * insertion, the longest one is taken. Blocks are smaller so that shorter matches are found.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNExtendedXDeltaAlgorithm extends SVNDeltaAlgorithm {
+
+    private static final int MATCH_BLOCK_SIZE = 32;
+    private static final int MAX_CANDIDATES = 16;
+    private static final int HASH_MULTIPLIER = 0x01000193;
+    private static final int EMPTY = -1;
+
+    private static int ourOutgoingMultiplier;
+
+    static {
+        int multiplier = 1;
+        for (int i = 0; i < MATCH_BLOCK_SIZE - 1; i++) {
+            multiplier *= HASH_MULTIPLIER;
+        }
+        ourOutgoingMultiplier = multiplier;
+    }
+
+    private int[] myKeys;
+    private int[] myAddresses;
+    private int myMask;
+    private int myMatchAddress;
+    private int myMatchLength;
+    private int myMatchAdvance;
+
+    public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
+        if (bLength < MATCH_BLOCK_SIZE) {
+            copyFromNewData(b, 0, bLength);
+            return;
+        }
+        createMatchesTable(a, aLength, bLength);
+
+        int lo = 0;
+        int insertionPosition = 0;
+        int insertionLength = 0;
+        int nextTargetBlock = 0;
+        int checksum = 0;
+        boolean isChecksumValid = false;
+
+        while (lo + MATCH_BLOCK_SIZE <= bLength) {
+            while (nextTargetBlock + MATCH_BLOCK_SIZE <= lo) {
+                add(getChecksum(b, nextTargetBlock), aLength + nextTargetBlock);
+                nextTargetBlock += MATCH_BLOCK_SIZE;
+            }
+            if (!isChecksumValid) {
+                checksum = getChecksum(b, lo);
+                isChecksumValid = true;
+            }
+            if (findMatch(checksum, a, aLength, b, bLength, lo, insertionLength)) {
+                int backward = myMatchLength - myMatchAdvance;
+                insertionLength -= backward;
+                if (insertionLength > 0) {
+                    copyFromNewData(b, insertionPosition, insertionLength);
+                }
+                insertionLength = 0;
+                if (myMatchAddress < aLength) {
+                    copyFromSource(myMatchAddress, myMatchLength);
+                } else {
+                    copyFromTarget(myMatchAddress - aLength, myMatchLength);
+                }
+                lo += myMatchAdvance;
+                isChecksumValid = false;
+                continue;
+            }
+            if (insertionLength == 0) {
+                insertionPosition = lo;
+            }
+            insertionLength++;
+            if (lo + MATCH_BLOCK_SIZE < bLength) {
+                checksum = (checksum - (b[lo] & 0xFF) * ourOutgoingMultiplier) * HASH_MULTIPLIER + (b[lo + MATCH_BLOCK_SIZE] & 0xFF);
+            }
+            lo++;
+        }
+        if (lo < bLength) {
+            if (insertionLength == 0) {
+                insertionPosition = lo;
+            }
+            insertionLength += bLength - lo;
+        }
+        if (insertionLength > 0) {
+            copyFromNewData(b, insertionPosition, insertionLength);
+        }
+    }
+
+    /*
+     * Tries the blocks with the checksum of b at bPos and leaves the longest match in
+     * myMatchAddress (source position, or target position offset by aLength), myMatchLength
+     * and myMatchAdvance, the part of the match at and after bPos.
+     */
+    private boolean findMatch(int checksum, byte[] a, int aLength, byte[] b, int bLength, int bPos, int insertionLength) {
+        myMatchLength = 0;
+        int candidates = 0;
+        for (int slot = hash(checksum) & myMask; myAddresses[slot] != EMPTY && candidates < MAX_CANDIDATES; slot = (slot + 1) & myMask) {
+            if (myKeys[slot] != checksum) {
+                continue;
+            }
+            candidates++;
+            int address = myAddresses[slot];
+            byte[] data = address < aLength ? a : b;
+            int dataLength = address < aLength ? aLength : bLength;
+            int position = address < aLength ? address : address - aLength;
+            if (!equals(data, position, b, bPos, MATCH_BLOCK_SIZE)) {
+                continue;
+            }
+            int advance = MATCH_BLOCK_SIZE;
+            while (position + advance < dataLength && bPos + advance < bLength && data[position + advance] == b[bPos + advance]) {
+                advance++;
+            }
+            int backward = 0;
+            while (backward < insertionLength && position - backward > 0 && data[position - backward - 1] == b[bPos - backward - 1]) {
+                backward++;
+            }
+            if (advance + backward > myMatchLength) {
+                myMatchAddress = address - backward;
+                myMatchLength = advance + backward;
+                myMatchAdvance = advance;
+            }
+        }
+        return myMatchLength > 0;
+    }
+
+    private void createMatchesTable(byte[] a, int aLength, int bLength) {
+        int blocksCount = aLength / MATCH_BLOCK_SIZE + bLength / MATCH_BLOCK_SIZE;
+        int capacity = 16;
+        while (capacity < blocksCount * 2) {
+            capacity <<= 1;
+        }
+        if (myKeys == null || myKeys.length < capacity) {
+            myKeys = new int[capacity];
+            myAddresses = new int[capacity];
+        }
+        myMask = capacity - 1;
+        Arrays.fill(myAddresses, 0, capacity, EMPTY);
+        for (int i = 0; i + MATCH_BLOCK_SIZE <= aLength; i += MATCH_BLOCK_SIZE) {
+            add(getChecksum(a, i), i);
+        }
+    }
+
+    /*
+     * Adds a block unless there are enough blocks with the same checksum already,
+     * which keeps long runs of repeated data from making lookups slow.
+     */
+    private void add(int checksum, int address) {
+        int sameChecksumCount = 0;
+        int slot = hash(checksum) & myMask;
+        for (; myAddresses[slot] != EMPTY; slot = (slot + 1) & myMask) {
+            if (myKeys[slot] == checksum && ++sameChecksumCount >= MAX_CANDIDATES) {
+                return;
+            }
+        }
+        myKeys[slot] = checksum;
+        myAddresses[slot] = address;
+    }
+
+    private static int getChecksum(byte[] data, int offset) {
+        int checksum = 0;
+        for (int i = offset; i < offset + MATCH_BLOCK_SIZE; i++) {
+            checksum = checksum * HASH_MULTIPLIER + (data[i] & 0xFF);
+        }
+        return checksum;
+    }
+
+    private static int hash(int checksum) {
+        int h = checksum * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(byte[] a, int aPos, byte[] b, int bPos, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aPos + i] != b[bPos + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
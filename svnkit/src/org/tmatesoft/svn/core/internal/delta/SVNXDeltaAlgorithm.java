@@ -11,9 +11,7 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.util.Map;
-
-import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import java.util.Arrays;
 
 /**
  * @version 1.3
@@ -23,36 +21,49 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
     
     private static final int MATCH_BLOCK_SIZE = 64;
     
+    private MatchesTable myMatchesTable;
+    private PseudoAdler32 myAdler32;
+    private int myMatchPosition;
+    private int myMatchLength;
+    private int myMatchAdvance;
+    private int myInsertionPosition;
+    private int myInsertionLength;
+    
     public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
         if (bLength < MATCH_BLOCK_SIZE) {
             copyFromNewData(b, 0, bLength);
             return;
         }
-        PseudoAdler32 bAdler = new PseudoAdler32();
-        Map aMatchesTable = createMatchesTable(a, aLength, MATCH_BLOCK_SIZE, bAdler);
+        if (myAdler32 == null) {
+            myAdler32 = new PseudoAdler32();
+        }
+        PseudoAdler32 bAdler = myAdler32;
+        bAdler.reset();
+        MatchesTable aMatchesTable = createMatchesTable(a, aLength, MATCH_BLOCK_SIZE, bAdler);
         bAdler.reset();
         bAdler.add(b, 0, MATCH_BLOCK_SIZE);
 
         int lo = 0;
         int size = bLength;
-        Match previousInsertion = null;
+        myInsertionLength = 0;
         
         while(lo < size) {
-            Match match = findMatch(aMatchesTable, bAdler, a, aLength, b, bLength, lo, previousInsertion);
-            if (match == null) {
-                if (previousInsertion != null && previousInsertion.length > 0) {
-                    previousInsertion.length++;
+            boolean matched = findMatch(aMatchesTable, bAdler, a, aLength, b, bLength, lo);
+            if (!matched) {
+                if (myInsertionLength > 0) {
+                    myInsertionLength++;
                 } else {
-                    previousInsertion = new Match(lo, 1);
+                    myInsertionPosition = lo;
+                    myInsertionLength = 1;
                 }
             } else {
-                if (previousInsertion != null && previousInsertion.length > 0) {
-                    copyFromNewData(b, previousInsertion.position, previousInsertion.length);
-                    previousInsertion = null;
+                if (myInsertionLength > 0) {
+                    copyFromNewData(b, myInsertionPosition, myInsertionLength);
+                    myInsertionLength = 0;
                 }
-                copyFromSource(match.position, match.length);                
+                copyFromSource(myMatchPosition, myMatchLength);                
             }
-            int advance = match != null ? match.advance : 1;
+            int advance = matched ? myMatchAdvance : 1;
             for (int next = lo; next < lo + advance; next++) {
                 bAdler.remove(b[next]);
                 if (next + MATCH_BLOCK_SIZE < bLength) {
@@ -61,53 +72,60 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
             }
             lo += advance;
         }
-        if (previousInsertion != null && previousInsertion.length > 0) {
-            copyFromNewData(b, previousInsertion.position, previousInsertion.length);
-            previousInsertion = null;
+        if (myInsertionLength > 0) {
+            copyFromNewData(b, myInsertionPosition, myInsertionLength);
+            myInsertionLength = 0;
         }
     }
     
-    private static Match findMatch(Map matchesTable, PseudoAdler32 checksum, byte[] a, int aLength, byte[] b, int bLength, int bPos, Match previousInsertion) {
-        Match existingMatch = (Match) matchesTable.get(new Integer(checksum.getValue()));
-        if (existingMatch == null) {
-            return null;
+    /*
+     * Looks for a block of a matching the checksum of b at bPos and extends the match
+     * in both directions, taking bytes back from the pending insertion. The match is
+     * left in myMatchPosition, myMatchLength and myMatchAdvance.
+     */
+    private boolean findMatch(MatchesTable matchesTable, PseudoAdler32 checksum, byte[] a, int aLength, byte[] b, int bLength, int bPos) {
+        int position = matchesTable.get(checksum.getValue());
+        if (position < 0) {
+            return false;
         }
-        if (!equals(a, aLength, existingMatch.position, existingMatch.length, b, bLength, bPos)) {
-            return null;
+        int length = Math.min(MATCH_BLOCK_SIZE, aLength - position);
+        if (!equals(a, aLength, position, length, b, bLength, bPos)) {
+            return false;
         }
-        existingMatch = new Match(existingMatch.position, existingMatch.length);
-        existingMatch.advance = existingMatch.length;
+        int advance = length;
 
         // extend forward 
-        while(existingMatch.position + existingMatch.length < aLength &&
-                bPos + existingMatch.advance < bLength &&
-                a[existingMatch.position + existingMatch.length] == b[bPos + existingMatch.advance]) {
-            existingMatch.length++;
-            existingMatch.advance++;
+        while(position + length < aLength &&
+                bPos + advance < bLength &&
+                a[position + length] == b[bPos + advance]) {
+            length++;
+            advance++;
         }
         // extend backward
-        if (previousInsertion != null) {
-            while(existingMatch.position > 0 && bPos > 0 &&
-                    a[existingMatch.position - 1] == b[bPos -1] &&
-                    previousInsertion.length != 0) {
-                previousInsertion.length--;
-                bPos--;
-                existingMatch.position--;
-                existingMatch.length++;
-            }
-        }
-        return existingMatch;
+        while(position > 0 && bPos > 0 &&
+                a[position - 1] == b[bPos -1] &&
+                myInsertionLength != 0) {
+            myInsertionLength--;
+            bPos--;
+            position--;
+            length++;
+        }
+        myMatchPosition = position;
+        myMatchLength = length;
+        myMatchAdvance = advance;
+        return true;
     }
     
-    private static Map createMatchesTable(byte[] data, int dataLength, int blockLength, PseudoAdler32 adler32) {
-        Map matchesTable = new SVNHashMap();
+    private MatchesTable createMatchesTable(byte[] data, int dataLength, int blockLength, PseudoAdler32 adler32) {
+        if (myMatchesTable == null) {
+            myMatchesTable = new MatchesTable();
+        }
+        MatchesTable matchesTable = myMatchesTable;
+        matchesTable.clear((dataLength + blockLength - 1) / blockLength);
         for(int i = 0; i < dataLength; i+= blockLength) {
             int length = i + blockLength >= dataLength ? dataLength - i : blockLength;
             adler32.add(data, i, length);
-            Integer checksum = new Integer(adler32.getValue());
-            if (!matchesTable.containsKey(checksum)) {
-                matchesTable.put(checksum, new Match(i, length));
-            }
+            matchesTable.putIfAbsent(adler32.getValue(), i);
             adler32.reset();
         }
         return matchesTable;
@@ -125,16 +143,56 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
         return true;
     }
     
-    private static class Match {
+    /**
+     * Open addressing table of block checksums to the position of the first block of 
+     * source data with that checksum. Kept by the algorithm and reused for all windows.
+     */
+    private static class MatchesTable {
+        
+        private static final int EMPTY = -1;
         
-        public Match(int p, int l) {
-            position = p;
-            length = l;
+        private int[] myKeys;
+        private int[] myValues;
+        private int myMask;
+        
+        public void clear(int blocksCount) {
+            int capacity = 16;
+            while (capacity < blocksCount * 2) {
+                capacity <<= 1;
+            }
+            if (myKeys == null || myKeys.length < capacity) {
+                myKeys = new int[capacity];
+                myValues = new int[capacity];
+            }
+            myMask = capacity - 1;
+            Arrays.fill(myValues, 0, capacity, EMPTY);
+        }
+        
+        public int get(int key) {
+            for (int slot = hash(key) & myMask; ; slot = (slot + 1) & myMask) {
+                int value = myValues[slot];
+                if (value == EMPTY || myKeys[slot] == key) {
+                    return value;
+                }
+            }
+        }
+        
+        public void putIfAbsent(int key, int value) {
+            for (int slot = hash(key) & myMask; ; slot = (slot + 1) & myMask) {
+                if (myValues[slot] == EMPTY) {
+                    myKeys[slot] = key;
+                    myValues[slot] = value;
+                    return;
+                } else if (myKeys[slot] == key) {
+                    return;
+                }
+            }
         }
         
-        public int position;
-        public int length;
-        public int advance;
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
     }
 
     private static int ADLER32_MASK = 0x0000FFFF;
@@ -0,0 +1,238 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU map bounded by the total weight of its entries, which the FSFS caches
+ * are built on. Every entry is put with its weight, usually an estimate of its
+ * size in bytes; least recently used entries are evicted once the total weight
+ * exceeds the maximum, and a maximum of zero or less disables the cache.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCache {
+
+    private LinkedHashMap myEntries;
+    private long myMaxWeight;
+    private long myWeight;
+    private long myHitsCount;
+    private long myMissesCount;
+
+    /**
+     * Returns the value of the <code>name</code> system property parsed as a number,
+     * or <code>defaultValue</code> if it is not set or is not a number.
+     */
+    public static long getLongProperty(String name, long defaultValue) {
+        try {
+            return Long.parseLong(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns a key for data of the representation at <code>offset</code> in
+     * <code>revision</code> of the repository <code>repositoryKey</code> (see
+     * {@link FSFS#getRepositoryCacheKey()}), which may be <code>null</code>.
+     */
+    public static Object createKey(String repositoryKey, long revision, long offset) {
+        return new Key(repositoryKey, revision, offset, 0);
+    }
+
+    /**
+     * Same as {@link #createKey(String, long, long)} for the <code>index</code>-th part
+     * of that data.
+     */
+    public static Object createKey(String repositoryKey, long revision, long offset, long index) {
+        return new Key(repositoryKey, revision, offset, index);
+    }
+
+    public FSCache(long maxWeight) {
+        myMaxWeight = maxWeight;
+        myEntries = new LinkedHashMap(256, 0.75f, true);
+    }
+
+    public synchronized boolean isEnabled() {
+        return myMaxWeight > 0;
+    }
+
+    /**
+     * Returns the value cached under <code>key</code> and counts a hit, or counts
+     * a miss and returns <code>null</code>.
+     */
+    public synchronized Object get(Object key) {
+        Entry entry = myMaxWeight > 0 ? (Entry) myEntries.get(key) : null;
+        if (entry == null) {
+            myMissesCount++;
+            return null;
+        }
+        myHitsCount++;
+        return entry.myValue;
+    }
+
+    /**
+     * Tells whether a value is cached under <code>key</code>, without counting it
+     * as a lookup or making the entry recently used.
+     */
+    public synchronized boolean containsKey(Object key) {
+        return myEntries.containsKey(key);
+    }
+
+    /**
+     * Caches <code>value</code> unless the cache is disabled or <code>weight</code>
+     * exceeds the maximum on its own.
+     */
+    public synchronized void put(Object key, Object value, long weight) {
+        if (myMaxWeight <= 0 || weight > myMaxWeight) {
+            return;
+        }
+        Entry previous = (Entry) myEntries.put(key, new Entry(value, weight));
+        if (previous != null) {
+            myWeight -= previous.myWeight;
+        }
+        myWeight += weight;
+        evict();
+    }
+
+    public synchronized Object remove(Object key) {
+        Entry entry = (Entry) myEntries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        myWeight -= entry.myWeight;
+        return entry.myValue;
+    }
+
+    /**
+     * Drops the entry {@link #get(Object)} has just returned, when the caller finds
+     * it out of date; that lookup is counted as a miss instead of a hit.
+     */
+    public synchronized void removeStale(Object key) {
+        if (remove(key) != null) {
+            myHitsCount--;
+            myMissesCount++;
+        }
+    }
+
+    public synchronized void clear() {
+        myEntries.clear();
+        myWeight = 0;
+    }
+
+    /**
+     * Sets the maximum total weight, evicting entries above it; zero or less
+     * disables the cache and drops all entries without evicting them.
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        myMaxWeight = maxWeight;
+        if (myMaxWeight <= 0) {
+            clear();
+            return;
+        }
+        evict();
+    }
+
+    public synchronized long getMaxWeight() {
+        return myMaxWeight;
+    }
+
+    public synchronized long getWeight() {
+        return myWeight;
+    }
+
+    public synchronized int getSize() {
+        return myEntries.size();
+    }
+
+    public synchronized long getHitsCount() {
+        return myHitsCount;
+    }
+
+    public synchronized long getMissesCount() {
+        return myMissesCount;
+    }
+
+    public synchronized void resetStatistics() {
+        myHitsCount = 0;
+        myMissesCount = 0;
+    }
+
+    /**
+     * Called, with this cache locked, for every entry evicted to keep the total
+     * weight within the maximum.
+     */
+    protected void evicted(Object key, Object value) {
+    }
+
+    private void evict() {
+        for (Iterator entries = myEntries.entrySet().iterator(); myWeight > myMaxWeight && entries.hasNext();) {
+            Map.Entry eldest = (Map.Entry) entries.next();
+            entries.remove();
+            Entry entry = (Entry) eldest.getValue();
+            myWeight -= entry.myWeight;
+            evicted(eldest.getKey(), entry.myValue);
+        }
+    }
+
+    private static class Entry {
+
+        private Object myValue;
+        private long myWeight;
+
+        public Entry(Object value, long weight) {
+            myValue = value;
+            myWeight = weight;
+        }
+    }
+
+    private static class Key {
+
+        private String myRepositoryKey;
+        private long myRevision;
+        private long myOffset;
+        private long myIndex;
+
+        public Key(String repositoryKey, long revision, long offset, long index) {
+            myRepositoryKey = repositoryKey;
+            myRevision = revision;
+            myOffset = offset;
+            myIndex = index;
+        }
+
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj == null || obj.getClass() != Key.class) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return myRevision == key.myRevision && myOffset == key.myOffset && myIndex == key.myIndex &&
+                (myRepositoryKey == null ? key.myRepositoryKey == null : myRepositoryKey.equals(key.myRepositoryKey));
+        }
+
+        public int hashCode() {
+            final int PRIME = 31;
+            int result = 1;
+            result = PRIME * result + ((myRepositoryKey == null) ? 0 : myRepositoryKey.hashCode());
+            result = PRIME * result + (int) (myRevision ^ (myRevision >>> 32));
+            result = PRIME * result + (int) (myOffset ^ (myOffset >>> 32));
+            result = PRIME * result + (int) (myIndex ^ (myIndex >>> 32));
+            return result;
+        }
+    }
+}
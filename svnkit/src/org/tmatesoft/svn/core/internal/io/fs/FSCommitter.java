@@ -14,6 +14,7 @@ package org.tmatesoft.svn.core.internal.io.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -21,6 +22,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -38,6 +40,7 @@ import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNLockHandler;
 import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 
@@ -52,6 +55,7 @@ public class FSCommitter {
     private FSTransactionInfo myTxn;
     private Collection myLockTokens;
     private String myAuthor;
+    private Collection myRepresentationsToCache;
 
     public FSCommitter(FSFS fsfs, FSTransactionRoot txnRoot, FSTransactionInfo txn, Collection lockTokens, String author) {
         myFSFS = fsfs;
@@ -305,6 +309,9 @@ public class FSCommitter {
             break;
         }
         
+        updateIndexes();
+        myFSFS.purgeTxn(myTxn.getTxnId());
+        
         if (runPostCommitHook) {
             try {
                 FSHooks.runPostCommitHook(myFSFS.getRepositoryRoot(), newRevision);
@@ -455,8 +462,6 @@ public class FSCommitter {
         }
 
         final long newRevision = oldRev + 1;
-        final OutputStream protoFileOS = null;
-        final FSID newRootId = null;
         final FSWriteLock txnWriteLock = FSWriteLock.getWriteLockForTxn(myTxn.getTxnId(), myFSFS);
         synchronized (txnWriteLock) {
             try {
@@ -464,15 +469,8 @@ public class FSCommitter {
                 txnWriteLock.lock();
                 final File revisionPrototypeFile = myTxnRoot.getTransactionProtoRevFile();
                 final long offset = revisionPrototypeFile.length();
-                if (myFSFS.getRepositoryCacheManager() != null) {
-                    myFSFS.getRepositoryCacheManager().runWriteTransaction(new IFSSqlJetTransaction() {
-                        public void run() throws SVNException {
-                            commit(startNodeId, startCopyId, newRevision, protoFileOS, newRootId, myTxnRoot, revisionPrototypeFile, offset);
-                        }
-                    });
-                } else {
-                    commit(startNodeId, startCopyId, newRevision, protoFileOS, newRootId, myTxnRoot, revisionPrototypeFile, offset);
-                }
+                myRepresentationsToCache = myFSFS.getRepositoryCacheManager() != null ? new ArrayList() : null;
+                commit(startNodeId, startCopyId, newRevision, myTxnRoot, revisionPrototypeFile, offset);
                 File dstRevFile = myFSFS.getNewRevisionFile(newRevision);
                 SVNFileUtil.rename(revisionPrototypeFile, dstRevFile);
             } finally {
@@ -496,19 +494,77 @@ public class FSCommitter {
             SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
         }
         myFSFS.setYoungestRevisionCache(newRevision);
-        myFSFS.purgeTxn(myTxn.getTxnId());
         return newRevision;
     }
 
-    private void commit(String startNodeId, String startCopyId, long newRevision, OutputStream protoFileOS, FSID newRootId, FSTransactionRoot txnRoot, File revisionPrototypeFile, long offset)
+    /**
+     * Adds representations of the just committed revision to the representation cache and
+     * brings the repository indexes up to date. Runs after the repository write lock is
+     * released, so that other commits do not wait for it. The revision is committed already,
+     * so failures are not thrown but logged as warnings: its representations are then just
+     * not shared, and indexes catch up on their next update.
+     */
+    private void updateIndexes() throws SVNException {
+        IFSRepresentationCacheManager reposCacheManager = myFSFS.getRepositoryCacheManager();
+        Collection representations = myRepresentationsToCache;
+        myRepresentationsToCache = null;
+        FSWriteLock indexLock = FSWriteLock.getWriteLockForIndexes(myFSFS);
+        synchronized (indexLock) {
+            try {
+                indexLock.lock();
+                if (reposCacheManager != null && representations != null && !representations.isEmpty()) {
+                    try {
+                        reposCacheManager.insert(representations, false);
+                    } catch (SVNException e) {
+                        logIndexError("representation cache", e);
+                    }
+                }
+                try {
+                    FSRevisionDates.update(myFSFS);
+                } catch (SVNException e) {
+                    logIndexError("revision dates index", e);
+                }
+                FSLogIndex logIndex = FSLogIndex.getIndex(myFSFS);
+                if (logIndex != null) {
+                    try {
+                        logIndex.update(myFSFS);
+                    } catch (SVNException e) {
+                        logIndexError("log index", e);
+                    }
+                }
+                FSMergeInfoIndex mergeInfoIndex = FSMergeInfoIndex.getIndex(myFSFS);
+                if (mergeInfoIndex != null) {
+                    try {
+                        mergeInfoIndex.update(myFSFS);
+                    } catch (SVNException e) {
+                        logIndexError("mergeinfo index", e);
+                    }
+                }
+            } catch (SVNException e) {
+                logIndexError("indexes", e);
+            } finally {
+                indexLock.unlock();
+                FSWriteLock.release(indexLock);
+            }
+        }
+    }
+
+    private void logIndexError(String index, SVNException e) {
+        SVNDebugLog.getDefaultLog().log(SVNLogType.FSFS, "Failed to update the " + index + " of " + 
+                myFSFS.getRepositoryRoot() + ": " + e.getErrorMessage().getFullMessage(), Level.WARNING);
+        SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+    }
+
+    private void commit(String startNodeId, String startCopyId, long newRevision, FSTransactionRoot txnRoot, File revisionPrototypeFile, long offset)
             throws SVNException {
+        OutputStream protoFileOS = null;
         try {
             protoFileOS = SVNFileUtil.openFileForWriting(revisionPrototypeFile, true);
             FSID rootId = FSID.createTxnId("0", "0", myTxn.getTxnId());
 
             CountingOutputStream revWriter = new CountingOutputStream(protoFileOS, offset);
-            newRootId = txnRoot.writeFinalRevision(newRootId, revWriter, newRevision, rootId, 
-                    startNodeId, startCopyId);
+            FSID newRootId = txnRoot.writeFinalRevision(null, revWriter, newRevision, rootId, 
+                    startNodeId, startCopyId, myRepresentationsToCache);
             long changedPathOffset = txnRoot.writeFinalChangedPathInfo(revWriter);
 
             String offsetsLine = "\n" + newRootId.getOffset() + " " + changedPathOffset + "\n";
@@ -0,0 +1,133 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.nio.ByteBuffer;
+
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Process-wide cache of decoded (and, for svndiff1, inflated) delta windows
+ * of committed representations. Windows are keyed by repository (see
+ * {@link FSFS#getRepositoryCacheKey()}), revision and offset of the
+ * representation they belong to and by the window index within that
+ * representation, so readers walking delta chains that share a common base
+ * decode each shared window only once. A UUID alone is not enough to tell
+ * repositories apart, since hotcopies and mirrors share it.
+ *
+ * SVNDiffWindow keeps iteration state, so a new window object is created
+ * for every hit; only the decoded instruction and new data bytes are shared.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDeltaWindowCache {
+
+    private static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final int WINDOW_OVERHEAD = 96;
+
+    private static FSDeltaWindowCache ourInstance;
+
+    private FSCache myWindows;
+
+    public static synchronized FSDeltaWindowCache getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new FSDeltaWindowCache(FSCache.getLongProperty("svnkit.fsfs.windowCacheSize", DEFAULT_CACHE_SIZE));
+        }
+        return ourInstance;
+    }
+
+    public FSDeltaWindowCache(long maxMemory) {
+        myWindows = new FSCache(maxMemory);
+    }
+
+    public boolean isEnabled() {
+        return myWindows.isEnabled();
+    }
+
+    public CachedWindow get(String repositoryKey, long revision, long offset, int index) {
+        if (!myWindows.isEnabled()) {
+            return null;
+        }
+        return (CachedWindow) myWindows.get(FSCache.createKey(repositoryKey, revision, offset, index));
+    }
+
+    /**
+     * Caches a copy of <code>window</code>'s data. <code>encodedLength</code> is the number
+     * of bytes the window takes in the representation, so that readers may skip it on a hit.
+     */
+    public void put(String repositoryKey, long revision, long offset, int index, SVNDiffWindow window, long encodedLength) {
+        long size = WINDOW_OVERHEAD + window.getDataLength();
+        if (size > myWindows.getMaxWeight() / 4) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.allocate(window.getDataLength());
+        window.clone(data);
+        myWindows.put(FSCache.createKey(repositoryKey, revision, offset, index), new CachedWindow(window, data.array(), encodedLength), size);
+    }
+
+    public void clear() {
+        myWindows.clear();
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        myWindows.setMaxWeight(maxMemory);
+    }
+
+    public long getMemoryUsage() {
+        return myWindows.getWeight();
+    }
+
+    public int getSize() {
+        return myWindows.getSize();
+    }
+
+    public long getHitsCount() {
+        return myWindows.getHitsCount();
+    }
+
+    public long getMissesCount() {
+        return myWindows.getMissesCount();
+    }
+
+    public static class CachedWindow {
+
+        private long mySourceViewOffset;
+        private int mySourceViewLength;
+        private int myTargetViewLength;
+        private int myInstructionsLength;
+        private int myNewDataLength;
+        private byte[] myData;
+        private long myEncodedLength;
+
+        private CachedWindow(SVNDiffWindow window, byte[] data, long encodedLength) {
+            mySourceViewOffset = window.getSourceViewOffset();
+            mySourceViewLength = window.getSourceViewLength();
+            myTargetViewLength = window.getTargetViewLength();
+            myInstructionsLength = window.getInstructionsLength();
+            myNewDataLength = window.getNewDataLength();
+            myData = data;
+            myEncodedLength = encodedLength;
+        }
+
+        public SVNDiffWindow createWindow() {
+            SVNDiffWindow window = new SVNDiffWindow(mySourceViewOffset, mySourceViewLength, myTargetViewLength,
+                    myInstructionsLength, myNewDataLength);
+            window.setData(ByteBuffer.wrap(myData));
+            return window;
+        }
+
+        public long getEncodedLength() {
+            return myEncodedLength;
+        }
+    }
+}
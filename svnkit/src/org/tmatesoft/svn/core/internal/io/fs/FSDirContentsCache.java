@@ -0,0 +1,131 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+
+/**
+ * Size-weighted LRU cache of parsed directory contents of committed
+ * revisions. Entries are keyed by the directory representation location
+ * (revision and offset); since committed representations never change,
+ * a hit is returned without re-reading and re-verifying the representation.
+ *
+ * One cache is kept per repository (see {@link FSFS#getRepositoryCacheKey()}),
+ * so it is shared by all FSFS instances opened over the same repository, but
+ * not by hotcopies or mirrors of it, which have the same UUID.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDirContentsCache {
+
+    public static final long DEFAULT_CACHE_SIZE = 8 * 1024 * 1024;
+
+    private static final int ENTRY_OVERHEAD = 160;
+    private static final int DIR_OVERHEAD = 128;
+
+    private static final Map ourCaches = new SVNHashMap();
+
+    private FSCache myDirectories;
+
+    public static synchronized FSDirContentsCache getCache(String repositoryKey, long maxMemory) {
+        FSDirContentsCache cache = (FSDirContentsCache) ourCaches.get(repositoryKey);
+        if (cache == null) {
+            cache = new FSDirContentsCache(maxMemory);
+            ourCaches.put(repositoryKey, cache);
+        } else if (cache.getMaxMemory() != maxMemory) {
+            cache.setMaxMemory(maxMemory);
+        }
+        return cache;
+    }
+
+    public FSDirContentsCache(long maxMemory) {
+        myDirectories = new FSCache(maxMemory);
+    }
+
+    public Map get(FSRepresentation rep) {
+        if (rep == null || rep.isTxn()) {
+            return null;
+        }
+        Object key = FSCache.createKey(null, rep.getRevision(), rep.getOffset());
+        CachedDir cached = (CachedDir) myDirectories.get(key);
+        if (cached != null && !cached.myMD5HexDigest.equals(rep.getMD5HexDigest())) {
+            myDirectories.removeStale(key);
+            return null;
+        }
+        return cached != null ? new SVNHashMap(cached.myEntries) : null;
+    }
+
+    public void put(FSRepresentation rep, Map entries) {
+        if (!myDirectories.isEnabled() || rep == null || rep.isTxn() || rep.getMD5HexDigest() == null || entries == null) {
+            return;
+        }
+        Object key = FSCache.createKey(null, rep.getRevision(), rep.getOffset());
+        myDirectories.put(key, new CachedDir(new SVNHashMap(entries), rep.getMD5HexDigest()), estimateSize(entries));
+    }
+
+    public void clear() {
+        myDirectories.clear();
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        myDirectories.setMaxWeight(maxMemory);
+    }
+
+    public long getMaxMemory() {
+        return myDirectories.getMaxWeight();
+    }
+
+    public long getMemoryUsage() {
+        return myDirectories.getWeight();
+    }
+
+    public int getSize() {
+        return myDirectories.getSize();
+    }
+
+    public long getHitsCount() {
+        return myDirectories.getHitsCount();
+    }
+
+    public long getMissesCount() {
+        return myDirectories.getMissesCount();
+    }
+
+    private static long estimateSize(Map entries) {
+        long size = DIR_OVERHEAD;
+        for (Iterator names = entries.keySet().iterator(); names.hasNext();) {
+            String name = (String) names.next();
+            FSEntry entry = (FSEntry) entries.get(name);
+            size += ENTRY_OVERHEAD + 2 * name.length();
+            if (entry != null && entry.getId() != null) {
+                FSID id = entry.getId();
+                size += 2 * (id.getNodeID().length() + id.getCopyID().length());
+            }
+        }
+        return size;
+    }
+
+    private static class CachedDir {
+
+        private Map myEntries;
+        private String myMD5HexDigest;
+
+        public CachedDir(Map entries, String md5HexDigest) {
+            myEntries = entries;
+            myMD5HexDigest = md5HexDigest;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -70,6 +71,7 @@ public class FSFS {
     public static final String TXN_CURRENT_LOCK_FILE = "txn-current-lock";
     public static final String REVISION_PROPERTIES_DIR = "revprops";
     public static final String WRITE_LOCK_FILE = "write-lock";
+    public static final String INDEX_LOCK_FILE = "index-lock";
     public static final String LOCKS_DIR = "locks";
     public static final String DAV_DIR = "dav";
     public static final String TRANSACTIONS_DIR = "transactions";
@@ -82,6 +84,15 @@ public class FSFS {
     public static final String PACK_KIND_MANIFEST = "manifest";
     public static final String ENABLE_REP_SHARING_OPTION = "enable-rep-sharing";
     public static final String REP_SHARING_SECTION = "rep-sharing";
+    public static final String CACHES_SECTION = "caches";
+    public static final String DIR_CACHE_SIZE_OPTION = "dir-cache-size";
+    public static final String DELTIFICATION_SECTION = "deltification";
+    public static final String MAX_DELTIFICATION_WALK_OPTION = "max-deltification-walk";
+    public static final String DELTA_WINDOW_SIZE_OPTION = "delta-window-size";
+    public static final String COMPRESSION_LEVEL_OPTION = "compression-level";
+    public static final long DEFAULT_MAX_DELTIFICATION_WALK = 1023;
+    public static final String IO_SECTION = "io";
+    public static final String MEMORY_MAPPED_READS_OPTION = "memory-mapped-reads";
     public static final String PATH_CONFIG = "fsfs.conf";
     public static final String TXN_PATH_EXT = ".txn";
     public static final String TXN_MERGEINFO_PATH = "mergeinfo";
@@ -124,6 +135,7 @@ public class FSFS {
     private int myDBFormat;
     private int myReposFormat;
     private String myUUID;
+    private String myRepositoryCacheKey;
     private String myFSType;
     private File myRepositoryRoot;
     private File myRevisionsRoot;
@@ -148,10 +160,23 @@ public class FSFS {
     private long myMinUnpackedRevision;
     private SVNConfigFile myConfig;
     private IFSRepresentationCacheManager myReposCacheManager;
+    private FSDirContentsCache myDirContentsCache;
+    private long myDirContentsCacheSize;
+    private Map myPackedManifestsCache;
+    private boolean myIsMemoryMappedReads;
+    private long myMaxDeltificationWalk;
+    private int myDeltaWindowSize;
+    private int myDeltaCompressionLevel;
     
     public FSFS(File repositoryRoot) {
         myRepositoryRoot = repositoryRoot;
         myMaxFilesPerDirectory = 0;
+        myDirContentsCacheSize = FSDirContentsCache.DEFAULT_CACHE_SIZE;
+        myIsMemoryMappedReads = Boolean.getBoolean("svnkit.fsfs.mmap");
+        myMaxDeltificationWalk = DEFAULT_MAX_DELTIFICATION_WALK;
+        myPackedManifestsCache = new SVNHashMap();
+        myDeltaWindowSize = FSOutputStream.SVN_DELTA_WINDOW_SIZE;
+        myDeltaCompressionLevel = Deflater.DEFAULT_COMPRESSION;
     }
     
     public int getDBFormat() {
@@ -243,7 +268,67 @@ public class FSFS {
         if (config != null) {
             String optionValue = config.getPropertyValue(REP_SHARING_SECTION, ENABLE_REP_SHARING_OPTION);            
             isRepSharingAllowed = DefaultSVNOptions.getBooleanValue(optionValue, true);
+            
+            optionValue = config.getPropertyValue(CACHES_SECTION, DIR_CACHE_SIZE_OPTION);
+            if (optionValue != null) {
+                try {
+                    myDirContentsCacheSize = Long.parseLong(optionValue.trim()) * 1024;
+                } catch (NumberFormatException nfe) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, 
+                            "Config error: invalid integer value ''{0}'' of ''{1}'' option in ''{2}''", 
+                            new Object[] {optionValue, DIR_CACHE_SIZE_OPTION, getConfigFile()});
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+            }
+            
+            optionValue = config.getPropertyValue(DELTIFICATION_SECTION, MAX_DELTIFICATION_WALK_OPTION);
+            if (optionValue != null) {
+                try {
+                    myMaxDeltificationWalk = Long.parseLong(optionValue.trim());
+                } catch (NumberFormatException nfe) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, 
+                            "Config error: invalid integer value ''{0}'' of ''{1}'' option in ''{2}''", 
+                            new Object[] {optionValue, MAX_DELTIFICATION_WALK_OPTION, getConfigFile()});
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+            }
+
+            optionValue = config.getPropertyValue(DELTIFICATION_SECTION, DELTA_WINDOW_SIZE_OPTION);
+            if (optionValue != null) {
+                try {
+                    myDeltaWindowSize = Integer.parseInt(optionValue.trim()) * 1024;
+                } catch (NumberFormatException nfe) {
+                    myDeltaWindowSize = -1;
+                }
+                if (myDeltaWindowSize <= 0 || myDeltaWindowSize > FSOutputStream.SVN_DELTA_WINDOW_SIZE) {
+                    // native Subversion can not read larger windows
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, 
+                            "Config error: invalid window size ''{0}'' of ''{1}'' option in ''{2}'', expected 1 to {3} KB", 
+                            new Object[] {optionValue, DELTA_WINDOW_SIZE_OPTION, getConfigFile(), 
+                            String.valueOf(FSOutputStream.SVN_DELTA_WINDOW_SIZE / 1024)});
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+            }
+
+            optionValue = config.getPropertyValue(DELTIFICATION_SECTION, COMPRESSION_LEVEL_OPTION);
+            if (optionValue != null) {
+                try {
+                    myDeltaCompressionLevel = Integer.parseInt(optionValue.trim());
+                } catch (NumberFormatException nfe) {
+                    myDeltaCompressionLevel = -2;
+                }
+                if (myDeltaCompressionLevel < Deflater.NO_COMPRESSION || myDeltaCompressionLevel > Deflater.BEST_COMPRESSION) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, 
+                            "Config error: invalid compression level ''{0}'' of ''{1}'' option in ''{2}''", 
+                            new Object[] {optionValue, COMPRESSION_LEVEL_OPTION, getConfigFile()});
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+            }
+
+            optionValue = config.getPropertyValue(IO_SECTION, MEMORY_MAPPED_READS_OPTION);
+            myIsMemoryMappedReads = DefaultSVNOptions.getBooleanValue(optionValue, myIsMemoryMappedReads);
         }
+        myDirContentsCache = null;
         
         if (myDBFormat >= MIN_REP_SHARING_FORMAT && isRepSharingAllowed) {
             myReposCacheManager = FSRepresentationCacheUtil.open(this);
@@ -320,6 +405,25 @@ public class FSFS {
         return myUUID;
     }
     
+    /**
+     * Returns the key under which process-wide caches keep data of this repository: its UUID
+     * together with the canonical path of its db directory. The UUID alone is not enough, since
+     * hotcopies, mirrors and loaded copies of a repository share it.
+     */
+    public String getRepositoryCacheKey() throws SVNException {
+        if (myRepositoryCacheKey == null) {
+            File dbRoot = getDBRoot();
+            String path = null;
+            try {
+                path = dbRoot.getCanonicalPath();
+            } catch (IOException e) {
+                path = dbRoot.getAbsolutePath();
+            }
+            myRepositoryCacheKey = getUUID() + ":" + path;
+        }
+        return myRepositoryCacheKey;
+    }
+
     public File getDBRoot() {
         if (myDBRoot == null) {
             myDBRoot = new File(myRepositoryRoot, DB_DIR);
@@ -327,6 +431,10 @@ public class FSFS {
         return myDBRoot;
     }
 
+    public File getIndexLockFile() {
+        return new File(getDBRoot(), INDEX_LOCK_FILE);
+    }
+
     public File getWriteLockFile() {
         if (myWriteLockFile == null) {
             myWriteLockFile = new File(getDBRoot(), WRITE_LOCK_FILE);
@@ -430,29 +538,39 @@ public class FSFS {
     
     public long getDatedRevision(Date date) throws SVNException {
         long latest = getYoungestRevision();
+        FSRevisionDates dates = FSRevisionDates.open(this);
+        // an array covering more revisions than there are was not built for this history
+        if (dates != null && dates.getRevisionsCount() <= latest + 1) {
+            // recorded times are trusted while searching, only the ones deciding the result are checked
+            long revision = getDatedRevision(date, latest, dates);
+            if (dates.isCurrent(this, revision) && (revision >= latest || dates.isCurrent(this, revision + 1))) {
+                return revision;
+            }
+        }
+        return getDatedRevision(date, latest, null);
+    }
+
+    private long getDatedRevision(Date date, long latest, FSRevisionDates dates) throws SVNException {
         long top = latest;
         long bottom = 0;
         long middle;
-        Date currentTime = null;
 
         while (bottom <= top) {
             middle = (top + bottom) / 2;
-            currentTime = getRevisionTime(middle);
-            if (currentTime.compareTo(date) > 0) {
+            int comparison = compareRevisionTime(middle, date, dates);
+            if (comparison > 0) {
                 if ((middle - 1) < 0) {
                     return 0;
                 }
-                Date prevTime = getRevisionTime(middle - 1);
-                if (prevTime.compareTo(date) < 0) {
+                if (compareRevisionTime(middle - 1, date, dates) < 0) {
                     return middle - 1;
                 }
                 top = middle - 1;
-            } else if (currentTime.compareTo(date) < 0) {
+            } else if (comparison < 0) {
                 if ((middle + 1) > latest) {
                     return latest;
                 }
-                Date nextTime = getRevisionTime(middle + 1);
-                if (nextTime.compareTo(date) > 0) {
+                if (compareRevisionTime(middle + 1, date, dates) > 0) {
                     return middle;
                 }
                 bottom = middle + 1;
@@ -572,12 +690,22 @@ public class FSFS {
     
     public SVNProperties getRevisionProperties(long revision) throws SVNException {
         ensureRevisionsExists(revision);
-        FSFile file = new FSFile(getRevisionPropertiesFile(revision, false));
+        File revPropsFile = getRevisionPropertiesFile(revision, false);
+        FSRevisionPropertiesCache cache = FSRevisionPropertiesCache.getInstance();
+        SVNProperties properties = cache.get(revPropsFile);
+        if (properties != null) {
+            return properties;
+        }
+        long length = revPropsFile.length();
+        long lastModified = revPropsFile.lastModified();
+        FSFile file = new FSFile(revPropsFile);
         try {
-            return file.readProperties(false, true);
+            properties = file.readProperties(false, true);
         } finally {
             file.close();
         }
+        cache.put(revPropsFile, length, lastModified, properties);
+        return properties;
     }
 
     public FSRevisionRoot createRevisionRoot(long revision) throws SVNException {
@@ -617,6 +745,10 @@ public class FSFS {
             File file = new File(getTransactionDir(id.getTxnID()), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID());
             revisionFile = new FSFile(file);
         } else {
+            FSRevisionNode cachedNode = getRevisionNodeCache().get(getRepositoryCacheKey(), id);
+            if (cachedNode != null) {
+                return cachedNode;
+            }
             revisionFile = openAndSeekRevision(id.getRevision(), id.getOffset());
         }
 
@@ -631,9 +763,57 @@ public class FSFS {
         if (node.isFreshTxnRoot()) {
             node.setFreshRootPredecessorId(node.getPredecessorId());
         }
+        if (!id.isTxn() && id.equals(node.getId())) {
+            getRevisionNodeCache().put(getRepositoryCacheKey(), node);
+        }
         return node;
     }
     
+    public FSRevisionNodeCache getRevisionNodeCache() {
+        return FSRevisionNodeCache.getInstance();
+    }
+    
+    public long getMaxDeltificationWalk() {
+        return myMaxDeltificationWalk;
+    }
+
+    /**
+     * Tells whether revision and pack files are read through memory mappings,
+     * which outlive this instance (see {@link FSMappedFile}).
+     */
+    public boolean isMemoryMappedReads() {
+        return myIsMemoryMappedReads;
+    }
+
+    public void setMemoryMappedReads(boolean memoryMapped) {
+        myIsMemoryMappedReads = memoryMapped;
+    }
+
+    /**
+     * Returns the size of delta windows file contents are stored in, 100 kilobytes unless
+     * configured smaller. Native Subversion can not read windows larger than that, so larger
+     * values are rejected.
+     */
+    public int getDeltaWindowSize() {
+        return myDeltaWindowSize;
+    }
+
+    /**
+     * Returns the zlib compression level of delta windows stored in repositories of format 2
+     * and later, from 0, windows stored as is, to 9, or <code>Deflater.DEFAULT_COMPRESSION</code>
+     * unless configured.
+     */
+    public int getDeltaCompressionLevel() {
+        return myDeltaCompressionLevel;
+    }
+
+    public FSDirContentsCache getDirContentsCache() throws SVNException {
+        if (myDirContentsCache == null) {
+            myDirContentsCache = FSDirContentsCache.getCache(getRepositoryCacheKey(), myDirContentsCacheSize);
+        }
+        return myDirContentsCache;
+    }
+    
     public Map getDirContents(FSRevisionNode revNode) throws SVNException {
         FSRepresentation txtRep = revNode.getTextRepresentation();
         if (txtRep != null && txtRep.isTxn()) {
@@ -651,6 +831,11 @@ public class FSFS {
             }
             return entries;
         } else if (txtRep != null) {
+            FSDirContentsCache dirContentsCache = getDirContentsCache();
+            Map cachedEntries = dirContentsCache.get(txtRep);
+            if (cachedEntries != null) {
+                return cachedEntries;
+            }
             FSFile revisionFile = null;
             
             try {
@@ -673,7 +858,9 @@ public class FSFS {
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
 
-                return parsePlainRepresentation(rawEntries, false);
+                Map entries = parsePlainRepresentation(rawEntries, false);
+                dirContentsCache.put(txtRep, entries);
+                return entries;
             } finally {
                 if(revisionFile != null){
                     revisionFile.close();
@@ -875,6 +1062,8 @@ public class FSFS {
             SVNFileUtil.closeFile(uuidOS);
         }
         SVNFileUtil.rename(uniqueFile, getUUIDFile());
+        myUUID = null;
+        myRepositoryCacheKey = null;
     }
     
     public File getRevisionPropertiesFile(long revision, boolean returnMissing) throws SVNException {
@@ -938,8 +1127,26 @@ public class FSFS {
         synchronized (writeLock) {
             try {
                 writeLock.lock();
-                SVNWCProperties revProps = new SVNWCProperties(getRevisionPropertiesFile(revision, false), null);
+                File revPropsFile = getRevisionPropertiesFile(revision, false);
+                SVNWCProperties revProps = new SVNWCProperties(revPropsFile, null);
                 revProps.setPropertyValue(propertyName, propertyValue);
+                FSRevisionPropertiesCache.getInstance().invalidate(revPropsFile);
+                FSWriteLock indexLock = FSWriteLock.getWriteLockForIndexes(this);
+                synchronized (indexLock) {
+                    try {
+                        indexLock.lock();
+                        if (SVNRevisionProperty.DATE.equals(propertyName)) {
+                            FSRevisionDates.updateRevisionTime(this, revision);
+                        }
+                        FSLogIndex logIndex = FSLogIndex.getIndex(this);
+                        if (logIndex != null) {
+                            logIndex.updateRevisionProperties(this, revision);
+                        }
+                    } finally {
+                        indexLock.unlock();
+                        FSWriteLock.release(indexLock);
+                    }
+                }
             } finally {
                 writeLock.unlock();
                 FSWriteLock.release(writeLock);
@@ -1142,6 +1349,36 @@ public class FSFS {
             }
             children.clear();
         }
+
+        FSLocksIndex index = getLocksIndexForUpdate();
+        if (index != null) {
+            index.lockRemoved(lock.getPath());
+        }
+    }
+
+    /**
+     * Reports locks on <code>repositoryPath</code> and beneath it to <code>handler</code>, 
+     * removing expired ones when <code>haveWriteLock</code> is <span class="javakeyword">true</span>.
+     * Uses the {@link FSLocksIndex locks index} when it is enabled and walks digest files otherwise.
+     * Lock checks made before changing the repository should walk digest files instead, 
+     * which is what {@link FSCommitter#allowLockedOperation} does.
+     */
+    public void getLocks(String repositoryPath, ISVNLockHandler handler, boolean haveWriteLock) throws SVNException {
+        repositoryPath = SVNPathUtil.canonicalizeAbsolutePath(repositoryPath);
+        FSLocksIndex index = getLocksIndex(haveWriteLock);
+        if (index == null) {
+            walkDigestFiles(getDigestFileFromRepositoryPath(repositoryPath), handler, haveWriteLock);
+            return;
+        }
+        Date current = new Date(System.currentTimeMillis());
+        for (Iterator locks = index.getLocks(repositoryPath).iterator(); locks.hasNext();) {
+            SVNLock lock = (SVNLock) locks.next();
+            if (lock.getExpirationDate() == null || current.compareTo(lock.getExpirationDate()) < 0) {
+                handler.handleLock(null, lock, null);
+            } else if (haveWriteLock) {
+                deleteLock(lock);
+            }
+        }
     }
 
     public void walkDigestFiles(File digestFile, ISVNLockHandler getLocksHandler, boolean haveWriteLock) throws SVNException {
@@ -1200,6 +1437,23 @@ public class FSFS {
             lockProps = new SVNProperties();
         }
 
+        SVNLock lock = parseLockProperties(lockProps);
+        
+        String childEntries = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.CHILDREN_LOCK_KEY));
+        if (children != null && childEntries != null) {
+            String[] digests = childEntries.split("\n");
+            for (int i = 0; i < digests.length; i++) {
+                children.add(digests[i]);
+            }
+        }
+        return lock;
+    }
+    
+    /**
+     * Creates a lock out of <code>lockProps</code> as stored in a digest file, returns
+     * <span class="javakeyword">null</span> if they do not describe a lock.
+     */
+    public SVNLock parseLockProperties(SVNProperties lockProps) throws SVNException {
         SVNLock lock = null;
         String lockPath = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.PATH_LOCK_KEY));
         if (lockPath != null) {
@@ -1228,16 +1482,27 @@ public class FSFS {
             String comment = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.COMMENT_LOCK_KEY));
             lock = new FSLock(lockPath, lockToken, lockOwner, comment, creationDate, expirationDate, "1".equals(davComment));
         }
-        
-        String childEntries = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.CHILDREN_LOCK_KEY));
-        if (children != null && childEntries != null) {
-            String[] digests = childEntries.split("\n");
-            for (int i = 0; i < digests.length; i++) {
-                children.add(digests[i]);
-            }
-        }
         return lock;
     }
+
+    public static SVNProperties createLockProperties(SVNLock lock, boolean isDAVComment) {
+        SVNProperties props = new SVNProperties();
+        props.put(FSFS.PATH_LOCK_KEY, lock.getPath());
+        props.put(FSFS.OWNER_LOCK_KEY, lock.getOwner());
+        props.put(FSFS.TOKEN_LOCK_KEY, lock.getID());
+        String isDAVCommentValue = isDAVComment ? "1" : "0";
+        props.put(FSFS.IS_DAV_COMMENT_LOCK_KEY, isDAVCommentValue);
+        if (lock.getComment() != null) {
+            props.put(FSFS.COMMENT_LOCK_KEY, lock.getComment());
+        }
+        if (lock.getCreationDate() != null) {
+            props.put(FSFS.CREATION_DATE_LOCK_KEY, SVNDate.formatDate(lock.getCreationDate()));
+        }
+        if (lock.getExpirationDate() != null) {
+            props.put(FSFS.EXPIRATION_DATE_LOCK_KEY, SVNDate.formatDate(lock.getExpirationDate()));
+        }
+        return props;
+    }
     
     public File getDigestFileFromRepositoryPath(String repositoryPath) throws SVNException {
         String digest = getDigestFromRepositoryPath(repositoryPath);
@@ -1618,7 +1883,7 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", new Long(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return new FSFile(revisionFile);
+        return new FSFile(revisionFile, FSFileChannelPool.getInstance(), myIsMemoryMappedReads);
     }
 
     protected FSFile getPackOrRevisionFSFile(long revision) throws SVNException {
@@ -1627,7 +1892,7 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", new Long(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return new FSFile(file);
+        return new FSFile(file, FSFileChannelPool.getInstance(), myIsMemoryMappedReads);
     }
 
     protected File getAbsoluteRevisionPath(long revision) throws SVNException {
@@ -1743,23 +2008,49 @@ public class FSFS {
     }
     
     protected long getPackedOffset(long revision) throws SVNException {
-        //TODO: later on introduce invoking memcache here to fetch\store the requested data
-        //long shard = revision / myMaxFilesPerDirectory;
+        long shard = revision / myMaxFilesPerDirectory;
+        long[] manifest = null;
+        synchronized (myPackedManifestsCache) {
+            manifest = (long[]) myPackedManifestsCache.get(new Long(shard));
+        }
+        if (manifest == null) {
+            manifest = readPackedManifest(revision);
+            synchronized (myPackedManifestsCache) {
+                myPackedManifestsCache.put(new Long(shard), manifest);
+            }
+        }
+        
+        int index = (int) (revision % myMaxFilesPerDirectory);
+        if (index >= manifest.length) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Assertion failed: offset for revision {0} is null", 
+                    String.valueOf(revision));
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return manifest[index];
+    }
+
+    private long[] readPackedManifest(long revision) throws SVNException {
         File manifestFile = getPackedRevPath(revision, PACK_KIND_MANIFEST);
         BufferedReader reader = null;
-        LinkedList manifest = new LinkedList();
+        long[] manifest = new long[(int) myMaxFilesPerDirectory];
+        int count = 0;
         try {
             reader = new BufferedReader(new InputStreamReader(SVNFileUtil.openFileForReading(manifestFile)));
             String line = null;
             while ((line = reader.readLine()) != null) {
-                Long offset = null;
+                long offset = -1;
                 try {
-                    offset = Long.valueOf(line);
+                    offset = Long.parseLong(line);
                 } catch (NumberFormatException nfe) {
                     SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT);
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
-                manifest.add(offset);
+                if (count == manifest.length) {
+                    long[] expanded = new long[manifest.length * 2 + 1];
+                    System.arraycopy(manifest, 0, expanded, 0, count);
+                    manifest = expanded;
+                }
+                manifest[count++] = offset;
             }
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
@@ -1768,13 +2059,12 @@ public class FSFS {
             SVNFileUtil.closeFile(reader);
         }
         
-        Long revOffsetLong = (Long) manifest.get((int) (revision % myMaxFilesPerDirectory));
-        if (revOffsetLong == null) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Assertion failed: offset for revision {0} is null", 
-                    String.valueOf(revision));
-            SVNErrorManager.error(err, SVNLogType.FSFS);
+        if (count != manifest.length) {
+            long[] trimmed = new long[count];
+            System.arraycopy(manifest, 0, trimmed, 0, count);
+            manifest = trimmed;
         }
-        return revOffsetLong.longValue();
+        return manifest;
     }
 
     private SVNConfigFile loadConfig() {
@@ -1891,6 +2181,7 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "FATAL error: attempted to set a null lock");
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
+        SVNLock newLock = lock;
         String lastChild = "";
         String path = lock.getPath();
         Collection children = new ArrayList();
@@ -1921,6 +2212,27 @@ public class FSFS {
             }
             children.clear();
         }
+
+        FSLocksIndex index = getLocksIndexForUpdate();
+        if (index != null) {
+            index.lockAdded(newLock, isDAVComment);
+        }
+    }
+
+    private FSLocksIndex getLocksIndex(boolean haveWriteLock) throws SVNException {
+        if (!FSLocksIndex.isEnabled()) {
+            return null;
+        }
+        FSLocksIndex index = FSLocksIndex.getIndex(this);
+        return index.update(this, haveWriteLock) ? index : null;
+    }
+
+    private FSLocksIndex getLocksIndexForUpdate() throws SVNException {
+        if (!FSLocksIndex.isEnabled()) {
+            FSLocksIndex.getIndex(this).remove();
+            return null;
+        }
+        return getLocksIndex(true);
     }
 
     private boolean ensureDirExists(File dir, boolean create) {
@@ -1948,24 +2260,7 @@ public class FSFS {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
         
-        SVNProperties props = new SVNProperties();
-        
-        if (lock != null) {
-            props.put(FSFS.PATH_LOCK_KEY, lock.getPath());
-            props.put(FSFS.OWNER_LOCK_KEY, lock.getOwner());
-            props.put(FSFS.TOKEN_LOCK_KEY, lock.getID());
-            String isDAVCommentValue = isDAVComment ? "1" : "0";
-            props.put(FSFS.IS_DAV_COMMENT_LOCK_KEY, isDAVCommentValue);
-            if (lock.getComment() != null) {
-                props.put(FSFS.COMMENT_LOCK_KEY, lock.getComment());
-            }
-            if (lock.getCreationDate() != null) {
-                props.put(FSFS.CREATION_DATE_LOCK_KEY, SVNDate.formatDate(lock.getCreationDate()));
-            }
-            if (lock.getExpirationDate() != null) {
-                props.put(FSFS.EXPIRATION_DATE_LOCK_KEY, SVNDate.formatDate(lock.getExpirationDate()));
-            }
-        }
+        SVNProperties props = lock != null ? createLockProperties(lock, isDAVComment) : new SVNProperties();
         if (children != null && children.size() > 0) {
             Object[] digests = children.toArray();
             StringBuffer value = new StringBuffer();
@@ -2040,6 +2335,23 @@ public class FSFS {
         return new FSEntry(id, type, name);
     }
     
+    private int compareRevisionTime(long revision, Date date, FSRevisionDates dates) throws SVNException {
+        long timeInMicros = dates != null ? dates.getTime(revision) : FSRevisionDates.NO_DATE;
+        if (timeInMicros == FSRevisionDates.NO_DATE) {
+            return getRevisionTime(revision).compareTo(date);
+        }
+        int microSeconds = (int) (((timeInMicros % 1000) + 1000) % 1000);
+        long time = (timeInMicros - microSeconds) / 1000;
+        if (time != date.getTime()) {
+            return time < date.getTime() ? -1 : 1;
+        }
+        if (date instanceof SVNDate) {
+            long otherMicroSeconds = ((SVNDate) date).getTimeInMicros() - date.getTime() * 1000;
+            return microSeconds < otherMicroSeconds ? -1 : (microSeconds == otherMicroSeconds ? 0 : 1);
+        }
+        return 0;
+    }
+
     private Date getRevisionTime(long revision) throws SVNException {
         SVNProperties revisionProperties = getRevisionProperties(revision);
         String timeString = revisionProperties.getStringValue(SVNRevisionProperty.DATE);
@@ -11,7 +11,6 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -58,17 +57,53 @@ public class FSFile {
     private ByteBuffer myReadLineBuffer;
     private CharsetDecoder myDecoder;
     private MessageDigest myDigest;
+    private FSFileChannelPool myChannelPool;
+    private FSFileChannelPool.PooledChannel myPooledChannel;
+    private boolean myIsMemoryMapped;
+    private FSMappedFile myMappedFile;
+    private ByteBuffer myContents;
     
     public FSFile(File file) {
+        this(file, (FSFileChannelPool) null);
+    }
+
+    /**
+     * Creates a file reader that borrows its channel from <code>channelPool</code>
+     * and returns it there on {@link #close()}. Only files that are not modified
+     * while being read (committed revision and pack files) should be read this way.
+     */
+    public FSFile(File file, FSFileChannelPool channelPool) {
+        this(file, channelPool, false);
+    }
+
+    /**
+     * Creates a file reader that, when <code>memoryMapped</code> is <span class="javakeyword">true</span>,
+     * reads directly from memory mapped windows of the file shared with other readers
+     * (see {@link FSMappedFile}) instead of through a channel. Like pooled channels, this
+     * is only suitable for committed revision and pack files.
+     */
+    public FSFile(File file, FSFileChannelPool channelPool, boolean memoryMapped) {
         myFile = file;
+        myChannelPool = channelPool != null && channelPool.isEnabled() ? channelPool : null;
+        myIsMemoryMapped = memoryMapped;
         myPosition = 0;
         myBufferPosition = 0;
-        myBuffer = ByteBuffer.allocate(1024);
+        myBuffer = memoryMapped ? null : ByteBuffer.allocate(1024);
         myReadLineBuffer = ByteBuffer.allocate(1024);
         myDecoder = Charset.forName("UTF-8").newDecoder();
         myDecoder = myDecoder.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
     }
     
+    /**
+     * Creates a reader of <code>contents</code> already read into memory, for instance
+     * an update report kept in memory; <code>file</code> is only used in error messages.
+     */
+    public FSFile(File file, ByteBuffer contents) {
+        this(file, null, false);
+        myContents = contents.slice();
+        myBuffer = null;
+    }
+
     public void seek(long position) {
         myPosition = position;
     }
@@ -78,6 +113,12 @@ public class FSFile {
     }
 
     public long size() {
+        if (myContents != null) {
+            return myContents.limit();
+        }
+        if (myMappedFile != null) {
+            return myMappedFile.length();
+        }
         return myFile.length();
     }
     
@@ -291,7 +332,7 @@ public class FSFile {
     }
     
     public int read() throws IOException {
-        if (myChannel == null || myPosition < myBufferPosition || myPosition >= myBufferPosition + myBuffer.limit()) {
+        if (!isBuffered()) {
             if (fill() <= 0) {
                 return -1;
             }
@@ -315,14 +356,24 @@ public class FSFile {
             myBuffer.position((int) (myPosition - myBufferPosition));
 
             int couldRead = Math.min(myBuffer.remaining(), target.remaining());
-            int readFrom = myBuffer.position() + myBuffer.arrayOffset();
-            target.put(myBuffer.array(), readFrom, couldRead);
-            if (myDigest != null) {
-                myDigest.update(myBuffer.array(), readFrom, couldRead);
+            if (myBuffer.hasArray()) {
+                int readFrom = myBuffer.position() + myBuffer.arrayOffset();
+                target.put(myBuffer.array(), readFrom, couldRead);
+                if (myDigest != null) {
+                    myDigest.update(myBuffer.array(), readFrom, couldRead);
+                }
+                myBuffer.position(myBuffer.position() + couldRead);
+            } else {
+                ByteBuffer slice = myBuffer.duplicate();
+                slice.limit(slice.position() + couldRead);
+                if (myDigest != null) {
+                    updateDigest(slice.duplicate());
+                }
+                target.put(slice);
+                myBuffer.position(myBuffer.position() + couldRead);
             }
             myPosition += couldRead;
             read += couldRead;
-            myBuffer.position(myBuffer.position() + couldRead);
         }
         return read;
     }
@@ -354,7 +405,21 @@ public class FSFile {
     }
 
     public void close() {
-        if (myChannel != null) {
+        if (myContents != null) {
+            myPosition = 0;
+            myDigest = null;
+        } else if (myMappedFile != null) {
+            myMappedFile = null;
+            myBuffer = null;
+            myPosition = 0;
+            myDigest = null;
+        } else if (myPooledChannel != null) {
+            myChannelPool.release(myPooledChannel);
+            myPooledChannel = null;
+            myChannel = null;
+            myPosition = 0;
+            myDigest = null;
+        } else if (myChannel != null) {
             try {
                 myChannel.close();
             } catch (IOException e) {}
@@ -367,8 +432,30 @@ public class FSFile {
         
     }
     
+    private boolean isBuffered() {
+        if (myChannel == null && myMappedFile == null && myContents == null) {
+            return false;
+        }
+        return myBuffer != null && myPosition >= myBufferPosition && myPosition < myBufferPosition + myBuffer.limit();
+    }
+
     private int fill() throws IOException {
-        if (myChannel == null || myPosition < myBufferPosition || myPosition >= myBufferPosition + myBuffer.limit()) {
+        if (myContents != null) {
+            if (!isBuffered()) {
+                if (myPosition >= myContents.limit()) {
+                    return -1;
+                }
+                myBuffer = myContents;
+                myBufferPosition = 0;
+                myBuffer.position((int) myPosition);
+                return myBuffer.remaining();
+            }
+            return 0;
+        }
+        if (myIsMemoryMapped) {
+            return fillFromMapping();
+        }
+        if (!isBuffered()) {
             myBufferPosition = myPosition;
             getChannel().position(myBufferPosition);
             myBuffer.clear();
@@ -380,6 +467,31 @@ public class FSFile {
         return 0;
     }
     
+    private int fillFromMapping() throws IOException {
+        if (myMappedFile == null) {
+            myMappedFile = FSMappedFile.getMappedFile(myFile);
+        }
+        if (!isBuffered()) {
+            myBuffer = myMappedFile.getWindow(myPosition);
+            if (myBuffer == null) {
+                return -1;
+            }
+            myBufferPosition = FSMappedFile.getWindowStart(myPosition);
+            myBuffer.position((int) (myPosition - myBufferPosition));
+            return myBuffer.remaining();
+        }
+        return 0;
+    }
+
+    private void updateDigest(ByteBuffer data) {
+        byte[] chunk = new byte[Math.min(data.remaining(), 8192)];
+        while (data.hasRemaining()) {
+            int length = Math.min(data.remaining(), chunk.length);
+            data.get(chunk, 0, length);
+            myDigest.update(chunk, 0, length);
+        }
+    }
+
     private void allocateReadBuffer(int limit) {
         if (limit > myReadLineBuffer.capacity()) {
             myReadLineBuffer = ByteBuffer.allocate(limit*3/2);
@@ -389,7 +501,10 @@ public class FSFile {
     }
     
     private FileChannel getChannel() throws IOException {
-        if (myChannel == null) {
+        if (myChannel == null && myChannelPool != null) {
+            myPooledChannel = myChannelPool.borrow(myFile);
+            myChannel = myPooledChannel.getChannel();
+        } else if (myChannel == null) {
             myInputStream = SVNFileUtil.createFileInputStream(myFile);
             myChannel = myInputStream.getChannel();
         }
@@ -443,11 +558,19 @@ public class FSFile {
 
     private int readNumberFromReportFile() throws IOException {
         int b;
-        ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
+        int result = 0;
+        int digits = 0;
         while ((b = read()) != ':') {
-            resultStream.write(b);
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("Invalid number in report: unexpected character " + b);
+            }
+            result = result * 10 + (b - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Invalid number in report: no digits");
         }
-        return Integer.parseInt(new String(resultStream.toByteArray(), "UTF-8"), 10);
+        return result;
     }
 
     private long readRevisionFromReportFile() throws IOException {
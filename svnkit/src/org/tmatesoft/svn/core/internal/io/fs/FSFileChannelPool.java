@@ -0,0 +1,290 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * Bounded pool of open read-only channels to committed revision and pack
+ * files. Such files never change once written, so a channel released by
+ * one FSFile may be handed out to the next reader of the same file instead
+ * of being closed and reopened.
+ *
+ * The pool is off unless <code>svnkit.fsfs.channelPoolSize</code> is set to the
+ * maximum number of channels it may keep open, counting both idle channels and
+ * the ones readers have borrowed. Once that many are open, idle channels of other
+ * files are closed to make room, and when all of them are borrowed, readers get
+ * channels which are closed on release as if there were no pool. Idle channels
+ * are closed after <code>svnkit.fsfs.channelPoolTimeout</code> ms.
+ *
+ * Channels are not tied to an FSFS instance: FSRepository closes its FSFS at the
+ * end of every operation, and idle channels stay open for the operations that
+ * follow. Since open handles keep files from being deleted or renamed on Windows,
+ * code that removes files which may have been read through the pool, like packing
+ * a shard or recreating a repository, must call {@link #closeChannels(File)} first.
+ * A pooled channel is only reused while the file still has the same length and
+ * modification time it had when the channel was opened.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSFileChannelPool {
+
+    private static final int DEFAULT_MAX_CHANNELS = 0;
+    private static final long DEFAULT_IDLE_TIMEOUT = 10 * 1000;
+
+    private static FSFileChannelPool ourInstance;
+
+    private Map myIdleChannels;
+    private int myIdleChannelsCount;
+    private int myOpenChannelsCount;
+    private int myMaxChannels;
+    private long myIdleTimeout;
+    private long myLastExpirationTime;
+    private long myReleasesCount;
+
+    public static synchronized FSFileChannelPool getInstance() {
+        if (ourInstance == null) {
+            int maxChannels = DEFAULT_MAX_CHANNELS;
+            long timeout = DEFAULT_IDLE_TIMEOUT;
+            try {
+                maxChannels = Integer.parseInt(System.getProperty("svnkit.fsfs.channelPoolSize", String.valueOf(DEFAULT_MAX_CHANNELS)));
+                timeout = Long.parseLong(System.getProperty("svnkit.fsfs.channelPoolTimeout", String.valueOf(DEFAULT_IDLE_TIMEOUT)));
+            } catch (NumberFormatException nfe) {
+            }
+            ourInstance = new FSFileChannelPool(maxChannels, timeout);
+        }
+        return ourInstance;
+    }
+
+    public FSFileChannelPool(int maxChannels, long idleTimeout) {
+        myIdleChannels = new SVNHashMap();
+        myMaxChannels = maxChannels;
+        myIdleTimeout = idleTimeout;
+    }
+
+    public boolean isEnabled() {
+        return myMaxChannels > 0;
+    }
+
+    public PooledChannel borrow(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = -1;
+        long lastModified = -1;
+        boolean pooled = false;
+        LinkedList closed = new LinkedList();
+        synchronized (this) {
+            expire(System.currentTimeMillis(), closed);
+            LinkedList channels = (LinkedList) myIdleChannels.get(path);
+            while (channels != null && !channels.isEmpty()) {
+                PooledChannel channel = (PooledChannel) channels.removeFirst();
+                myIdleChannelsCount--;
+                if (length < 0) {
+                    length = file.length();
+                    lastModified = file.lastModified();
+                }
+                if (channel.myLength == length && channel.myLastModified == lastModified) {
+                    if (channels.isEmpty()) {
+                        myIdleChannels.remove(path);
+                    }
+                    return channel;
+                }
+                myOpenChannelsCount--;
+                closed.add(channel);
+            }
+            myIdleChannels.remove(path);
+            if (myOpenChannelsCount >= myMaxChannels) {
+                evictEldest(closed);
+            }
+            if (myOpenChannelsCount < myMaxChannels) {
+                myOpenChannelsCount++;
+                pooled = true;
+            }
+        }
+        dispose(closed);
+        if (length < 0) {
+            length = file.length();
+            lastModified = file.lastModified();
+        }
+        FileInputStream inputStream = null;
+        try {
+            inputStream = SVNFileUtil.createFileInputStream(file);
+        } finally {
+            if (inputStream == null && pooled) {
+                synchronized (this) {
+                    myOpenChannelsCount--;
+                }
+            }
+        }
+        return new PooledChannel(path, inputStream, length, lastModified, pooled);
+    }
+
+    public void release(PooledChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        LinkedList closed = new LinkedList();
+        synchronized (this) {
+            if (!channel.myIsPooled) {
+                closed.add(channel);
+            } else if (myMaxChannels > 0 && channel.myChannel.isOpen()) {
+                channel.myReleaseTime = System.currentTimeMillis();
+                channel.myReleaseNumber = ++myReleasesCount;
+                LinkedList channels = (LinkedList) myIdleChannels.get(channel.myPath);
+                if (channels == null) {
+                    channels = new LinkedList();
+                    myIdleChannels.put(channel.myPath, channels);
+                }
+                channels.addFirst(channel);
+                myIdleChannelsCount++;
+                expire(channel.myReleaseTime, closed);
+            } else {
+                myOpenChannelsCount--;
+                closed.add(channel);
+            }
+        }
+        dispose(closed);
+    }
+
+    /**
+     * Closes idle channels of files within <code>dir</code>. Must be called before files
+     * read through the pool are deleted or renamed.
+     */
+    public void closeChannels(File dir) {
+        String prefix = dir.getAbsolutePath() + File.separator;
+        LinkedList closed = new LinkedList();
+        synchronized (this) {
+            for (Iterator paths = myIdleChannels.keySet().iterator(); paths.hasNext();) {
+                String path = (String) paths.next();
+                if (path.startsWith(prefix)) {
+                    removeIdleChannels((LinkedList) myIdleChannels.get(path), closed);
+                    paths.remove();
+                }
+            }
+        }
+        dispose(closed);
+    }
+
+    public void closeAll() {
+        LinkedList closed = new LinkedList();
+        synchronized (this) {
+            for (Iterator channels = myIdleChannels.values().iterator(); channels.hasNext();) {
+                removeIdleChannels((LinkedList) channels.next(), closed);
+            }
+            myIdleChannels.clear();
+        }
+        dispose(closed);
+    }
+
+    public synchronized int getIdleChannelsCount() {
+        return myIdleChannelsCount;
+    }
+
+    public synchronized int getOpenChannelsCount() {
+        return myOpenChannelsCount;
+    }
+
+    private void removeIdleChannels(LinkedList channels, LinkedList closed) {
+        myIdleChannelsCount -= channels.size();
+        myOpenChannelsCount -= channels.size();
+        closed.addAll(channels);
+        channels.clear();
+    }
+
+    private void evictEldest(LinkedList closed) {
+        LinkedList eldestChannels = null;
+        for (Iterator channels = myIdleChannels.values().iterator(); channels.hasNext();) {
+            LinkedList fileChannels = (LinkedList) channels.next();
+            // release numbers, unlike release times, never tie
+            if (eldestChannels == null || 
+                    ((PooledChannel) fileChannels.getLast()).myReleaseNumber < ((PooledChannel) eldestChannels.getLast()).myReleaseNumber) {
+                eldestChannels = fileChannels;
+            }
+        }
+        if (eldestChannels != null) {
+            PooledChannel eldest = (PooledChannel) eldestChannels.removeLast();
+            if (eldestChannels.isEmpty()) {
+                myIdleChannels.remove(eldest.myPath);
+            }
+            myIdleChannelsCount--;
+            myOpenChannelsCount--;
+            closed.add(eldest);
+        }
+    }
+
+    private void expire(long now, LinkedList closed) {
+        // idle channels are looked through at most twice per timeout
+        if (now - myLastExpirationTime < myIdleTimeout / 2) {
+            return;
+        }
+        myLastExpirationTime = now;
+        for (Iterator channels = myIdleChannels.values().iterator(); channels.hasNext();) {
+            LinkedList fileChannels = (LinkedList) channels.next();
+            while (!fileChannels.isEmpty() && now - ((PooledChannel) fileChannels.getLast()).myReleaseTime >= myIdleTimeout) {
+                closed.add(fileChannels.removeLast());
+                myIdleChannelsCount--;
+                myOpenChannelsCount--;
+            }
+            if (fileChannels.isEmpty()) {
+                channels.remove();
+            }
+        }
+    }
+
+    private static void dispose(LinkedList channels) {
+        for (Iterator iterator = channels.iterator(); iterator.hasNext();) {
+            ((PooledChannel) iterator.next()).dispose();
+        }
+    }
+
+    public static class PooledChannel {
+
+        private String myPath;
+        private FileInputStream myInputStream;
+        private FileChannel myChannel;
+        private long myLength;
+        private long myLastModified;
+        private long myReleaseTime;
+        private long myReleaseNumber;
+        private boolean myIsPooled;
+
+        private PooledChannel(String path, FileInputStream inputStream, long length, long lastModified, boolean pooled) {
+            myPath = path;
+            myInputStream = inputStream;
+            myChannel = inputStream.getChannel();
+            myLength = length;
+            myLastModified = lastModified;
+            myIsPooled = pooled;
+        }
+
+        public FileChannel getChannel() {
+            return myChannel;
+        }
+
+        private void dispose() {
+            try {
+                myChannel.close();
+            } catch (IOException e) {
+            }
+            SVNFileUtil.closeFile(myInputStream);
+        }
+    }
+}
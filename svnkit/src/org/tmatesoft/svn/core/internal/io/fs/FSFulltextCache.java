@@ -0,0 +1,261 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * Process-wide cache of reconstructed file contents. Since entries are
+ * keyed by the SHA-1 checksum of the contents, they may be shared between
+ * all repositories. Representations without a SHA-1 checksum (those written
+ * by older repository formats) are not cached: MD5 is not collision
+ * resistant enough to let one repository supply contents for another.
+ *
+ * Contents are kept in a size-bounded in-memory LRU; entries evicted from
+ * memory are spilled to an optional on-disk store, which is bounded by
+ * total size as well. Contents read back from disk are verified against
+ * their checksum before being used.
+ *
+ * The cache is disabled unless <code>svnkit.fsfs.fulltextCacheSize</code>
+ * is set to a positive number of bytes; the disk store is enabled by
+ * <code>svnkit.fsfs.fulltextCacheDir</code> and bounded by
+ * <code>svnkit.fsfs.fulltextCacheDiskSize</code>.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSFulltextCache {
+
+    private static final long DEFAULT_DISK_CACHE_SIZE = 256 * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static FSFulltextCache ourInstance;
+
+    private FSCache myMemoryEntries;
+    private FSCache myDiskEntries;
+    private File myDiskDirectory;
+    private long myDiskHitsCount;
+
+    public static synchronized FSFulltextCache getInstance() {
+        if (ourInstance == null) {
+            long size = FSCache.getLongProperty("svnkit.fsfs.fulltextCacheSize", 0);
+            long diskSize = FSCache.getLongProperty("svnkit.fsfs.fulltextCacheDiskSize", DEFAULT_DISK_CACHE_SIZE);
+            String dir = System.getProperty("svnkit.fsfs.fulltextCacheDir");
+            ourInstance = new FSFulltextCache(size, dir != null ? new File(dir) : null, diskSize);
+        }
+        return ourInstance;
+    }
+
+    public FSFulltextCache(long maxMemory, File diskDirectory, long maxDiskSize) {
+        myMemoryEntries = new FSCache(maxMemory) {
+            protected void evicted(Object key, Object value) {
+                spill((String) key, (byte[]) value);
+            }
+        };
+        if (diskDirectory != null && maxDiskSize > 0) {
+            myDiskDirectory = diskDirectory;
+            myDiskEntries = new FSCache(maxDiskSize) {
+                protected void evicted(Object key, Object value) {
+                    new File(myDiskDirectory, (String) key).delete();
+                }
+            };
+            loadDiskEntries();
+        }
+    }
+
+    public boolean isEnabled() {
+        return myMemoryEntries.isEnabled();
+    }
+
+    /**
+     * Returns the maximum size of contents worth passing to {@link #put(FSRepresentation, byte[])}.
+     */
+    public long getMaxEntrySize() {
+        return myMemoryEntries.getMaxWeight() / 4;
+    }
+
+    /**
+     * Tells whether contents of <code>rep</code> would be kept by {@link #put(FSRepresentation, byte[])},
+     * so that callers need not collect contents that are going to be dropped.
+     */
+    public boolean isCacheable(FSRepresentation rep) {
+        return isEnabled() && getKey(rep) != null && rep.getExpandedSize() <= getMaxEntrySize();
+    }
+
+    public byte[] get(FSRepresentation rep) {
+        String key = getKey(rep);
+        if (key == null || !isEnabled()) {
+            return null;
+        }
+        byte[] contents = (byte[]) myMemoryEntries.get(key);
+        if (contents != null) {
+            if (contents.length == rep.getExpandedSize()) {
+                return contents;
+            }
+            myMemoryEntries.removeStale(key);
+        }
+        if (myDiskEntries == null || !myDiskEntries.containsKey(key)) {
+            return null;
+        }
+        contents = readDiskEntry(new File(myDiskDirectory, key), key, rep.getExpandedSize());
+        if (contents == null) {
+            myDiskEntries.remove(key);
+            return null;
+        }
+        // keeps the disk entry from being the next one evicted
+        myDiskEntries.get(key);
+        synchronized (this) {
+            myDiskHitsCount++;
+        }
+        putToMemory(key, contents);
+        return contents;
+    }
+
+    public void put(FSRepresentation rep, byte[] contents) {
+        String key = getKey(rep);
+        if (key == null || contents == null || contents.length != rep.getExpandedSize() || contents.length > getMaxEntrySize()) {
+            return;
+        }
+        putToMemory(key, contents);
+    }
+
+    public void clear() {
+        myMemoryEntries.clear();
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        myMemoryEntries.setMaxWeight(maxMemory);
+    }
+
+    public long getMemoryUsage() {
+        return myMemoryEntries.getWeight();
+    }
+
+    public long getDiskUsage() {
+        return myDiskEntries != null ? myDiskEntries.getWeight() : 0;
+    }
+
+    public long getHitsCount() {
+        return myMemoryEntries.getHitsCount();
+    }
+
+    public synchronized long getDiskHitsCount() {
+        return myDiskHitsCount;
+    }
+
+    /**
+     * Returns the number of lookups which found the contents neither in memory nor on disk.
+     */
+    public synchronized long getMissesCount() {
+        return myMemoryEntries.getMissesCount() - myDiskHitsCount;
+    }
+
+    private void putToMemory(String key, byte[] contents) {
+        myMemoryEntries.put(key, contents, contents.length + ENTRY_OVERHEAD);
+    }
+
+    private void spill(String key, byte[] contents) {
+        if (myDiskEntries == null || myDiskEntries.containsKey(key) || contents.length > myDiskEntries.getMaxWeight()) {
+            return;
+        }
+        File tmpFile = null;
+        OutputStream os = null;
+        try {
+            myDiskDirectory.mkdirs();
+            tmpFile = SVNFileUtil.createUniqueFile(myDiskDirectory, key, ".tmp", false);
+            os = SVNFileUtil.openFileForWriting(tmpFile);
+            os.write(contents);
+            os.close();
+            os = null;
+            SVNFileUtil.rename(tmpFile, new File(myDiskDirectory, key));
+            tmpFile = null;
+        } catch (IOException e) {
+            return;
+        } catch (SVNException e) {
+            return;
+        } finally {
+            SVNFileUtil.closeFile(os);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+        myDiskEntries.put(key, Boolean.TRUE, contents.length);
+    }
+
+    private void loadDiskEntries() {
+        File[] files = myDiskDirectory.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            String name = files[i].getName();
+            if (!files[i].isFile() || !isChecksum(name)) {
+                continue;
+            }
+            myDiskEntries.put(name, Boolean.TRUE, files[i].length());
+        }
+    }
+
+    private static byte[] readDiskEntry(File file, String key, long expectedSize) {
+        if (file.length() != expectedSize) {
+            return null;
+        }
+        InputStream is = null;
+        try {
+            byte[] contents = new byte[(int) expectedSize];
+            is = SVNFileUtil.openFileForReading(file);
+            int offset = 0;
+            while (offset < contents.length) {
+                int read = is.read(contents, offset, contents.length - offset);
+                if (read < 0) {
+                    return null;
+                }
+                offset += read;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA1");
+            digest.update(contents);
+            return key.equals(SVNFileUtil.toHexDigest(digest)) ? contents : null;
+        } catch (IOException e) {
+            return null;
+        } catch (SVNException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        } finally {
+            SVNFileUtil.closeFile(is);
+        }
+    }
+
+    private static String getKey(FSRepresentation rep) {
+        if (rep == null || rep.isTxn() || rep.getExpandedSize() < 0 || rep.getExpandedSize() > Integer.MAX_VALUE) {
+            return null;
+        }
+        return rep.getSHA1HexDigest();
+    }
+
+    private static boolean isChecksum(String name) {
+        if (name.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -11,6 +11,7 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -45,6 +46,11 @@ public class FSInputStream extends InputStream {
     private MessageDigest myDigest;
     private ByteBuffer myBuffer;
     private SVNDeltaCombiner myCombiner;
+    private FSRepresentation myRepresentation;
+    private FSFulltextCache myFulltextCache;
+    private byte[] myFulltext;
+    private String myRepositoryKey;
+    private FSDeltaWindowCache myWindowCache;
 
     private FSInputStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner) throws SVNException {
         myCombiner = combiner;
@@ -53,6 +59,12 @@ public class FSInputStream extends InputStream {
         myHexChecksum = representation.getMD5HexDigest();
         myOffset = 0;
         myLength = representation.getExpandedSize();
+        FSFulltextCache fulltextCache = FSFulltextCache.getInstance();
+        if (fulltextCache.isCacheable(representation)) {
+            myRepresentation = new FSRepresentation(representation);
+            myFulltextCache = fulltextCache;
+            myFulltext = new byte[(int) myLength];
+        }
         try {
             myDigest = MessageDigest.getInstance("MD5");
         } catch (NoSuchAlgorithmException nsae) {
@@ -60,6 +72,11 @@ public class FSInputStream extends InputStream {
             SVNErrorManager.error(err, nsae, SVNLogType.FSFS);
         }
 
+        FSDeltaWindowCache windowCache = FSDeltaWindowCache.getInstance();
+        if (windowCache.isEnabled()) {
+            myWindowCache = windowCache;
+            myRepositoryKey = owner.getRepositoryCacheKey();
+        }
         try {
             buildRepresentationList(representation, myRepStateList, owner);
         } catch (SVNException svne) {
@@ -80,16 +97,17 @@ public class FSInputStream extends InputStream {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
         FSRepresentation representation = fileNode.getTextRepresentation();
-        if (representation == null) {
-            return SVNFileUtil.DUMMY_IN;
-        }
-        return new FSInputStream(combiner, representation, owner);
+        return createDeltaStream(combiner, representation, owner);
     }
 
     public static InputStream createDeltaStream(SVNDeltaCombiner combiner, FSRepresentation fileRep, FSFS owner) throws SVNException {
         if (fileRep == null) {
             return SVNFileUtil.DUMMY_IN;
         }
+        byte[] fulltext = FSFulltextCache.getInstance().get(fileRep);
+        if (fulltext != null) {
+            return new ByteArrayInputStream(fulltext);
+        }
         return new FSInputStream(combiner, fileRep, owner);
     }
 
@@ -114,6 +132,13 @@ public class FSInputStream extends InputStream {
         length = getContents(buf, offset, length);
         if (!isChecksumFinalized && length >= 0) {
             myDigest.update(buf, offset, length);
+            if (myFulltext != null) {
+                if (myOffset + length <= myFulltext.length) {
+                    System.arraycopy(buf, offset, myFulltext, (int) myOffset, length);
+                } else {
+                    myFulltext = null;
+                }
+            }
             myOffset += length;
 
             if (myOffset == myLength) {
@@ -126,6 +151,10 @@ public class FSInputStream extends InputStream {
                     });
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
+                if (myFulltext != null) {
+                    myFulltextCache.put(myRepresentation, myFulltext);
+                    myFulltext = null;
+                }
             }
         }
 
@@ -159,7 +188,12 @@ public class FSInputStream extends InputStream {
                     FSRepresentationState curState = (FSRepresentationState) states.next();
 
                     while (curState.myChunkIndex < myChunkIndex) {
-                        myCombiner.skipWindow(curState.myFile);
+                        FSDeltaWindowCache.CachedWindow cachedWindow = getCachedWindow(curState);
+                        if (cachedWindow != null) {
+                            curState.myFile.seek(curState.myFile.position() + cachedWindow.getEncodedLength());
+                        } else {
+                            myCombiner.skipWindow(curState.myFile);
+                        }
                         curState.myChunkIndex++;
                         curState.myOffset = curState.myFile.position();
                         if (curState.myOffset >= curState.myEnd) {
@@ -167,7 +201,7 @@ public class FSInputStream extends InputStream {
                             SVNErrorManager.error(err, SVNLogType.FSFS);
                         }
                     }
-                    SVNDiffWindow window = myCombiner.readWindow(curState.myFile, curState.myVersion);
+                    SVNDiffWindow window = readWindow(curState);
                     ByteBuffer target = myCombiner.addWindow(window);
                     curState.myChunkIndex++;
                     curState.myOffset = curState.myFile.position();
@@ -182,6 +216,27 @@ public class FSInputStream extends InputStream {
         return read;
     }
 
+    private SVNDiffWindow readWindow(FSRepresentationState state) throws SVNException {
+        FSDeltaWindowCache.CachedWindow cachedWindow = getCachedWindow(state);
+        if (cachedWindow != null) {
+            state.myFile.seek(state.myFile.position() + cachedWindow.getEncodedLength());
+            return cachedWindow.createWindow();
+        }
+        long position = state.myFile.position();
+        SVNDiffWindow window = myCombiner.readWindow(state.myFile, state.myVersion);
+        if (myWindowCache != null && state.myRevision >= 0) {
+            myWindowCache.put(myRepositoryKey, state.myRevision, state.myRepOffset, state.myChunkIndex, window, state.myFile.position() - position);
+        }
+        return window;
+    }
+
+    private FSDeltaWindowCache.CachedWindow getCachedWindow(FSRepresentationState state) {
+        if (myWindowCache == null || state.myRevision < 0) {
+            return null;
+        }
+        return myWindowCache.get(myRepositoryKey, state.myRevision, state.myRepOffset, state.myChunkIndex);
+    }
+
     public void close() {
         for (Iterator states = myRepStateList.iterator(); states.hasNext();) {
             FSRepresentationState state = (FSRepresentationState) states.next();
@@ -217,6 +272,8 @@ public class FSInputStream extends InputStream {
                 }
                 repState.myVersion = header[3];
                 repState.myChunkIndex = 0;
+                repState.myRevision = rep.isTxn() ? -1 : rep.getRevision();
+                repState.myRepOffset = rep.getOffset();
                 repState.myOffset += 4;
                 /*
                  * Push this rep onto the list. If it's self-compressed, we're
@@ -323,6 +380,9 @@ public class FSInputStream extends InputStream {
         long myBaseRevision;
         long myBaseOffset;
         long myBaseLength;
+        /* Revision and offset of the representation, used as the window cache key; revision is -1 for txn reps. */
+        long myRevision;
+        long myRepOffset;
     }
 
 }
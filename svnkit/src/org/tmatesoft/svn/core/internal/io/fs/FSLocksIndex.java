@@ -0,0 +1,270 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.util.SVNUUIDGenerator;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNWCProperties;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+
+/**
+ * Index of all locks of a repository, kept in memory sorted by path and shared by all
+ * {@link FSFS} instances opened on the same repository. Lets lock listings of whole subtrees
+ * skip walking the lock digest files.
+ *
+ * The index is persisted in <code>db/locks/index</code> as a header followed by one record
+ * per lock, each one encoded as a hash the same way digest files are. Every lock change made
+ * under the repository write lock writes the whole file again to a temporary file, which is
+ * then renamed over the index, so readers never see a partial file. The header carries a new
+ * generation id on every write, and other instances read the file again when it changes.
+ *
+ * The digest files remain the master copy, and the index is rebuilt from them when it is
+ * missing or found corrupt by a writer. Native Subversion and older SVNKit versions change
+ * digest files without maintaining the index, so the index is disabled by default and is
+ * never used to check locks before changes: it only answers lock listings, and only once
+ * enabled with the <code>svnkit.fsfs.locksIndex</code> system property or
+ * {@link #setEnabled(boolean)} for repositories that no other tool locks files in.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSLocksIndex {
+
+    public static final String INDEX_FILE = "index";
+
+    private static final String FORMAT_KEY = "format";
+    private static final String GENERATION_KEY = "generation";
+    private static final String FORMAT = "1";
+
+    private static final Map ourIndexes = new SVNHashMap();
+    private static boolean ourIsEnabled = getDefaultIsEnabled();
+
+    private File myIndexFile;
+    private SortedMap myLocks;
+    private String myGeneration;
+    private long myLength;
+    private long myLastModified;
+
+    public static synchronized FSLocksIndex getIndex(FSFS fsfs) {
+        String key = fsfs.getDBLocksDir().getAbsolutePath();
+        FSLocksIndex index = (FSLocksIndex) ourIndexes.get(key);
+        if (index == null) {
+            index = new FSLocksIndex(new File(fsfs.getDBLocksDir(), INDEX_FILE));
+            ourIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    public static boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    /**
+     * Enables or disables the index for lock listings. While it is disabled locks are looked
+     * up in digest files, and an existing index file is removed on the first lock change.
+     */
+    public static void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    private FSLocksIndex(File indexFile) {
+        myIndexFile = indexFile;
+        myLocks = new TreeMap();
+        myLength = -1;
+    }
+
+    /**
+     * Brings the index in sync with its file. A writer (<code>haveWriteLock</code> is
+     * <span class="javakeyword">true</span>) creates the file from the digest files when it
+     * is missing or corrupt. Returns <span class="javakeyword">false</span> when the index
+     * may not be used and locks should be read from the digest files instead.
+     */
+    public synchronized boolean update(FSFS fsfs, boolean haveWriteLock) throws SVNException {
+        long length = myIndexFile.length();
+        long lastModified = myIndexFile.lastModified();
+        if (length > 0) {
+            try {
+                read(fsfs, length, lastModified);
+                return true;
+            } catch (SVNException e) {
+                // the file is corrupt, or was replaced while it was read
+                reset();
+                if (!haveWriteLock) {
+                    return false;
+                }
+                SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            }
+        }
+        if (!haveWriteLock) {
+            reset();
+            return false;
+        }
+        rebuild(fsfs);
+        return true;
+    }
+
+    /**
+     * Returns the locks on <code>path</code> and on all paths beneath it, expired ones included.
+     */
+    public synchronized Collection getLocks(String path) {
+        Collection locks = new LinkedList();
+        if ("/".equals(path)) {
+            locks.addAll(myLocks.values());
+            return locks;
+        }
+        SVNLock lock = (SVNLock) myLocks.get(path);
+        if (lock != null) {
+            locks.add(lock);
+        }
+        // '0' follows '/', so these are exactly the paths that start with path + "/"
+        locks.addAll(myLocks.subMap(path + "/", path + "0").values());
+        return locks;
+    }
+
+    /**
+     * Records <code>lock</code> already written to its digest file. Should be called under
+     * the repository write lock after {@link #update(FSFS, boolean)}.
+     */
+    public synchronized void lockAdded(SVNLock lock, boolean isDAVComment) throws SVNException {
+        if (!(lock instanceof FSLock)) {
+            lock = new FSLock(lock.getPath(), lock.getID(), lock.getOwner(), lock.getComment(),
+                    lock.getCreationDate(), lock.getExpirationDate(), isDAVComment);
+        }
+        myLocks.put(lock.getPath(), lock);
+        write();
+    }
+
+    /**
+     * Records the removal of the lock on <code>path</code>, already removed from digest files.
+     * Should be called under the repository write lock after {@link #update(FSFS, boolean)}.
+     */
+    public synchronized void lockRemoved(String path) throws SVNException {
+        myLocks.remove(path);
+        write();
+    }
+
+    /**
+     * Removes the index file, to be called under the repository write lock when a lock is changed
+     * while the index is disabled.
+     */
+    public synchronized void remove() throws SVNException {
+        reset();
+        SVNFileUtil.deleteFile(myIndexFile);
+    }
+
+    /*
+     * The header is read every time, since the file may have been replaced by one of the
+     * same length within the timestamp granularity.
+     */
+    private void read(FSFS fsfs, long length, long lastModified) throws SVNException {
+        FSFile file = new FSFile(myIndexFile);
+        try {
+            SVNProperties header = file.readProperties(false, true);
+            String generation = header.getStringValue(GENERATION_KEY);
+            if (!FORMAT.equals(header.getStringValue(FORMAT_KEY)) || generation == null) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Corrupt lock index ''{0}''", myIndexFile);
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            if (generation.equals(myGeneration) && length == myLength && lastModified == myLastModified) {
+                return;
+            }
+            myLocks.clear();
+            while (file.position() < length) {
+                SVNProperties record = file.readProperties(false, true);
+                if (record.getStringValue(FSFS.PATH_LOCK_KEY) == null) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Corrupt lock index ''{0}''", myIndexFile);
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+                SVNLock lock = fsfs.parseLockProperties(record);
+                myLocks.put(lock.getPath(), lock);
+            }
+            myGeneration = generation;
+            myLength = length;
+            myLastModified = lastModified;
+        } finally {
+            file.close();
+        }
+    }
+
+    private void reset() {
+        myLocks.clear();
+        myGeneration = null;
+        myLength = -1;
+    }
+
+    private void rebuild(FSFS fsfs) throws SVNException {
+        myLocks.clear();
+        collectLocks(fsfs, fsfs.getDigestFileFromRepositoryPath("/"));
+        write();
+    }
+
+    private void collectLocks(FSFS fsfs, File digestFile) throws SVNException {
+        Collection children = new LinkedList();
+        SVNLock lock = fsfs.fetchLockFromDigestFile(digestFile, null, children);
+        if (lock != null) {
+            myLocks.put(lock.getPath(), lock);
+        }
+        for (Iterator entries = children.iterator(); entries.hasNext();) {
+            String digestName = (String) entries.next();
+            File parent = new File(fsfs.getDBLocksDir(), digestName.substring(0, FSFS.DIGEST_SUBDIR_LEN));
+            collectLocks(fsfs, new File(parent, digestName));
+        }
+    }
+
+    private void write() throws SVNException {
+        SVNProperties header = new SVNProperties();
+        header.put(FORMAT_KEY, FORMAT);
+        header.put(GENERATION_KEY, SVNUUIDGenerator.formatUUID(SVNUUIDGenerator.generateUUID()));
+
+        myIndexFile.getParentFile().mkdirs();
+        File tmpFile = SVNFileUtil.createUniqueFile(myIndexFile.getParentFile(), INDEX_FILE, ".tmp", false);
+        OutputStream os = null;
+        try {
+            os = SVNFileUtil.openFileForWriting(tmpFile);
+            SVNWCProperties.setProperties(header, os, SVNWCProperties.SVN_HASH_TERMINATOR);
+            for (Iterator locks = myLocks.values().iterator(); locks.hasNext();) {
+                SVNLock lock = (SVNLock) locks.next();
+                boolean isDAVComment = lock instanceof FSLock && ((FSLock) lock).isDAVComment();
+                SVNWCProperties.setProperties(FSFS.createLockProperties(lock, isDAVComment), os, SVNWCProperties.SVN_HASH_TERMINATOR);
+            }
+        } finally {
+            SVNFileUtil.closeFile(os);
+        }
+        SVNFileUtil.rename(tmpFile, myIndexFile);
+        myGeneration = header.getStringValue(GENERATION_KEY);
+        myLength = myIndexFile.length();
+        myLastModified = myIndexFile.lastModified();
+    }
+
+    private static boolean getDefaultIsEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty("svnkit.fsfs.locksIndex", "false"));
+    }
+
+}
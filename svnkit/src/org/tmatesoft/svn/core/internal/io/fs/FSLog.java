@@ -28,6 +28,7 @@ import org.tmatesoft.svn.core.SVNMergeInfo;
 import org.tmatesoft.svn.core.SVNMergeInfoInheritance;
 import org.tmatesoft.svn.core.SVNMergeRange;
 import org.tmatesoft.svn.core.SVNMergeRangeList;
+import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
@@ -61,6 +62,8 @@ public class FSLog {
     private ISVNLogEntryHandler myHandler;
     private SVNMergeInfoManager myMergeInfoManager;
     private String[] myRevPropNames;
+    private FSLogIndex myLogIndex;
+    private FSLogIndex.Reader myLogIndexReader;
     
     public FSLog(FSFS owner, String[] paths, long limit, long start, long end, boolean descending, 
             boolean discoverChangedPaths, boolean strictNode, boolean includeMergedRevisions, 
@@ -95,6 +98,19 @@ public class FSLog {
     }
     
     public long runLog() throws SVNException {
+        myLogIndex = FSLogIndex.getIndex(myFSFS);
+        myLogIndexReader = myLogIndex != null ? myLogIndex.openReader() : null;
+        try {
+            return doRunLog();
+        } finally {
+            if (myLogIndexReader != null) {
+                myLogIndexReader.close();
+                myLogIndexReader = null;
+            }
+        }
+    }
+
+    private long doRunLog() throws SVNException {
         long count = 0;
         if (!myIsIncludeMergedRevisions && myPaths.length == 1 && "/".equals(myPaths[0])) {
             count = myEndRevision - myStartRevision + 1;
@@ -112,6 +128,20 @@ public class FSLog {
             
             return count;
         }
+        
+        if (!myIsIncludeMergedRevisions && myLogIndex != null) {
+            long[] revisions = getIndexedHistoryRevisions();
+            if (revisions != null) {
+                count = revisions.length;
+                if (myLimit > 0 && count > myLimit) {
+                    count = myLimit;
+                }
+                for (int i = 0; i < count; i++) {
+                    sendLog(myIsDescending ? revisions[i] : revisions[revisions.length - i - 1], false);
+                }
+                return count;
+            }
+        }
 
         return doLogs(myPaths, myStartRevision, myEndRevision, myIsIncludeMergedRevisions, myIsDescending, 
                 myLimit);
@@ -200,6 +230,16 @@ public class FSLog {
         return sendCount;
     }
     
+    private long[] getIndexedHistoryRevisions() throws SVNException {
+        FSRevisionRoot root = myFSFS.createRevisionRoot(myEndRevision);
+        for (int i = 0; i < myPaths.length; i++) {
+            if (root.checkNodeKind(myPaths[i]) == SVNNodeKind.NONE) {
+                return null;
+            }
+        }
+        return myLogIndex.getHistoryRevisions(myPaths, myStartRevision, myEndRevision, myIsStrictNode);
+    }
+
     private long getNextHistoryRevision(PathInfo[] histories) {
         long nextRevision = SVNRepository.INVALID_REVISION;
         for (int i = 0; i < histories.length; i++) {
@@ -227,14 +267,22 @@ public class FSLog {
         SVNProperties entryRevProps = null;
         boolean getRevProps = true;
         boolean censorRevProps = false;
+        FSLogIndex.Record record = myLogIndexReader != null ? myLogIndexReader.getRecord(revision) : null;
         if (revision > 0 && myIsDiscoverChangedPaths) {
-            FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
-            changedPaths = root.detectChanged();
+            if (record != null) {
+                changedPaths = record.getChangedPaths();
+            } else {
+                FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+                changedPaths = root.detectChanged();
+            }
         }
 
         //TODO: add autz check code later
         if (getRevProps) {
-            SVNProperties revisionProps = myFSFS.getRevisionProperties(revision);
+            SVNProperties revisionProps = record != null ? record.getRevisionProperties(myFSFS) : null;
+            if (revisionProps == null) {
+                revisionProps = myFSFS.getRevisionProperties(revision);
+            }
 
             if (revisionProps != null) {
                 String author = revisionProps.getStringValue(SVNRevisionProperty.AUTHOR);
@@ -0,0 +1,656 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Optional per-repository index of changed paths and revision properties
+ * used to answer <code>log</code> requests without reading revision files.
+ *
+ * The index lives in <code>db/log-index</code> and is only maintained when
+ * that directory exists (see {@link #create(FSFS)}). It consists of:
+ * <ul>
+ * <li><code>paths.dat</code> - per revision blocks of changed paths and their actions,
+ * loaded into memory as a path to revisions map;
+ * <li><code>revs.dat</code> - per revision records with the changed paths list and
+ * revision properties as they would be reported by <code>log</code>;
+ * <li><code>revs.idx</code> - offsets of the latest <code>revs.dat</code> record of each revision.
+ * </ul>
+ * Files are appended in this order, so that <code>revs.idx</code> never refers
+ * to revisions which are not completely written to the other two files. Blocks
+ * that an interrupted update left in <code>paths.dat</code> past the last indexed
+ * revision are ignored by readers and truncated by the next update.
+ *
+ * The path map takes memory proportional to the number of changed paths in the
+ * whole history; it is loaded on the first history query and kept for the
+ * lifetime of the process.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSLogIndex {
+
+    public static final String LOG_INDEX_DIR = "log-index";
+
+    private static final int FORMAT = 1;
+    private static final String FORMAT_FILE = "format";
+    private static final String PATHS_FILE = "paths.dat";
+    private static final String REVISIONS_FILE = "revs.dat";
+    private static final String REVISIONS_INDEX_FILE = "revs.idx";
+
+    private static final int ACTION_ADD = 0;
+    private static final int ACTION_DELETE = 1;
+    private static final int ACTION_REPLACE = 2;
+    private static final int ACTION_MODIFY = 3;
+
+    private static final Map ourIndexes = new SVNHashMap();
+
+    private File myDirectory;
+    private TreeMap myPaths;
+    private long myPathsFileLength;
+    private long myLastLoadedRevision;
+    private long myFormatLastModified;
+    private long myPathsEnd = -1;
+
+    public static FSLogIndex getIndex(FSFS fsfs) {
+        File dir = new File(fsfs.getDBRoot(), LOG_INDEX_DIR);
+        if (!new File(dir, FORMAT_FILE).isFile()) {
+            return null;
+        }
+        String key = dir.getAbsolutePath();
+        synchronized (ourIndexes) {
+            FSLogIndex index = (FSLogIndex) ourIndexes.get(key);
+            if (index == null) {
+                index = new FSLogIndex(dir);
+                ourIndexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * (Re)builds the index of the repository. Should be called under the
+     * {@link FSWriteLock#getWriteLockForIndexes(FSFS) index lock}.
+     */
+    public static FSLogIndex create(FSFS fsfs) throws SVNException {
+        File dir = new File(fsfs.getDBRoot(), LOG_INDEX_DIR);
+        synchronized (ourIndexes) {
+            FSLogIndex index = (FSLogIndex) ourIndexes.remove(dir.getAbsolutePath());
+            if (index != null) {
+                index.myPathsEnd = -1;
+            }
+        }
+        SVNFileUtil.deleteAll(dir, true);
+        dir.mkdirs();
+        SVNFileUtil.createEmptyFile(new File(dir, PATHS_FILE));
+        SVNFileUtil.createEmptyFile(new File(dir, REVISIONS_FILE));
+        SVNFileUtil.createEmptyFile(new File(dir, REVISIONS_INDEX_FILE));
+        File formatFile = new File(dir, FORMAT_FILE);
+        File tmpFile = SVNFileUtil.createUniqueFile(dir, FORMAT_FILE, ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, FORMAT + "\n", "US-ASCII");
+        SVNFileUtil.rename(tmpFile, formatFile);
+        FSLogIndex index = getIndex(fsfs);
+        index.update(fsfs);
+        return index;
+    }
+
+    private FSLogIndex(File directory) {
+        myDirectory = directory;
+        myPaths = new TreeMap();
+        myLastLoadedRevision = -1;
+    }
+
+    /**
+     * Returns the number of revisions (starting with revision 0) the index has records for.
+     */
+    public long getRevisionsCount() {
+        return new File(myDirectory, REVISIONS_INDEX_FILE).length() / 8;
+    }
+
+    /**
+     * Appends records of all revisions which are not indexed yet. Should be called under
+     * the {@link FSWriteLock#getWriteLockForIndexes(FSFS) index lock}.
+     */
+    public synchronized void update(FSFS fsfs) throws SVNException {
+        long youngest = fsfs.getYoungestRevision();
+        long next = getRevisionsCount();
+        if (next > youngest) {
+            return;
+        }
+        OutputStream pathsOS = null;
+        RandomAccessFile revisionsFile = null;
+        RandomAccessFile indexFile = null;
+        try {
+            truncatePaths(next);
+            pathsOS = SVNFileUtil.openFileForWriting(new File(myDirectory, PATHS_FILE), true);
+            revisionsFile = new RandomAccessFile(new File(myDirectory, REVISIONS_FILE), "rw");
+            indexFile = new RandomAccessFile(new File(myDirectory, REVISIONS_INDEX_FILE), "rw");
+            indexFile.setLength(next * 8);
+            for (long revision = next; revision <= youngest; revision++) {
+                Map changedPaths = revision > 0 ? fsfs.createRevisionRoot(revision).detectChanged() : new SVNHashMap();
+                byte[] block = createPathsBlock(revision, changedPaths);
+                pathsOS.write(block);
+                pathsOS.flush();
+                myPathsEnd += block.length;
+                long offset = appendRecord(revisionsFile, fsfs, revision, changedPaths);
+                indexFile.seek(revision * 8);
+                indexFile.writeLong(offset);
+            }
+        } catch (IOException e) {
+            myPathsEnd = -1;
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not update log index ''{0}'': {1}",
+                    new Object[] {myDirectory, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(pathsOS);
+            closeFile(revisionsFile);
+            closeFile(indexFile);
+        }
+    }
+
+    /**
+     * Re-reads revision properties of an indexed revision. Should be called under the
+     * {@link FSWriteLock#getWriteLockForIndexes(FSFS) index lock}.
+     */
+    public synchronized void updateRevisionProperties(FSFS fsfs, long revision) throws SVNException {
+        if (revision >= getRevisionsCount()) {
+            return;
+        }
+        Record record = getRecord(revision);
+        if (record == null) {
+            return;
+        }
+        RandomAccessFile revisionsFile = null;
+        RandomAccessFile indexFile = null;
+        try {
+            revisionsFile = new RandomAccessFile(new File(myDirectory, REVISIONS_FILE), "rw");
+            indexFile = new RandomAccessFile(new File(myDirectory, REVISIONS_INDEX_FILE), "rw");
+            long offset = appendRecord(revisionsFile, fsfs, revision, record.myChangedPaths);
+            indexFile.seek(revision * 8);
+            indexFile.writeLong(offset);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not update log index ''{0}'': {1}",
+                    new Object[] {myDirectory, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            closeFile(revisionsFile);
+            closeFile(indexFile);
+        }
+    }
+
+    /**
+     * Returns the indexed record of <code>revision</code> or <code>null</code> when the
+     * revision is not indexed yet.
+     */
+    public Record getRecord(long revision) throws SVNException {
+        Reader reader = openReader();
+        try {
+            return reader.getRecord(revision);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns a reader of revision records which keeps the index files open
+     * until it is {@link Reader#close() closed}, for callers reading many records.
+     */
+    public Reader openReader() {
+        return new Reader();
+    }
+
+    /**
+     * Returns revisions in <code>[start, end]</code> which are part of the history of
+     * <code>paths</code> as they exist in <code>end</code>, youngest first.
+     *
+     * Returns <code>null</code> when the index can not answer the query: when <code>end</code>
+     * is not indexed yet, or when history of one of the paths crosses a copy and
+     * <code>strictNode</code> is <code>false</code>. Callers should use node history then.
+     */
+    public synchronized long[] getHistoryRevisions(String[] paths, long start, long end, boolean strictNode) throws SVNException {
+        long indexedCount = getRevisionsCount();
+        if (end < start || end >= indexedCount) {
+            return null;
+        }
+        loadPaths(indexedCount);
+        if (myLastLoadedRevision < end) {
+            // paths.dat lacks blocks of indexed revisions
+            return null;
+        }
+        int size = (int) (end - start + 1);
+        BitSet revisions = new BitSet(size);
+        for (int i = 0; i < paths.length; i++) {
+            if (!collectHistoryRevisions(paths[i], start, end, strictNode, revisions)) {
+                return null;
+            }
+        }
+        long[] result = new long[revisions.cardinality()];
+        int count = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if (revisions.get(i)) {
+                result[count++] = start + i;
+            }
+        }
+        return result;
+    }
+
+    private boolean collectHistoryRevisions(String path, long start, long end, boolean strictNode, BitSet result) throws SVNException {
+        int size = (int) (end - start + 1);
+        BitSet changes = new BitSet(size);
+        BitSet boundaries = new BitSet(size);
+
+        addRevisions((IntArray) myPaths.get(path), start, end, changes, boundaries, false);
+        String prefix = path.endsWith("/") ? path : path + "/";
+        String upperBound = prefix.substring(0, prefix.length() - 1) + (char) ('/' + 1);
+        SortedMap descendants = myPaths.subMap(prefix, upperBound);
+        for (Iterator entries = descendants.values().iterator(); entries.hasNext();) {
+            addRevisions((IntArray) entries.next(), start, end, changes, null, false);
+        }
+        for (String parent = SVNPathUtil.removeTail(path); !"".equals(parent); parent = SVNPathUtil.removeTail(parent)) {
+            addRevisions((IntArray) myPaths.get(parent), start, end, changes, boundaries, true);
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+            if (!changes.get(i)) {
+                continue;
+            }
+            result.set(i);
+            if (boundaries.get(i)) {
+                if (!strictNode && isCopied(path, start + i)) {
+                    return false;
+                }
+                break;
+            }
+        }
+        return true;
+    }
+
+    private boolean isCopied(String path, long revision) throws SVNException {
+        Record record = getRecord(revision);
+        if (record == null) {
+            return true;
+        }
+        for (Iterator changes = record.myChangedPaths.values().iterator(); changes.hasNext();) {
+            SVNLogEntryPath change = (SVNLogEntryPath) changes.next();
+            if (change.getCopyPath() != null && SVNPathUtil.isAncestor(change.getPath(), path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addRevisions(IntArray entries, long start, long end, BitSet changes, BitSet boundaries, boolean structuralOnly) {
+        if (entries == null) {
+            return;
+        }
+        for (int i = 0; i < entries.mySize; i++) {
+            long revision = entries.myValues[i] >>> 2;
+            int action = entries.myValues[i] & 3;
+            if (revision < start || revision > end || (structuralOnly && action == ACTION_MODIFY)) {
+                continue;
+            }
+            changes.set((int) (revision - start));
+            if (boundaries != null && action != ACTION_MODIFY) {
+                boundaries.set((int) (revision - start));
+            }
+        }
+    }
+
+    private void loadPaths(long revisionsCount) throws SVNException {
+        File pathsFile = new File(myDirectory, PATHS_FILE);
+        long length = pathsFile.length();
+        long formatLastModified = new File(myDirectory, FORMAT_FILE).lastModified();
+        if (length < myPathsFileLength || formatLastModified != myFormatLastModified) {
+            // the index has been rebuilt
+            myPaths.clear();
+            myPathsFileLength = 0;
+            myLastLoadedRevision = -1;
+            myFormatLastModified = formatLastModified;
+        }
+        if (length <= myPathsFileLength) {
+            return;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(pathsFile, "r");
+            file.seek(myPathsFileLength);
+            while (myPathsFileLength + 8 <= length) {
+                int blockLength = file.readInt();
+                if (blockLength < 8 || myPathsFileLength + 4 + blockLength > length) {
+                    break;
+                }
+                byte[] block = new byte[blockLength];
+                file.readFully(block);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+                int revision = in.readInt();
+                if (revision <= myLastLoadedRevision || revision >= revisionsCount) {
+                    // not indexed yet, or left by an interrupted update
+                    break;
+                }
+                myPathsFileLength += 4 + blockLength;
+                myLastLoadedRevision = revision;
+                for (int count = in.readInt(); count > 0; count--) {
+                    String path = readString(in);
+                    int action = in.readByte();
+                    IntArray revisions = (IntArray) myPaths.get(path);
+                    if (revisions == null) {
+                        revisions = new IntArray();
+                        myPaths.put(path, revisions);
+                    }
+                    revisions.add((revision << 2) | action);
+                }
+            }
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not read log index ''{0}'': {1}",
+                    new Object[] {myDirectory, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            closeFile(file);
+        }
+    }
+
+    /**
+     * Truncates <code>paths.dat</code> after the block of the last indexed revision, dropping
+     * blocks and a partial block left by an interrupted update.
+     */
+    private void truncatePaths(long revisionsCount) throws IOException, SVNException {
+        File pathsFile = new File(myDirectory, PATHS_FILE);
+        long length = pathsFile.length();
+        if (myPathsEnd >= 0 && myPathsEnd == length) {
+            return;
+        }
+        RandomAccessFile file = null;
+        long offset = 0;
+        long lastRevision = -1;
+        try {
+            file = new RandomAccessFile(pathsFile, "rw");
+            while (offset + 8 <= length) {
+                file.seek(offset);
+                int blockLength = file.readInt();
+                int revision = file.readInt();
+                if (blockLength < 8 || offset + 4 + blockLength > length || revision <= lastRevision || revision >= revisionsCount) {
+                    break;
+                }
+                lastRevision = revision;
+                offset += 4 + blockLength;
+            }
+            if (lastRevision != revisionsCount - 1) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT,
+                        "Log index ''{0}'' has no changed paths of revision {1}; the index should be rebuilt",
+                        new Object[] {myDirectory, new Long(lastRevision + 1)});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            if (offset < length) {
+                file.setLength(offset);
+            }
+        } finally {
+            closeFile(file);
+        }
+        myPathsEnd = offset;
+    }
+
+    private static byte[] createPathsBlock(long revision, Map changedPaths) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(0);
+        out.writeInt((int) revision);
+        out.writeInt(changedPaths.size());
+        for (Iterator changes = changedPaths.values().iterator(); changes.hasNext();) {
+            SVNLogEntryPath change = (SVNLogEntryPath) changes.next();
+            writeString(out, change.getPath());
+            out.writeByte(getAction(change.getType()));
+        }
+        out.flush();
+        byte[] block = bos.toByteArray();
+        int blockLength = block.length - 4;
+        block[0] = (byte) (blockLength >>> 24);
+        block[1] = (byte) (blockLength >>> 16);
+        block[2] = (byte) (blockLength >>> 8);
+        block[3] = (byte) blockLength;
+        return block;
+    }
+
+    private static long appendRecord(RandomAccessFile file, FSFS fsfs, long revision, Map changedPaths) throws IOException, SVNException {
+        File revPropsFile = fsfs.getRevisionPropertiesFile(revision, false);
+        long propsLength = revPropsFile.length();
+        long propsLastModified = revPropsFile.lastModified();
+        SVNProperties properties = fsfs.getRevisionProperties(revision);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(changedPaths.size());
+        for (Iterator changes = changedPaths.values().iterator(); changes.hasNext();) {
+            SVNLogEntryPath change = (SVNLogEntryPath) changes.next();
+            writeString(out, change.getPath());
+            out.writeChar(change.getType());
+            writeString(out, change.getCopyPath());
+            out.writeLong(change.getCopyRevision());
+            writeString(out, change.getKind() != null ? change.getKind().toString() : null);
+        }
+        out.writeLong(propsLength);
+        out.writeLong(propsLastModified);
+        out.writeInt(properties.size());
+        for (Iterator names = properties.nameSet().iterator(); names.hasNext();) {
+            String name = (String) names.next();
+            SVNPropertyValue value = properties.getSVNPropertyValue(name);
+            writeString(out, name);
+            out.writeBoolean(value.isString());
+            writeBytes(out, SVNPropertyValue.getPropertyAsBytes(value));
+        }
+        out.flush();
+
+        long offset = file.length();
+        file.seek(offset);
+        file.writeInt(bos.size());
+        file.write(bos.toByteArray());
+        return offset;
+    }
+
+    private static Record readRecord(DataInputStream in, long revision) throws IOException {
+        Record record = new Record();
+        record.myRevision = revision;
+        record.myChangedPaths = new SVNHashMap();
+        for (int count = in.readInt(); count > 0; count--) {
+            String path = readString(in);
+            char type = in.readChar();
+            String copyPath = readString(in);
+            long copyRevision = in.readLong();
+            String kind = readString(in);
+            record.myChangedPaths.put(path, new SVNLogEntryPath(path, type, copyPath, copyRevision,
+                    kind != null ? SVNNodeKind.parseKind(kind) : SVNNodeKind.UNKNOWN));
+        }
+        record.myPropertiesLength = in.readLong();
+        record.myPropertiesLastModified = in.readLong();
+        record.myProperties = new SVNProperties();
+        for (int count = in.readInt(); count > 0; count--) {
+            String name = readString(in);
+            boolean isString = in.readBoolean();
+            byte[] value = readBytes(in);
+            if (isString) {
+                record.myProperties.put(name, new String(value, "UTF-8"));
+            } else {
+                record.myProperties.put(name, value);
+            }
+        }
+        return record;
+    }
+
+    private static int getAction(char type) {
+        switch (type) {
+            case SVNLogEntryPath.TYPE_ADDED:
+                return ACTION_ADD;
+            case SVNLogEntryPath.TYPE_DELETED:
+                return ACTION_DELETE;
+            case SVNLogEntryPath.TYPE_REPLACED:
+                return ACTION_REPLACE;
+            default:
+                return ACTION_MODIFY;
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes("UTF-8") : null);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes != null ? new String(bytes, "UTF-8") : null;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void closeFile(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Reads revision records through index file handles opened on the first read.
+     */
+    public class Reader {
+
+        private RandomAccessFile myIndexFile;
+        private RandomAccessFile myRevisionsFile;
+
+        private Reader() {
+        }
+
+        /**
+         * Returns the indexed record of <code>revision</code> or <code>null</code> when the
+         * revision is not indexed yet.
+         */
+        public Record getRecord(long revision) throws SVNException {
+            try {
+                File revisionsIndex = new File(myDirectory, REVISIONS_INDEX_FILE);
+                if (revision < 0 || revision >= revisionsIndex.length() / 8) {
+                    return null;
+                }
+                if (myIndexFile == null) {
+                    myIndexFile = new RandomAccessFile(revisionsIndex, "r");
+                    myRevisionsFile = new RandomAccessFile(new File(myDirectory, REVISIONS_FILE), "r");
+                }
+                myIndexFile.seek(revision * 8);
+                long offset = myIndexFile.readLong();
+                myRevisionsFile.seek(offset);
+                byte[] data = new byte[myRevisionsFile.readInt()];
+                myRevisionsFile.readFully(data);
+                return readRecord(new DataInputStream(new ByteArrayInputStream(data)), revision);
+            } catch (IOException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not read log index ''{0}'': {1}",
+                        new Object[] {myDirectory, e.getLocalizedMessage()});
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            }
+            return null;
+        }
+
+        public void close() {
+            closeFile(myIndexFile);
+            closeFile(myRevisionsFile);
+            myIndexFile = null;
+            myRevisionsFile = null;
+        }
+    }
+
+    public static class Record {
+
+        private long myRevision;
+        private Map myChangedPaths;
+        private SVNProperties myProperties;
+        private long myPropertiesLength;
+        private long myPropertiesLastModified;
+
+        public long getRevision() {
+            return myRevision;
+        }
+
+        /**
+         * Returns a new map of changed paths (<code>String</code> to {@link SVNLogEntryPath}).
+         */
+        public Map getChangedPaths() {
+            return new SVNHashMap(myChangedPaths);
+        }
+
+        /**
+         * Returns a copy of the indexed revision properties, or <code>null</code> if the
+         * revision properties file has been changed since the record was written.
+         */
+        public SVNProperties getRevisionProperties(FSFS fsfs) throws SVNException {
+            File revPropsFile = fsfs.getRevisionPropertiesFile(myRevision, true);
+            if (revPropsFile.length() != myPropertiesLength || revPropsFile.lastModified() != myPropertiesLastModified) {
+                return null;
+            }
+            return new SVNProperties(myProperties);
+        }
+    }
+
+    private static class IntArray {
+
+        private int[] myValues = new int[4];
+        private int mySize;
+
+        public void add(int value) {
+            if (mySize == myValues.length) {
+                int[] values = new int[mySize * 2];
+                System.arraycopy(myValues, 0, values, 0, mySize);
+                myValues = values;
+            }
+            myValues[mySize++] = value;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * Read-only memory mapping of a committed revision or pack file. The file
+ * is mapped lazily in fixed size windows, and the windows are shared by
+ * all readers of the file: every reader gets its own duplicate of a window,
+ * so readers never move each other's positions.
+ *
+ * Mappings are kept in a small process-wide LRU registry; a mapping is
+ * dropped once the file length or modification time changes.
+ *
+ * Java offers no way to unmap a file: a window stays mapped until it and
+ * every duplicate of it are garbage collected, neither {@link #releaseMappedFiles(File)}
+ * nor {@link FSFS#close()} unmaps it. On Windows a mapped file cannot be
+ * deleted or replaced, so packing a shard or removing revision files may
+ * fail while readers still hold windows of them.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSMappedFile {
+
+    public static final int WINDOW_SIZE = 8 * 1024 * 1024;
+
+    private static final int MAX_MAPPED_FILES = 64;
+
+    private static final Map ourMappedFiles = new LinkedHashMap(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > MAX_MAPPED_FILES;
+        }
+    };
+
+    private File myFile;
+    private long myLength;
+    private long myLastModified;
+    private MappedByteBuffer[] myWindows;
+
+    public static FSMappedFile getMappedFile(File file) {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        synchronized (ourMappedFiles) {
+            FSMappedFile mappedFile = (FSMappedFile) ourMappedFiles.get(path);
+            if (mappedFile == null || mappedFile.myLength != length || mappedFile.myLastModified != lastModified) {
+                mappedFile = new FSMappedFile(file, length, lastModified);
+                ourMappedFiles.put(path, mappedFile);
+            }
+            return mappedFile;
+        }
+    }
+
+    public static void releaseMappedFiles(File dir) {
+        String prefix = dir.getAbsolutePath() + File.separator;
+        synchronized (ourMappedFiles) {
+            for (Iterator paths = ourMappedFiles.keySet().iterator(); paths.hasNext();) {
+                String path = (String) paths.next();
+                if (path.startsWith(prefix)) {
+                    paths.remove();
+                }
+            }
+        }
+    }
+
+    private FSMappedFile(File file, long length, long lastModified) {
+        myFile = file;
+        myLength = length;
+        myLastModified = lastModified;
+        myWindows = new MappedByteBuffer[(int) ((length + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+    }
+
+    public long length() {
+        return myLength;
+    }
+
+    /**
+     * Returns a private view of the window that contains <code>position</code>,
+     * with the view's position 0 matching the window start, or <code>null</code>
+     * when <code>position</code> is past the end of the file.
+     */
+    public ByteBuffer getWindow(long position) throws IOException {
+        if (position < 0 || position >= myLength) {
+            return null;
+        }
+        int index = (int) (position / WINDOW_SIZE);
+        MappedByteBuffer window;
+        synchronized (this) {
+            window = myWindows[index];
+            if (window == null) {
+                window = map(index);
+                myWindows[index] = window;
+            }
+        }
+        return window.duplicate();
+    }
+
+    public static long getWindowStart(long position) {
+        return (position / WINDOW_SIZE) * WINDOW_SIZE;
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        long start = (long) index * WINDOW_SIZE;
+        long size = Math.min(WINDOW_SIZE, myLength - start);
+        FileInputStream inputStream = null;
+        FileChannel channel = null;
+        try {
+            inputStream = SVNFileUtil.createFileInputStream(myFile);
+            channel = inputStream.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                }
+            }
+            SVNFileUtil.closeFile(inputStream);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNMergeRangeList;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Optional per-repository index of paths which carry <code>svn:mergeinfo</code>.
+ *
+ * The index lives in <code>db/mergeinfo-index</code> and is only maintained
+ * when that directory exists (see {@link #create(FSFS)}). For every revision
+ * <code>mergeinfo.dat</code> holds a block with the paths whose mergeinfo was
+ * set, changed or removed in that revision, including paths which got or lost
+ * mergeinfo as part of a copied or deleted subtree. Blocks are loaded into
+ * memory as per path histories, so that explicit, inherited and descendant
+ * mergeinfo of any indexed revision is a lookup instead of a tree crawl.
+ * Revisions committed without updating the index are not indexed, so queries
+ * against them crawl the tree until the next update catches up; a partial
+ * block left by an interrupted update is ignored and truncated by the next
+ * update.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSMergeInfoIndex {
+
+    public static final String MERGE_INFO_INDEX_DIR = "mergeinfo-index";
+
+    private static final int FORMAT = 1;
+    private static final String FORMAT_FILE = "format";
+    private static final String MERGE_INFO_FILE = "mergeinfo.dat";
+    private static final int MAX_PARSED_MERGE_INFO = 1024;
+
+    private static final Map ourIndexes = new SVNHashMap();
+
+    private File myDirectory;
+    private TreeMap myPaths;
+    private long myFileLength;
+    private long myLastLoadedRevision;
+    private long myFormatLastModified;
+    private Map myParsedMergeInfo;
+
+    public static FSMergeInfoIndex getIndex(FSFS fsfs) {
+        File dir = new File(fsfs.getDBRoot(), MERGE_INFO_INDEX_DIR);
+        if (!new File(dir, FORMAT_FILE).isFile()) {
+            return null;
+        }
+        String key = dir.getAbsolutePath();
+        synchronized (ourIndexes) {
+            FSMergeInfoIndex index = (FSMergeInfoIndex) ourIndexes.get(key);
+            if (index == null) {
+                index = new FSMergeInfoIndex(dir);
+                ourIndexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * (Re)builds the index of the repository. Should be called under the
+     * {@link FSWriteLock#getWriteLockForIndexes(FSFS) index lock}.
+     */
+    public static FSMergeInfoIndex create(FSFS fsfs) throws SVNException {
+        if (!fsfs.supportsMergeInfo()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE,
+                    "Indexing mergeinfo requires version {0} of the FSFS filesystem schema;" +
+                    " filesystem ''{1}'' uses only version {2}",
+                    new Object[] { new Integer(FSFS.MIN_MERGE_INFO_FORMAT), fsfs.getDBRoot(),
+                    new Integer(fsfs.getDBFormat()) });
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        File dir = new File(fsfs.getDBRoot(), MERGE_INFO_INDEX_DIR);
+        synchronized (ourIndexes) {
+            ourIndexes.remove(dir.getAbsolutePath());
+        }
+        SVNFileUtil.deleteAll(dir, true);
+        dir.mkdirs();
+        SVNFileUtil.createEmptyFile(new File(dir, MERGE_INFO_FILE));
+        File tmpFile = SVNFileUtil.createUniqueFile(dir, FORMAT_FILE, ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, FORMAT + "\n", "US-ASCII");
+        SVNFileUtil.rename(tmpFile, new File(dir, FORMAT_FILE));
+        FSMergeInfoIndex index = getIndex(fsfs);
+        index.update(fsfs);
+        return index;
+    }
+
+    private FSMergeInfoIndex(File directory) {
+        myDirectory = directory;
+        myPaths = new TreeMap();
+        myLastLoadedRevision = -1;
+        myParsedMergeInfo = new LinkedHashMap(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_PARSED_MERGE_INFO;
+            }
+        };
+    }
+
+    /**
+     * Appends blocks of all revisions which are not indexed yet. Should be called under
+     * the {@link FSWriteLock#getWriteLockForIndexes(FSFS) index lock}.
+     */
+    public synchronized void update(FSFS fsfs) throws SVNException {
+        load();
+        long youngest = fsfs.getYoungestRevision();
+        if (myLastLoadedRevision >= youngest) {
+            return;
+        }
+        OutputStream os = null;
+        try {
+            truncate();
+            os = SVNFileUtil.openFileForWriting(new File(myDirectory, MERGE_INFO_FILE), true);
+            for (long revision = myLastLoadedRevision + 1; revision <= youngest; revision++) {
+                Map changes = revision > 0 ? collectChanges(fsfs, revision) : new TreeMap();
+                byte[] block = createBlock(revision, changes);
+                os.write(block);
+                os.flush();
+                myFileLength += block.length;
+                apply(revision, changes);
+            }
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not update mergeinfo index ''{0}'': {1}",
+                    new Object[] {myDirectory, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(os);
+        }
+    }
+
+    public synchronized boolean isIndexed(long revision) throws SVNException {
+        load();
+        return revision >= 0 && revision <= myLastLoadedRevision;
+    }
+
+    /**
+     * Returns a new map of <code>path</code>'s own mergeinfo in <code>revision</code>, or
+     * <code>null</code> if the path has no explicit mergeinfo there.
+     */
+    public synchronized Map getMergeInfo(String path, long revision) throws SVNException {
+        String value = getMergeInfoValue((PathHistory) myPaths.get(path), revision);
+        return value != null ? getParsedMergeInfo(value) : null;
+    }
+
+    /**
+     * Returns mergeinfo of all descendants of <code>path</code> which have explicit mergeinfo
+     * in <code>revision</code>, as a map of paths to new mergeinfo maps.
+     */
+    public synchronized Map getDescendantsMergeInfo(String path, long revision) throws SVNException {
+        Map result = new TreeMap();
+        String prefix = path.endsWith("/") ? path : path + "/";
+        String upperBound = prefix.substring(0, prefix.length() - 1) + (char) ('/' + 1);
+        SortedMap descendants = myPaths.subMap(prefix, upperBound);
+        for (Iterator entries = descendants.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            String value = getMergeInfoValue((PathHistory) entry.getValue(), revision);
+            if (value != null && !path.equals(entry.getKey())) {
+                result.put(entry.getKey(), getParsedMergeInfo(value));
+            }
+        }
+        return result;
+    }
+
+    private Map getParsedMergeInfo(String value) throws SVNException {
+        Map mergeInfo = (Map) myParsedMergeInfo.get(value);
+        if (mergeInfo == null) {
+            mergeInfo = SVNMergeInfoUtil.parseMergeInfo(new StringBuffer(value), null);
+            myParsedMergeInfo.put(value, mergeInfo);
+        }
+        Map copy = new TreeMap();
+        for (Iterator entries = mergeInfo.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            copy.put(entry.getKey(), ((SVNMergeRangeList) entry.getValue()).dup());
+        }
+        return copy;
+    }
+
+    private Map collectChanges(FSFS fsfs, long revision) throws SVNException {
+        FSRevisionRoot root = fsfs.createRevisionRoot(revision);
+        Map changedPaths = new TreeMap(root.getChangedPaths());
+        Map changes = new TreeMap();
+        for (Iterator paths = changedPaths.entrySet().iterator(); paths.hasNext();) {
+            Map.Entry entry = (Map.Entry) paths.next();
+            String path = (String) entry.getKey();
+            FSPathChange change = (FSPathChange) entry.getValue();
+            FSPathChangeKind kind = change.getChangeKind();
+            if (kind == FSPathChangeKind.FS_PATH_CHANGE_DELETE || kind == FSPathChangeKind.FS_PATH_CHANGE_REPLACE) {
+                String prefix = path.endsWith("/") ? path : path + "/";
+                String upperBound = prefix.substring(0, prefix.length() - 1) + (char) ('/' + 1);
+                for (Iterator removed = myPaths.subMap(path, upperBound).entrySet().iterator(); removed.hasNext();) {
+                    Map.Entry removedEntry = (Map.Entry) removed.next();
+                    String removedPath = (String) removedEntry.getKey();
+                    if ((removedPath.equals(path) || removedPath.startsWith(prefix)) &&
+                            getMergeInfoValue((PathHistory) removedEntry.getValue(), revision - 1) != null) {
+                        changes.put(removedPath, null);
+                    }
+                }
+            }
+            if (kind == FSPathChangeKind.FS_PATH_CHANGE_ADD || kind == FSPathChangeKind.FS_PATH_CHANGE_REPLACE) {
+                collectMergeInfo(fsfs, root, path, root.getRevisionNode(path), changes);
+            } else if (kind == FSPathChangeKind.FS_PATH_CHANGE_MODIFY && change.arePropertiesModified()) {
+                FSRevisionNode node = root.getRevisionNode(path);
+                if (node.hasMergeInfo()) {
+                    changes.put(path, getMergeInfoValue(fsfs, path, node));
+                } else if (getMergeInfoValue((PathHistory) myPaths.get(path), revision - 1) != null) {
+                    changes.put(path, null);
+                }
+            }
+        }
+        return changes;
+    }
+
+    private void collectMergeInfo(FSFS fsfs, FSRevisionRoot root, String path, FSRevisionNode node, Map changes) throws SVNException {
+        if (node.hasMergeInfo()) {
+            changes.put(path, getMergeInfoValue(fsfs, path, node));
+        }
+        if (node.getType() != SVNNodeKind.DIR || !node.hasDescendantsWithMergeInfo()) {
+            return;
+        }
+        Map entries = node.getDirEntries(fsfs);
+        for (Iterator kids = entries.values().iterator(); kids.hasNext();) {
+            FSEntry entry = (FSEntry) kids.next();
+            String kidPath = SVNPathUtil.getAbsolutePath(SVNPathUtil.append(path, entry.getName()));
+            collectMergeInfo(fsfs, root, kidPath, root.getRevisionNode(kidPath), changes);
+        }
+    }
+
+    private static String getMergeInfoValue(FSFS fsfs, String path, FSRevisionNode node) throws SVNException {
+        SVNProperties props = node.getProperties(fsfs);
+        String mergeInfo = props.getStringValue(SVNProperty.MERGE_INFO);
+        if (mergeInfo == null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT,
+                    "Node-revision ''{0}@{1}'' claims to have mergeinfo but doesn''t",
+                    new Object[] { path, new Long(node.getId().getRevision()) });
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return mergeInfo;
+    }
+
+    private static String getMergeInfoValue(PathHistory history, long revision) {
+        return history != null ? history.get(revision) : null;
+    }
+
+    private void apply(long revision, Map changes) {
+        for (Iterator entries = changes.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            PathHistory history = (PathHistory) myPaths.get(entry.getKey());
+            if (history == null) {
+                history = new PathHistory();
+                myPaths.put(entry.getKey(), history);
+            }
+            history.add(revision, (String) entry.getValue());
+        }
+        myLastLoadedRevision = revision;
+    }
+
+    private void load() throws SVNException {
+        File file = new File(myDirectory, MERGE_INFO_FILE);
+        long length = file.length();
+        long formatLastModified = new File(myDirectory, FORMAT_FILE).lastModified();
+        if (length < myFileLength || formatLastModified != myFormatLastModified) {
+            // the index has been rebuilt
+            myPaths.clear();
+            myFileLength = 0;
+            myLastLoadedRevision = -1;
+            myFormatLastModified = formatLastModified;
+        }
+        if (length <= myFileLength) {
+            return;
+        }
+        RandomAccessFile raFile = null;
+        try {
+            raFile = new RandomAccessFile(file, "r");
+            raFile.seek(myFileLength);
+            while (myFileLength + 16 <= length) {
+                int blockLength = raFile.readInt();
+                if (blockLength < 12 || myFileLength + 4 + blockLength > length) {
+                    break;
+                }
+                byte[] block = new byte[blockLength];
+                raFile.readFully(block);
+                myFileLength += 4 + blockLength;
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+                long revision = in.readLong();
+                if (revision <= myLastLoadedRevision) {
+                    continue;
+                }
+                Map changes = new TreeMap();
+                for (int count = in.readInt(); count > 0; count--) {
+                    String path = FSLogIndex.readString(in);
+                    changes.put(path, FSLogIndex.readString(in));
+                }
+                apply(revision, changes);
+            }
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not read mergeinfo index ''{0}'': {1}",
+                    new Object[] {myDirectory, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            FSLogIndex.closeFile(raFile);
+        }
+    }
+
+    /**
+     * Drops a partial block an interrupted update may have left after the loaded ones,
+     * so that new blocks are not appended after it.
+     */
+    private void truncate() throws IOException {
+        File file = new File(myDirectory, MERGE_INFO_FILE);
+        if (file.length() <= myFileLength) {
+            return;
+        }
+        RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        try {
+            raFile.setLength(myFileLength);
+        } finally {
+            FSLogIndex.closeFile(raFile);
+        }
+    }
+
+    private static byte[] createBlock(long revision, Map changes) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(0);
+        out.writeLong(revision);
+        out.writeInt(changes.size());
+        for (Iterator entries = changes.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            FSLogIndex.writeString(out, (String) entry.getKey());
+            FSLogIndex.writeString(out, (String) entry.getValue());
+        }
+        out.flush();
+        byte[] block = bos.toByteArray();
+        int blockLength = block.length - 4;
+        block[0] = (byte) (blockLength >>> 24);
+        block[1] = (byte) (blockLength >>> 16);
+        block[2] = (byte) (blockLength >>> 8);
+        block[3] = (byte) blockLength;
+        return block;
+    }
+
+    private static class PathHistory {
+
+        private long[] myRevisions = new long[2];
+        private String[] myValues = new String[2];
+        private int mySize;
+
+        public void add(long revision, String value) {
+            if (mySize == myRevisions.length) {
+                long[] revisions = new long[mySize * 2];
+                String[] values = new String[mySize * 2];
+                System.arraycopy(myRevisions, 0, revisions, 0, mySize);
+                System.arraycopy(myValues, 0, values, 0, mySize);
+                myRevisions = revisions;
+                myValues = values;
+            }
+            myRevisions[mySize] = revision;
+            myValues[mySize] = value;
+            mySize++;
+        }
+
+        public String get(long revision) {
+            int low = 0;
+            int high = mySize - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (myRevisions[middle] <= revision) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found >= 0 ? myValues[found] : null;
+        }
+    }
+}
@@ -19,6 +19,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -58,6 +60,9 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     private ByteArrayOutputStream myTextBuffer;
     private boolean myIsClosed;
     private boolean myIsCompress;
+    private int myCompressionLevel;
+    private int myWindowSize;
+    private int myWriteBufferSize;
     private FSWriteLock myTxnLock;
 
     private FSOutputStream(FSRevisionNode revNode, CountingOutputStream targetFileOS, File targetFile, InputStream source, long deltaStart, 
@@ -74,7 +79,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         mySourceOffset = 0;
         myIsClosed = false;
         myTxnLock = txnLock;
-        myDeltaGenerator = new SVNDeltaGenerator(SVN_DELTA_WINDOW_SIZE);
+        setDeltaOptions(txnRoot.getOwner());
         myTextBuffer = new ByteArrayOutputStream();
 
         try {
@@ -110,6 +115,17 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         mySHA1Digest.reset();
         myTextBuffer.reset();
         myTxnLock = txnLock;
+        setDeltaOptions(txnRoot.getOwner());
+    }
+
+    private void setDeltaOptions(FSFS owner) {
+        int windowSize = owner.getDeltaWindowSize();
+        if (myDeltaGenerator == null || myWindowSize != windowSize) {
+            myDeltaGenerator = new SVNDeltaGenerator(windowSize);
+            myWindowSize = windowSize;
+            myWriteBufferSize = 2*windowSize;
+        }
+        myCompressionLevel = owner.getDeltaCompressionLevel();
     }
 
     public static OutputStream createStream(FSRevisionNode revNode, FSTransactionRoot txnRoot, OutputStream dstStream, boolean compress) throws SVNException {
@@ -196,14 +212,19 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         while (len > 0) {
             toWrite = len;
             myTextBuffer.write(b, off, toWrite);
-            if (myTextBuffer.size() >= WRITE_BUFFER_SIZE) {
+            if (myTextBuffer.size() >= myWriteBufferSize) {
+                // only whole windows are sent, readers expect each window to match the window 
+                // with the same index in the delta base
+                byte[] text = myTextBuffer.toByteArray();
+                int sendLength = text.length - text.length % myWindowSize;
                 try {
-                    ByteArrayInputStream target = new ByteArrayInputStream(myTextBuffer.toByteArray());
+                    ByteArrayInputStream target = new ByteArrayInputStream(text, 0, sendLength);
                     myDeltaGenerator.sendDelta(null, mySourceStream, mySourceOffset, target, this, false);
                 } catch (SVNException svne) {
                     throw new IOException(svne.getMessage());
                 }
                 myTextBuffer.reset();
+                myTextBuffer.write(text, sendLength, text.length - sendLength);
             }
             off += toWrite;
             len -= toWrite;
@@ -239,17 +260,16 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             FSFS fsfs = myTxnRoot.getOwner();
             final IFSRepresentationCacheManager reposCacheManager = fsfs.getRepositoryCacheManager();
             if (reposCacheManager != null) {
-                reposCacheManager.runReadTransaction(new IFSSqlJetTransaction() {
-                    public void run() throws SVNException {
-                        FSRepresentation oldRep = reposCacheManager.getRepresentationByHash(rep.getSHA1HexDigest());
-                        if (oldRep != null) {
-                            oldRep.setUniquifier(rep.getUniquifier());
-                            oldRep.setMD5HexDigest(rep.getMD5HexDigest());
-                            truncateToSize[0] = myRepOffset;
-                            myRevNode.setTextRepresentation(oldRep);
-                        }
-                    }
-                });
+                // sharing must be decided before this stream is closed, so there is
+                // nothing to batch here; absent hashes are still answered without a lookup
+                Map oldReps = reposCacheManager.findRepresentations(Collections.singletonList(rep.getSHA1HexDigest()));
+                FSRepresentation oldRep = (FSRepresentation) oldReps.get(rep.getSHA1HexDigest());
+                if (oldRep != null) {
+                    oldRep.setUniquifier(rep.getUniquifier());
+                    oldRep.setMD5HexDigest(rep.getMD5HexDigest());
+                    truncateToSize[0] = myRepOffset;
+                    myRevNode.setTextRepresentation(oldRep);
+                }
             } 
             if (truncateToSize[0] < 0){
                 myTargetFileOS.write("ENDREP\n".getBytes("UTF-8"));
@@ -285,7 +305,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
         mySourceOffset += diffWindow.getSourceViewLength();
         try {
-            diffWindow.writeTo(myTargetFileOS, !isHeaderWritten, myIsCompress);
+            diffWindow.writeTo(myTargetFileOS, !isHeaderWritten, myIsCompress, myCompressionLevel);
             isHeaderWritten = true;
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
@@ -89,6 +89,7 @@ public class FSPacker {
         
         firePackEvent(shard, true);
         
+        FSFileChannelPool.getInstance().closeChannels(packDir);
         SVNFileUtil.deleteAll(packDir, false, myCanceller);
         
         long startRev = shard * fsfs.getMaxFilesPerDirectory();
@@ -125,6 +126,8 @@ public class FSPacker {
         String line = String.valueOf((shard + 1) * fsfs.getMaxFilesPerDirectory()) + '\n';
         SVNFileUtil.writeToFile(tmpFile, line, "UTF-8");
         SVNFileUtil.rename(tmpFile, finalPath);
+        FSFileChannelPool.getInstance().closeChannels(shardPath);
+        FSMappedFile.releaseMappedFiles(shardPath);
         SVNFileUtil.deleteAll(shardPath, true, myCanceller);
         
         firePackEvent(shard, false);
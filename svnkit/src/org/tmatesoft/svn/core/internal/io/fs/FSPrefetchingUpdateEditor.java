@@ -0,0 +1,598 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+
+/**
+ * Editor wrapper used by {@link FSUpdateContext} to compute file text deltas on a pool of
+ * worker threads. Deltas are {@link #sendTextDelta(String, String, String, long, String, long) submitted}
+ * as soon as the update walk reaches a file, and every editor call made after that is queued
+ * behind them. Queued calls are passed to the wrapped editor on the calling thread and in the
+ * order they were made, as soon as the deltas before them are ready. The walk is held up when
+ * the queue grows longer than a few thousand calls or the computed deltas waiting to be sent
+ * take more than {@link #getMaxPrefetchedSize()} bytes. A worker also gives up buffering a
+ * single delta once it grows over 4 megabytes; such a delta is computed again on the calling
+ * thread when its turn comes and streamed to the wrapped editor.
+ *
+ * Each worker reads the repository through its own {@link FSFS} instance, opened once the worker
+ * gets its first task, which reads the same <code>fsfs.conf</code> and is given the settings of
+ * the owner that are not kept there.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSPrefetchingUpdateEditor implements ISVNEditor {
+
+    private static final int MAX_QUEUED_OPERATIONS = 4096;
+    private static final long PREFETCHED_SIZE_PER_THREAD = 4 * 1024 * 1024;
+
+    private static final int TARGET_REVISION = 0;
+    private static final int OPEN_ROOT = 1;
+    private static final int DELETE_ENTRY = 2;
+    private static final int ABSENT_DIR = 3;
+    private static final int ABSENT_FILE = 4;
+    private static final int ADD_DIR = 5;
+    private static final int OPEN_DIR = 6;
+    private static final int CHANGE_DIR_PROPERTY = 7;
+    private static final int CLOSE_DIR = 8;
+    private static final int ADD_FILE = 9;
+    private static final int OPEN_FILE = 10;
+    private static final int CHANGE_FILE_PROPERTY = 11;
+    private static final int CLOSE_FILE = 12;
+    private static final int APPLY_TEXT_DELTA = 13;
+    private static final int TEXT_DELTA_CHUNK = 14;
+    private static final int TEXT_DELTA_END = 15;
+
+    private ISVNEditor myEditor;
+    private FSFS myOwner;
+    private SVNDeltaCombiner myDeltaCombiner;
+    private SVNDeltaGenerator myDeltaGenerator;
+    private Thread[] myWorkers;
+    private LinkedList myOperations;
+    private LinkedList myTasks;
+    private long myPrefetchedSize;
+    private long myMaxPrefetchedSize;
+    private SVNException myError;
+    private boolean myIsStopped;
+
+    public FSPrefetchingUpdateEditor(ISVNEditor editor, FSFS owner, int threadsCount) {
+        myEditor = editor;
+        myOwner = owner;
+        myWorkers = new Thread[threadsCount];
+        myOperations = new LinkedList();
+        myTasks = new LinkedList();
+        myMaxPrefetchedSize = threadsCount * PREFETCHED_SIZE_PER_THREAD;
+    }
+
+    public long getMaxPrefetchedSize() {
+        return myMaxPrefetchedSize;
+    }
+
+    /**
+     * Schedules computing the delta between <code>sourcePath</code> in <code>sourceRevision</code>
+     * (or empty contents, when <code>sourcePath</code> is <span class="javakeyword">null</span>) and
+     * <code>targetPath</code> in <code>targetRevision</code>. The delta is sent to the wrapped editor
+     * for <code>editPath</code>, preceded by <code>applyTextDelta(editPath, baseChecksum)</code>.
+     */
+    public void sendTextDelta(String editPath, String sourcePath, String baseChecksum, long sourceRevision,
+            String targetPath, long targetRevision) throws SVNException {
+        DeltaTask task = new DeltaTask(editPath, sourcePath, baseChecksum, sourceRevision, targetPath, targetRevision);
+        synchronized (this) {
+            if (myWorkers[0] == null) {
+                startWorkers();
+            }
+            myOperations.add(task);
+            myTasks.add(task);
+            notifyAll();
+        }
+        flush(false);
+    }
+
+    /**
+     * Stops the workers without sending queued calls, unless they have been flushed before.
+     */
+    public void dispose() {
+        synchronized (this) {
+            myIsStopped = true;
+            myOperations.clear();
+            myTasks.clear();
+            notifyAll();
+        }
+        for (int i = 0; i < myWorkers.length; i++) {
+            if (myWorkers[i] != null) {
+                try {
+                    myWorkers[i].join();
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+
+    public void targetRevision(long revision) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.targetRevision(revision);
+            return;
+        }
+        enqueue(new Operation(TARGET_REVISION, null, null, revision));
+    }
+
+    public void openRoot(long revision) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.openRoot(revision);
+            return;
+        }
+        enqueue(new Operation(OPEN_ROOT, null, null, revision));
+    }
+
+    public void deleteEntry(String path, long revision) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.deleteEntry(path, revision);
+            return;
+        }
+        enqueue(new Operation(DELETE_ENTRY, path, null, revision));
+    }
+
+    public void absentDir(String path) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.absentDir(path);
+            return;
+        }
+        enqueue(new Operation(ABSENT_DIR, path, null, -1));
+    }
+
+    public void absentFile(String path) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.absentFile(path);
+            return;
+        }
+        enqueue(new Operation(ABSENT_FILE, path, null, -1));
+    }
+
+    public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.addDir(path, copyFromPath, copyFromRevision);
+            return;
+        }
+        enqueue(new Operation(ADD_DIR, path, copyFromPath, copyFromRevision));
+    }
+
+    public void openDir(String path, long revision) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.openDir(path, revision);
+            return;
+        }
+        enqueue(new Operation(OPEN_DIR, path, null, revision));
+    }
+
+    public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.changeDirProperty(name, value);
+            return;
+        }
+        Operation operation = new Operation(CHANGE_DIR_PROPERTY, null, name, -1);
+        operation.myValue = value;
+        enqueue(operation);
+    }
+
+    public void closeDir() throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.closeDir();
+            return;
+        }
+        enqueue(new Operation(CLOSE_DIR, null, null, -1));
+    }
+
+    public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.addFile(path, copyFromPath, copyFromRevision);
+            return;
+        }
+        enqueue(new Operation(ADD_FILE, path, copyFromPath, copyFromRevision));
+    }
+
+    public void openFile(String path, long revision) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.openFile(path, revision);
+            return;
+        }
+        enqueue(new Operation(OPEN_FILE, path, null, revision));
+    }
+
+    public void changeFileProperty(String path, String propertyName, SVNPropertyValue propertyValue) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.changeFileProperty(path, propertyName, propertyValue);
+            return;
+        }
+        Operation operation = new Operation(CHANGE_FILE_PROPERTY, path, propertyName, -1);
+        operation.myValue = propertyValue;
+        enqueue(operation);
+    }
+
+    public void closeFile(String path, String textChecksum) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.closeFile(path, textChecksum);
+            return;
+        }
+        enqueue(new Operation(CLOSE_FILE, path, textChecksum, -1));
+    }
+
+    public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.applyTextDelta(path, baseChecksum);
+            return;
+        }
+        enqueue(new Operation(APPLY_TEXT_DELTA, path, baseChecksum, -1));
+    }
+
+    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+        if (isQueueEmpty()) {
+            return myEditor.textDeltaChunk(path, diffWindow);
+        }
+        Operation operation = new Operation(TEXT_DELTA_CHUNK, path, null, -1);
+        operation.myWindow = copyWindow(diffWindow);
+        enqueue(operation);
+        return null;
+    }
+
+    public void textDeltaEnd(String path) throws SVNException {
+        if (isQueueEmpty()) {
+            myEditor.textDeltaEnd(path);
+            return;
+        }
+        enqueue(new Operation(TEXT_DELTA_END, path, null, -1));
+    }
+
+    public SVNCommitInfo closeEdit() throws SVNException {
+        flush(true);
+        return myEditor.closeEdit();
+    }
+
+    public void abortEdit() throws SVNException {
+        dispose();
+        myEditor.abortEdit();
+    }
+
+    private synchronized boolean isQueueEmpty() {
+        return myOperations.isEmpty();
+    }
+
+    private void enqueue(Operation operation) throws SVNException {
+        synchronized (this) {
+            myOperations.add(operation);
+        }
+        flush(false);
+    }
+
+    /*
+     * Passes queued calls to the editor up to the first delta that is not computed yet.
+     * Waits for that delta as well when everything has to be sent or the queue is full.
+     */
+    private void flush(boolean all) throws SVNException {
+        while (true) {
+            Operation operation = null;
+            synchronized (this) {
+                while (true) {
+                    if (myOperations.isEmpty()) {
+                        return;
+                    }
+                    operation = (Operation) myOperations.getFirst();
+                    if (!(operation instanceof DeltaTask) || ((DeltaTask) operation).myIsDone) {
+                        break;
+                    }
+                    if (!all && myOperations.size() <= MAX_QUEUED_OPERATIONS && myPrefetchedSize <= myMaxPrefetchedSize) {
+                        return;
+                    }
+                    if (myError != null) {
+                        throw myError;
+                    }
+                    // workers holding off because of the prefetched size have to take this one
+                    notifyAll();
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        SVNErrorManager.cancel("operation cancelled", SVNLogType.FSFS);
+                    }
+                }
+                myOperations.removeFirst();
+                if (operation instanceof DeltaTask) {
+                    myPrefetchedSize -= ((DeltaTask) operation).mySize;
+                    notifyAll();
+                }
+            }
+            send(operation);
+        }
+    }
+
+    private void send(Operation operation) throws SVNException {
+        switch (operation.myType) {
+            case TARGET_REVISION:
+                myEditor.targetRevision(operation.myRevision);
+                break;
+            case OPEN_ROOT:
+                myEditor.openRoot(operation.myRevision);
+                break;
+            case DELETE_ENTRY:
+                myEditor.deleteEntry(operation.myPath, operation.myRevision);
+                break;
+            case ABSENT_DIR:
+                myEditor.absentDir(operation.myPath);
+                break;
+            case ABSENT_FILE:
+                myEditor.absentFile(operation.myPath);
+                break;
+            case ADD_DIR:
+                myEditor.addDir(operation.myPath, operation.myName, operation.myRevision);
+                break;
+            case OPEN_DIR:
+                myEditor.openDir(operation.myPath, operation.myRevision);
+                break;
+            case CHANGE_DIR_PROPERTY:
+                myEditor.changeDirProperty(operation.myName, operation.myValue);
+                break;
+            case CLOSE_DIR:
+                myEditor.closeDir();
+                break;
+            case ADD_FILE:
+                myEditor.addFile(operation.myPath, operation.myName, operation.myRevision);
+                break;
+            case OPEN_FILE:
+                myEditor.openFile(operation.myPath, operation.myRevision);
+                break;
+            case CHANGE_FILE_PROPERTY:
+                myEditor.changeFileProperty(operation.myPath, operation.myName, operation.myValue);
+                break;
+            case CLOSE_FILE:
+                myEditor.closeFile(operation.myPath, operation.myName);
+                break;
+            case APPLY_TEXT_DELTA:
+                myEditor.applyTextDelta(operation.myPath, operation.myName);
+                break;
+            case TEXT_DELTA_CHUNK:
+                SVNFileUtil.closeFile(myEditor.textDeltaChunk(operation.myPath, operation.myWindow));
+                break;
+            case TEXT_DELTA_END:
+                myEditor.textDeltaEnd(operation.myPath);
+                break;
+            default:
+                DeltaTask task = (DeltaTask) operation;
+                if (task.myError != null) {
+                    throw task.myError;
+                }
+                if (task.myIsStreamed) {
+                    streamTextDelta(task);
+                    break;
+                }
+                myEditor.applyTextDelta(task.myPath, task.myName);
+                for (int i = 0; i < task.myWindows.size(); i++) {
+                    SVNFileUtil.closeFile(myEditor.textDeltaChunk(task.myPath, (SVNDiffWindow) task.myWindows.get(i)));
+                }
+                myEditor.textDeltaEnd(task.myPath);
+        }
+    }
+
+    private void streamTextDelta(DeltaTask task) throws SVNException {
+        if (myDeltaCombiner == null) {
+            myDeltaCombiner = new SVNDeltaCombiner();
+            myDeltaGenerator = new SVNDeltaGenerator();
+        }
+        FSRevisionRoot sourceRoot = task.mySourcePath != null ? myOwner.createRevisionRoot(task.myRevision) : null;
+        FSRevisionRoot targetRoot = myOwner.createRevisionRoot(task.myTargetRevision);
+        try {
+            FSRepositoryUtil.sendTextDelta(myEditor, task.myPath, task.mySourcePath, task.myName, sourceRoot,
+                    task.myTargetPath, targetRoot, true, myDeltaCombiner, myDeltaGenerator, myOwner);
+        } finally {
+            myDeltaCombiner.reset();
+        }
+    }
+
+    private void startWorkers() {
+        for (int i = 0; i < myWorkers.length; i++) {
+            myWorkers[i] = new Thread(new Worker(), "svnkit-update-delta-" + i);
+            myWorkers[i].setDaemon(true);
+            myWorkers[i].start();
+        }
+    }
+
+    /*
+     * Hands out tasks in the order they were submitted. Once enough computed deltas are
+     * waiting to be sent, only the task the editor waits for is handed out.
+     */
+    private synchronized DeltaTask nextTask() {
+        while (!myIsStopped && (myTasks.isEmpty() ||
+                (myPrefetchedSize >= myMaxPrefetchedSize && myTasks.getFirst() != myOperations.getFirst()))) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                myIsStopped = true;
+            }
+        }
+        if (myIsStopped) {
+            return null;
+        }
+        return (DeltaTask) myTasks.removeFirst();
+    }
+
+    private synchronized void taskDone(DeltaTask task) {
+        task.myIsDone = true;
+        myPrefetchedSize += task.mySize;
+        notifyAll();
+    }
+
+    private synchronized void fail(SVNException error) {
+        if (myError == null) {
+            myError = error;
+        }
+        notifyAll();
+    }
+
+    private static SVNDiffWindow copyWindow(SVNDiffWindow window) {
+        if (window.getDataLength() == 0) {
+            return window;
+        }
+        return window.clone(ByteBuffer.allocate(window.getDataLength()));
+    }
+
+    private static class Operation {
+
+        protected int myType;
+        protected String myPath;
+        protected String myName;
+        protected long myRevision;
+        protected SVNPropertyValue myValue;
+        protected SVNDiffWindow myWindow;
+
+        public Operation(int type, String path, String name, long revision) {
+            myType = type;
+            myPath = path;
+            myName = name;
+            myRevision = revision;
+        }
+    }
+
+    private static class DeltaTask extends Operation implements ISVNDeltaConsumer {
+
+        private String mySourcePath;
+        private String myTargetPath;
+        private long myTargetRevision;
+        private List myWindows;
+        private long mySize;
+        private boolean myIsDone;
+        private boolean myIsStreamed;
+        private SVNException myError;
+
+        public DeltaTask(String editPath, String sourcePath, String baseChecksum, long sourceRevision, String targetPath, long targetRevision) {
+            super(-1, editPath, baseChecksum, sourceRevision);
+            mySourcePath = sourcePath;
+            myTargetPath = targetPath;
+            myTargetRevision = targetRevision;
+            myWindows = new ArrayList();
+        }
+
+        public void run(FSFS fsfs, FSRevisionRootCache roots, SVNDeltaCombiner combiner, SVNDeltaGenerator generator) throws SVNException {
+            InputStream sourceStream = null;
+            InputStream targetStream = null;
+            try {
+                if (mySourcePath != null) {
+                    sourceStream = roots.getRoot(myRevision).getFileStreamForPath(combiner, mySourcePath);
+                } else {
+                    sourceStream = FSInputStream.createDeltaStream(combiner, (FSRevisionNode) null, fsfs);
+                }
+                targetStream = roots.getRoot(myTargetRevision).getFileStreamForPath(combiner, myTargetPath);
+                generator.sendDelta(myPath, sourceStream, 0, targetStream, this, false);
+            } catch (DeltaTooLargeException e) {
+                // leave it to the calling thread
+            } finally {
+                SVNFileUtil.closeFile(sourceStream);
+                SVNFileUtil.closeFile(targetStream);
+            }
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            if (mySize + diffWindow.getDataLength() > PREFETCHED_SIZE_PER_THREAD) {
+                myIsStreamed = true;
+                myWindows.clear();
+                mySize = 0;
+                throw new DeltaTooLargeException();
+            }
+            myWindows.add(copyWindow(diffWindow));
+            mySize += diffWindow.getDataLength();
+            return null;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+
+    /*
+     * Stops generating a delta that is too large to keep in memory.
+     */
+    private static class DeltaTooLargeException extends SVNException {
+
+        private static final long serialVersionUID = 1L;
+
+        public DeltaTooLargeException() {
+            super(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Text delta is too large to prefetch"));
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        public void run() {
+            FSFS fsfs = null;
+            FSRevisionRootCache roots = null;
+            SVNDeltaCombiner combiner = null;
+            SVNDeltaGenerator generator = null;
+            try {
+                for (DeltaTask task = nextTask(); task != null; task = nextTask()) {
+                    if (fsfs == null) {
+                        fsfs = new FSFS(myOwner.getRepositoryRoot());
+                        fsfs.open();
+                        fsfs.setMemoryMappedReads(myOwner.isMemoryMappedReads());
+                        roots = new FSRevisionRootCache(fsfs, FSRevisionRootCache.DEFAULT_SIZE);
+                        combiner = new SVNDeltaCombiner();
+                        generator = new SVNDeltaGenerator();
+                    }
+                    try {
+                        task.run(fsfs, roots, combiner, generator);
+                    } catch (SVNException e) {
+                        task.myError = e;
+                    } catch (RuntimeException e) {
+                        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getMessage());
+                        err.initCause(e);
+                        task.myError = new SVNException(err);
+                    }
+                    combiner.reset();
+                    if (task.myIsStreamed) {
+                        // the generator was interrupted in the middle of a window
+                        generator = new SVNDeltaGenerator();
+                    }
+                    taskDone(task);
+                }
+            } catch (SVNException e) {
+                fail(e);
+            } finally {
+                if (fsfs != null) {
+                    try {
+                        fsfs.close();
+                    } catch (SVNException e) {
+                        SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+                    }
+                }
+            }
+        }
+    }
+}
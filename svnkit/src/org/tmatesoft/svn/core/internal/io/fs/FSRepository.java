@@ -464,7 +464,6 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
             openRepository();
             path = getRepositoryPath(path);
 
-            File digestFile = myFSFS.getDigestFileFromRepositoryPath(path);
             final ArrayList locks = new ArrayList();
             ISVNLockHandler handler = new ISVNLockHandler() {
 
@@ -476,7 +475,7 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
                 }
             };
 
-            myFSFS.walkDigestFiles(digestFile, handler, false);
+            myFSFS.getLocks(path, handler, false);
 
             return (SVNLock[]) locks.toArray(new SVNLock[locks.size()]);
         } finally {
@@ -890,14 +889,13 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
         String fullTargetPath = switchPath != null ? switchPath : SVNPathUtil.getAbsolutePath(SVNPathUtil.append(anchor, target));
 
         if (myReporterContext == null) {
-            myReporterContext = new FSUpdateContext(this, myFSFS, targetRevision,
-                                                    SVNFileUtil.createTempFile("report", ".tmp"),
+            myReporterContext = new FSUpdateContext(this, myFSFS, targetRevision, null,
                                                     target, fullTargetPath,
                                                     switchURL == null ? false : true,
                                                     depth, ignoreAncestry, textDeltas,
                                                     sendCopyFromArgs, editor);
         } else {
-            myReporterContext.reset(this, myFSFS, targetRevision, SVNFileUtil.createTempFile("report", ".tmp"),
+            myReporterContext.reset(this, myFSFS, targetRevision, null,
                                     target, fullTargetPath, switchURL == null ? false : true, depth,
                                     ignoreAncestry, textDeltas, sendCopyFromArgs, editor);
         }
@@ -0,0 +1,300 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Append-only array of revision times kept in <code>db/revision-dates</code>,
+ * which lets {@link FSFS#getDatedRevision(java.util.Date)} search revision dates
+ * without reading one revision properties file per probe. Every revision takes
+ * three big-endian longs: <code>svn:date</code> in microseconds, and the length
+ * and modification time of the file its revision properties were read from.
+ *
+ * The array is only kept when it has been built with {@link #create(FSFS)}. From
+ * then on it is appended to by commits, which catch up with a bounded number of
+ * revisions it does not cover yet, and patched when <code>svn:date</code> of a
+ * revision is changed through {@link FSFS#setRevisionProperty(long, String, org.tmatesoft.svn.core.SVNPropertyValue)}.
+ * Revision properties may also be changed by tools which do not know about the
+ * array; searches take the recorded times as they are and only check the
+ * revisions around their result with {@link #isCurrent(FSFS, long)}, so the
+ * array should be rebuilt after such changes. Revisions not covered by the array
+ * or without a date are looked up in their revision properties.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionDates {
+
+    public static final String REVISION_DATES_FILE = "revision-dates";
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int RECORD_SIZE = 24;
+    private static final int MAX_UPDATED_REVISIONS = 1000;
+
+    private static final Map ourCachedDates = new SVNHashMap();
+
+    private long myLength;
+    private long myLastModified;
+    private long[] myRecords;
+    private FSMappedFile myMappedFile;
+    private long myCount;
+
+    /**
+     * Returns a snapshot of the revision dates array, or <code>null</code> if the
+     * repository has none yet.
+     */
+    public static FSRevisionDates open(FSFS fsfs) throws SVNException {
+        File file = getRevisionDatesFile(fsfs);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        if (length < RECORD_SIZE) {
+            return null;
+        }
+        if (fsfs.isMemoryMappedReads()) {
+            FSRevisionDates dates = new FSRevisionDates(length, lastModified);
+            dates.myMappedFile = FSMappedFile.getMappedFile(file);
+            dates.myCount = dates.myMappedFile.length() / RECORD_SIZE;
+            return dates;
+        }
+        String key = file.getAbsolutePath();
+        synchronized (ourCachedDates) {
+            FSRevisionDates dates = (FSRevisionDates) ourCachedDates.get(key);
+            if (dates != null && dates.myLength == length && dates.myLastModified == lastModified) {
+                return dates;
+            }
+            dates = new FSRevisionDates(length, lastModified);
+            dates.myRecords = readRecords(file, length);
+            dates.myCount = dates.myRecords.length / 3;
+            ourCachedDates.put(key, dates);
+            return dates;
+        }
+    }
+
+    /**
+     * (Re)builds the array of the repository. Should be called under the
+     * {@link FSWriteLock#getWriteLockForIndexes(FSFS) index lock}.
+     */
+    public static void create(FSFS fsfs) throws SVNException {
+        File file = getRevisionDatesFile(fsfs);
+        synchronized (ourCachedDates) {
+            ourCachedDates.remove(file.getAbsolutePath());
+        }
+        SVNFileUtil.deleteFile(file);
+        SVNFileUtil.createEmptyFile(file);
+        append(fsfs, file, fsfs.getYoungestRevision());
+    }
+
+    /**
+     * Appends times of revisions which are not in the array yet, at most
+     * {@value #MAX_UPDATED_REVISIONS} of them, so that a commit does not read revision
+     * properties of a long history made by other tools; the rest is appended by the
+     * next commits. Does nothing if the repository has no array. Should be called
+     * under the {@link FSWriteLock#getWriteLockForIndexes(FSFS) index lock}, which
+     * serializes all writers of the array.
+     */
+    public static void update(FSFS fsfs) throws SVNException {
+        File file = getRevisionDatesFile(fsfs);
+        if (!file.isFile()) {
+            return;
+        }
+        long next = file.length() / RECORD_SIZE;
+        append(fsfs, file, Math.min(fsfs.getYoungestRevision(), next + MAX_UPDATED_REVISIONS - 1));
+    }
+
+    private static void append(FSFS fsfs, File file, long youngest) throws SVNException {
+        long next = file.length() / RECORD_SIZE;
+        if (next > youngest) {
+            return;
+        }
+        RandomAccessFile raFile = null;
+        try {
+            raFile = new RandomAccessFile(file, "rw");
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(youngest - next + 1, 1024) * RECORD_SIZE);
+            raFile.seek(next * RECORD_SIZE);
+            for (long revision = next; revision <= youngest; revision++) {
+                putRecord(fsfs, revision, buffer);
+                if (!buffer.hasRemaining() || revision == youngest) {
+                    raFile.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+            }
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not update revision dates ''{0}'': {1}",
+                    new Object[] {file, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            FSLogIndex.closeFile(raFile);
+        }
+    }
+
+    /**
+     * Re-reads the time of a revision already in the array. Should be called under
+     * the {@link FSWriteLock#getWriteLockForIndexes(FSFS) index lock}, which
+     * serializes all writers of the array; {@link FSFS#setRevisionProperty(long, String, org.tmatesoft.svn.core.SVNPropertyValue)}
+     * takes it while it still holds the repository write lock.
+     */
+    public static void updateRevisionTime(FSFS fsfs, long revision) throws SVNException {
+        File file = getRevisionDatesFile(fsfs);
+        if (revision >= file.length() / RECORD_SIZE) {
+            return;
+        }
+        synchronized (ourCachedDates) {
+            ourCachedDates.remove(file.getAbsolutePath());
+        }
+        RandomAccessFile raFile = null;
+        try {
+            raFile = new RandomAccessFile(file, "rw");
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            putRecord(fsfs, revision, buffer);
+            raFile.seek(revision * RECORD_SIZE);
+            raFile.write(buffer.array());
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not update revision dates ''{0}'': {1}",
+                    new Object[] {file, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            FSLogIndex.closeFile(raFile);
+        }
+    }
+
+    private FSRevisionDates(long length, long lastModified) {
+        myLength = length;
+        myLastModified = lastModified;
+    }
+
+    /**
+     * Returns the number of revisions (starting with revision 0) the array has times for.
+     */
+    public long getRevisionsCount() {
+        return myCount;
+    }
+
+    /**
+     * Returns the recorded time of <code>revision</code> in microseconds, or {@link #NO_DATE}
+     * when the revision is not in the array or has no date. The revision properties
+     * are not looked at, see {@link #isCurrent(FSFS, long)}.
+     */
+    public long getTime(long revision) {
+        return getRecord(revision, 0);
+    }
+
+    /**
+     * Tells whether the revision properties file of <code>revision</code> still has the
+     * length and modification time recorded along with its time. Revisions for which
+     * {@link #getTime(long)} returns {@link #NO_DATE} are current, as their times are
+     * read from the revision properties anyway.
+     */
+    public boolean isCurrent(FSFS fsfs, long revision) throws SVNException {
+        if (getTime(revision) == NO_DATE) {
+            return true;
+        }
+        File revPropsFile = fsfs.getRevisionPropertiesFile(revision, false);
+        return revPropsFile.length() == getRecord(revision, 1) && revPropsFile.lastModified() == getRecord(revision, 2);
+    }
+
+    private long getRecord(long revision, int field) {
+        if (revision < 0 || revision >= myCount) {
+            return NO_DATE;
+        }
+        if (myRecords != null) {
+            return myRecords[(int) revision * 3 + field];
+        }
+        try {
+            return getMappedLong(revision * RECORD_SIZE + field * 8);
+        } catch (IOException e) {
+            return NO_DATE;
+        }
+    }
+
+    private long getMappedLong(long position) throws IOException {
+        // longs are aligned, so that none crosses a window boundary
+        ByteBuffer window = myMappedFile.getWindow(position);
+        return window.getLong((int) (position - FSMappedFile.getWindowStart(position)));
+    }
+
+    private static void putRecord(FSFS fsfs, long revision, ByteBuffer buffer) throws SVNException {
+        // the file is checked before it is read, so that a concurrent change invalidates the record
+        File revPropsFile = fsfs.getRevisionPropertiesFile(revision, false);
+        long propsLength = revPropsFile.length();
+        long propsLastModified = revPropsFile.lastModified();
+        buffer.putLong(readRevisionTime(fsfs, revision));
+        buffer.putLong(propsLength);
+        buffer.putLong(propsLastModified);
+    }
+
+    private static long readRevisionTime(FSFS fsfs, long revision) throws SVNException {
+        String timeString = fsfs.getRevisionProperties(revision).getStringValue(SVNRevisionProperty.DATE);
+        if (timeString == null) {
+            return NO_DATE;
+        }
+        Date date = SVNDate.parseDateString(timeString);
+        return date instanceof SVNDate ? ((SVNDate) date).getTimeInMicros() : date.getTime() * 1000;
+    }
+
+    private static long[] readRecords(File file, long length) throws SVNException {
+        long[] records = new long[(int) (length / RECORD_SIZE) * 3];
+        byte[] buffer = new byte[8 * 1024];
+        InputStream is = null;
+        try {
+            is = SVNFileUtil.openFileForReading(file);
+            int count = 0;
+            int buffered = 0;
+            while (count < records.length) {
+                int read = is.read(buffer, buffered, buffer.length - buffered);
+                if (read < 0) {
+                    break;
+                }
+                buffered += read;
+                int offset = 0;
+                for (; buffered - offset >= 8 && count < records.length; offset += 8) {
+                    records[count++] = ByteBuffer.wrap(buffer, offset, 8).getLong();
+                }
+                System.arraycopy(buffer, offset, buffer, 0, buffered - offset);
+                buffered -= offset;
+            }
+            count -= count % 3;
+            if (count < records.length) {
+                long[] read = new long[count];
+                System.arraycopy(records, 0, read, 0, count);
+                records = read;
+            }
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not read revision dates ''{0}'': {1}",
+                    new Object[] {file, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(is);
+        }
+        return records;
+    }
+
+    private static File getRevisionDatesFile(FSFS fsfs) {
+        return new File(fsfs.getDBRoot(), REVISION_DATES_FILE);
+    }
+}
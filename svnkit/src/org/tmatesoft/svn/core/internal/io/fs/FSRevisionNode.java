@@ -619,8 +619,16 @@ public class FSRevisionNode {
             return null;
         }
 
+        /* Skip-delta: deltify against the predecessor whose count is this 
+         * node's count with the lowest set bit cleared. */
         long count = getCount();
         count = count & (count - 1);
+        /* Walking that far back costs a node-rev read per step; store a
+         * self-compressed rep instead, which also starts a new chain. */
+        long maxWalk = fsfsOwner.getMaxDeltificationWalk();
+        if (maxWalk >= 0 && getCount() - count > maxWalk) {
+            return null;
+        }
         FSRevisionNode baseNode = this;
         while ((count++) < getCount()) {
             baseNode = fsfsOwner.getRevisionNode(baseNode.getPredecessorId());
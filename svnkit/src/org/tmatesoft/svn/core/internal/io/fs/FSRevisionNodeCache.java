@@ -0,0 +1,124 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+/**
+ * Process-wide cache of committed node-revisions. Nodes are keyed by
+ * repository (see {@link FSFS#getRepositoryCacheKey()}), revision and offset,
+ * so all FSFS instances opened over the same repository share the cached entries.
+ *
+ * Cached nodes are never handed out directly - callers always get a
+ * private copy, since FSRevisionNode is mutable.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionNodeCache {
+
+    private static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final int NODE_OVERHEAD = 256;
+
+    private static FSRevisionNodeCache ourInstance;
+
+    private FSCache myNodes;
+
+    public static synchronized FSRevisionNodeCache getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new FSRevisionNodeCache(FSCache.getLongProperty("svnkit.fsfs.nodeCacheSize", DEFAULT_CACHE_SIZE));
+        }
+        return ourInstance;
+    }
+
+    public FSRevisionNodeCache(long maxMemory) {
+        myNodes = new FSCache(maxMemory);
+    }
+
+    public FSRevisionNode get(String repositoryKey, FSID id) {
+        if (id == null || id.isTxn()) {
+            return null;
+        }
+        Object key = FSCache.createKey(repositoryKey, id.getRevision(), id.getOffset());
+        FSRevisionNode cached = (FSRevisionNode) myNodes.get(key);
+        if (cached != null && !id.equals(cached.getId())) {
+            // same repository path, but a different repository (e.g. a reloaded one)
+            myNodes.removeStale(key);
+            return null;
+        }
+        return cached != null ? copyNode(cached) : null;
+    }
+
+    public void put(String repositoryKey, FSRevisionNode node) {
+        if (!myNodes.isEnabled() || node == null || node.getId() == null || node.getId().isTxn()) {
+            return;
+        }
+        Object key = FSCache.createKey(repositoryKey, node.getId().getRevision(), node.getId().getOffset());
+        myNodes.put(key, copyNode(node), estimateSize(node));
+    }
+
+    public void clear() {
+        myNodes.clear();
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        myNodes.setMaxWeight(maxMemory);
+    }
+
+    public long getMaxMemory() {
+        return myNodes.getMaxWeight();
+    }
+
+    public long getMemoryUsage() {
+        return myNodes.getWeight();
+    }
+
+    public int getSize() {
+        return myNodes.getSize();
+    }
+
+    public long getHitsCount() {
+        return myNodes.getHitsCount();
+    }
+
+    public long getMissesCount() {
+        return myNodes.getMissesCount();
+    }
+
+    public void resetStatistics() {
+        myNodes.resetStatistics();
+    }
+
+    private static FSRevisionNode copyNode(FSRevisionNode node) {
+        FSRevisionNode copy = FSRevisionNode.dumpRevisionNode(node);
+        copy.setIsFreshTxnRoot(node.isFreshTxnRoot());
+        return copy;
+    }
+
+    private static long estimateSize(FSRevisionNode node) {
+        long size = NODE_OVERHEAD;
+        size += 2 * length(node.getCreatedPath());
+        size += 2 * length(node.getCopyFromPath());
+        size += 2 * length(node.getCopyRootPath());
+        FSRepresentation textRep = node.getTextRepresentation();
+        if (textRep != null) {
+            size += NODE_OVERHEAD / 2 + 2 * (length(textRep.getMD5HexDigest()) + length(textRep.getSHA1HexDigest()) + length(textRep.getUniquifier()));
+        }
+        FSRepresentation propsRep = node.getPropsRepresentation();
+        if (propsRep != null) {
+            size += NODE_OVERHEAD / 2 + 2 * (length(propsRep.getMD5HexDigest()) + length(propsRep.getSHA1HexDigest()) + length(propsRep.getUniquifier()));
+        }
+        return size;
+    }
+
+    private static int length(String str) {
+        return str == null ? 0 : str.length();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+
+import org.tmatesoft.svn.core.SVNProperties;
+
+/**
+ * Process-wide cache of parsed revision properties. Entries are keyed by
+ * the revision properties file and validated against its length and
+ * modification time on every lookup, so changes made by other processes
+ * are noticed; changes made through {@link FSFS} invalidate the entry
+ * explicitly.
+ *
+ * The number of cached revisions is set by
+ * <code>svnkit.fsfs.revPropsCacheSize</code> (4096 by default, 0 disables
+ * the cache). Callers always get their own copy of the properties.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionPropertiesCache {
+
+    private static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private static FSRevisionPropertiesCache ourInstance;
+
+    private FSCache myEntries;
+    private long myStaleCount;
+
+    public static synchronized FSRevisionPropertiesCache getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new FSRevisionPropertiesCache((int) FSCache.getLongProperty("svnkit.fsfs.revPropsCacheSize", DEFAULT_CACHE_SIZE));
+        }
+        return ourInstance;
+    }
+
+    public FSRevisionPropertiesCache(int maxSize) {
+        // every entry weighs one, so that the weight bounds the number of revisions
+        myEntries = new FSCache(maxSize);
+    }
+
+    public boolean isEnabled() {
+        return myEntries.isEnabled();
+    }
+
+    /**
+     * Returns a copy of the cached properties read from <code>file</code>, or <code>null</code>
+     * if they are not cached or the file has been changed since.
+     */
+    public SVNProperties get(File file) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            CachedProperties cached = (CachedProperties) myEntries.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.myLength != length || cached.myLastModified != lastModified) {
+                myEntries.removeStale(key);
+                myStaleCount++;
+                return null;
+            }
+            return new SVNProperties(cached.myProperties);
+        }
+    }
+
+    /**
+     * Caches a copy of <code>properties</code> read from <code>file</code> whose length and
+     * modification time were <code>length</code> and <code>lastModified</code> before reading.
+     */
+    public void put(File file, long length, long lastModified, SVNProperties properties) {
+        if (properties == null) {
+            return;
+        }
+        myEntries.put(file.getAbsolutePath(), new CachedProperties(length, lastModified, new SVNProperties(properties)), 1);
+    }
+
+    public void invalidate(File file) {
+        myEntries.remove(file.getAbsolutePath());
+    }
+
+    public void clear() {
+        myEntries.clear();
+    }
+
+    public void setMaxSize(int maxSize) {
+        myEntries.setMaxWeight(maxSize);
+    }
+
+    public int getSize() {
+        return myEntries.getSize();
+    }
+
+    public long getHitsCount() {
+        return myEntries.getHitsCount();
+    }
+
+    public long getMissesCount() {
+        return myEntries.getMissesCount();
+    }
+
+    /**
+     * Returns the number of entries dropped because their file had been changed by another process.
+     */
+    public synchronized long getStaleCount() {
+        return myStaleCount;
+    }
+
+    private static class CachedProperties {
+
+        private long myLength;
+        private long myLastModified;
+        private SVNProperties myProperties;
+
+        public CachedProperties(long length, long lastModified, SVNProperties properties) {
+            myLength = length;
+            myLastModified = lastModified;
+            myProperties = properties;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import org.tmatesoft.svn.core.SVNException;
+
+/**
+ * A few revision roots of one repository, most recently used first. Roots cache
+ * the nodes read through them, so only a bounded number of them is kept.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionRootCache {
+
+    public static final int DEFAULT_SIZE = 10;
+
+    private FSFS myFSFS;
+    private FSRevisionRoot[] myRoots;
+    private int myRootsCount;
+
+    public FSRevisionRootCache(FSFS fsfs, int size) {
+        myFSFS = fsfs;
+        myRoots = new FSRevisionRoot[size];
+    }
+
+    public FSRevisionRoot getRoot(long revision) throws SVNException {
+        FSRevisionRoot root = null;
+        int i = 0;
+
+        for (; i < myRootsCount; i++) {
+            if (myRoots[i].getRevision() == revision) {
+                root = myRoots[i];
+                break;
+            }
+        }
+
+        if (root == null) {
+            root = myFSFS.createRevisionRoot(revision);
+            if (myRootsCount < myRoots.length) {
+                myRootsCount++;
+            }
+            i = myRootsCount - 1;
+        }
+        // keep the most recently used roots first
+        System.arraycopy(myRoots, 0, myRoots, 1, i);
+        myRoots[0] = root;
+
+        return root;
+    }
+
+    public int size() {
+        return myRootsCount;
+    }
+}
@@ -13,9 +13,8 @@ package org.tmatesoft.svn.core.internal.io.fs;
 
 import java.io.InputStream;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.TreeMap;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -34,6 +33,9 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public abstract class FSRoot {
 
+    private static final int DEFAULT_REV_NODES_CACHE_SIZE = 100;
+    private static int ourRevNodesCacheSize = getDefaultRevNodesCacheSize();
+
     private RevisionCache myRevNodesCache;
     private FSFS myFSFS;
     protected FSRevisionNode myRootRevisionNode;
@@ -46,6 +48,14 @@ public abstract class FSRoot {
         return myFSFS;
     }
 
+    public static int getRevNodesCacheSize() {
+        return ourRevNodesCacheSize;
+    }
+
+    public static void setRevNodesCacheSize(int size) {
+        ourRevNodesCacheSize = size;
+    }
+
     public FSRevisionNode getRevisionNode(String path) throws SVNException {
         path = SVNPathUtil.canonicalizeAbsolutePath(path);
         FSRevisionNode node = fetchRevNodeFromCache(path);
@@ -153,7 +163,7 @@ public abstract class FSRoot {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
         if (myRevNodesCache == null) {
-            myRevNodesCache = new RevisionCache(100);
+            myRevNodesCache = new RevisionCache(ourRevNodesCacheSize);
         }
         myRevNodesCache.put(path, node);
     }
@@ -177,7 +187,7 @@ public abstract class FSRoot {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Invalid path ''{0}''", path);
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return (FSRevisionNode) myRevNodesCache.fetch(path);
+        return myRevNodesCache.fetch(path);
     }
 
     private void foldChange(Map mapChanges, FSPathChange change) throws SVNException {
@@ -317,45 +327,42 @@ public abstract class FSRoot {
         return FSInputStream.createDeltaStream(combiner, fileNode, getOwner());
     }
 
-    private static final class RevisionCache {
+    private static int getDefaultRevNodesCacheSize() {
+        try {
+            return Integer.parseInt(System.getProperty("svnkit.fsfs.revNodesCacheSize", String.valueOf(DEFAULT_REV_NODES_CACHE_SIZE)));
+        } catch (NumberFormatException nfe) {
+            return DEFAULT_REV_NODES_CACHE_SIZE;
+        }
+    }
+
+    private static final class RevisionCache extends LinkedHashMap {
+
+        private static final long serialVersionUID = 4845L;
 
-        private LinkedList myKeys;
-        private Map myCache;
         private int mySizeLimit;
 
         public RevisionCache(int limit) {
+            super(16, 0.75f, true);
             mySizeLimit = limit;
-            myKeys = new LinkedList();
-            myCache = new TreeMap();
         }
 
-        public void put(Object key, Object value) {
+        public void put(String key, FSRevisionNode value) {
             if (mySizeLimit <= 0) {
                 return;
             }
-            if (myKeys.size() == mySizeLimit) {
-                Object cachedKey = myKeys.removeLast();
-                myCache.remove(cachedKey);
-            }
-            myKeys.addFirst(key);
-            myCache.put(key, value);
+            super.put(key, value);
         }
 
-        public void delete(Object key) {
-            myKeys.remove(key);
-            myCache.remove(key);
+        public void delete(String key) {
+            remove(key);
         }
 
-        public Object fetch(Object key) {
-            int ind = myKeys.indexOf(key);
-            if (ind != -1) {
-                if (ind != 0) {
-                    Object cachedKey = myKeys.remove(ind);
-                    myKeys.addFirst(cachedKey);
-                }
-                return myCache.get(key);
-            }
-            return null;
+        public FSRevisionNode fetch(String key) {
+            return (FSRevisionNode) get(key);
+        }
+
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > mySizeLimit;
         }
     }
 
@@ -17,6 +17,7 @@ import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -503,8 +504,13 @@ public class FSTransactionRoot extends FSRoot {
         getOwner().writeCurrentFile(newRevision, newNodeId, newCopyId);
     }
 
+    /**
+     * Writes node revisions of the transaction into <code>protoFile</code> as those of <code>revision</code>.
+     * New file representations that should be added to the representation cache once the revision is
+     * committed are collected into <code>representationsToCache</code>.
+     */
     public FSID writeFinalRevision(FSID newId, final CountingOutputStream protoFile, long revision, FSID id, 
-            String startNodeId, String startCopyId) throws SVNException, IOException {
+            String startNodeId, String startCopyId, Collection representationsToCache) throws SVNException, IOException {
         newId = null;
         if (!id.isTxn()) {
             return newId;
@@ -516,7 +522,7 @@ public class FSTransactionRoot extends FSRoot {
             for (Iterator entries = namesToEntries.values().iterator(); entries.hasNext();) {
                 FSEntry dirEntry = (FSEntry) entries.next();
                 newId = writeFinalRevision(newId, protoFile, revision, dirEntry.getId(), 
-                        startNodeId, startCopyId);
+                        startNodeId, startCopyId, representationsToCache);
                 if (newId != null && newId.getRevision() == revision) {
                     dirEntry.setId(newId);
                 }
@@ -602,10 +608,9 @@ public class FSTransactionRoot extends FSRoot {
         newId = FSID.createRevId(myNodeId, myCopyId, revision, myOffset);
         revNode.setId(newId);
         getOwner().writeTxnNodeRevision(protoFile, revNode);
-        IFSRepresentationCacheManager reposCacheManager = getOwner().getRepositoryCacheManager();
-        if (reposCacheManager != null && revNode.getTextRepresentation() != null && revNode.getType() == SVNNodeKind.FILE && 
+        if (representationsToCache != null && revNode.getTextRepresentation() != null && revNode.getType() == SVNNodeKind.FILE && 
                 revNode.getTextRepresentation().getRevision() == revision) {
-            reposCacheManager.insert(revNode.getTextRepresentation(), false);
+            representationsToCache.add(revNode.getTextRepresentation());
         }
         revNode.setIsFreshTxnRoot(false);
         getOwner().putTxnRevisionNode(id, revNode);
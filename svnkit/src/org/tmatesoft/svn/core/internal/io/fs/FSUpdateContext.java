@@ -11,13 +11,12 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
 
 import org.tmatesoft.svn.core.SVNDepth;
@@ -42,12 +41,23 @@ import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
+ * Drives an update editor from a working copy report. The report is kept in memory, in the
+ * same encoding it would have on disk, and is spilled to a temporary file only when it grows
+ * larger than {@link #getReportSpillSize()} bytes.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSUpdateContext {
 
+    private static final int DEFAULT_REPORT_SPILL_SIZE = 4 * 1024 * 1024;
+
+    private static int ourReportSpillSize = getDefaultReportSpillSize();
+    private static int ourDeltaThreadsCount = getDefaultDeltaThreadsCount();
+
     private File myReportFile;
+    private byte[] myReportBuffer;
+    private int myReportLength;
     private String myTarget;
     private OutputStream myReportOS;
     private FSFile myReportIS;
@@ -61,11 +71,12 @@ public class FSUpdateContext {
     private boolean isSwitch;
     private boolean mySendCopyFromArgs;
     private FSRevisionRoot myTargetRoot;
-    private LinkedList myRootsCache;
+    private FSRevisionRootCache myRootsCache;
     private FSFS myFSFS;
     private FSRepository myRepository;
     private SVNDeltaGenerator myDeltaGenerator;
     private SVNDeltaCombiner myDeltaCombiner;
+    private FSPrefetchingUpdateEditor myPrefetchingEditor;
 
     public FSUpdateContext(FSRepository repository, FSFS owner, long revision, File reportFile, 
             String target, String targetPath, boolean isSwitch, SVNDepth depth, 
@@ -102,13 +113,58 @@ public class FSUpdateContext {
         mySendCopyFromArgs = sendCopyFrom;
     }
 
+    public static int getReportSpillSize() {
+        return ourReportSpillSize;
+    }
+
+    /**
+     * Sets the size in bytes above which reports are written to a temporary file
+     * instead of being kept in memory; <code>0</code> makes every report go to disk.
+     */
+    public static void setReportSpillSize(int size) {
+        ourReportSpillSize = size;
+    }
+
+    public static int getDeltaThreadsCount() {
+        return ourDeltaThreadsCount;
+    }
+
+    /**
+     * Sets the number of threads computing file deltas ahead of the update editor, see
+     * {@link FSPrefetchingUpdateEditor}. With less than two threads deltas are computed
+     * on the calling thread, as they are sent.
+     */
+    public static void setDeltaThreadsCount(int threadsCount) {
+        ourDeltaThreadsCount = threadsCount;
+    }
+
+    /**
+     * Returns the stream the report is written to once it has been spilled to disk,
+     * spilling it if it has not been yet.
+     */
     public OutputStream getReportFileForWriting() throws SVNException {
         if (myReportOS == null) {
+            if (myReportFile == null) {
+                myReportFile = SVNFileUtil.createTempFile("report", ".tmp");
+            }
             myReportOS = SVNFileUtil.openFileForWriting(myReportFile);
+            flushReportBuffer();
         }
         return myReportOS;
     }
 
+    private void flushReportBuffer() throws SVNException {
+        if (myReportOS != null && myReportLength > 0) {
+            try {
+                myReportOS.write(myReportBuffer, 0, myReportLength);
+            } catch (IOException ioe) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
+                SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+            }
+            myReportLength = 0;
+        }
+    }
+
     private boolean isIgnoreAncestry() {
         return ignoreAncestry;
     }
@@ -142,6 +198,10 @@ public class FSUpdateContext {
             SVNFileUtil.deleteFile(myReportFile);
             myReportFile = null;
         }
+        myReportLength = 0;
+        if (myReportBuffer != null && myReportBuffer.length > ourReportSpillSize) {
+            myReportBuffer = null;
+        }
 
         if (myDeltaCombiner != null) {
             myDeltaCombiner.reset();
@@ -152,6 +212,9 @@ public class FSUpdateContext {
     }
 
     private ISVNEditor getEditor() {
+        if (myPrefetchingEditor != null) {
+            return myPrefetchingEditor;
+        }
         return myEditor;
     }
 
@@ -161,7 +224,11 @@ public class FSUpdateContext {
 
     private PathInfo getNextPathInfo() throws IOException, SVNException {
         if (myReportIS == null) {
-            myReportIS = new FSFile(myReportFile);
+            if (myReportOS != null) {
+                myReportIS = new FSFile(myReportFile);
+            } else {
+                myReportIS = new FSFile(myReportFile, ByteBuffer.wrap(myReportBuffer, 0, myReportLength));
+            }
         }
         myCurrentPathInfo = myReportIS.readPathInfoFromReportFile();
         return myCurrentPathInfo;
@@ -178,50 +245,22 @@ public class FSUpdateContext {
         return myTargetRoot;
     }
 
-    private LinkedList getRootsCache() {
-        if (myRootsCache == null) {
-            myRootsCache = new LinkedList();
-        }
-        return myRootsCache;
-    }
-
     private FSRevisionRoot getSourceRoot(long revision) throws SVNException {
-        LinkedList cache = getRootsCache();
-        FSRevisionRoot root = null;
-        int i = 0;
-
-        for (; i < cache.size() && i < 10; i++) {
-            root = (FSRevisionRoot) myRootsCache.get(i);
-            if (root.getRevision() == revision) {
-                if (i != 0) {
-                    myRootsCache.remove(i);
-                    myRootsCache.addFirst(root);
-                }
-                break;
-            }
-            root = null;
-        }
-
-        if (root == null) {
-            if (i == 10) {
-                myRootsCache.removeLast();
-            }
-            root = myFSFS.createRevisionRoot(revision);
-            myRootsCache.addFirst(root);
+        if (myRootsCache == null) {
+            myRootsCache = new FSRevisionRootCache(myFSFS, FSRevisionRootCache.DEFAULT_SIZE);
         }
-
-        return root;
+        return myRootsCache.getRoot(revision);
     }
 
     public void drive() throws SVNException {
-        OutputStream reportOS = getReportFileForWriting();
-        try {
-            reportOS.write('-');
-        } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
-        } finally {
-            SVNFileUtil.closeFile(reportOS);
+        ensureReportCapacity(1);
+        myReportBuffer[myReportLength++] = '-';
+        if (myReportOS != null) {
+            try {
+                flushReportBuffer();
+            } finally {
+                SVNFileUtil.closeFile(myReportOS);
+            }
         }
 
         PathInfo info = null;
@@ -291,17 +330,27 @@ public class FSUpdateContext {
             myDeltaCombiner = new SVNDeltaCombiner();
         }
 
-        getEditor().targetRevision(getTargetRevision());
-        getEditor().openRoot(sourceRevision);
-
-        if ("".equals(getReportTarget())) {
-            diffDirs(sourceRevision, fullSourcePath, fullTargetPath, "", info.isStartEmpty(), info.getDepth(), myDepth);
-        } else {
-            updateEntry(sourceRevision, fullSourcePath, sourceEntry, fullTargetPath, targetEntry, getReportTarget(), info, info.getDepth(), myDepth);
+        if (ourDeltaThreadsCount > 1 && isSendTextDeltas()) {
+            myPrefetchingEditor = new FSPrefetchingUpdateEditor(myEditor, myFSFS, ourDeltaThreadsCount);
         }
+        try {
+            getEditor().targetRevision(getTargetRevision());
+            getEditor().openRoot(sourceRevision);
+
+            if ("".equals(getReportTarget())) {
+                diffDirs(sourceRevision, fullSourcePath, fullTargetPath, "", info.isStartEmpty(), info.getDepth(), myDepth);
+            } else {
+                updateEntry(sourceRevision, fullSourcePath, sourceEntry, fullTargetPath, targetEntry, getReportTarget(), info, info.getDepth(), myDepth);
+            }
 
-        getEditor().closeDir();
-        getEditor().closeEdit();
+            getEditor().closeDir();
+            getEditor().closeEdit();
+        } finally {
+            if (myPrefetchingEditor != null) {
+                myPrefetchingEditor.dispose();
+                myPrefetchingEditor = null;
+            }
+        }
     }
 
     private void diffDirs(long sourceRevision, String sourcePath, String targetPath, String editPath, boolean startEmpty, SVNDepth wcDepth, SVNDepth requestedDepth) throws SVNException {
@@ -447,6 +496,11 @@ public class FSUpdateContext {
             sourceHexDigest = sourceNode.getFileMD5Checksum();
         }
         
+        if (myPrefetchingEditor != null) {
+            myPrefetchingEditor.sendTextDelta(editPath, sourcePath, sourceHexDigest, sourceRevision, 
+                    targetPath, getTargetRevision());
+            return;
+        }
         FSRepositoryUtil.sendTextDelta(getEditor(), editPath, sourcePath, sourceHexDigest, 
                 sourceRoot, targetPath, getTargetRoot(), isSendTextDeltas(), myDeltaCombiner, 
                 myDeltaGenerator, myFSFS);
@@ -545,7 +599,7 @@ public class FSUpdateContext {
                 }
             }
         }
-        myEditor.addFile(editPath, copyFromPath, copyFromRevision);
+        getEditor().addFile(editPath, copyFromPath, copyFromRevision);
         return new SVNLocationEntry(copyFromRevision, copyFromPath);
     }
     
@@ -663,15 +717,41 @@ public class FSUpdateContext {
         }
     }
 
-    private void writeSingleString(String s, OutputStream out) throws IOException {
+    private void writeSingleString(String s) throws IOException {
         if (s != null) {
             byte[] b = s.getBytes("UTF-8");
-            out.write('+');
-            out.write(String.valueOf(b.length).getBytes("UTF-8"));
-            out.write(':');
-            out.write(b);
+            ensureReportCapacity(b.length + 22);
+            myReportBuffer[myReportLength++] = '+';
+            writeNumber(b.length);
+            System.arraycopy(b, 0, myReportBuffer, myReportLength, b.length);
+            myReportLength += b.length;
         } else {
-            out.write('-');
+            ensureReportCapacity(1);
+            myReportBuffer[myReportLength++] = '-';
+        }
+    }
+
+    private void writeNumber(long number) {
+        int start = myReportLength;
+        do {
+            myReportBuffer[myReportLength++] = (byte) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        for (int i = start, j = myReportLength - 1; i < j; i++, j--) {
+            byte b = myReportBuffer[i];
+            myReportBuffer[i] = myReportBuffer[j];
+            myReportBuffer[j] = b;
+        }
+        myReportBuffer[myReportLength++] = ':';
+    }
+
+    private void ensureReportCapacity(int length) {
+        if (myReportBuffer == null) {
+            myReportBuffer = new byte[Math.max(length, 4096)];
+        } else if (myReportLength + length > myReportBuffer.length) {
+            byte[] buffer = new byte[Math.max(myReportLength + length, myReportBuffer.length * 2)];
+            System.arraycopy(myReportBuffer, 0, buffer, 0, myReportLength);
+            myReportBuffer = buffer;
         }
     }
     
@@ -681,27 +761,52 @@ public class FSUpdateContext {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
         String anchorRelativePath = SVNPathUtil.append(getReportTarget(), path);
-        String revisionRep = FSRepository.isValidRevision(revision) ? "+" + String.valueOf(revision) + ":" : "-";
-        String depthRep = "-";//infinity by default
-        if (depth == SVNDepth.EXCLUDE || depth == SVNDepth.EMPTY || depth == SVNDepth.FILES || depth == SVNDepth.IMMEDIATES) {
-            depthRep = "+" + getDepthLetter(depth);
-        } 
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            writeSingleString(anchorRelativePath, baos);
-            writeSingleString(linkPath, baos);
-            baos.write(revisionRep.getBytes("UTF-8"));
-            baos.write(depthRep.getBytes("UTF-8"));
-            baos.write(startEmpty ? '+' : '-');
-            writeSingleString(lockToken, baos);
-            OutputStream reportOS = getReportFileForWriting();
-            reportOS.write(baos.toByteArray());
+            writeSingleString(anchorRelativePath);
+            writeSingleString(linkPath);
+            ensureReportCapacity(25);
+            if (FSRepository.isValidRevision(revision)) {
+                myReportBuffer[myReportLength++] = '+';
+                writeNumber(revision);
+            } else {
+                myReportBuffer[myReportLength++] = '-';
+            }
+            //infinity by default
+            if (depth == SVNDepth.EXCLUDE || depth == SVNDepth.EMPTY || depth == SVNDepth.FILES || depth == SVNDepth.IMMEDIATES) {
+                myReportBuffer[myReportLength++] = '+';
+                myReportBuffer[myReportLength++] = (byte) getDepthLetter(depth).charAt(0);
+            } else {
+                myReportBuffer[myReportLength++] = '-';
+            }
+            myReportBuffer[myReportLength++] = (byte) (startEmpty ? '+' : '-');
+            writeSingleString(lockToken);
+            if (myReportOS != null) {
+                flushReportBuffer();
+            } else if (myReportLength > ourReportSpillSize) {
+                getReportFileForWriting();
+            }
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
             SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
         }
     }
 
+    private static int getDefaultReportSpillSize() {
+        try {
+            return Integer.parseInt(System.getProperty("svnkit.fsfs.reportSpillSize", String.valueOf(DEFAULT_REPORT_SPILL_SIZE)));
+        } catch (NumberFormatException nfe) {
+            return DEFAULT_REPORT_SPILL_SIZE;
+        }
+    }
+
+    private static int getDefaultDeltaThreadsCount() {
+        try {
+            return Integer.parseInt(System.getProperty("svnkit.fsfs.updateDeltaThreads", "0"));
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
     public String getDepthLetter(SVNDepth depth) throws SVNException {
         if (depth == SVNDepth.EXCLUDE) {
             return "X";
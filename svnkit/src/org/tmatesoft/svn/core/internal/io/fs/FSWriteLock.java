@@ -94,6 +94,24 @@ public class FSWriteLock {
         return lock;
     }
 
+    /**
+     * Returns the lock which serializes updates of data derived from committed revisions: the
+     * representation cache and the log, mergeinfo and revision dates indexes. Commits update them
+     * after releasing the {@link #getWriteLockForDB(FSFS) repository write lock}; when both locks
+     * are needed, the write lock is taken first. The lock is kept per db directory rather than
+     * per UUID, so copies of one repository do not wait for each other.
+     */
+    public static synchronized FSWriteLock getWriteLockForIndexes(FSFS owner) throws SVNException {
+        String uuid = owner.getRepositoryCacheKey() + ":" + FSFS.INDEX_LOCK_FILE;
+        FSWriteLock lock = (FSWriteLock) ourThreadDBLocksCache.get(uuid);
+        if (lock == null) {
+            lock = new FSWriteLock(uuid, owner.getIndexLockFile(), DB_LOCK, false);
+            ourThreadDBLocksCache.put(uuid, lock);
+        }
+        lock.myReferencesCount++;
+        return lock;
+    }
+
     public static synchronized FSWriteLock getDBLogsLock(FSFS owner, boolean exclusive) throws SVNException {
         String uuid = owner.getUUID();
         FSWriteLock lock = (FSWriteLock) ourThreadLogLocksCache.get(uuid);
@@ -11,6 +11,9 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.tmatesoft.svn.core.SVNException;
 
 
@@ -27,6 +30,19 @@ public interface IFSRepresentationCacheManager {
     public void runReadTransaction(IFSSqlJetTransaction transaction) throws SVNException;
     
     public FSRepresentation getRepresentationByHash(String hash) throws SVNException;
+
+    /**
+     * Inserts all <code>representations</code> within a single write transaction.
+     */
+    public void insert(Collection representations, boolean rejectDup) throws SVNException;
+
+    /**
+     * Looks up representations for all SHA-1 <code>hashes</code> within a single read transaction,
+     * or without any when none of them can be in the cache.
+     *
+     * @return map of found hashes to representations
+     */
+    public Map findRepresentations(Collection hashes) throws SVNException;
     
     public void close() throws SVNException;
 }
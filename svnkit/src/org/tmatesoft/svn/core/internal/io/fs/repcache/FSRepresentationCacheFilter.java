@@ -0,0 +1,207 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.repcache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+
+/**
+ * Bloom filter of the hashes stored in a representation cache database, shared by all
+ * managers opened on the same database file. Representations being committed are mostly
+ * new, so a negative answer of the filter saves a database lookup most of the time.
+ *
+ * The filter is trusted only while it is in sync with the database, that is while the
+ * change counter in the database header is the one seen when the filter was built or
+ * last updated with inserted hashes. When another process changes the database, the
+ * filter is rebuilt by scanning the whole table, but only once the lookups made since
+ * would have cost about as much as the scan.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRepresentationCacheFilter {
+
+    private static final int BITS_PER_HASH = 10;
+    private static final int HASH_FUNCTIONS_COUNT = 7;
+    private static final int MIN_CAPACITY = 4096;
+    private static final int SCANNED_ROWS_PER_LOOKUP = 8;
+    private static final int CHANGE_COUNTER_OFFSET = 24;
+    private static final int DB_BYTES_PER_ROW = 128;
+
+    private static final Map ourFilters = new SVNHashMap();
+
+    private File myDBFile;
+    private long[] myBits;
+    private long myBitsCount;
+    private long myCapacity;
+    private long myCount;
+    private long myChangeCounter;
+    private long myLookupsCount;
+
+    public static synchronized FSRepresentationCacheFilter getFilter(File dbFile) {
+        String key = dbFile.getAbsolutePath();
+        FSRepresentationCacheFilter filter = (FSRepresentationCacheFilter) ourFilters.get(key);
+        if (filter == null) {
+            filter = new FSRepresentationCacheFilter(dbFile);
+            ourFilters.put(key, filter);
+        }
+        return filter;
+    }
+
+    private FSRepresentationCacheFilter(File dbFile) {
+        myDBFile = dbFile;
+        myChangeCounter = -1;
+    }
+
+    /**
+     * Tells whether the filter is in sync with the database, so that hashes it does not
+     * contain are not in the database, provided its change counter is <code>changeCounter</code>.
+     */
+    public synchronized boolean isInSync(long changeCounter) {
+        return myBits != null && changeCounter >= 0 && myChangeCounter == changeCounter;
+    }
+
+    /**
+     * Returns <span class="javakeyword">false</span> if <code>hash</code> is definitely not
+     * in the filter. Every call counts towards the lookups that would pay for a rebuild.
+     */
+    public synchronized boolean mightContain(String hash) {
+        myLookupsCount++;
+        if (myBits == null) {
+            return true;
+        }
+        long h1 = getHash(hash, 0);
+        long h2 = getHash(hash, 16) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS_COUNT; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % myBitsCount;
+            if ((myBits[(int) (bit >>> 6)] & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the filter is out of sync and enough lookups were made since it was
+     * last rebuilt to justify scanning the table again.
+     */
+    public synchronized boolean isRebuildNeeded(long changeCounter) {
+        if (isInSync(changeCounter) && myCount <= myCapacity) {
+            return false;
+        }
+        long rowsCount = myBits != null ? myCount : getRowsCountEstimate();
+        return myLookupsCount * SCANNED_ROWS_PER_LOOKUP >= rowsCount;
+    }
+
+    /**
+     * Rebuilds the filter from <code>table</code>. Should be called within a read or write
+     * transaction so that the table does not change while it is scanned.
+     */
+    public synchronized void rebuild(ISqlJetTable table) throws SqlJetException {
+        long changeCounter = readChangeCounter();
+        ISqlJetCursor cursor = table.open();
+        try {
+            allocate(Math.max(MIN_CAPACITY, getRowsCountEstimate() * 2));
+            for (; !cursor.eof(); cursor.next()) {
+                if (!cursor.isNull(FSRepresentationCacheRecord.HASH_FIELD)) {
+                    add(cursor.getString(FSRepresentationCacheRecord.HASH_FIELD));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        myChangeCounter = changeCounter;
+        myLookupsCount = 0;
+    }
+
+    /**
+     * Adds a hash inserted into the database within a write transaction which started when the
+     * database change counter was <code>changeCounter</code>.
+     */
+    public synchronized void add(String hash, long changeCounter) {
+        if (myBits != null && myChangeCounter == changeCounter) {
+            add(hash);
+        }
+    }
+
+    /**
+     * Should be called after a write transaction which started when the database change counter
+     * was <code>changeCounter</code> and whose inserted hashes have been {@link #add(String, long) added}.
+     */
+    public synchronized void committed(long changeCounter) {
+        if (myBits == null || myChangeCounter != changeCounter) {
+            return;
+        }
+        long newChangeCounter = readChangeCounter();
+        if (newChangeCounter == changeCounter || newChangeCounter == changeCounter + 1) {
+            myChangeCounter = newChangeCounter;
+            myLookupsCount = 0;
+        } else {
+            myChangeCounter = -1;
+        }
+    }
+
+    /**
+     * Reads the change counter from the database header, SQLite increments it on every
+     * committed write transaction.
+     */
+    public long readChangeCounter() {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(myDBFile, "r");
+            file.seek(CHANGE_COUNTER_OFFSET);
+            return file.readInt() & 0xFFFFFFFFL;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            SVNFileUtil.closeFile(file);
+        }
+    }
+
+    private long getRowsCountEstimate() {
+        return myDBFile.length() / DB_BYTES_PER_ROW;
+    }
+
+    private void allocate(long capacity) {
+        myCapacity = capacity;
+        myBitsCount = ((capacity * BITS_PER_HASH + 63) / 64) * 64;
+        myBits = new long[(int) (myBitsCount / 64)];
+        myCount = 0;
+    }
+
+    private void add(String hash) {
+        long h1 = getHash(hash, 0);
+        long h2 = getHash(hash, 16) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS_COUNT; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % myBitsCount;
+            myBits[(int) (bit >>> 6)] |= 1L << (bit & 63);
+        }
+        myCount++;
+    }
+
+    private static long getHash(String hash, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 16 && i < hash.length(); i++) {
+            value = (value << 4) | (Character.digit(hash.charAt(i), 16) & 0xF);
+        }
+        return value;
+    }
+}
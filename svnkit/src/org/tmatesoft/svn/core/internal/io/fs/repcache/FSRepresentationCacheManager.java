@@ -12,6 +12,10 @@
 package org.tmatesoft.svn.core.internal.io.fs.repcache;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -27,6 +31,7 @@ import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
 import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
 import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -49,6 +54,7 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     private SqlJetDb myRepCacheDB;
     private ISqlJetTable myTable;
     private FSFS myFSFS;
+    private FSRepresentationCacheFilter myFilter;
     
     public static FSRepresentationCacheManager openRepresentationCache(FSFS fsfs) throws SVNException {
         final FSRepresentationCacheManager cacheObj = new FSRepresentationCacheManager();
@@ -56,6 +62,8 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
             cacheObj.myRepCacheDB = SqlJetDb.open(fsfs.getRepositoryCacheFile(), true);
             checkFormat(cacheObj.myRepCacheDB);
             cacheObj.myTable = cacheObj.myRepCacheDB.getTable(REP_CACHE_TABLE);
+            cacheObj.myFSFS = fsfs;
+            cacheObj.myFilter = FSRepresentationCacheFilter.getFilter(fsfs.getRepositoryCacheFile());
         } catch (SqlJetException e) {
             SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
         }
@@ -121,7 +129,75 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
             }
             return;
         }
-        
+        insertNew(representation);
+    }
+
+    public void insert(final Collection representations, final boolean rejectDup) throws SVNException {
+        if (myRepCacheDB == null || representations.isEmpty()) {
+            return;
+        }
+        final long[] changeCounter = { -1 };
+        runWriteTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                changeCounter[0] = myFilter.readChangeCounter();
+                if (myFilter.isRebuildNeeded(changeCounter[0])) {
+                    rebuildFilter();
+                }
+                boolean inSync = myFilter.isInSync(changeCounter[0]);
+                for (Iterator reps = representations.iterator(); reps.hasNext();) {
+                    FSRepresentation representation = (FSRepresentation) reps.next();
+                    String hash = representation.getSHA1HexDigest();
+                    if (inSync && hash != null && !myFilter.mightContain(hash)) {
+                        insertNew(representation);
+                    } else {
+                        insert(representation, rejectDup);
+                    }
+                    if (hash != null) {
+                        myFilter.add(hash, changeCounter[0]);
+                    }
+                }
+            }
+        });
+        myFilter.committed(changeCounter[0]);
+    }
+
+    public Map findRepresentations(Collection hashes) throws SVNException {
+        final Map result = new SVNHashMap();
+        if (myRepCacheDB == null || hashes.isEmpty()) {
+            return result;
+        }
+        final Collection lookups = new ArrayList(hashes.size());
+        long changeCounter = myFilter.readChangeCounter();
+        boolean inSync = myFilter.isInSync(changeCounter);
+        for (Iterator hashesIter = hashes.iterator(); hashesIter.hasNext();) {
+            String hash = (String) hashesIter.next();
+            if (!myFilter.mightContain(hash) && inSync) {
+                continue;
+            }
+            lookups.add(hash);
+        }
+        final boolean rebuild = myFilter.isRebuildNeeded(changeCounter);
+        if (lookups.isEmpty() && !rebuild) {
+            return result;
+        }
+        runReadTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                if (rebuild) {
+                    rebuildFilter();
+                }
+                for (Iterator hashesIter = lookups.iterator(); hashesIter.hasNext();) {
+                    String hash = (String) hashesIter.next();
+                    FSRepresentation representation = getRepresentationByHash(hash);
+                    if (representation != null) {
+                        result.put(hash, representation);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    private void insertNew(FSRepresentation representation) throws SVNException {
         try {
             myTable.insert(new Object[] { representation.getSHA1HexDigest(), new Long(representation.getRevision()),
                     new Long(representation.getOffset()), new Long(representation.getSize()), 
@@ -131,6 +207,14 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         }
     }
 
+    private void rebuildFilter() throws SVNException {
+        try {
+            myFilter.rebuild(myTable);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+    }
+
     public void close() throws SVNException {
         if (myRepCacheDB != null) {
             try {
@@ -141,6 +225,7 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
                 myTable = null;
                 myRepCacheDB = null;
                 myFSFS = null;
+                myFilter = null;
             }
         }
     }
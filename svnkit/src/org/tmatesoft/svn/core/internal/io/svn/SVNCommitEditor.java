@@ -18,15 +18,18 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.zip.Deflater;
 
 import org.tmatesoft.svn.core.SVNCommitInfo;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
 import org.tmatesoft.svn.core.internal.util.SVNEncodingUtil;
 import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNAuthenticationManager;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNEditor;
@@ -56,6 +59,11 @@ class SVNCommitEditor implements ISVNEditor {
         myCloseCallback = closeCallback;
         myDirsStack = new Stack();
         myNextToken = 0;
+        myCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+        ISVNAuthenticationManager authManager = location.getAuthenticationManager();
+        if (authManager instanceof DefaultSVNAuthenticationManager) {
+            myCompressionLevel = ((DefaultSVNAuthenticationManager) authManager).getDeltaCompressionLevel(location.getLocation());
+        }
     }
 
     /* do nothing */
@@ -163,13 +171,14 @@ class SVNCommitEditor implements ISVNEditor {
     }
 
     private int myDiffWindowCount = 0;
+    private int myCompressionLevel;
     private boolean myIsAborted;
 
     public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
         String fileToken = (String) myFilesToTokens.get(path);
 
         try {
-            diffWindow.writeTo(myConnection.getDeltaStream(fileToken), myDiffWindowCount == 0, myConnection.isSVNDiff1());
+            diffWindow.writeTo(myConnection.getDeltaStream(fileToken), myDiffWindowCount == 0, myConnection.isSVNDiff1(), myCompressionLevel);
             myDiffWindowCount++;
             return SVNFileUtil.DUMMY_OUT;
         } catch (IOException e) {
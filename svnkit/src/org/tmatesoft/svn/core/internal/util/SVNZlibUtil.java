@@ -0,0 +1,132 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2011 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.util;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Compresses and decompresses byte arrays with zlib, reusing <code>Deflater</code> and
+ * <code>Inflater</code> instances. Their native state is costly to allocate and, unless
+ * they are ended, is only freed on finalization, which adds up when every delta window
+ * is compressed or decompressed on its own.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNZlibUtil {
+
+    private static final int MAX_POOLED_COUNT = 16;
+
+    // indexed by compression level + 1, so that Deflater.DEFAULT_COMPRESSION comes first
+    private static final LinkedList[] ourDeflaters = new LinkedList[Deflater.BEST_COMPRESSION + 2];
+    private static final LinkedList ourInflaters = new LinkedList();
+
+    static {
+        for (int i = 0; i < ourDeflaters.length; i++) {
+            ourDeflaters[i] = new LinkedList();
+        }
+    }
+
+    /**
+     * Compresses <code>length</code> bytes of <code>src</code> into <code>dst</code>.
+     *
+     * @return  the compressed length, or <code>-1</code> if the compressed data does not
+     *          fit in <code>dstLength</code> bytes
+     */
+    public static int deflate(byte[] src, int offset, int length, int compressionLevel, byte[] dst, int dstOffset, int dstLength) {
+        Deflater deflater = getDeflater(compressionLevel);
+        try {
+            deflater.setInput(src, offset, length);
+            deflater.finish();
+            int deflated = 0;
+            while (!deflater.finished() && deflated < dstLength) {
+                deflated += deflater.deflate(dst, dstOffset + deflated, dstLength - deflated);
+            }
+            return deflater.finished() ? deflated : -1;
+        } finally {
+            releaseDeflater(deflater, compressionLevel);
+        }
+    }
+
+    /**
+     * Decompresses <code>length</code> bytes of <code>src</code> into exactly
+     * <code>dstLength</code> bytes of <code>dst</code>.
+     *
+     * @throws IOException  if the data is corrupt or does not decompress to
+     *                      <code>dstLength</code> bytes
+     */
+    public static void inflate(byte[] src, int offset, int length, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        Inflater inflater = getInflater();
+        try {
+            inflater.setInput(src, offset, length);
+            int inflated = 0;
+            while (inflated < dstLength) {
+                int count = inflater.inflate(dst, dstOffset + inflated, dstLength - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Decompression of zlib compressed data failed: " + inflated + " bytes of " + dstLength + " decompressed");
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Decompression of zlib compressed data failed: " + e.getMessage());
+        } finally {
+            releaseInflater(inflater);
+        }
+    }
+
+    private static Deflater getDeflater(int compressionLevel) {
+        LinkedList pool = ourDeflaters[compressionLevel + 1];
+        synchronized (pool) {
+            if (!pool.isEmpty()) {
+                return (Deflater) pool.removeLast();
+            }
+        }
+        return new Deflater(compressionLevel);
+    }
+
+    private static void releaseDeflater(Deflater deflater, int compressionLevel) {
+        deflater.reset();
+        LinkedList pool = ourDeflaters[compressionLevel + 1];
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_COUNT) {
+                pool.addLast(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    private static Inflater getInflater() {
+        synchronized (ourInflaters) {
+            if (!ourInflaters.isEmpty()) {
+                return (Inflater) ourInflaters.removeLast();
+            }
+        }
+        return new Inflater();
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        synchronized (ourInflaters) {
+            if (ourInflaters.size() < MAX_POOLED_COUNT) {
+                ourInflaters.addLast(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+}
@@ -131,6 +131,10 @@ public class DefaultSVNAuthenticationManager implements ISVNAuthenticationManage
         return getHostOptionsProvider().getHostOptions(url).getAuthTypes();
     }
 
+    public int getDeltaCompressionLevel(SVNURL url) {
+        return getHostOptionsProvider().getHostOptions(url).getDeltaCompressionLevel();
+    }
+
     public ISVNProxyManager getProxyManager(SVNURL url) throws SVNException {
         final ISVNHostOptions hostOptions = getHostOptionsProvider().getHostOptions(url);
         String proxyHost = hostOptions.getProxyHost();
@@ -18,6 +18,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.zip.Deflater;
 
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
@@ -254,6 +255,21 @@ public class DefaultSVNHostOptions implements ISVNHostOptions {
         return 0;
     }
 
+    public int getDeltaCompressionLevel() {
+        Map properties = getHostProperties();
+        String level = (String) properties.get("delta-compression-level");
+        if (level != null) {
+            try {
+                int compressionLevel = Integer.parseInt(level.trim());
+                if (compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION) {
+                    return compressionLevel;
+                }
+            } catch (NumberFormatException nfe) {
+            }
+        }
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+
     private Map getHostProperties() {
         Map properties = getServersFile().getProperties("global");
         String groupName = getGroupName(getServersFile().getProperties("groups"));
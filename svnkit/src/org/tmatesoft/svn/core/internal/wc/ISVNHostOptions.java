@@ -56,4 +56,10 @@ public interface ISVNHostOptions {
     int getReadTimeout();
 
     int getConnectTimeout();
+
+    /**
+     * Returns the zlib compression level of delta windows sent to the host when it
+     * accepts compressed windows, or <code>Deflater.DEFAULT_COMPRESSION</code>.
+     */
+    int getDeltaCompressionLevel();
 }
@@ -25,6 +25,7 @@ import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.internal.io.fs.FSEntry;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSMergeInfoIndex;
 import org.tmatesoft.svn.core.internal.io.fs.FSParentPath;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
@@ -64,20 +65,33 @@ public class SVNMergeInfoManager {
     private Map getMergeInfoForPaths(FSRevisionRoot root, String[] paths, 
             SVNMergeInfoInheritance inherit, boolean includeDescendants) throws SVNException {
         Map result = new TreeMap();
+        FSMergeInfoIndex index = getMergeInfoIndex(root);
         for (int i = 0; i < paths.length; i++) {
             String path = paths[i];
-            Map pathMergeInfo = getMergeInfoForPath(root, path, inherit);
+            Map pathMergeInfo = getMergeInfoForPath(root, path, inherit, index);
             if (pathMergeInfo != null) {
                 result.put(path, pathMergeInfo);
             }
             if (includeDescendants) {
-                addDescendantMergeInfo(result, root, path);
+                addDescendantMergeInfo(result, root, path, index);
             }
         }    
         return result;
     }
 
-    private void addDescendantMergeInfo(Map result, FSRevisionRoot root, String path) throws SVNException {
+    private static FSMergeInfoIndex getMergeInfoIndex(FSRevisionRoot root) throws SVNException {
+        FSMergeInfoIndex index = FSMergeInfoIndex.getIndex(root.getOwner());
+        if (index != null && index.isIndexed(root.getRevision())) {
+            return index;
+        }
+        return null;
+    }
+
+    private void addDescendantMergeInfo(Map result, FSRevisionRoot root, String path, FSMergeInfoIndex index) throws SVNException {
+        if (index != null) {
+            result.putAll(index.getDescendantsMergeInfo(SVNPathUtil.canonicalizeAbsolutePath(path), root.getRevision()));
+            return;
+        }
         FSRevisionNode node = root.getRevisionNode(path);
         if (node.hasDescendantsWithMergeInfo()) {
             crawlDirectoryForMergeInfo(root, path, node, result);
@@ -110,13 +124,17 @@ public class SVNMergeInfoManager {
         return result;
     }
     
-    private Map getMergeInfoForPath(FSRevisionRoot revRoot, String path, SVNMergeInfoInheritance inherit) throws SVNException {
+    private Map getMergeInfoForPath(FSRevisionRoot revRoot, String path, SVNMergeInfoInheritance inherit, 
+            FSMergeInfoIndex index) throws SVNException {
         Map mergeInfo = null;
         path = SVNPathUtil.canonicalizeAbsolutePath(path);
         FSParentPath parentPath = revRoot.openPath(path, true, true);
         if (inherit == SVNMergeInfoInheritance.NEAREST_ANCESTOR && parentPath.getParent() == null) {
             return mergeInfo;
         }
+        if (index != null) {
+            return getIndexedMergeInfoForPath(index, revRoot.getRevision(), path, inherit);
+        }
         
         FSParentPath nearestAncestor = null;
         if (inherit == SVNMergeInfoInheritance.NEAREST_ANCESTOR) {
@@ -161,6 +179,29 @@ public class SVNMergeInfoManager {
         return mergeInfo;
     }
     
+    private Map getIndexedMergeInfoForPath(FSMergeInfoIndex index, long revision, String path, 
+            SVNMergeInfoInheritance inherit) throws SVNException {
+        String nearestAncestor = inherit == SVNMergeInfoInheritance.NEAREST_ANCESTOR ? SVNPathUtil.removeTail(path) : path;
+        while (true) {
+            if ("".equals(nearestAncestor)) {
+                nearestAncestor = "/";
+            }
+            Map mergeInfo = index.getMergeInfo(nearestAncestor, revision);
+            if (mergeInfo != null) {
+                if (nearestAncestor.equals(path)) {
+                    return mergeInfo;
+                }
+                mergeInfo = SVNMergeInfoUtil.getInheritableMergeInfo(mergeInfo, null, 
+                        SVNRepository.INVALID_REVISION, SVNRepository.INVALID_REVISION);
+                return appendToMergedFroms(mergeInfo, SVNPathUtil.getRelativePath(nearestAncestor, path));
+            }
+            if (inherit == SVNMergeInfoInheritance.EXPLICIT || "/".equals(nearestAncestor)) {
+                return null;
+            }
+            nearestAncestor = SVNPathUtil.removeTail(nearestAncestor);
+        }
+    }
+    
     private Map appendToMergedFroms(Map mergeInfo, String pathComponent) {
         Map result = new TreeMap(); 
         for (Iterator pathsIter = mergeInfo.keySet().iterator(); pathsIter.hasNext();) {
@@ -32,6 +32,7 @@ import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFileChannelPool;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepresentationCacheUtil;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
 import org.tmatesoft.svn.core.internal.util.SVNHashMap;
@@ -431,6 +432,7 @@ public abstract class SVNRepositoryFactory {
                         SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "''{0}'' already exists; use ''force'' to overwrite existing files", path);
                         SVNErrorManager.error(err, SVNLogType.FSFS);
                     } else {
+                        FSFileChannelPool.getInstance().closeChannels(path);
                         SVNFileUtil.deleteAll(path, true);
                     }
                 }
@@ -21,6 +21,7 @@ import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNExtendedXDeltaAlgorithm;
 import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
 import org.tmatesoft.svn.core.internal.wc.IOExceptionWrapper;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
@@ -37,6 +38,8 @@ import org.tmatesoft.svn.util.SVNLogType;
  * 
  * <p>
  * The generator uses X-Delta algorithm for generating all kinds of deltas.
+ * {@link #EXTENDED_XDELTA_ALGORITHM} selects a variant of it producing smaller 
+ * deltas at some cost in speed, see {@link #setDeltaAlgorithm(String)}.
  * 
  * @version 1.3
  * @author  TMate Software Ltd.
@@ -44,7 +47,30 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public class SVNDeltaGenerator {
     
-    private SVNDeltaAlgorithm myXDelta = new SVNXDeltaAlgorithm();
+    /**
+     * X-Delta algorithm, used by default.
+     * @since 1.3.5
+     */
+    public static final String XDELTA_ALGORITHM = "xdelta";
+
+    /**
+     * X-Delta algorithm that also matches the target against itself and tries harder 
+     * to find long matches, producing smaller deltas at some cost in speed.
+     * @since 1.3.5
+     */
+    public static final String EXTENDED_XDELTA_ALGORITHM = "xdelta-extended";
+
+    /**
+     * Size of diff windows produced by default, 100 Kbytes. Native Subversion rejects 
+     * windows larger than that.
+     * @since 1.3.5
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1024*100;
+
+    private static String ourDefaultDeltaAlgorithm = System.getProperty("svnkit.delta.algorithm", XDELTA_ALGORITHM);
+    private static int ourDefaultWindowSize = getDefaultWindowSizeProperty();
+
+    private SVNDeltaAlgorithm myXDelta;
     
     private byte[] mySourceBuffer;
     private byte[] myTargetBuffer;
@@ -52,13 +78,14 @@ public class SVNDeltaGenerator {
     
     /**
      * Creates a generator that will produce diff windows of 
-     * 100Kbytes contents length. That is, after applying of 
+     * 100Kbytes contents length, unless another default is set with 
+     * {@link #setDefaultWindowSize(int)}. That is, after applying of 
      * such a window you get 100 Kbytes of file contents.
      * 
      * @see #SVNDeltaGenerator(int)
      */
     public SVNDeltaGenerator() {
-        this(1024*100);
+        this(ourDefaultWindowSize);
     }
     
     /**
@@ -71,11 +98,73 @@ public class SVNDeltaGenerator {
      */
     public SVNDeltaGenerator(int maximumDiffWindowSize) {
         myMaximumBufferSize = maximumDiffWindowSize;
+        setDeltaAlgorithm(ourDefaultDeltaAlgorithm);
         int initialSize = Math.min(8192, myMaximumBufferSize);
         mySourceBuffer = new byte[initialSize];
         myTargetBuffer = new byte[initialSize];
     }
     
+    /**
+     * Returns the delta algorithm new generators use.
+     * 
+     * @return  {@link #XDELTA_ALGORITHM} or {@link #EXTENDED_XDELTA_ALGORITHM}
+     * @since   1.3.5
+     */
+    public static String getDefaultDeltaAlgorithm() {
+        return ourDefaultDeltaAlgorithm;
+    }
+
+    /**
+     * Sets the delta algorithm new generators use. The initial default is taken from the 
+     * <code>svnkit.delta.algorithm</code> system property and is {@link #XDELTA_ALGORITHM} 
+     * when it is not set.
+     * 
+     * @param algorithm  {@link #XDELTA_ALGORITHM} or {@link #EXTENDED_XDELTA_ALGORITHM}
+     * @since            1.3.5
+     */
+    public static void setDefaultDeltaAlgorithm(String algorithm) {
+        ourDefaultDeltaAlgorithm = algorithm;
+    }
+
+    /**
+     * Returns the size of diff windows generators created with {@link #SVNDeltaGenerator()} produce.
+     * 
+     * @return  window size in bytes
+     * @since   1.3.5
+     */
+    public static int getDefaultWindowSize() {
+        return ourDefaultWindowSize;
+    }
+
+    /**
+     * Sets the size of diff windows generators created with {@link #SVNDeltaGenerator()} produce. 
+     * The initial default is taken from the <code>svnkit.delta.windowSize</code> system property, 
+     * in Kbytes, and is {@link #DEFAULT_WINDOW_SIZE} when it is not set. Such generators also 
+     * produce deltas sent to servers, and native Subversion rejects windows larger than 
+     * {@link #DEFAULT_WINDOW_SIZE}, so larger sizes are reduced to it.
+     * 
+     * @param windowSize  window size in bytes; non-positive values restore {@link #DEFAULT_WINDOW_SIZE}
+     * @since             1.3.5
+     */
+    public static void setDefaultWindowSize(int windowSize) {
+        ourDefaultWindowSize = windowSize > 0 ? Math.min(windowSize, DEFAULT_WINDOW_SIZE) : DEFAULT_WINDOW_SIZE;
+    }
+
+    /**
+     * Selects the algorithm this generator computes deltas with. Unknown names select 
+     * {@link #XDELTA_ALGORITHM}.
+     * 
+     * @param algorithm  {@link #XDELTA_ALGORITHM} or {@link #EXTENDED_XDELTA_ALGORITHM}
+     * @since            1.3.5
+     */
+    public void setDeltaAlgorithm(String algorithm) {
+        if (EXTENDED_XDELTA_ALGORITHM.equals(algorithm)) {
+            myXDelta = new SVNExtendedXDeltaAlgorithm();
+        } else {
+            myXDelta = new SVNXDeltaAlgorithm();
+        }
+    }
+    
     /**
      * Generates a series of diff windows of fixed size comparing 
      * target bytes (from <code>target</code> stream) against an 
@@ -298,4 +387,18 @@ public class SVNDeltaGenerator {
         }
         return read;
     }
+
+    private static int getDefaultWindowSizeProperty() {
+        String value = System.getProperty("svnkit.delta.windowSize");
+        if (value != null) {
+            try {
+                int windowSize = Integer.parseInt(value.trim()) * 1024;
+                if (windowSize > 0) {
+                    return Math.min(windowSize, DEFAULT_WINDOW_SIZE);
+                }
+            } catch (NumberFormatException e) {
+            }
+        }
+        return DEFAULT_WINDOW_SIZE;
+    }
 }
@@ -14,6 +14,8 @@ package org.tmatesoft.svn.core.io.diff;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -62,13 +64,68 @@ public class SVNDeltaProcessor {
      */
     public void applyTextDelta(InputStream base, OutputStream target, boolean computeCheksum) {
         reset();
-        MessageDigest digest = null;
-        try {
-            digest = computeCheksum ? MessageDigest.getInstance("MD5") : null;
-        } catch (NoSuchAlgorithmException e1) {
-        }
         base = base == null ? SVNFileUtil.DUMMY_IN : base;
-        myApplyBaton = SVNDiffWindowApplyBaton.create(base, target, digest);
+        myApplyBaton = SVNDiffWindowApplyBaton.create(base, target, createDigest(computeCheksum));
+    }
+
+    /**
+     * Starts processing deltas given a base file stream and a channel 
+     * (for instance, a <code>FileChannel</code>) to write resultant target bytes to.
+     * Windows are applied in buffers reused from one window to another and written 
+     * to the channel as they are.
+     * 
+     * <p>
+     * If a target full text is a newly added file (text deltas would be vs. empty), 
+     * then source bytes are not needed and <code>base</code> may be passed as 
+     * <span class="javakeyword">null</span>.
+     * 
+     * <p>
+     * If <code>computeChecksum</code> is <span class="javakeyword">true</span>, then 
+     * an MD5 checksum will be calculated for target bytes. The calculated checksum is 
+     * returned by {@link #textDeltaEnd()}.
+     * 
+     * @param base             an input stream to take base file contents 
+     *                         from
+     * @param target           a channel to write the resultant target 
+     *                         contents to
+     * @param computeCheksum   <span class="javakeyword">true</span> to calculate
+     *                         checksum
+     * @since 1.3.5
+     */
+    public void applyTextDelta(InputStream base, WritableByteChannel target, boolean computeCheksum) {
+        reset();
+        base = base == null ? SVNFileUtil.DUMMY_IN : base;
+        myApplyBaton = SVNDiffWindowApplyBaton.create(base, target, createDigest(computeCheksum));
+    }
+
+    /**
+     * Starts processing deltas given a base file stream and a byte buffer to put 
+     * resultant target bytes to, starting at its current position. When the buffer 
+     * is backed by an array, windows are applied right into that array. The buffer 
+     * must have enough room for the whole target text.
+     * 
+     * <p>
+     * If a target full text is a newly added file (text deltas would be vs. empty), 
+     * then source bytes are not needed and <code>base</code> may be passed as 
+     * <span class="javakeyword">null</span>.
+     * 
+     * <p>
+     * If <code>computeChecksum</code> is <span class="javakeyword">true</span>, then 
+     * an MD5 checksum will be calculated for target bytes. The calculated checksum is 
+     * returned by {@link #textDeltaEnd()}.
+     * 
+     * @param base             an input stream to take base file contents 
+     *                         from
+     * @param target           a buffer to put the resultant target 
+     *                         contents to
+     * @param computeCheksum   <span class="javakeyword">true</span> to calculate
+     *                         checksum
+     * @since 1.3.5
+     */
+    public void applyTextDelta(InputStream base, ByteBuffer target, boolean computeCheksum) {
+        reset();
+        base = base == null ? SVNFileUtil.DUMMY_IN : base;
+        myApplyBaton = SVNDiffWindowApplyBaton.create(base, target, createDigest(computeCheksum));
     }
     
     /**
@@ -153,6 +210,14 @@ public class SVNDeltaProcessor {
         return SVNFileUtil.DUMMY_OUT;
     }
     
+    private static MessageDigest createDigest(boolean computeChecksum) {
+        try {
+            return computeChecksum ? MessageDigest.getInstance("MD5") : null;
+        } catch (NoSuchAlgorithmException e1) {
+        }
+        return null;
+    }
+    
     private void reset() {
         if (myApplyBaton != null) {
             myApplyBaton.close();
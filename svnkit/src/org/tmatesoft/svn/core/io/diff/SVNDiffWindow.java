@@ -16,11 +16,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Deflater;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.SVNZlibUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -214,7 +215,8 @@ public class SVNDiffWindow {
      *     in the target buffer. So, after instructions applying completes, it will be the checksum for
      *     the full text expanded.
      * <li>The last step - appends the target buffer bytes to the baton's 
-     *     target stream.        
+     *     target stream (or channel). When the baton's target is a byte buffer backed 
+     *     by an array, instructions are applied right into that array instead.        
      * </ol> 
      * 
      * <p>
@@ -234,80 +236,90 @@ public class SVNDiffWindow {
      */
     public void apply(SVNDiffWindowApplyBaton applyBaton) throws SVNException {
         // here we have streams and buffer from the previous calls (or nulls).
+        int targetLength = getTargetViewLength();
+        long sourceOffset = getSourceViewOffset();
+        int sourceLength = getSourceViewLength();
         
-        // 1. buffer for target.
-        if (applyBaton.myTargetBuffer == null || applyBaton.myTargetViewSize < getTargetViewLength()) {
-            applyBaton.myTargetBuffer = new byte[getTargetViewLength()];
+        // 1. source view, read into the baton's buffer, which also keeps what was read 
+        // beyond the previous view end, so that the source stream always stays at the view end.
+        if (sourceLength > 0) {
+            int loaded = 0;
+            if (sourceOffset == applyBaton.mySourceViewOffset && sourceLength <= applyBaton.mySourceViewLength) {
+                loaded = applyBaton.mySourceViewLength;
+            } else {
+                byte[] sourceBuffer = applyBaton.mySourceBuffer;
+                if (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength > sourceOffset) {
+                    // move overlapping part to the start of the buffer
+                    int start = (int) (sourceOffset - applyBaton.mySourceViewOffset);
+                    loaded = applyBaton.mySourceViewLength - start;
+                }
+                if (sourceBuffer == null || sourceBuffer.length < Math.max(sourceLength, loaded)) {
+                    sourceBuffer = new byte[Math.max(sourceLength, loaded)];
+                }
+                if (loaded > 0) {
+                    System.arraycopy(applyBaton.mySourceBuffer, applyBaton.mySourceViewLength - loaded, sourceBuffer, 0, loaded);
+                }
+                applyBaton.mySourceBuffer = sourceBuffer;
+            }
+            if (loaded < sourceLength) {
+                // fill what remains.
+                try {
+                    int toSkip = (int) (sourceOffset - (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength));
+                    if (toSkip > 0) {
+                        applyBaton.mySourceStream.skip(toSkip);
+                    }
+                    SVNFileUtil.readIntoBuffer(applyBaton.mySourceStream, applyBaton.mySourceBuffer, loaded, sourceLength - loaded);
+                } catch (IOException e) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                    SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+                }
+                loaded = sourceLength;
+            }
+            // update offsets in baton.
+            applyBaton.mySourceViewLength = loaded;
+            applyBaton.mySourceViewOffset = sourceOffset;
         }
-        applyBaton.myTargetViewSize = getTargetViewLength();
         
-        // 2. buffer for source.
-        int length = 0;
-        if (getSourceViewOffset() != applyBaton.mySourceViewOffset || getSourceViewLength() > applyBaton.mySourceViewLength) {
-            byte[] oldSourceBuffer = applyBaton.mySourceBuffer;
-            // create a new buffer
-            applyBaton.mySourceBuffer = new byte[getSourceViewLength()];
-            // copy from the old buffer.
-            if (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength > getSourceViewOffset()) {
-                // copy overlapping part to the new buffer
-                int start = (int) (getSourceViewOffset() - applyBaton.mySourceViewOffset);
-                System.arraycopy(oldSourceBuffer, start, applyBaton.mySourceBuffer, 0, (applyBaton.mySourceViewLength - start));
-                length = (applyBaton.mySourceViewLength - start);
-            }            
+        // 2. target view, applied right into the target byte buffer when it has an array.
+        ByteBuffer targetByteBuffer = applyBaton.myTargetByteBuffer;
+        if (targetByteBuffer != null && targetByteBuffer.remaining() < targetLength) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Target buffer has no room for {0} bytes of a delta window", 
+                    new Integer(targetLength));
+            SVNErrorManager.error(err, SVNLogType.DEFAULT);
         }
-        if (length < getSourceViewLength()) {
-            // fill what remains.
-            try {
-                int toSkip = (int) (getSourceViewOffset() - (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength));
-                if (toSkip > 0) {
-                    applyBaton.mySourceStream.skip(toSkip);
-                }
-                SVNFileUtil.readIntoBuffer(applyBaton.mySourceStream, applyBaton.mySourceBuffer, length, applyBaton.mySourceBuffer.length - length);
-            } catch (IOException e) {
-                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
-                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+        if (targetByteBuffer != null && targetByteBuffer.hasArray()) {
+            int targetOffset = targetByteBuffer.arrayOffset() + targetByteBuffer.position();
+            applyInstructions(applyBaton.mySourceBuffer, targetByteBuffer.array(), targetOffset);
+            if (applyBaton.myDigest != null) {
+                applyBaton.myDigest.update(targetByteBuffer.array(), targetOffset, targetLength);
             }
+            targetByteBuffer.position(targetByteBuffer.position() + targetLength);
+            return;
+        }
+        if (applyBaton.myTargetBuffer == null || applyBaton.myTargetBuffer.length < targetLength) {
+            applyBaton.myTargetBuffer = new byte[targetLength];
+        }
+        applyInstructions(applyBaton.mySourceBuffer, applyBaton.myTargetBuffer, 0);
+        // save tbuffer.
+        if (applyBaton.myDigest != null) {
+            applyBaton.myDigest.update(applyBaton.myTargetBuffer, 0, targetLength);
         }
-        // update offsets in baton.
-        applyBaton.mySourceViewLength = getSourceViewLength();
-        applyBaton.mySourceViewOffset = getSourceViewOffset();
-        
-        // apply instructions.
-        int tpos = 0;
-        int npos = myInstructionsLength;
         try {
-            for (Iterator instructions = instructions(true); instructions.hasNext();) {
-                SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
-                int iLength = instruction.length < getTargetViewLength() - tpos ? (int) instruction.length : getTargetViewLength() - tpos; 
-                switch (instruction.type) {
-                    case SVNDiffInstruction.COPY_FROM_NEW_DATA:
-                        System.arraycopy(myData, myDataOffset + npos, applyBaton.myTargetBuffer, tpos, iLength);
-                        npos += iLength;
-                        break;
-                    case SVNDiffInstruction.COPY_FROM_TARGET:
-                        int start = instruction.offset;
-                        int end = instruction.offset + iLength;
-                        int tIndex = tpos;
-                        for(int j = start; j < end; j++) {
-                            applyBaton.myTargetBuffer[tIndex] = applyBaton.myTargetBuffer[j];
-                            tIndex++;
-                        }
-                        break;
-                    case SVNDiffInstruction.COPY_FROM_SOURCE:
-                        System.arraycopy(applyBaton.mySourceBuffer, instruction.offset, applyBaton.myTargetBuffer, tpos, iLength);
-                        break;
-                    default:
+            if (targetByteBuffer != null) {
+                targetByteBuffer.put(applyBaton.myTargetBuffer, 0, targetLength);
+            } else if (applyBaton.myTargetChannel != null) {
+                if (applyBaton.myTargetBufferWrapper == null || applyBaton.myTargetBufferWrapper.array() != applyBaton.myTargetBuffer) {
+                    applyBaton.myTargetBufferWrapper = ByteBuffer.wrap(applyBaton.myTargetBuffer);
                 }
-                tpos += instruction.length;
-                if (tpos >= getTargetViewLength()) {
-                    break;
+                ByteBuffer wrapper = applyBaton.myTargetBufferWrapper;
+                wrapper.clear();
+                wrapper.limit(targetLength);
+                while (wrapper.hasRemaining()) {
+                    applyBaton.myTargetChannel.write(wrapper);
                 }
+            } else {
+                applyBaton.myTargetStream.write(applyBaton.myTargetBuffer, 0, targetLength);
             }
-            // save tbuffer.
-            if (applyBaton.myDigest != null) {
-                applyBaton.myDigest.update(applyBaton.myTargetBuffer, 0, getTargetViewLength());
-            }
-            applyBaton.myTargetStream.write(applyBaton.myTargetBuffer, 0, getTargetViewLength());
         } catch (IOException e) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
             SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
@@ -337,36 +349,76 @@ public class SVNDiffWindow {
      * @see                 #apply(SVNDiffWindowApplyBaton)
      */
     public int apply(byte[] sourceBuffer, byte[] targetBuffer) {
-        int dataOffset = myInstructionsLength;
+        applyInstructions(sourceBuffer, targetBuffer, 0);
+        return getTargetViewLength();
+    }
+    
+    private void applyInstructions(byte[] sourceBuffer, byte[] targetBuffer, int targetOffset) {
+        if (myData == null) {
+            return;
+        }
+        // instructions are decoded in place, the same way InstructionsIterator reads them.
+        int targetLength = getTargetViewLength();
+        int instructionsEnd = myDataOffset + myInstructionsLength;
+        int ipos = myDataOffset;
+        int npos = instructionsEnd;
         int tpos = 0;
-        for (Iterator instructions = instructions(true); instructions.hasNext();) {
-            SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
-            int iLength = instruction.length < getTargetViewLength() - tpos ? (int) instruction.length : getTargetViewLength() - tpos;
-            switch (instruction.type) {
+        while (ipos < instructionsEnd) {
+            int type = (myData[ipos] & 0xC0) >> 6;
+            int length = myData[ipos] & 0x3f;
+            int offset = 0;
+            ipos++;
+            if (length == 0) {
+                // read length from next byte                
+                while (true) {
+                    byte b = myData[ipos++];
+                    length = (length << 7) | (b & 0x7f);
+                    if ((b & 0x80) == 0) {
+                        break;
+                    } else if (ipos >= instructionsEnd) {
+                        length = -1;
+                        break;
+                    }
+                }
+            }
+            if (type == SVNDiffInstruction.COPY_FROM_SOURCE || type == SVNDiffInstruction.COPY_FROM_TARGET) {
+                // read offset from next byte (no offset without length).
+                while (true) {
+                    byte b = myData[ipos++];
+                    offset = (offset << 7) | (b & 0x7f);
+                    if ((b & 0x80) == 0) {
+                        break;
+                    } else if (ipos >= instructionsEnd) {
+                        offset = -1;
+                        break;
+                    }
+                }
+            }
+            int iLength = length < targetLength - tpos ? length : targetLength - tpos;
+            switch (type) {
                 case SVNDiffInstruction.COPY_FROM_NEW_DATA:
-                    System.arraycopy(myData, myDataOffset + dataOffset, targetBuffer, tpos, iLength);
-                    dataOffset += iLength;
+                    System.arraycopy(myData, npos, targetBuffer, targetOffset + tpos, iLength);
+                    npos += iLength;
                     break;
                 case SVNDiffInstruction.COPY_FROM_TARGET:
-                    int start = instruction.offset;
-                    int end = instruction.offset + iLength;
-                    int tIndex = tpos;
+                    int start = targetOffset + offset;
+                    int end = start + iLength;
+                    int tIndex = targetOffset + tpos;
                     for(int j = start; j < end; j++) {
                         targetBuffer[tIndex] = targetBuffer[j];
                         tIndex++;
                     }
                     break;
                 case SVNDiffInstruction.COPY_FROM_SOURCE:
-                    System.arraycopy(sourceBuffer, instruction.offset, targetBuffer, tpos, iLength);
+                    System.arraycopy(sourceBuffer, offset, targetBuffer, targetOffset + tpos, iLength);
                     break;
                 default:
             }
-            tpos += instruction.length;
-            if (tpos >= getTargetViewLength()) {
+            tpos += length;
+            if (tpos >= targetLength) {
                 break;
             }
         }
-        return getTargetViewLength();
     }
     
     /**
@@ -453,6 +505,29 @@ public class SVNDiffWindow {
      * @since                 1.1
      */
     public void writeTo(OutputStream os, boolean writeHeader, boolean compress) throws IOException {
+        writeTo(os, writeHeader, compress, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Formats and writes this window bytes to the specified output stream compressing 
+     * them, when <code>compress</code> is <span class="javakeyword">true</span>, with 
+     * the given zlib compression level.
+     * 
+     * <p>
+     * Level <code>0</code> writes window sections in the compressed format but stores them 
+     * uncompressed, which is cheaper than deflating them with no compression.
+     * 
+     * @param os                an output stream to write the window to
+     * @param writeHeader       if <span class="javakeyword">true</span> a window
+     *                          header will be also written
+     * @param compress          if <span class="javakeyword">true</span> writes  
+     *                          compressed window bytes using {@link #SVN1_HEADER}
+     * @param compressionLevel  zlib compression level from <code>0</code> to <code>9</code>, or 
+     *                          {@link Deflater#DEFAULT_COMPRESSION}
+     * @throws IOException
+     * @since                   1.3.5
+     */
+    public void writeTo(OutputStream os, boolean writeHeader, boolean compress, int compressionLevel) throws IOException {
         if (writeHeader) {
             os.write(compress ? SVN1_HEADER : SVN_HEADER);
         }
@@ -469,9 +544,9 @@ public class SVNDiffWindow {
         int instLength = 0;
         int dataLength = 0;
         if (compress) {
-            instructions = inflate(myData, myDataOffset, myInstructionsLength);
+            instructions = inflate(myData, myDataOffset, myInstructionsLength, compressionLevel);
             instLength = instructions.remaining();
-            newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength);
+            newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength, compressionLevel);
             dataLength = newData.remaining();
             SVNDiffInstruction.writeInt(offsets, instLength);
             SVNDiffInstruction.writeInt(offsets, dataLength);
@@ -541,30 +616,19 @@ public class SVNDiffWindow {
         return clone;
     }
     
-    private static ByteBuffer inflate(byte[] src, int offset, int length) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(length*2 + 2);
+    private static ByteBuffer inflate(byte[] src, int offset, int length, int compressionLevel) {
+        ByteBuffer buffer = ByteBuffer.allocate(length + 10);
         SVNDiffInstruction.writeInt(buffer, length);
-        if (length < 512) {
-            buffer.put(src, offset, length);
+        int compressedLength = -1;
+        if (length >= 512 && compressionLevel != Deflater.NO_COMPRESSION) {
+            // compressed data is only kept when it is shorter than the original
+            compressedLength = SVNZlibUtil.deflate(src, offset, length, compressionLevel, 
+                    buffer.array(), buffer.arrayOffset() + buffer.position(), length - 1);
+        }
+        if (compressedLength >= 0) {
+            buffer.position(buffer.position() + compressedLength);
         } else {
-            DeflaterOutputStream out = new DeflaterOutputStream(new OutputStream() {
-                public void write(int b) throws IOException {
-                    buffer.put((byte) (b & 0xFF));
-                }
-                public void write(byte[] b, int off, int len) throws IOException {
-                    buffer.put(b, off, len);
-                }
-                public void write(byte[] b) throws IOException {
-                    write(b, 0, b.length);
-                }
-            });
-            out.write(src, offset, length);
-            out.finish();
-            if (buffer.position() >= length) {
-                buffer.clear();
-                SVNDiffInstruction.writeInt(buffer, length);
-                buffer.put(src, offset, length);
-            }
+            buffer.put(src, offset, length);
         }
         buffer.flip();
         return buffer;
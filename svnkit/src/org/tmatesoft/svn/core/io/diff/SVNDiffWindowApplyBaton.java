@@ -12,8 +12,11 @@
 package org.tmatesoft.svn.core.io.diff;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 
 import org.tmatesoft.svn.core.SVNException;
@@ -26,6 +29,11 @@ import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
  * for on-the-fly updating it with the bytes of the target view. So that when
  * a diff window's instructions are applied, the digest will be the checksum
  * for the full expanded text written to the target stream during delta application. 
+ * 
+ * <p>
+ * Besides an output stream, the target may be a channel (for instance, a <code>FileChannel</code>) 
+ * or a byte buffer. Source and target views are kept in buffers owned by the baton, 
+ * which are reused from one window to another and only grow when a window needs larger views.
  *  
  * @version 1.3
  * @author  TMate Software Ltd.
@@ -35,13 +43,15 @@ public class SVNDiffWindowApplyBaton {
 
     InputStream mySourceStream;
     OutputStream myTargetStream;
+    WritableByteChannel myTargetChannel;
+    ByteBuffer myTargetByteBuffer;
 
     long mySourceViewOffset;
     int mySourceViewLength;
-    int myTargetViewSize;
 
     byte[] mySourceBuffer;
     byte[] myTargetBuffer;
+    ByteBuffer myTargetBufferWrapper;
     MessageDigest myDigest;
     
     /**
@@ -88,6 +98,43 @@ public class SVNDiffWindowApplyBaton {
         return baton;
     }
 
+    /**
+     * Creates a diff window apply baton which writes the full text to a channel,
+     * for instance, to a <code>FileChannel</code>. The channel is closed by {@link #close()}.
+     * 
+     * @param  source           a source input stream (from where the source 
+     *                          views would be taken) 
+     * @param  target           a target channel where the full text is written
+     * @param  digest           an MD5 checksum for the full text that would be
+     *                          updated after each instruction applying 
+     * @return                  a new <b>SVNDiffWindowApplyBaton</b> object
+     * @since  1.3.5
+     */
+    public static SVNDiffWindowApplyBaton create(InputStream source, WritableByteChannel target, MessageDigest digest) {
+        SVNDiffWindowApplyBaton baton = create(source, (OutputStream) null, digest);
+        baton.myTargetChannel = target;
+        return baton;
+    }
+
+    /**
+     * Creates a diff window apply baton which puts the full text into a byte buffer,
+     * starting at its current position. When the buffer is backed by an array, windows 
+     * are applied right into that array. The buffer must have enough room for the full text.
+     * 
+     * @param  source           a source input stream (from where the source 
+     *                          views would be taken) 
+     * @param  target           a target buffer where the full text is put
+     * @param  digest           an MD5 checksum for the full text that would be
+     *                          updated after each instruction applying 
+     * @return                  a new <b>SVNDiffWindowApplyBaton</b> object
+     * @since  1.3.5
+     */
+    public static SVNDiffWindowApplyBaton create(InputStream source, ByteBuffer target, MessageDigest digest) {
+        SVNDiffWindowApplyBaton baton = create(source, (OutputStream) null, digest);
+        baton.myTargetByteBuffer = target;
+        return baton;
+    }
+
     private SVNDiffWindowApplyBaton() {
     }
     
@@ -102,6 +149,15 @@ public class SVNDiffWindowApplyBaton {
         mySourceStream = null;
         SVNFileUtil.closeFile(myTargetStream);
         myTargetStream = null;
+        if (myTargetChannel != null) {
+            try {
+                myTargetChannel.close();
+            } catch (IOException e) {
+                //
+            }
+            myTargetChannel = null;
+        }
+        myTargetByteBuffer = null;
         if (myDigest != null) {
             MessageDigest d = myDigest;
             myDigest = null;
@@ -42,12 +42,17 @@ import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSHotCopier;
+import org.tmatesoft.svn.core.internal.io.fs.FSLogIndex;
+import org.tmatesoft.svn.core.internal.io.fs.FSMergeInfoIndex;
 import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
 import org.tmatesoft.svn.core.internal.io.fs.FSRecoverer;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionDates;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
 import org.tmatesoft.svn.core.internal.io.fs.FSRoot;
+import org.tmatesoft.svn.core.internal.io.fs.FSWriteLock;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.util.SVNUUIDGenerator;
 import org.tmatesoft.svn.core.internal.wc.DefaultDumpFilterHandler;
@@ -124,6 +129,15 @@ import org.tmatesoft.svn.util.SVNLogType;
  * <tr bgcolor="#EAEAEA" align="left">
  * <td>doPack()</td><td>'svnadmin pack'</td>
  * </tr>
+ * <tr bgcolor="#EAEAEA" align="left">
+ * <td>doBuildLogIndex()</td><td>'jsvnadmin build-log-index'</td>
+ * </tr>
+ * <tr bgcolor="#EAEAEA" align="left">
+ * <td>doBuildMergeInfoIndex()</td><td>'jsvnadmin build-mergeinfo-index'</td>
+ * </tr>
+ * <tr bgcolor="#EAEAEA" align="left">
+ * <td>doBuildRevisionDatesIndex()</td><td>'jsvnadmin build-revision-dates-index'</td>
+ * </tr>
  * </table>
  * 
  * @version 1.3
@@ -579,6 +593,103 @@ public class SVNAdminClient extends SVNBasicClient {
             
     }
     
+    /**
+     * Builds (or rebuilds) the changed paths and revision properties index of a 
+     * repository. 
+     * 
+     * <p/>
+     * Once the index exists, it is kept up to date by commits and revision property 
+     * changes made with SVNKit and is used to answer <code>log</code> requests over 
+     * <code>file://</code> without walking node histories. Commits made by other 
+     * Subversion implementations are picked up by the next SVNKit commit or by 
+     * rebuilding the index.
+     * 
+     * @param  repositoryRoot  root of the repository to index
+     * @throws SVNException
+     * @since  1.3
+     */
+    public void doBuildLogIndex(File repositoryRoot) throws SVNException {
+        FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
+        try {
+            FSWriteLock writeLock = FSWriteLock.getWriteLockForIndexes(fsfs);
+            synchronized (writeLock) {
+                try {
+                    writeLock.lock();
+                    FSLogIndex.create(fsfs);
+                } finally {
+                    writeLock.unlock();
+                    FSWriteLock.release(writeLock);
+                }
+            }
+        } finally {
+            SVNAdminHelper.closeRepository(fsfs);
+        }
+    }
+    
+    /**
+     * Builds (or rebuilds) the mergeinfo index of a repository.
+     * 
+     * <p/>
+     * The index records which paths carry <code>svn:mergeinfo</code> in every revision, 
+     * so that mergeinfo queries against <code>file://</code> repositories do not have to 
+     * crawl the tree. Once the index exists, it is kept up to date by commits made 
+     * with SVNKit. 
+     * 
+     * @param  repositoryRoot  root of the repository to index
+     * @throws SVNException    if the repository does not support mergeinfo
+     * @since  1.3
+     */
+    public void doBuildMergeInfoIndex(File repositoryRoot) throws SVNException {
+        FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
+        try {
+            FSWriteLock writeLock = FSWriteLock.getWriteLockForIndexes(fsfs);
+            synchronized (writeLock) {
+                try {
+                    writeLock.lock();
+                    FSMergeInfoIndex.create(fsfs);
+                } finally {
+                    writeLock.unlock();
+                    FSWriteLock.release(writeLock);
+                }
+            }
+        } finally {
+            SVNAdminHelper.closeRepository(fsfs);
+        }
+    }
+    
+    /**
+     * Builds (or rebuilds) the revision dates array of a repository.
+     * 
+     * <p/>
+     * The array lets revisions be found by date over <code>file://</code> without 
+     * reading the revision properties of every revision the search visits. Once the 
+     * array exists, it is kept up to date by commits and revision property changes 
+     * made with SVNKit. Dates changed by other Subversion implementations are only 
+     * noticed for the revisions around a search result, so the array should be 
+     * rebuilt after such changes. 
+     * 
+     * @param  repositoryRoot  root of the repository to index
+     * @throws SVNException
+     * @since  1.3
+     */
+    public void doBuildRevisionDatesIndex(File repositoryRoot) throws SVNException {
+        FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
+        try {
+            FSWriteLock writeLock = FSWriteLock.getWriteLockForIndexes(fsfs);
+            synchronized (writeLock) {
+                try {
+                    writeLock.lock();
+                    FSRevisionDates.create(fsfs);
+                } finally {
+                    writeLock.unlock();
+                    FSWriteLock.release(writeLock);
+                }
+            }
+        } finally {
+            SVNAdminHelper.closeRepository(fsfs);
+        }
+    }
+    
     /**
      * Completely synchronizes two repositories.
      * 
@@ -744,7 +855,6 @@ public class SVNAdminClient extends SVNBasicClient {
     public void doListLocks(File repositoryRoot) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
-            File digestFile = fsfs.getDigestFileFromRepositoryPath("/");
             ISVNLockHandler handler = new ISVNLockHandler() {
                 public void handleLock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                     checkCancelled();
@@ -757,7 +867,7 @@ public class SVNAdminClient extends SVNBasicClient {
                 public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                 }
             };
-            fsfs.walkDigestFiles(digestFile, handler, false);
+            fsfs.getLocks("/", handler, false);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -935,6 +1045,28 @@ public class SVNAdminClient extends SVNBasicClient {
      * @since                   1.2.0, SVN 1.5.0
      */
     public void doVerify(File repositoryRoot, SVNRevision startRevision, SVNRevision endRevision) throws SVNException {
+        doVerify(repositoryRoot, startRevision, endRevision, 1);
+    }
+
+    /**
+     * Verifies repository contents found under <code>repositoryRoot</code> starting at <code>startRevision</code>
+     * and up to <code>endRevision</code> using <code>threadCount</code> worker threads. 
+     * 
+     * <p/>
+     * The revision range is split by shards, and each worker verifies whole shards over its 
+     * own repository instance. Progress events and errors are still reported to the registered 
+     * {@link ISVNAdminEventHandler} in revision order and from the calling thread. If 
+     * <code>threadCount</code> is less than <code>2</code>, this method is identical to 
+     * {@link #doVerify(File, SVNRevision, SVNRevision)}.
+     * 
+     * @param  repositoryRoot   a repository root directory path
+     * @param  startRevision    revision to start verification at
+     * @param  endRevision      revision to stop verification at
+     * @param  threadCount      number of worker threads
+     * @throws SVNException     verification failed - a repository may be corrupted
+     * @since                   1.3.5
+     */
+    public void doVerify(File repositoryRoot, SVNRevision startRevision, SVNRevision endRevision, int threadCount) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
             long youngestRevision = fsfs.getYoungestRevision();
@@ -946,7 +1078,7 @@ public class SVNAdminClient extends SVNBasicClient {
                 upperRev = lowerRev;
             }
 
-            verify(fsfs, lowerRev, upperRev);
+            verify(fsfs, lowerRev, upperRev, threadCount);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1362,7 +1494,7 @@ public class SVNAdminClient extends SVNBasicClient {
         return myHotCopier;
     }
     
-    private void verify(FSFS fsfs, long startRev, long endRev) throws SVNException {
+    private void verify(FSFS fsfs, long startRev, long endRev, int threadCount) throws SVNException {
         long youngestRev = fsfs.getYoungestRevision();
         if (!SVNRevision.isValidRevisionNumber(startRev)) {
             startRev = 0;
@@ -1384,6 +1516,11 @@ public class SVNAdminClient extends SVNBasicClient {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
         
+        if (threadCount > 1 && startRev < endRev) {
+            verifyInParallel(fsfs, startRev, endRev, threadCount);
+            return;
+        }
+        
         for (long rev = startRev; rev <= endRev; rev++) {
             FSRevisionRoot toRoot = fsfs.createRevisionRoot(rev);
             ISVNEditor editor = getDumpEditor(fsfs, toRoot, rev, startRev, "/", SVNFileUtil.DUMMY_OUT, false, true);
@@ -1399,6 +1536,38 @@ public class SVNAdminClient extends SVNBasicClient {
         }        
     }
     
+    private void verifyInParallel(FSFS fsfs, long startRev, long endRev, int threadCount) throws SVNException {
+        long shardSize = fsfs.getMaxFilesPerDirectory() > 0 ? fsfs.getMaxFilesPerDirectory() : 1000;
+        ParallelVerifier verifier = new ParallelVerifier(fsfs.getRepositoryRoot(), startRev, endRev, shardSize, threadCount);
+        Thread[] workers = new Thread[threadCount];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(verifier, "svnkit-verify-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            for (long rev = startRev; rev <= endRev; rev++) {
+                checkCancelled();
+                while (!verifier.waitForRevision(rev, 100)) {
+                    checkCancelled();
+                }
+                String message = "* Verified revision " + rev + ".";
+                if (myEventHandler != null) {
+                    SVNAdminEvent event = new SVNAdminEvent(rev, SVNAdminEventAction.REVISION_DUMPED, message);
+                    myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
+                }
+            }
+        } finally {
+            verifier.stop();
+            for (int i = 0; i < workers.length; i++) {
+                try {
+                    workers[i].join();
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+
     private void dump(FSFS fsfs, OutputStream dumpStream, long start, long end, boolean isIncremental, boolean useDeltas) throws SVNException {
         boolean isDumping = dumpStream != null && dumpStream != SVNFileUtil.DUMMY_OUT;
         long youngestRevision = fsfs.getYoungestRevision();
@@ -1559,14 +1728,19 @@ public class SVNAdminClient extends SVNBasicClient {
     
     private SVNDumpEditor getDumpEditor(FSFS fsfs, FSRoot root, long toRevision, long oldestDumpedRevision, String rootPath, OutputStream dumpStream, 
             boolean useDeltas, boolean isVerify) {
-        if (myDumpEditor == null) {
-            myDumpEditor = new SVNDumpEditor(fsfs, root, toRevision, oldestDumpedRevision, rootPath, dumpStream, useDeltas, isVerify);
-        } else {
-            myDumpEditor.reset(fsfs, root, toRevision, oldestDumpedRevision, rootPath, dumpStream, useDeltas, isVerify);
-        }
+        myDumpEditor = getDumpEditor(myDumpEditor, fsfs, root, toRevision, oldestDumpedRevision, rootPath, dumpStream, useDeltas, isVerify);
         return myDumpEditor;
     }
 
+    private SVNDumpEditor getDumpEditor(SVNDumpEditor dumpEditor, FSFS fsfs, FSRoot root, long toRevision, long oldestDumpedRevision, 
+            String rootPath, OutputStream dumpStream, boolean useDeltas, boolean isVerify) {
+        if (dumpEditor == null) {
+            return new SVNDumpEditor(fsfs, root, toRevision, oldestDumpedRevision, rootPath, dumpStream, useDeltas, isVerify);
+        }
+        dumpEditor.reset(fsfs, root, toRevision, oldestDumpedRevision, rootPath, dumpStream, useDeltas, isVerify);
+        return dumpEditor;
+    }
+
     private SVNProperties copyRevisionProperties(SVNRepository fromRepository, SVNRepository toRepository, 
             long revision, boolean sync) throws SVNException {
         int filteredCount = 0;
@@ -1699,4 +1873,135 @@ public class SVNAdminClient extends SVNBasicClient {
         return null;
     }
 
+    private class ParallelVerifier implements Runnable {
+        
+        private File myRepositoryRoot;
+        private long myStartRevision;
+        private long myEndRevision;
+        private long myShardSize;
+        private long myMaxAhead;
+        private long myNextRevision;
+        private long myExpectedRevision;
+        private Map myResults;
+        private SVNException myError;
+        private boolean myIsStopped;
+        
+        public ParallelVerifier(File repositoryRoot, long startRevision, long endRevision, long shardSize, int threadCount) {
+            myRepositoryRoot = repositoryRoot;
+            myStartRevision = startRevision;
+            myEndRevision = endRevision;
+            myShardSize = shardSize;
+            myMaxAhead = 2 * threadCount * shardSize;
+            myNextRevision = startRevision;
+            myExpectedRevision = startRevision;
+            myResults = new SVNHashMap();
+        }
+        
+        public void run() {
+            FSFS fsfs = null;
+            SVNDumpEditor dumpEditor = null;
+            try {
+                fsfs = SVNAdminHelper.openRepository(myRepositoryRoot, true);
+                for (long[] range = nextRange(); range != null; range = nextRange()) {
+                    for (long rev = range[0]; rev <= range[1]; rev++) {
+                        if (isStopped()) {
+                            return;
+                        }
+                        SVNException error = null;
+                        try {
+                            FSRevisionRoot toRoot = fsfs.createRevisionRoot(rev);
+                            dumpEditor = getDumpEditor(dumpEditor, fsfs, toRoot, rev, myStartRevision, "/", SVNFileUtil.DUMMY_OUT, false, true);
+                            ISVNEditor editor = SVNCancellableEditor.newInstance(dumpEditor, getEventDispatcher(), getDebugLog());
+                            FSRepositoryUtil.replay(fsfs, toRoot, "", SVNRepository.INVALID_REVISION, false, editor);
+                            fsfs.getRevisionProperties(rev);
+                        } catch (SVNException e) {
+                            error = e;
+                        } catch (RuntimeException e) {
+                            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getMessage());
+                            err.initCause(e);
+                            error = new SVNException(err);
+                        }
+                        revisionVerified(rev, error);
+                    }
+                }
+            } catch (SVNException e) {
+                fail(e);
+            } finally {
+                if (fsfs != null) {
+                    SVNAdminHelper.closeRepository(fsfs);
+                }
+            }
+        }
+        
+        /*
+         * Hands out the next shard-aligned range of revisions, but never runs more 
+         * than a few shards ahead of the revision the caller is waiting for. 
+         */
+        private synchronized long[] nextRange() {
+            while (!myIsStopped && myNextRevision <= myEndRevision && myNextRevision - myExpectedRevision >= myMaxAhead) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    myIsStopped = true;
+                }
+            }
+            if (myIsStopped || myNextRevision > myEndRevision) {
+                return null;
+            }
+            long start = myNextRevision;
+            long end = Math.min(myEndRevision, (start / myShardSize + 1) * myShardSize - 1);
+            myNextRevision = end + 1;
+            return new long[] {start, end};
+        }
+        
+        private synchronized void revisionVerified(long revision, SVNException error) {
+            myResults.put(new Long(revision), error);
+            notifyAll();
+        }
+        
+        private synchronized void fail(SVNException error) {
+            if (myError == null) {
+                myError = error;
+            }
+            notifyAll();
+        }
+        
+        /*
+         * Waits at most timeout milliseconds for the result of revision, so that 
+         * the caller gets a chance to check for cancellation; returns false when
+         * the revision is not verified yet.
+         */
+        public synchronized boolean waitForRevision(long revision, long timeout) throws SVNException {
+            Long key = new Long(revision);
+            if (!myResults.containsKey(key) && myError == null) {
+                try {
+                    wait(timeout);
+                } catch (InterruptedException e) {
+                    SVNErrorManager.cancel("operation cancelled", SVNLogType.FSFS);
+                }
+            }
+            if (!myResults.containsKey(key)) {
+                if (myError != null) {
+                    throw myError;
+                }
+                return false;
+            }
+            SVNException error = (SVNException) myResults.remove(key);
+            if (error != null) {
+                throw error;
+            }
+            myExpectedRevision = revision + 1;
+            notifyAll();
+            return true;
+        }
+        
+        public synchronized void stop() {
+            myIsStopped = true;
+            notifyAll();
+        }
+        
+        private synchronized boolean isStopped() {
+            return myIsStopped;
+        }
+    }
 }